@@ -5,12 +5,12 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import cz.diribet.aqdef.catalog.CatalogField;
 import cz.diribet.aqdef.convert.IKKeyValueConverter;
-import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.Serializable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * K-key (also referred to as 'Key field' / 'K field' in the documentation of AQDEF format)
@@ -23,6 +23,16 @@ import java.util.concurrent.ExecutionException;
  * you will probably get the same instances of {@link KKey} (this behavior is not guaranteed).
  * </p>
  * <p>
+ * K-keys with a numeric part ({@code Knnnn} and {@code KXnnn}, i.e. all the keys of {@link KKeyRepository}) are interned
+ * in a table addressed by the number and are never collected. Other K-keys are cached only while they are used.
+ * Parsers can look up the K-key directly in the parsed line using {@link KKey#of(CharSequence, int)}.
+ * </p>
+ * <p>
+ * Each interned K-key has a dense {@link #getOrdinal() ordinal} (0 .. {@link #getOrdinalCount()} - 1), so data of
+ * K-keys can be stored in arrays indexed by the ordinal instead of maps. Interned K-keys are compared and hashed
+ * using numbers instead of strings.
+ * </p>
+ * <p>
  * K-key also provides some {@link KKeyMetadata metadata} like datatype of the K-key. These can be retrieved like this:
  * <pre>
  *  KKey kKey = KKey.of("K1001");
@@ -36,7 +46,6 @@ import java.util.concurrent.ExecutionException;
  *
  */
 @Slf4j
-@EqualsAndHashCode(onlyExplicitlyIncluded = true)
 public final class KKey implements Serializable, Comparable<KKey> {
 
 	public enum Level {
@@ -49,19 +58,42 @@ public final class KKey implements Serializable, Comparable<KKey> {
 
 		@Override
 		public KKey load(String key) throws Exception {
-			return new KKey(key);
+			return new KKey(key, -1, -1);
 		}
 	});
 
+	private static final int NUMBERED_KEYS = 10_000;
+	private static final int CUSTOM_KEYS = 1_000;
+	private static final int KEY_LENGTH = 5;
+
+	/**
+	 * K-keys {@code Knnnn} at index {@code nnnn} and custom K-keys {@code KXnnn} at index {@code 10000 + nnn}
+	 */
+	private static final AtomicReferenceArray<KKey> INTERNED = new AtomicReferenceArray<>(NUMBERED_KEYS + CUSTOM_KEYS);
+
+	private static int ordinalCount;
+
 	@Getter
-	@EqualsAndHashCode.Include
 	private final String key;
 
-	private transient Level level;
+	/**
+	 * Dense number of the interned K-key or -1
+	 */
+	private final transient int ordinal;
+
+	/**
+	 * Position of the interned K-key in the sort order (see {@link #compareTo(KKey)}) or -1
+	 */
+	private final transient int rank;
+
+	private final transient Level level;
 	private transient KKeyMetadata metadata;
 
-	private KKey(String key) {
+	private KKey(String key, int ordinal, int index) {
 		this.key = key;
+		this.ordinal = ordinal;
+		this.rank = index < 0 ? -1 : rank(index);
+		this.level = determineLevel();
 	}
 
 	/**
@@ -72,6 +104,11 @@ public final class KKey implements Serializable, Comparable<KKey> {
 	 * @return
 	 */
 	public static KKey of(String key) {
+		int index = internedIndex(key, 0, key.length());
+		if (index >= 0) {
+			return interned(index);
+		}
+
 		try {
 			return CACHE.get(key);
 		} catch (ExecutionException e) {
@@ -79,6 +116,119 @@ public final class KKey implements Serializable, Comparable<KKey> {
 		}
 	}
 
+	/**
+	 * Gets the instance of {@link KKey} for the 5 characters starting at the given {@code offset} (e.g. K-key at the
+	 * beginning of the line of AQDEF content).
+	 * <p>
+	 * K-keys with a numeric part are found without creating any object. Only the other K-keys are copied to a
+	 * {@link String} and looked up the same way as {@link #of(String)} does.
+	 * </p>
+	 *
+	 * @param chars
+	 * @param offset
+	 * @return
+	 */
+	public static KKey of(CharSequence chars, int offset) {
+		int index = internedIndex(chars, offset, offset + KEY_LENGTH);
+		if (index >= 0) {
+			return interned(index);
+		}
+
+		return of(chars.subSequence(offset, offset + KEY_LENGTH).toString());
+	}
+
+	private static KKey interned(int index) {
+		KKey kKey = INTERNED.get(index);
+
+		if (kKey == null) {
+			synchronized (INTERNED) {
+				kKey = INTERNED.get(index);
+
+				if (kKey == null) {
+					String key = index < NUMBERED_KEYS
+							? String.format("K%04d", index)
+							: String.format("KX%03d", index - NUMBERED_KEYS);
+
+					kKey = new KKey(key, ordinalCount++, index);
+					INTERNED.set(index, kKey);
+				}
+			}
+		}
+
+		return kKey;
+	}
+
+	/**
+	 * K-keys are sorted by the number, except of K0020 and K0021 which are sorted right after K0001
+	 */
+	private static int rank(int index) {
+		if (index == 20 || index == 21) {
+			return 100 + index;
+		}
+
+		return index * 100;
+	}
+
+	/**
+	 * Returns the number of K-keys that were interned so far. Arrays indexed by {@link #getOrdinal() ordinal} should
+	 * have this length (and grow when a new K-key is interned).
+	 *
+	 * @return
+	 */
+	public static int getOrdinalCount() {
+		synchronized (INTERNED) {
+			return ordinalCount;
+		}
+	}
+
+	/**
+	 * @return index of the K-key in {@link #INTERNED} table or -1 if the K-key has no numeric part
+	 */
+	private static int internedIndex(CharSequence chars, int start, int end) {
+		if (end - start != KEY_LENGTH || chars.charAt(start) != 'K') {
+			return -1;
+		}
+
+		if (chars.charAt(start + 1) == 'X') {
+			int number = parseNumber(chars, start + 2, end);
+			return number < 0 ? -1 : NUMBERED_KEYS + number;
+		}
+
+		return parseNumber(chars, start + 1, end);
+	}
+
+	private static int parseNumber(CharSequence chars, int start, int end) {
+		int number = 0;
+
+		for (int i = start; i < end; i++) {
+			char c = chars.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+
+			number = number * 10 + (c - '0');
+		}
+
+		return number;
+	}
+
+	/**
+	 * Deserialized K-key is replaced by the cached instance
+	 */
+	private Object readResolve() {
+		return key == null ? new KKey(null, -1, -1) : of(key);
+	}
+
+	/**
+	 * Returns the dense number of this K-key that can be used as an index to arrays with data of K-keys.
+	 * Only K-keys with a numeric part ({@code Knnnn} and {@code KXnnn}) have an ordinal.
+	 *
+	 * @return ordinal or -1 if this K-key is not interned
+	 */
+	public int getOrdinal() {
+		return ordinal;
+	}
+
 	/**
 	 * See {@link KKeyMetadata#getConverter()}
 	 *
@@ -183,9 +333,6 @@ public final class KKey implements Serializable, Comparable<KKey> {
 	 * @return
 	 */
 	public Level getLevel() {
-		if (level == null) {
-			level = determineLevel();
-		}
 		return level;
 	}
 
@@ -359,8 +506,40 @@ public final class KKey implements Serializable, Comparable<KKey> {
 		return key;
 	}
 
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof KKey)) {
+			return false;
+		}
+
+		KKey other = (KKey) obj;
+
+		if (ordinal >= 0 && other.ordinal >= 0) {
+			return false;
+		}
+
+		return key == null ? other.key == null : key.equals(other.key);
+	}
+
+	@Override
+	public int hashCode() {
+		if (ordinal >= 0) {
+			return ordinal;
+		}
+
+		return key == null ? 0 : key.hashCode();
+	}
+
 	@Override
 	public int compareTo(KKey o) {
+		if (rank >= 0 && o.rank >= 0) {
+			return Integer.compare(rank, o.rank);
+		}
+
 		if (key == null) {
 			return o.key == null ? 0 : 1;
 
@@ -49,6 +49,11 @@ public final class KKeyRepository {
 
 	private final ImmutableMap<KKey, KKeyMetadata> kKeysWithMetadata;
 
+	/**
+	 * Metadata of the K-keys indexed by {@link KKey#getOrdinal()}
+	 */
+	private final KKeyMetadata[] metadataByOrdinal;
+
 	private final ImmutableList<KKey> allKKeys;
 	private final ImmutableList<KKey> partKKeys;
 	private final ImmutableList<KKey> characteristicKKeys;
@@ -70,6 +75,13 @@ public final class KKeyRepository {
 
 		this.kKeysWithMetadata = ImmutableMap.copyOf(kKeysWithMetadata);
 
+		this.metadataByOrdinal = new KKeyMetadata[KKey.getOrdinalCount()];
+		this.kKeysWithMetadata.forEach((kKey, metadata) -> {
+			if (kKey.getOrdinal() >= 0) {
+				metadataByOrdinal[kKey.getOrdinal()] = metadata;
+			}
+		});
+
 		this.allKKeys = filteredKKeys(this.kKeysWithMetadata, (e) -> true);
 		this.partKKeys = filteredKKeys(this.kKeysWithMetadata, (e) -> e.isPartLevel());
 		this.characteristicKKeys = filteredKKeys(this.kKeysWithMetadata, (e) -> e.isCharacteristicLevel());
@@ -103,6 +115,13 @@ public final class KKeyRepository {
 	 * @return
 	 */
 	public KKeyMetadata getMetadataFor(KKey kKey) {
+		int ordinal = kKey.getOrdinal();
+
+		if (ordinal >= 0) {
+			// K-keys interned after the repository was created have no metadata
+			return ordinal < metadataByOrdinal.length ? metadataByOrdinal[ordinal] : null;
+		}
+
 		return kKeysWithMetadata.get(kKey);
 	}
 
@@ -5,26 +5,107 @@ import java.math.BigDecimal;
 import org.apache.commons.lang3.StringUtils;
 
 /**
+ * Converts decimal numbers. Both {@code ,} and {@code .} are accepted as a decimal separator.
+ * <p>
+ * Plain decimal numbers (without an exponent) that fit into a {@code long} are parsed directly to the unscaled
+ * value and scale. Other values are passed to {@link BigDecimal#BigDecimal(char[])}.
+ * </p>
+ *
  * @author Vlastimil Dolejs
  *
  */
 public class BigDecimalKKeyValueConverter implements IKKeyValueConverter<BigDecimal> {
 
+	/**
+	 * Any number with this count of digits fits into a {@code long}
+	 */
+	private static final int MAX_LONG_DIGITS = 18;
+
 	@Override
 	public BigDecimal convert(String value) throws KKeyValueConversionException {
 		if (StringUtils.isEmpty(value)) {
 			return null;
 		}
 
-		value = value.replaceAll(",", ".");
+		BigDecimal result = parsePlainDecimal(value);
+		if (result != null) {
+			return result;
+		}
 
 		try {
-			return new BigDecimal(value);
+			return new BigDecimal(toDecimalChars(value));
 		} catch (Throwable e) {
 			throw new KKeyValueConversionException(value, BigDecimal.class, e);
 		}
 	}
 
+	/**
+	 * Parses {@code [+-]digits[(,|.)digits]} with at most {@link #MAX_LONG_DIGITS} significant digits.
+	 *
+	 * @param value
+	 * @return parsed value or {@code null} if the value is not in this format
+	 */
+	private static BigDecimal parsePlainDecimal(String value) {
+		int length = value.length();
+		int position = 0;
+
+		boolean negative = false;
+		char sign = value.charAt(0);
+		if (sign == '-' || sign == '+') {
+			negative = sign == '-';
+			position++;
+		}
+
+		long unscaledValue = 0;
+		int digitCount = 0;
+		int significantDigitCount = 0;
+		int scale = 0;
+		boolean decimalSeparatorFound = false;
+
+		for (; position < length; position++) {
+			char c = value.charAt(position);
+
+			if (c >= '0' && c <= '9') {
+				if (unscaledValue != 0 || c != '0') {
+					if (++significantDigitCount > MAX_LONG_DIGITS) {
+						return null;
+					}
+				}
+
+				unscaledValue = unscaledValue * 10 + (c - '0');
+				digitCount++;
+
+				if (decimalSeparatorFound) {
+					scale++;
+				}
+
+			} else if ((c == '.' || c == ',') && !decimalSeparatorFound) {
+				decimalSeparatorFound = true;
+
+			} else {
+				return null;
+			}
+		}
+
+		if (digitCount == 0) {
+			return null;
+		}
+
+		return BigDecimal.valueOf(negative ? -unscaledValue : unscaledValue, scale);
+	}
+
+	private static char[] toDecimalChars(String value) {
+		char[] chars = value.toCharArray();
+
+		for (int i = 0; i < chars.length; i++) {
+			if (chars[i] == ',') {
+				chars[i] = '.';
+			}
+		}
+
+		return chars;
+	}
+
 	@Override
 	public String toString(BigDecimal value) {
 		if (value == null) {
@@ -2,14 +2,35 @@ package cz.diribet.aqdef.convert;
 
 import org.apache.commons.lang3.StringUtils;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.OffsetDateTime;
+import java.time.Month;
+import java.time.Year;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.Date;
-import java.util.List;
 
 /**
+ * Converts dates in these formats:
+ * <ul>
+ * <li>{@code d.M.yy/H:m:s} - day, month, year</li>
+ * <li>{@code M/d/yy/H:m:s} - month, day, year</li>
+ * <li>{@code yy-M-d/H:m:s} - year, month, day</li>
+ * <li>ISO 8601 local or offset date time (e.g. {@code 2018-05-09T10:05:59+02:00})</li>
+ * </ul>
+ * The year may have 2 or 4 digits, the seconds are optional and the date and time may be separated by {@code /},
+ * space or {@code .}
+ * <p>
+ * The value is parsed by a single pass tokenizer, the separators determine the format. The result is the same as if
+ * the value was parsed by {@link DateTimeFormatter} with the corresponding pattern (and {@code SMART} resolver
+ * style), e.g. 31.4. is resolved to 30.4.
+ * </p>
+ * <p>
+ * The last converted value is remembered, because consecutive values often have the same date (e.g. all the
+ * characteristics measured at once).
+ * </p>
+ *
  * @author Vlastimil Dolejs
  *
  */
@@ -17,55 +38,7 @@ public class DateKKeyValueConverter implements IKKeyValueConverter<Date> {
 
 	private static final DateTimeFormatter OUTPUT_FORMATTER = newDateFormat("dd.MM.yyyy/HH:mm:ss");
 
-	private static final List<DateTimeFormatter> INPUT_FORMATTERS = List.of(
-		newDateFormat("d.M.yy/H:m:s"),
-		newDateFormat("d.M.yy/H:m"),
-		newDateFormat("d.M.yyyy/H:m:s"),
-		newDateFormat("d.M.yyyy/H:m"),
-
-		newDateFormat("M/d/yy/H:m:s"),
-		newDateFormat("M/d/yy/H:m"),
-		newDateFormat("M/d/yyyy/H:m:s"),
-		newDateFormat("M/d/yyyy/H:m"),
-
-		newDateFormat("yy-M-d/H:m:s"),
-		newDateFormat("yy-M-d/H:m"),
-		newDateFormat("yyyy-M-d/H:m:s"),
-		newDateFormat("yyyy-M-d/H:m"),
-
-		newDateFormat("d.M.yy H:m:s"),
-		newDateFormat("d.M.yy H:m"),
-		newDateFormat("d.M.yyyy H:m:s"),
-		newDateFormat("d.M.yyyy H:m"),
-
-		newDateFormat("M/d/yy H:m:s"),
-		newDateFormat("M/d/yy H:m"),
-		newDateFormat("M/d/yyyy H:m:s"),
-		newDateFormat("M/d/yyyy H:m"),
-
-		newDateFormat("yy-M-d H:m:s"),
-		newDateFormat("yy-M-d H:m"),
-		newDateFormat("yyyy-M-d H:m:s"),
-		newDateFormat("yyyy-M-d H:m"),
-
-		newDateFormat("d.M.yy.H:m:s"),
-		newDateFormat("d.M.yy.H:m"),
-		newDateFormat("d.M.yyyy.H:m:s"),
-		newDateFormat("d.M.yyyy.H:m"),
-
-		newDateFormat("M/d/yy.H:m:s"),
-		newDateFormat("M/d/yy.H:m"),
-		newDateFormat("M/d/yyyy.H:m:s"),
-		newDateFormat("M/d/yyyy.H:m"),
-
-		newDateFormat("yy-M-d.H:m:s"),
-		newDateFormat("yy-M-d.H:m"),
-		newDateFormat("yyyy-M-d.H:m:s"),
-		newDateFormat("yyyy-M-d.H:m"),
-
-		DateTimeFormatter.ISO_LOCAL_DATE_TIME,
-		DateTimeFormatter.ISO_OFFSET_DATE_TIME
-	);
+	private volatile LastConversion lastConversion;
 
 	private static DateTimeFormatter newDateFormat(String pattern) {
 		return DateTimeFormatter.ofPattern(pattern);
@@ -77,23 +50,31 @@ public class DateKKeyValueConverter implements IKKeyValueConverter<Date> {
 			return null;
 		}
 
-		for (DateTimeFormatter inputFormat : INPUT_FORMATTERS) {
-			// Offset date time
-			try {
-				OffsetDateTime dateTime = OffsetDateTime.parse(value, inputFormat);
-				return Date.from(dateTime.toInstant());
+		ZoneId zone = ZoneId.systemDefault();
+
+		LastConversion last = lastConversion;
+		if (last != null && last.value.equals(value) && last.zone.equals(zone)) {
+			return new Date(last.epochMilli);
+		}
+
+		DateTokenizer tokenizer = new DateTokenizer(value);
 
-			} catch (Throwable ignored) {}
+		if (!tokenizer.parse()) {
+			throw new KKeyValueConversionException("Failed to convert value:" + value + " to Date. Unsupported format.");
+		}
 
-			// Local date time
-			try {
-				LocalDateTime dateTime = LocalDateTime.parse(value, inputFormat);
-				return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+		long epochMilli;
 
-			} catch (Throwable ignored) {}
+		try {
+			epochMilli = tokenizer.toEpochMilli(zone);
+		} catch (ArithmeticException e) {
+			// year out of the range of Date
+			throw new KKeyValueConversionException(value, Date.class, e);
 		}
 
-		throw new KKeyValueConversionException("Failed to convert value:" + value + " to Date. Unsupported format.");
+		lastConversion = new LastConversion(value, zone, epochMilli);
+
+		return new Date(epochMilli);
 	}
 
 	@Override
@@ -107,4 +88,436 @@ public class DateKKeyValueConverter implements IKKeyValueConverter<Date> {
 		return OUTPUT_FORMATTER.format(localDateTime);
 	}
 
+	private static class LastConversion {
+
+		private final String value;
+		private final ZoneId zone;
+		private final long epochMilli;
+
+		LastConversion(String value, ZoneId zone, long epochMilli) {
+			this.value = value;
+			this.zone = zone;
+			this.epochMilli = epochMilli;
+		}
+	}
+
+	/**
+	 * Parses the date fields without any exceptions. {@link #parse()} returns false if the value is not in any of
+	 * the supported formats or if it is not a valid date.
+	 */
+	private static class DateTokenizer {
+
+		/**
+		 * Numbers with more digits are rejected by {@link DateTimeFormatter} as well
+		 */
+		private static final int MAX_DIGITS = 19;
+
+		/**
+		 * Numbers are parsed up to this value, higher numbers are invalid in all the fields anyway
+		 */
+		private static final long MAX_NUMBER = 10_000_000_000L;
+
+		private static final long MAX_YEAR = 999_999_999;
+
+		private static final int NO_OFFSET = Integer.MIN_VALUE;
+
+		private final String value;
+		private final int length;
+		private int position;
+
+		private int digitCount;
+
+		private long year;
+		private int month;
+		private int day;
+		private int hour;
+		private int minute;
+		private int second;
+		private int nano;
+		private int offsetSeconds = NO_OFFSET;
+
+		DateTokenizer(String value) {
+			this.value = value;
+			this.length = value.length();
+		}
+
+		boolean parse() {
+			// date part - three numbers with the same separator
+			boolean firstSigned = isSign(charAt(position));
+			long first = signedNumber();
+			int firstDigitCount = digitCount;
+
+			char dateSeparator = charAt(position);
+			if (firstDigitCount == 0 || (dateSeparator != '.' && dateSeparator != '/' && dateSeparator != '-')) {
+				return false;
+			}
+			position++;
+
+			long middle = number();
+			int middleDigitCount = digitCount;
+
+			if (middleDigitCount == 0 || charAt(position) != dateSeparator) {
+				return false;
+			}
+			position++;
+
+			boolean lastSigned = isSign(charAt(position));
+			long last = signedNumber();
+			int lastDigitCount = digitCount;
+
+			if (lastDigitCount == 0) {
+				return false;
+			}
+
+			char dateTimeSeparator = charAt(position);
+			position++;
+
+			if (dateTimeSeparator == 'T' || dateTimeSeparator == 't') {
+				return !lastSigned
+						&& dateSeparator == '-'
+						&& parseIsoDateTime(first, firstDigitCount, firstSigned, middle, middleDigitCount, last, lastDigitCount);
+			}
+
+			if (dateTimeSeparator != '/' && dateTimeSeparator != ' ' && dateTimeSeparator != '.') {
+				return false;
+			}
+
+			switch (dateSeparator) {
+				case '.':
+					// d.M.yy
+					return !firstSigned
+							&& isYear(last, lastDigitCount, lastSigned)
+							&& parseDateTime(last, lastDigitCount, middle, first);
+
+				case '/':
+					// M/d/yy
+					return !firstSigned
+							&& isYear(last, lastDigitCount, lastSigned)
+							&& parseDateTime(last, lastDigitCount, first, middle);
+
+				default:
+					// yy-M-d
+					return !lastSigned
+							&& isYear(first, firstDigitCount, firstSigned)
+							&& parseDateTime(first, firstDigitCount, middle, last);
+			}
+		}
+
+		/**
+		 * 'yy' has exactly 2 digits, 'yyyy' has exactly 4 digits or more digits with '+' sign
+		 */
+		private boolean isYear(long number, int numberDigitCount, boolean signed) {
+			if (signed) {
+				return number > 0 && numberDigitCount > 4;
+			} else {
+				return numberDigitCount == 2 || numberDigitCount == 4;
+			}
+		}
+
+		/**
+		 * Non-ISO date time. Resolved like {@code ResolverStyle.SMART}.
+		 */
+		private boolean parseDateTime(long yearNumber, int yearDigitCount, long monthNumber, long dayNumber) {
+			if (yearDigitCount == 2) {
+				year = 2000 + yearNumber;
+			} else if (yearNumber >= 1 && yearNumber <= MAX_YEAR) {
+				year = yearNumber;
+			} else {
+				return false;
+			}
+
+			if (monthNumber < 1 || monthNumber > 12 || dayNumber < 1 || dayNumber > 31) {
+				return false;
+			}
+
+			month = (int) monthNumber;
+			// invalid day of month is changed to the last day of the month
+			day = (int) Math.min(dayNumber, Month.of(month).length(Year.isLeap(year)));
+
+			long hourNumber = number();
+			if (digitCount == 0 || charAt(position) != ':') {
+				return false;
+			}
+			position++;
+
+			long minuteNumber = number();
+			if (digitCount == 0) {
+				return false;
+			}
+
+			long secondNumber = 0;
+
+			if (position < length) {
+				if (charAt(position) != ':') {
+					return false;
+				}
+				position++;
+
+				secondNumber = number();
+				if (digitCount == 0 || position < length) {
+					return false;
+				}
+			}
+
+			if (minuteNumber > 59 || secondNumber > 59) {
+				return false;
+			}
+
+			if (hourNumber == 24 && minuteNumber == 0 && secondNumber == 0 && year < MAX_YEAR) {
+				// 24:00 is the midnight of the next day
+				LocalDate nextDay = LocalDate.of((int) year, month, day).plusDays(1);
+				year = nextDay.getYear();
+				month = nextDay.getMonthValue();
+				day = nextDay.getDayOfMonth();
+				hour = 0;
+
+			} else if (hourNumber > 23) {
+				return false;
+
+			} else {
+				hour = (int) hourNumber;
+			}
+
+			minute = (int) minuteNumber;
+			second = (int) secondNumber;
+
+			return true;
+		}
+
+		/**
+		 * ISO local or offset date time. Resolved like {@code ResolverStyle.STRICT}.
+		 */
+		private boolean parseIsoDateTime(long yearNumber,
+										 int yearDigitCount,
+										 boolean firstSigned,
+										 long monthNumber,
+										 int monthDigitCount,
+										 long dayNumber,
+										 int dayDigitCount) {
+
+			if (firstSigned) {
+				// '+' must be used (and '-' may be used) only for years with more than 4 digits
+				boolean positive = value.charAt(0) == '+';
+				if (yearDigitCount < 4 || yearDigitCount > 10 || (positive && yearDigitCount == 4) || (!positive && yearNumber == 0)) {
+					return false;
+				}
+			} else if (yearDigitCount != 4) {
+				return false;
+			}
+
+			if (monthDigitCount != 2 || dayDigitCount != 2) {
+				return false;
+			}
+
+			if (Math.abs(yearNumber) > MAX_YEAR || monthNumber < 1 || monthNumber > 12 || dayNumber < 1) {
+				return false;
+			}
+
+			year = yearNumber;
+			month = (int) monthNumber;
+
+			if (dayNumber > Month.of(month).length(Year.isLeap(year))) {
+				return false;
+			}
+
+			day = (int) dayNumber;
+
+			long hourNumber = fixedWidthNumber(2);
+			if (hourNumber < 0 || hourNumber > 23 || charAt(position) != ':') {
+				return false;
+			}
+			position++;
+
+			long minuteNumber = fixedWidthNumber(2);
+			if (minuteNumber < 0 || minuteNumber > 59) {
+				return false;
+			}
+
+			hour = (int) hourNumber;
+			minute = (int) minuteNumber;
+
+			if (charAt(position) == ':') {
+				position++;
+
+				long secondNumber = fixedWidthNumber(2);
+				if (secondNumber < 0 || secondNumber > 59) {
+					return false;
+				}
+
+				second = (int) secondNumber;
+
+				if (charAt(position) == '.') {
+					position++;
+
+					int fractionStart = position;
+					long fraction = number();
+					int fractionDigitCount = position - fractionStart;
+
+					if (fractionDigitCount > 9) {
+						return false;
+					}
+
+					for (int i = fractionDigitCount; i < 9; i++) {
+						fraction *= 10;
+					}
+
+					nano = (int) fraction;
+				}
+			}
+
+			if (position == length) {
+				return true;
+			}
+
+			return parseIsoOffset();
+		}
+
+		/**
+		 * Z or +HH or +HH:MM or +HH:MM:SS
+		 */
+		private boolean parseIsoOffset() {
+			char sign = charAt(position);
+			position++;
+
+			if (sign == 'Z' || sign == 'z') {
+				offsetSeconds = 0;
+				return position == length;
+			}
+
+			if (!isSign(sign)) {
+				return false;
+			}
+
+			long offsetHours = fixedWidthNumber(2);
+			long offsetMinutes = 0;
+			long offsetSecondsOfMinute = 0;
+
+			if (offsetHours < 0) {
+				return false;
+			}
+
+			if (position < length) {
+				if (charAt(position) != ':') {
+					return false;
+				}
+				position++;
+
+				offsetMinutes = fixedWidthNumber(2);
+
+				if (position < length) {
+					if (charAt(position) != ':') {
+						return false;
+					}
+					position++;
+
+					offsetSecondsOfMinute = fixedWidthNumber(2);
+				}
+			}
+
+			if (position != length || offsetMinutes < 0 || offsetMinutes > 59 || offsetSecondsOfMinute < 0 || offsetSecondsOfMinute > 59) {
+				return false;
+			}
+
+			long totalSeconds = offsetHours * 3600 + offsetMinutes * 60 + offsetSecondsOfMinute;
+			if (totalSeconds > 18 * 3600) {
+				return false;
+			}
+
+			offsetSeconds = (int) (sign == '-' ? -totalSeconds : totalSeconds);
+
+			return true;
+		}
+
+		long toEpochMilli(ZoneId zone) {
+			LocalDateTime localDateTime = LocalDateTime.of((int) year, month, day, hour, minute, second, nano);
+
+			if (offsetSeconds == NO_OFFSET) {
+				return localDateTime.atZone(zone).toInstant().toEpochMilli();
+			} else {
+				return localDateTime.toInstant(ZoneOffset.ofTotalSeconds(offsetSeconds)).toEpochMilli();
+			}
+		}
+
+		private long signedNumber() {
+			char sign = charAt(position);
+
+			if (!isSign(sign)) {
+				return number();
+			}
+
+			position++;
+			long number = number();
+
+			if (sign == '-') {
+				return -number;
+			}
+
+			return number;
+		}
+
+		/**
+		 * Parses unsigned number. Number of its digits is stored to {@link #digitCount} (more than
+		 * {@link #MAX_DIGITS} digits are reported as 0 digits - invalid number).
+		 */
+		private long number() {
+			int start = position;
+			long number = 0;
+
+			while (position < length) {
+				int digit = value.charAt(position) - '0';
+
+				if (digit < 0 || digit > 9) {
+					break;
+				}
+
+				if (number < MAX_NUMBER) {
+					number = number * 10 + digit;
+				}
+
+				position++;
+			}
+
+			digitCount = position - start;
+
+			if (digitCount > MAX_DIGITS) {
+				digitCount = 0;
+			}
+
+			return number;
+		}
+
+		/**
+		 * @return the number or -1 if there is not exactly the given number of digits
+		 */
+		private long fixedWidthNumber(int width) {
+			if (position + width > length) {
+				return -1;
+			}
+
+			long number = 0;
+
+			for (int i = 0; i < width; i++) {
+				int digit = value.charAt(position + i) - '0';
+
+				if (digit < 0 || digit > 9) {
+					return -1;
+				}
+
+				number = number * 10 + digit;
+			}
+
+			position += width;
+
+			return number;
+		}
+
+		private char charAt(int index) {
+			return index < length ? value.charAt(index) : 0;
+		}
+
+		private static boolean isSign(char c) {
+			return c == '+' || c == '-';
+		}
+	}
+
 }
@@ -84,11 +84,14 @@ public class AqdefHierarchy {
 	private boolean containsHierarchyInformation = false;
 	private boolean containsSimpleHierarchyInformation = false;
 
+	private boolean frozen = false;
+
 	//*******************************************
 	// Methods
 	//*******************************************
 
 	public void putEntry(KKey kKey, Integer index, Object value) {
+		checkNotFrozen();
 		requireNonNull(kKey);
 
 		if (kKey.isSimpleHierarchyLevel()) {
@@ -104,6 +107,7 @@ public class AqdefHierarchy {
 	}
 
 	public void putEntry(HierarchyEntry entry) {
+		checkNotFrozen();
 		requireNonNull(entry);
 
 		KKey kKey = entry.getKey();
@@ -189,6 +193,8 @@ public class AqdefHierarchy {
 	 * @param index index of the part to remove hierarchy for
 	 */
 	public void removeHierarchyForPart(PartIndex index) {
+		checkNotFrozen();
+
 		if (index == null) {
 			return;
 		}
@@ -203,6 +209,7 @@ public class AqdefHierarchy {
 	 * @param index index of the characteristic to remove hierarchy for
 	 */
 	public void removeHierarchyForCharacteristic(CharacteristicIndex index) {
+		checkNotFrozen();
 		removeHierarchyForCharacteristic(index, true);
 	}
 
@@ -227,6 +234,7 @@ public class AqdefHierarchy {
 	 * @param index index of the group to remove hierarchy for
 	 */
 	public void removeHierarchyForGroup(GroupIndex index) {
+		checkNotFrozen();
 		removeHierarchyForGroup(index, true);
 	}
 
@@ -408,6 +416,32 @@ public class AqdefHierarchy {
 		return normalizedHierarchy;
 	}
 
+	/**
+	 * @return unmodifiable copy of this hierarchy
+	 */
+	AqdefHierarchy frozenCopy() {
+		AqdefHierarchy copy = new AqdefHierarchy();
+
+		copy.nodeDefinitions.putAll(nodeDefinitions);
+		nodeBindings.forEach((nodeIndex, bindings) -> copy.nodeBindings.put(nodeIndex, List.copyOf(bindings)));
+
+		copy.containsHierarchyInformation = containsHierarchyInformation;
+		copy.containsSimpleHierarchyInformation = containsSimpleHierarchyInformation;
+		copy.frozen = true;
+
+		return copy;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new UnsupportedOperationException("Hierarchy is frozen");
+		}
+	}
+
 	public void forEachNodeDefinition(Consumer<HierarchyEntry> action) {
 		nodeDefinitions.values().forEach(action);
 	}
@@ -422,7 +456,8 @@ public class AqdefHierarchy {
 	 * @return
 	 */
 	public Collection<HierarchyEntry> getNodeDefinitionEntries() {
-		return nodeDefinitions.values();
+		Collection<HierarchyEntry> entries = nodeDefinitions.values();
+		return frozen ? Collections.unmodifiableCollection(entries) : entries;
 	}
 
 	/**
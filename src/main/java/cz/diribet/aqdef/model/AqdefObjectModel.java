@@ -3,6 +3,12 @@ package cz.diribet.aqdef.model;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -15,8 +21,8 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
 import org.apache.commons.collections4.MapUtils;
@@ -24,11 +30,13 @@ import org.apache.commons.collections4.MapUtils;
 import cz.diribet.aqdef.KKey;
 import cz.diribet.aqdef.parser.AqdefParser;
 import cz.diribet.aqdef.writer.AqdefWriter;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
+import lombok.ToString;
 
 /**
  * Object model of AQDEF content.
@@ -57,35 +65,150 @@ public class AqdefObjectModel {
 	// Attributes
 	//*******************************************
 
-	private final Map<PartIndex, PartEntries> partEntries = newEntriesMap();
-	private final Map<PartIndex, Map<CharacteristicIndex, CharacteristicEntries>> characteristicEntries = newEntriesMap();
-	private final Map<PartIndex, Map<GroupIndex, GroupEntries>> groupEntries = newEntriesMap();
-	private final Map<PartIndex, Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>>> valueEntries = newEntriesMap();
+	private final Map<PartIndex, PartEntries> partEntries;
+	private final Map<PartIndex, Map<CharacteristicIndex, CharacteristicEntries>> characteristicEntries;
+	private final Map<PartIndex, Map<GroupIndex, GroupEntries>> groupEntries;
+	private final Map<PartIndex, Map<CharacteristicIndex, ValueColumns>> valueEntries;
 
-	private final Map<CatalogRecordIndex, CatalogRecordEntries> catalogEntries = newEntriesMap();
+	private final Map<CatalogRecordIndex, CatalogRecordEntries> catalogEntries;
 
-	@Getter
-	@Setter
-	private AqdefHierarchy hierarchy = new AqdefHierarchy();
+	/**
+	 * Index of the part with the lowest index for each characteristic number. Kept up to date with
+	 * {@link #characteristicEntries}, see {@link #findPartIndexForCharacteristic(int)}.
+	 */
+	private final Map<Integer, PartIndex> characteristicPartIndexes;
+
+	private AqdefHierarchy hierarchy;
+
+	/**
+	 * Content of a {@link #snapshot() frozen} object model or {@code null} if this object model may be modified
+	 */
+	@EqualsAndHashCode.Exclude
+	private final Snapshot snapshot;
+
+	/**
+	 * Guards the structure of this object model (creation of the entries with a new index) during the
+	 * {@link #concurrentIngestion() concurrent ingestion}. Shared by all the ingestions of this object model.
+	 */
+	@EqualsAndHashCode.Exclude
+	final Object ingestionLock = new Object();
+
+	//*******************************************
+	// Constructors
+	//*******************************************
+
+	public AqdefObjectModel() {
+		partEntries = IndexedEntriesMap.byPartIndex();
+		characteristicEntries = IndexedEntriesMap.byPartIndex();
+		groupEntries = IndexedEntriesMap.byPartIndex();
+		valueEntries = IndexedEntriesMap.byPartIndex();
+		catalogEntries = IndexedEntriesMap.byCatalogRecordIndex();
+		characteristicPartIndexes = new HashMap<>();
+		hierarchy = new AqdefHierarchy();
+		snapshot = null;
+	}
+
+	/**
+	 * Creates a frozen copy of the given object model, see {@link #snapshot()}.
+	 */
+	private AqdefObjectModel(AqdefObjectModel aqdefObjectModel) {
+		partEntries = frozenCopy(aqdefObjectModel.partEntries, IndexedEntriesMap.byPartIndex(),
+								 (index, part) -> snapshot(part));
+
+		characteristicEntries = frozenCopy(aqdefObjectModel.characteristicEntries, IndexedEntriesMap.byPartIndex(),
+										   (partIndex, characteristics) -> frozenCopy(characteristics,
+												   IndexedEntriesMap.byCharacteristicIndex(partIndex),
+												   (index, characteristic) -> snapshot(characteristic)));
+
+		groupEntries = frozenCopy(aqdefObjectModel.groupEntries, IndexedEntriesMap.byPartIndex(),
+								  (partIndex, groups) -> frozenCopy(groups,
+										  IndexedEntriesMap.byGroupIndex(partIndex),
+										  (index, group) -> snapshot(group)));
+
+		valueEntries = frozenCopy(aqdefObjectModel.valueEntries, IndexedEntriesMap.byPartIndex(),
+								  (partIndex, values) -> frozenCopy(values,
+										  IndexedEntriesMap.byCharacteristicIndex(partIndex),
+										  (index, valueColumns) -> valueColumns.snapshot()));
+
+		catalogEntries = frozenCopy(aqdefObjectModel.catalogEntries, IndexedEntriesMap.byCatalogRecordIndex(),
+									(index, catalogRecord) -> snapshot(catalogRecord));
+
+		characteristicPartIndexes = new HashMap<>(aqdefObjectModel.characteristicPartIndexes);
+		hierarchy = aqdefObjectModel.getHierarchy().frozenCopy();
+		snapshot = new Snapshot(this, hierarchy);
+	}
 
 	//*******************************************
 	// Methods
 	//*******************************************
 
+	/**
+	 * Creates an immutable snapshot of this object model.
+	 * <p>
+	 * All the values of this object model are converted, the storage of the entries and of the values is trimmed to
+	 * the size of the content and frozen. The snapshot shares the frozen storage with this object model, only the maps
+	 * of the parts / characteristics / groups / values / catalog records (and the hierarchy) are copied. This object
+	 * model may be modified after the snapshot is created, the entries and the values of this object model copy their
+	 * storage before they are modified for the first time. So the snapshot costs a copy of the storage that is
+	 * modified after it, not a copy of the whole object model.
+	 * </p>
+	 * <p>
+	 * Any attempt to modify the snapshot throws {@link UnsupportedOperationException}. Lists of the parts /
+	 * characteristics / groups / catalog records / values and the views of the values are created once and returned by
+	 * the snapshot without copying.
+	 * </p>
+	 * <p>
+	 * The snapshot may be read by any number of threads without synchronization, it is safely published even when it
+	 * is shared through a data race. This object model must not be modified while the snapshot is created.
+	 * </p>
+	 *
+	 * @return frozen object model or this object model if it is already frozen
+	 * @see #isFrozen()
+	 */
+	public AqdefObjectModel snapshot() {
+		return isFrozen() ? this : new AqdefObjectModel(this);
+	}
+
+	/**
+	 * @return whether this object model is an immutable {@link #snapshot() snapshot}
+	 */
+	public boolean isFrozen() {
+		return snapshot != null;
+	}
+
+	public AqdefHierarchy getHierarchy() {
+		return snapshot == null ? hierarchy : snapshot.hierarchy;
+	}
+
+	public void setHierarchy(AqdefHierarchy hierarchy) {
+		checkNotFrozen();
+		this.hierarchy = hierarchy;
+	}
+
+	private void checkNotFrozen() {
+		if (isFrozen()) {
+			throw new UnsupportedOperationException("Object model is frozen");
+		}
+	}
+
 	public void putPartEntry(KKey key, PartIndex index, Object value) {
 		if (value == null) {
 			return;
 		}
 
-		PartEntries entriesWithIndex = partEntries.computeIfAbsent(index, PartEntries::new);
+		PartEntries entriesWithIndex = computePartEntriesIfAbsent(index);
 		entriesWithIndex.put(key, value);
 	}
 
 	public void putPartEntries(PartEntries newPartEntries) {
-		PartEntries entriesWithIndex = partEntries.computeIfAbsent(newPartEntries.getIndex(), PartEntries::new);
+		PartEntries entriesWithIndex = computePartEntriesIfAbsent(newPartEntries.getIndex());
 		entriesWithIndex.putAll(newPartEntries, true);
 	}
 
+	PartEntries computePartEntriesIfAbsent(PartIndex index) {
+		return partEntries.computeIfAbsent(index, PartEntries::new);
+	}
+
 	/**
 	 * Removes part entries with the given index.
 	 * Characteristic and value entries of given part are preserved!
@@ -101,16 +224,19 @@ public class AqdefObjectModel {
 			return;
 		}
 
-		CatalogRecordEntries entriesWithIndex = catalogEntries.computeIfAbsent(index, CatalogRecordEntries::new);
+		CatalogRecordEntries entriesWithIndex = computeCatalogRecordEntriesIfAbsent(index);
 		entriesWithIndex.put(key, value);
 	}
 
 	public void putCatalogRecordEntries(CatalogRecordEntries newCatalogRecordEntries) {
-		CatalogRecordEntries entriesWithIndex =
-				catalogEntries.computeIfAbsent(newCatalogRecordEntries.getIndex(), CatalogRecordEntries::new);
+		CatalogRecordEntries entriesWithIndex = computeCatalogRecordEntriesIfAbsent(newCatalogRecordEntries.getIndex());
 		entriesWithIndex.putAll(newCatalogRecordEntries, true);
 	}
 
+	CatalogRecordEntries computeCatalogRecordEntriesIfAbsent(CatalogRecordIndex index) {
+		return catalogEntries.computeIfAbsent(index, CatalogRecordEntries::new);
+	}
+
 	/**
 	 * Removes catalog record entries with the given index.
 	 *
@@ -135,13 +261,52 @@ public class AqdefObjectModel {
 		entriesWithIndex.putAll(newCharacteristicEntries, true);
 	}
 
-	private CharacteristicEntries computeCharacteristicEntriesIfAbsent(CharacteristicIndex characteristicIndex) {
+	CharacteristicEntries computeCharacteristicEntriesIfAbsent(CharacteristicIndex characteristicIndex) {
 		PartIndex partIndex = characteristicIndex.getPartIndex();
 
 		Map<CharacteristicIndex, CharacteristicEntries> entriesWithPartIndex =
-				characteristicEntries.computeIfAbsent(partIndex, i -> newEntriesMap());
+				characteristicEntries.computeIfAbsent(partIndex, IndexedEntriesMap::byCharacteristicIndex);
 
-		return entriesWithPartIndex.computeIfAbsent(characteristicIndex, CharacteristicEntries::new);
+		return entriesWithPartIndex.computeIfAbsent(characteristicIndex, index -> {
+			indexCharacteristic(index);
+			return new CharacteristicEntries(index);
+		});
+	}
+
+	private void indexCharacteristic(CharacteristicIndex characteristicIndex) {
+		if (characteristicIndex.getCharacteristicIndex() == null) {
+			// characteristic without a number can not be found by the number
+			return;
+		}
+
+		characteristicPartIndexes.merge(characteristicIndex.getCharacteristicIndex(),
+										characteristicIndex.getPartIndex(),
+										(partIndex, newPartIndex) -> partIndex.compareTo(newPartIndex) <= 0 ? partIndex : newPartIndex);
+	}
+
+	/**
+	 * Updates the characteristic number index after the characteristic with the given index was removed.
+	 *
+	 * @param characteristicIndex
+	 */
+	private void unindexCharacteristic(CharacteristicIndex characteristicIndex) {
+		Integer characteristicNumber = characteristicIndex.getCharacteristicIndex();
+
+		if (characteristicNumber == null || !characteristicIndex.getPartIndex().equals(characteristicPartIndexes.get(characteristicNumber))) {
+			return;
+		}
+
+		characteristicPartIndexes.remove(characteristicNumber);
+
+		// characteristic with the same number may be in another part
+		for (Entry<PartIndex, Map<CharacteristicIndex, CharacteristicEntries>> entry : characteristicEntries.entrySet()) {
+			PartIndex partIndex = entry.getKey();
+
+			if (entry.getValue().containsKey(CharacteristicIndex.of(partIndex, characteristicNumber))) {
+				characteristicPartIndexes.put(characteristicNumber, partIndex);
+				return;
+			}
+		}
 	}
 
 	/**
@@ -162,6 +327,10 @@ public class AqdefObjectModel {
 				characteristicEntries.remove(index.getPartIndex());
 			}
 
+			if (removedEntries != null) {
+				unindexCharacteristic(index);
+			}
+
 			return removedEntries;
 		}
 
@@ -173,14 +342,15 @@ public class AqdefObjectModel {
 			return;
 		}
 
-		PartIndex partIndex = groupIndex.getPartIndex();
+		GroupEntries entriesWithIndex = computeGroupEntriesIfAbsent(groupIndex);
+		entriesWithIndex.put(key, value);
+	}
 
+	GroupEntries computeGroupEntriesIfAbsent(GroupIndex groupIndex) {
 		Map<GroupIndex, GroupEntries> entriesWithPartIndex =
-				groupEntries.computeIfAbsent(partIndex, i -> newEntriesMap());
+				groupEntries.computeIfAbsent(groupIndex.getPartIndex(), IndexedEntriesMap::byGroupIndex);
 
-		GroupEntries entriesWithIndex =
-				entriesWithPartIndex.computeIfAbsent(groupIndex, GroupEntries::new);
-		entriesWithIndex.put(key, value);
+		return entriesWithPartIndex.computeIfAbsent(groupIndex, GroupEntries::new);
 	}
 
 	public void putValueEntry(KKey key, ValueIndex valueIndex, Object value) {
@@ -188,8 +358,8 @@ public class AqdefObjectModel {
 			return;
 		}
 
-		ValueEntries entriesWithIndex = computeValueEntriesIfAbsent(valueIndex);
-		entriesWithIndex.put(key, value);
+		ValueEntry.validateKey(key);
+		computeValueColumnsIfAbsent(valueIndex.getCharacteristicIndex()).put(valueIndex, key, value);
 	}
 
 	public void putValueEntries(ValueEntries newValueEntries) {
@@ -199,17 +369,23 @@ public class AqdefObjectModel {
 	}
 
 	private ValueEntries computeValueEntriesIfAbsent(ValueIndex valueIndex) {
-		PartIndex partIndex = valueIndex.getPartIndex();
+		return computeValueColumnsIfAbsent(valueIndex.getCharacteristicIndex()).computeIfAbsent(valueIndex);
+	}
 
-		Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>> entriesWithPartIndex =
-				valueEntries.computeIfAbsent(partIndex, i -> newEntriesMap());
+	ValueColumns computeValueColumnsIfAbsent(CharacteristicIndex characteristicIndex) {
+		Map<CharacteristicIndex, ValueColumns> entriesWithPartIndex =
+				valueEntries.computeIfAbsent(characteristicIndex.getPartIndex(), IndexedEntriesMap::byCharacteristicIndex);
 
-		CharacteristicIndex characteristicIndex = valueIndex.getCharacteristicIndex();
+		return entriesWithPartIndex.computeIfAbsent(characteristicIndex, ValueColumns::new);
+	}
 
-		Map<ValueIndex, ValueEntries> entriesWithCharacteristicIndex =
-				entriesWithPartIndex.computeIfAbsent(characteristicIndex, i -> newEntriesMap());
+	/**
+	 * @return values of the characteristic with the given index or {@code null}
+	 */
+	private ValueColumns getValueColumns(CharacteristicIndex characteristicIndex) {
+		Map<CharacteristicIndex, ValueColumns> entriesWithPartIndex = valueEntries.get(characteristicIndex.getPartIndex());
 
-		return entriesWithCharacteristicIndex.computeIfAbsent(valueIndex, ValueEntries::new);
+		return entriesWithPartIndex == null ? null : entriesWithPartIndex.get(characteristicIndex);
 	}
 
 	/**
@@ -219,10 +395,10 @@ public class AqdefObjectModel {
 	 * @return
 	 */
 	private List<ValueEntries> removeValueEntries(CharacteristicIndex index) {
-		Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>> entriesWithPartIndex = valueEntries.get(index.getPartIndex());
+		Map<CharacteristicIndex, ValueColumns> entriesWithPartIndex = valueEntries.get(index.getPartIndex());
 
 		if (entriesWithPartIndex != null) {
-			Map<ValueIndex, ValueEntries> removedValueEntries = entriesWithPartIndex.remove(index);
+			ValueColumns removedValueEntries = entriesWithPartIndex.remove(index);
 
 			// cleanup empty entries
 			if (entriesWithPartIndex.isEmpty()) {
@@ -230,7 +406,7 @@ public class AqdefObjectModel {
 			}
 
 			if (removedValueEntries != null) {
-				return new ArrayList<>(removedValueEntries.values());
+				return removedValueEntries.getValues();
 			}
 		}
 
@@ -238,15 +414,32 @@ public class AqdefObjectModel {
 	}
 
 	public void putHierarchyEntry(KKey kKey, Integer nodeIndex, Object value) {
+		checkNotFrozen();
 		hierarchy.putEntry(kKey, nodeIndex, value);
 	}
 
+	/**
+	 * Creates an ingestion that puts entries to this object model from several threads at once. All the ingestions of
+	 * this object model use the same locks, so several of them may be used at once.
+	 *
+	 * @return new ingestion of this object model
+	 * @see ConcurrentIngestion
+	 */
+	public ConcurrentIngestion concurrentIngestion() {
+		checkNotFrozen();
+		return new ConcurrentIngestion(this);
+	}
+
 	/**
 	 * Returns indexes of all parts in this object model.
 	 *
 	 * @return
 	 */
 	public List<PartIndex> getPartIndexes() {
+		if (snapshot != null) {
+			return snapshot.partIndexes;
+		}
+
 		return new ArrayList<>(partEntries.keySet());
 	}
 
@@ -262,6 +455,10 @@ public class AqdefObjectModel {
 	 * @return all parts in this object model
 	 */
 	public List<PartEntries> getParts() {
+		if (snapshot != null) {
+			return snapshot.parts;
+		}
+
 		return new ArrayList<>(partEntries.values());
 	}
 
@@ -271,6 +468,10 @@ public class AqdefObjectModel {
 	 * @return
 	 */
 	public List<CatalogRecordIndex> getCatalogRecordIndexes() {
+		if (snapshot != null) {
+			return snapshot.catalogRecordIndexes;
+		}
+
 		return new ArrayList<>(catalogEntries.keySet());
 	}
 
@@ -286,6 +487,10 @@ public class AqdefObjectModel {
 	 * @return all catalog records in this object model
 	 */
 	public List<CatalogRecordEntries> getCatalogRecords() {
+		if (snapshot != null) {
+			return snapshot.catalogRecords;
+		}
+
 		return new ArrayList<>(catalogEntries.values());
 	}
 
@@ -295,6 +500,10 @@ public class AqdefObjectModel {
 	 * @return
 	 */
 	public List<CharacteristicIndex> getCharacteristicIndexes(PartIndex partIndex) {
+		if (snapshot != null) {
+			return snapshot.characteristicIndexes.getOrDefault(partIndex, List.of());
+		}
+
 		Map<CharacteristicIndex, CharacteristicEntries> entriesWithPartIndex = characteristicEntries.get(partIndex);
 
 		if (entriesWithPartIndex == null) {
@@ -325,6 +534,10 @@ public class AqdefObjectModel {
 	 * @return
 	 */
 	public List<CharacteristicEntries> getCharacteristics(PartIndex partIndex) {
+		if (snapshot != null) {
+			return snapshot.characteristics.getOrDefault(partIndex, List.of());
+		}
+
 		Map<CharacteristicIndex, CharacteristicEntries> entriesWithPartIndex = characteristicEntries.get(partIndex);
 
 		if (entriesWithPartIndex == null) {
@@ -345,7 +558,7 @@ public class AqdefObjectModel {
 		return getCharacteristics(partIndex).stream()
 											.filter(characteristic -> {
 												Optional<Object> parentIndex =
-														hierarchy.getParentIndex(characteristic.getIndex());
+														getHierarchy().getParentIndex(characteristic.getIndex());
 												return parentIndex.isEmpty();
 											})
 											.collect(toList());
@@ -358,7 +571,7 @@ public class AqdefObjectModel {
 	 * @return
 	 */
 	public List<CharacteristicEntries> getChildCharacteristics(CharacteristicIndex characteristicIndex) {
-		List<Object> childrenIndexes = hierarchy.getChildIndexes(characteristicIndex);
+		List<Object> childrenIndexes = getHierarchy().getChildIndexes(characteristicIndex);
 
 		return childrenIndexes.stream()
 							  .filter(index -> index instanceof CharacteristicIndex)
@@ -374,7 +587,7 @@ public class AqdefObjectModel {
 	 * @return
 	 */
 	public List<GroupEntries> getChildGroups(CharacteristicIndex characteristicIndex) {
-		List<Object> childrenIndexes = hierarchy.getChildIndexes(characteristicIndex);
+		List<Object> childrenIndexes = getHierarchy().getChildIndexes(characteristicIndex);
 
 		return childrenIndexes.stream()
 							  .filter(index -> index instanceof GroupIndex)
@@ -400,6 +613,10 @@ public class AqdefObjectModel {
 	 * @return
 	 */
 	public List<GroupEntries> getGroups(PartIndex partIndex) {
+		if (snapshot != null) {
+			return snapshot.groups.getOrDefault(partIndex, List.of());
+		}
+
 		Map<GroupIndex, GroupEntries> entriesWithPartIndex = groupEntries.get(partIndex);
 
 		if (entriesWithPartIndex == null) {
@@ -419,7 +636,7 @@ public class AqdefObjectModel {
 	public List<GroupEntries> getRootGroups(PartIndex partIndex) {
 		return getGroups(partIndex).stream()
 								   .filter(group -> {
-									   Optional<Object> parentIndex = hierarchy.getParentIndex(group.getIndex());
+									   Optional<Object> parentIndex = getHierarchy().getParentIndex(group.getIndex());
 									   return parentIndex.isEmpty();
 								   })
 								   .collect(toList());
@@ -432,7 +649,7 @@ public class AqdefObjectModel {
 	 * @return
 	 */
 	public List<CharacteristicEntries> getChildCharacteristics(GroupIndex groupIndex) {
-		List<Object> childrenIndexes = hierarchy.getChildIndexes(groupIndex);
+		List<Object> childrenIndexes = getHierarchy().getChildIndexes(groupIndex);
 
 		return childrenIndexes.stream()
 							  .filter(index -> index instanceof CharacteristicIndex)
@@ -448,7 +665,7 @@ public class AqdefObjectModel {
 	 * @return
 	 */
 	public List<GroupEntries> getChildGroups(GroupIndex groupIndex) {
-		List<Object> childrenIndexes = hierarchy.getChildIndexes(groupIndex);
+		List<Object> childrenIndexes = getHierarchy().getChildIndexes(groupIndex);
 
 		return childrenIndexes.stream()
 							  .filter(index -> index instanceof GroupIndex)
@@ -463,18 +680,12 @@ public class AqdefObjectModel {
 	 * @return
 	 */
 	public List<ValueIndex> getValueIndexes(CharacteristicIndex characteristicIndex) {
-		Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>> entriesWithPartIndex = valueEntries.get(characteristicIndex.getPartIndex());
+		ValueColumns entriesWithCharacteristicIndex = getValueColumns(characteristicIndex);
 
-		if (entriesWithPartIndex == null) {
+		if (entriesWithCharacteristicIndex == null) {
 			return new ArrayList<>();
 		} else {
-			Map<ValueIndex, ValueEntries> entriesWithCharacteristicIndex = entriesWithPartIndex.get(characteristicIndex);
-
-			if (entriesWithCharacteristicIndex == null) {
-				return new ArrayList<>();
-			} else {
-				return new ArrayList<>(entriesWithCharacteristicIndex.keySet());
-			}
+			return entriesWithCharacteristicIndex.getValueIndexes();
 		}
 	}
 
@@ -486,7 +697,7 @@ public class AqdefObjectModel {
 		return valueEntries.values()
 						   .stream()
 						   .flatMap(e -> e.values().stream())
-						   .flatMap(e -> e.keySet().stream())
+						   .flatMap(e -> e.getValueIndexes().stream())
 						   .collect(toList());
 	}
 
@@ -495,18 +706,12 @@ public class AqdefObjectModel {
 	}
 
 	public ValueEntries getValueEntries(ValueIndex valueIndex) {
-		Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>> entriesWithPartIndex = valueEntries.get(valueIndex.getPartIndex());
+		ValueColumns entriesWithCharacteristicIndex = getValueColumns(valueIndex.getCharacteristicIndex());
 
-		if (entriesWithPartIndex == null) {
+		if (entriesWithCharacteristicIndex == null) {
 			return null;
 		} else {
-			Map<ValueIndex, ValueEntries> entriesWithCharacteristicIndex = entriesWithPartIndex.get(valueIndex.getCharacteristicIndex());
-
-			if (entriesWithCharacteristicIndex == null) {
-				return null;
-			} else {
-				return entriesWithCharacteristicIndex.get(valueIndex);
-			}
+			return entriesWithCharacteristicIndex.get(valueIndex);
 		}
 	}
 
@@ -517,7 +722,7 @@ public class AqdefObjectModel {
 		return valueEntries.values()
 						   .stream()
 						   .flatMap(e -> e.values().stream())
-						   .flatMap(e -> e.values().stream())
+						   .flatMap(e -> e.getValues().stream())
 						   .collect(toList());
 	}
 
@@ -533,38 +738,32 @@ public class AqdefObjectModel {
 	}
 
 	public List<ValueEntries> getValues(CharacteristicIndex characteristicIndex) {
-		Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>> entriesWithPartIndex = valueEntries.get(characteristicIndex.getPartIndex());
+		ValueColumns entriesWithCharacteristicIndex = getValueColumns(characteristicIndex);
 
-		if (entriesWithPartIndex == null) {
+		if (entriesWithCharacteristicIndex == null) {
 			return new ArrayList<>();
 		} else {
-			Map<ValueIndex, ValueEntries> entriesWithCharacteristicIndex = entriesWithPartIndex.get(characteristicIndex);
-
-			if (entriesWithCharacteristicIndex == null) {
-				return new ArrayList<>();
-			} else {
-				return new ArrayList<>(entriesWithCharacteristicIndex.values());
-			}
+			return entriesWithCharacteristicIndex.getValues();
 		}
 	}
 
 
 	public List<ValueSet> getValueSets(PartIndex partIndex) {
-		Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>> entriesWithPartIndex = valueEntries.get(partIndex);
+		Map<CharacteristicIndex, ValueColumns> entriesWithPartIndex = valueEntries.get(partIndex);
 
 		List<ValueSet> valueSets = new ArrayList<>();
 
-		for (Entry<CharacteristicIndex, Map<ValueIndex, ValueEntries>> entriesOfCharacteristic : entriesWithPartIndex.entrySet()) {
+		for (Entry<CharacteristicIndex, ValueColumns> entriesOfCharacteristic : entriesWithPartIndex.entrySet()) {
 			CharacteristicIndex characteristicIndex = entriesOfCharacteristic.getKey();
-			Map<ValueIndex, ValueEntries> valuesOfCharacteristic = entriesOfCharacteristic.getValue();
+			ValueColumns valuesOfCharacteristic = entriesOfCharacteristic.getValue();
 
 			int counter = 0;
-			for (Entry<ValueIndex, ValueEntries> valueEntries : valuesOfCharacteristic.entrySet()) {
+			for (ValueEntries valueEntries : valuesOfCharacteristic.getValues()) {
 				while (counter >= valueSets.size()) {
 					valueSets.add(new ValueSet());
 				}
 				ValueSet valueSet = valueSets.get(counter);
-				valueSet.addValueOfCharacteristic(characteristicIndex, valueEntries.getValue());
+				valueSet.addValueOfCharacteristic(characteristicIndex, valueEntries);
 				counter++;
 			}
 		}
@@ -573,7 +772,8 @@ public class AqdefObjectModel {
 	}
 
 	/**
-	 * Finds part index to which the given characteristic index belongs.
+	 * Finds part index to which the given characteristic index belongs. If there are characteristics with the given
+	 * index in more parts, the lowest part index is returned.
 	 * <p>
 	 * You should call this method only after this {@link AqdefObjectModel} is fully created.
 	 * </p>
@@ -582,15 +782,7 @@ public class AqdefObjectModel {
 	 * @return
 	 */
 	public PartIndex findPartIndexForCharacteristic(int characteristicIndex) {
-		for (Map<CharacteristicIndex, CharacteristicEntries> characteristics : characteristicEntries.values()) {
-			for (CharacteristicIndex characteristic : characteristics.keySet()) {
-				if (characteristic.getCharacteristicIndex() == characteristicIndex) {
-					return characteristic.getPartIndex();
-				}
-			}
-		}
-
-		return null;
+		return characteristicPartIndexes.get(characteristicIndex);
 	}
 
 	public Set<CharacteristicIndex> findCharacteristicIndexesForPart(PartIndex partIndex, CharacteristicOfSinglePartPredicate predicate) {
@@ -716,16 +908,12 @@ public class AqdefObjectModel {
 
 			if (characteristicsOfPart != null) {
 				characteristicsOfPart.forEach((characteristicIndex, characteristic) -> {
-					Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>> valuesOfPart = valueEntries.get(part.getIndex());
+					ValueColumns values = getValueColumns(characteristic.getIndex());
 
-					if (valuesOfPart != null) {
-						Map<ValueIndex, ValueEntries> values = valuesOfPart.get(characteristic.getIndex());
-
-						if (values != null) {
-							values.forEach((valueIndex, value) -> {
-								consumer.accept(part, characteristic, value);
-							});
-						}
+					if (values != null) {
+						values.forEach(value -> {
+							consumer.accept(part, characteristic, value);
+						});
 					}
 				});
 			}
@@ -752,16 +940,12 @@ public class AqdefObjectModel {
 
 		if (characteristicsOfPart != null) {
 			characteristicsOfPart.forEach((characteristicIndex, characteristic) -> {
-				Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>> valuesOfPart = valueEntries.get(part.getIndex());
+				ValueColumns values = getValueColumns(characteristic.getIndex());
 
-				if (valuesOfPart != null) {
-					Map<ValueIndex, ValueEntries> values = valuesOfPart.get(characteristic.getIndex());
-
-					if (values != null) {
-						values.forEach((valueIndex, value) -> {
-							consumer.accept(characteristic, value);
-						});
-					}
+				if (values != null) {
+					values.forEach(value -> {
+						consumer.accept(characteristic, value);
+					});
 				}
 			});
 		}
@@ -784,16 +968,12 @@ public class AqdefObjectModel {
 	 * @param consumer
 	 */
 	public void forEachValue(PartEntries part, CharacteristicEntries characteristic, ValueOfSingleCharacteristicConsumer consumer) {
-		Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>> valuesOfPart = valueEntries.get(part.getIndex());
-
-		if (valuesOfPart != null) {
-			Map<ValueIndex, ValueEntries> values = valuesOfPart.get(characteristic.getIndex());
+		ValueColumns values = getValueColumns(characteristic.getIndex());
 
-			if (values != null) {
-				values.forEach((valueIndex, value) -> {
-					consumer.accept(value);
-				});
-			}
+		if (values != null) {
+			values.forEach(value -> {
+				consumer.accept(value);
+			});
 		}
 	}
 
@@ -817,8 +997,12 @@ public class AqdefObjectModel {
 				hierarchy.removeHierarchyForPart(partIndex);
 
 				// remove characteristics and values for that part
-				characteristicEntries.remove(partIndex);
+				Map<CharacteristicIndex, CharacteristicEntries> removedCharacteristics = characteristicEntries.remove(partIndex);
 				valueEntries.remove(partIndex);
+
+				if (removedCharacteristics != null) {
+					removedCharacteristics.keySet().forEach(this::unindexCharacteristic);
+				}
 			}
 		}
 	}
@@ -861,6 +1045,7 @@ public class AqdefObjectModel {
 
 					if (!predicate.test(part, characteristic)) {
 						iterator.remove();
+						unindexCharacteristic(characteristicIndex);
 						hierarchy.removeHierarchyForCharacteristic(characteristicIndex);
 
 						// remove values for that characteristic
@@ -891,6 +1076,7 @@ public class AqdefObjectModel {
 
 				if (!predicate.test(characteristic)) {
 					iterator.remove();
+					unindexCharacteristic(characteristicIndex);
 					hierarchy.removeHierarchyForCharacteristic(characteristicIndex);
 
 					// remove values for that characteristic
@@ -962,23 +1148,10 @@ public class AqdefObjectModel {
 
 			if (characteristicsOfPart != null) {
 				characteristicsOfPart.forEach((characteristicIndex, characteristic) -> {
-					Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>> valuesOfPart = valueEntries.get(part.getIndex());
-
-					if (valuesOfPart != null) {
-						Map<ValueIndex, ValueEntries> values = valuesOfPart.get(characteristic.getIndex());
+					ValueColumns values = getValueColumns(characteristic.getIndex());
 
-						if (values != null) {
-							Iterator<Entry<ValueIndex, ValueEntries>> iterator = values.entrySet().iterator();
-							while (iterator.hasNext()) {
-
-								Entry<ValueIndex, ValueEntries> entry = iterator.next();
-								ValueEntries value = entry.getValue();
-
-								if (!predicate.test(part, characteristic, value)) {
-									iterator.remove();
-								}
-							}
-						}
+					if (values != null) {
+						values.removeIf(value -> !predicate.test(part, characteristic, value));
 					}
 				});
 			}
@@ -996,23 +1169,10 @@ public class AqdefObjectModel {
 
 		if (characteristicsOfPart != null) {
 			characteristicsOfPart.forEach((characteristicIndex, characteristic) -> {
-				Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>> valuesOfPart = valueEntries.get(part.getIndex());
-
-				if (valuesOfPart != null) {
-					Map<ValueIndex, ValueEntries> values = valuesOfPart.get(characteristic.getIndex());
-
-					if (values != null) {
-						Iterator<Entry<ValueIndex, ValueEntries>> iterator = values.entrySet().iterator();
-						while (iterator.hasNext()) {
+				ValueColumns values = getValueColumns(characteristic.getIndex());
 
-							Entry<ValueIndex, ValueEntries> entry = iterator.next();
-							ValueEntries value = entry.getValue();
-
-							if (!predicate.test(characteristic, value)) {
-								iterator.remove();
-							}
-						}
-					}
+				if (values != null) {
+					values.removeIf(value -> !predicate.test(characteristic, value));
 				}
 			});
 		}
@@ -1026,23 +1186,10 @@ public class AqdefObjectModel {
 	 * @param predicate
 	 */
 	public void filterValues(PartEntries part, CharacteristicEntries characteristic, ValueOfSingleCharacteristicPredicate predicate) {
-		Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>> valuesOfPart = valueEntries.get(part.getIndex());
-
-		if (valuesOfPart != null) {
-			Map<ValueIndex, ValueEntries> values = valuesOfPart.get(characteristic.getIndex());
-
-			if (values != null) {
-				Iterator<Entry<ValueIndex, ValueEntries>> iterator = values.entrySet().iterator();
-				while (iterator.hasNext()) {
-
-					Entry<ValueIndex, ValueEntries> entry = iterator.next();
-					ValueEntries value = entry.getValue();
+		ValueColumns values = getValueColumns(characteristic.getIndex());
 
-					if (!predicate.test(value)) {
-						iterator.remove();
-					}
-				}
-			}
+		if (values != null) {
+			values.removeIf(value -> !predicate.test(value));
 		}
 	}
 
@@ -1069,20 +1216,12 @@ public class AqdefObjectModel {
 		Objects.requireNonNull(value);
 
 		ValueIndex valueIndex = value.getIndex();
+		ValueColumns valuesOfCharacteristic = getValueColumns(valueIndex.getCharacteristicIndex());
 
-		Map<CharacteristicIndex, Map<ValueIndex, ValueEntries>> valuesOfPart = valueEntries.get(valueIndex.getPartIndex());
-
-		if (valuesOfPart == null) {
+		if (valuesOfCharacteristic == null) {
 			return false;
 		} else {
-			Map<ValueIndex, ValueEntries> valuesOfCharacteristic =
-					valuesOfPart.get(valueIndex.getCharacteristicIndex());
-
-			if (valuesOfCharacteristic == null) {
-				return false;
-			} else {
-				return valuesOfCharacteristic.containsKey(valueIndex);
-			}
+			return valuesOfCharacteristic.contains(valueIndex);
 		}
 	}
 
@@ -1116,7 +1255,7 @@ public class AqdefObjectModel {
 
 			return valueEntries.values().stream().findAny().map((entriesOfPart) -> {
 				return entriesOfPart.values().stream().findAny().map((entriesOfCharacteristic) -> {
-					return entriesOfCharacteristic.values().stream().findAny().map((entries) -> entries.getValue(key)).orElse(null);
+					return entriesOfCharacteristic.getValues().stream().findAny().map((entries) -> entries.getValue(key)).orElse(null);
 				}).orElse(null);
 			}).orElse(null);
 
@@ -1136,6 +1275,8 @@ public class AqdefObjectModel {
 	 * </ul>
 	 */
 	public void normalize() {
+		checkNotFrozen();
+
 		// normalize part entries
 		PartEntries entriesForAllParts = removePartEntries(PartIndex.of(0));
 
@@ -1225,14 +1366,64 @@ public class AqdefObjectModel {
 		return count.get();
 	}
 
-	private <K, V> Map<K, V> newEntriesMap() {
-		return new ConcurrentSkipListMap<>();
+	/**
+	 * Copies the entries to the given map (using the given function to copy the values) and freezes the map
+	 */
+	private static <K extends Comparable<? super K>, V> Map<K, V> frozenCopy(Map<K, V> entries,
+																			 IndexedEntriesMap<K, V> copy,
+																			 BiFunction<K, V, V> valueCopy) {
+		entries.forEach((key, value) -> copy.put(key, valueCopy.apply(key, value)));
+		copy.freeze();
+
+		return copy;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <E extends Entries<?, ?>> E snapshot(E entries) {
+		// snapshot of the entries is their clone
+		return (E) entries.snapshot();
 	}
 
 	//*******************************************
 	// Inner classes
 	//*******************************************
 
+	/**
+	 * Lists of the content of a frozen object model. The lists are computed once, so they are returned without
+	 * copying.
+	 */
+	private static final class Snapshot {
+
+		private final AqdefHierarchy hierarchy;
+
+		private final List<PartIndex> partIndexes;
+		private final List<PartEntries> parts;
+		private final List<CatalogRecordIndex> catalogRecordIndexes;
+		private final List<CatalogRecordEntries> catalogRecords;
+
+		private final Map<PartIndex, List<CharacteristicIndex>> characteristicIndexes = new HashMap<>();
+		private final Map<PartIndex, List<CharacteristicEntries>> characteristics = new HashMap<>();
+		private final Map<PartIndex, List<GroupEntries>> groups = new HashMap<>();
+
+		Snapshot(AqdefObjectModel aqdefObjectModel, AqdefHierarchy hierarchy) {
+			this.hierarchy = hierarchy;
+
+			partIndexes = List.copyOf(aqdefObjectModel.partEntries.keySet());
+			parts = List.copyOf(aqdefObjectModel.partEntries.values());
+			catalogRecordIndexes = List.copyOf(aqdefObjectModel.catalogEntries.keySet());
+			catalogRecords = List.copyOf(aqdefObjectModel.catalogEntries.values());
+
+			aqdefObjectModel.characteristicEntries.forEach((partIndex, entriesWithPartIndex) -> {
+				characteristicIndexes.put(partIndex, List.copyOf(entriesWithPartIndex.keySet()));
+				characteristics.put(partIndex, List.copyOf(entriesWithPartIndex.values()));
+			});
+
+			aqdefObjectModel.groupEntries.forEach((partIndex, entriesWithPartIndex) -> {
+				groups.put(partIndex, List.copyOf(entriesWithPartIndex.values()));
+			});
+		}
+	}
+
 	@FunctionalInterface
 	public interface PartConsumer {
 		void accept(PartEntries part);
@@ -1404,6 +1595,13 @@ public class AqdefObjectModel {
 			super(index);
 		}
 
+		/**
+		 * Creates a view of the value stored in {@link ValueColumns}
+		 */
+		ValueEntries(ValueIndex index, Map<KKey, ValueEntry> entries) {
+			super(index, entries);
+		}
+
 		@Override
 		public ValueEntries withIndex(ValueIndex index) {
 			ValueEntries copy = new ValueEntries(index);
@@ -1448,18 +1646,62 @@ public class AqdefObjectModel {
 
 	}
 
+	/**
+	 * Entries of a single part / characteristic / value / group / catalog record mapped by their K-key.
+	 * <p>
+	 * Entries are serialized as K-keys and values, so the deserialized entries are always a modifiable copy (also of
+	 * the entries of a {@link AqdefObjectModel#snapshot() snapshot} or of a value).
+	 * </p>
+	 * <p>
+	 * Entries of a snapshot share the frozen storage with the entries of the object model. The entries of the object
+	 * model copy the storage before they are modified.
+	 * </p>
+	 */
 	@Data
 	@EqualsAndHashCode(callSuper = true)
-	public static abstract class Entries<E extends AbstractEntry<I>, I> extends HashMap<KKey, E> implements IHasKKeyValues {
+	public static abstract class Entries<E extends AbstractEntry<I>, I> extends AbstractMap<KKey, E> implements IHasKKeyValues, Serializable, Cloneable {
 
 		private final I index;
 
+		@Getter(AccessLevel.NONE)
+		@Setter(AccessLevel.NONE)
+		@EqualsAndHashCode.Exclude
+		@ToString.Exclude
+		private transient Map<KKey, E> entries;
+
+		@Getter(AccessLevel.NONE)
+		@Setter(AccessLevel.NONE)
+		@EqualsAndHashCode.Exclude
+		@ToString.Exclude
+		private transient boolean frozen;
+
+		protected Entries(I index) {
+			this.index = index;
+			this.entries = new CompactEntriesMap<>((key, value) -> newEntry(key, this.index, value));
+		}
+
+		/**
+		 * @param entries
+		 *            map in which the entries are stored
+		 */
+		Entries(I index, Map<KKey, E> entries) {
+			this.index = index;
+			this.entries = entries;
+		}
+
 		public void put(String key, Object value) {
 			put(KKey.of(key), value);
 		}
 
 		public void put(KKey key, Object value) {
-			put(newEntry(key, index, value));
+			Map<KKey, E> entries = mutableEntries();
+
+			if (entries instanceof CompactEntriesMap) {
+				// store the value without creating the entry
+				((CompactEntriesMap<E>) entries).putValue(key, value);
+			} else {
+				put(newEntry(key, index, value));
+			}
 		}
 
 		public void put(E entry) {
@@ -1473,7 +1715,12 @@ public class AqdefObjectModel {
 				throw new IllegalArgumentException("Index of the entry (" + entry.getIndex() + ") does not match entries index (" + index + ")");
 			}
 
-			return super.put(key, entry);
+			return mutableEntries().put(key, entry);
+		}
+
+		@Override
+		public E putIfAbsent(KKey key, E entry) {
+			return mutableEntries().putIfAbsent(key, entry);
 		}
 
 		public void putAll(Collection<? extends E> entries, boolean overwriteExisting) {
@@ -1491,7 +1738,77 @@ public class AqdefObjectModel {
 		}
 
 		public E get(KKey key) {
-			return super.get(key);
+			return entries.get(key);
+		}
+
+		@Override
+		public E get(Object key) {
+			return entries.get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return entries.containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return entries.size();
+		}
+
+		@Override
+		public Set<Map.Entry<KKey, E>> entrySet() {
+			return new AbstractSet<>() {
+
+				@Override
+				public Iterator<Map.Entry<KKey, E>> iterator() {
+					Map<KKey, E> iteratedEntries = entries;
+					Iterator<Map.Entry<KKey, E>> iterator = iteratedEntries.entrySet().iterator();
+
+					return new Iterator<>() {
+
+						private KKey lastKey;
+
+						@Override
+						public boolean hasNext() {
+							return iterator.hasNext();
+						}
+
+						@Override
+						public Map.Entry<KKey, E> next() {
+							Map.Entry<KKey, E> entry = iterator.next();
+							lastKey = entry.getKey();
+							return entry;
+						}
+
+						@Override
+						public void remove() {
+							if (lastKey == null) {
+								throw new IllegalStateException();
+							}
+
+							if (mutableEntries() == iteratedEntries) {
+								iterator.remove();
+							} else {
+								// the iterated storage was shared with a snapshot and it was replaced by a copy
+								Entries.this.remove(lastKey);
+							}
+
+							lastKey = null;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return Entries.this.size();
+				}
+
+				@Override
+				public void clear() {
+					Entries.this.clear();
+				}
+			};
 		}
 
 		public <T> T getValue(String key) {
@@ -1509,7 +1826,13 @@ public class AqdefObjectModel {
 		}
 
 		@Override
+		@SuppressWarnings("unchecked")
 		public <T> T getValue(KKey key) {
+			if (entries instanceof IHasKKeyValues) {
+				// read the value without creating the entry
+				return ((IHasKKeyValues) entries).getValue(key);
+			}
+
 			E entry = get(key);
 
 			if (entry == null) {
@@ -1524,13 +1847,86 @@ public class AqdefObjectModel {
 		}
 
 		public E remove(KKey key) {
-			return super.remove(key);
+			return mutableEntries().remove(key);
+		}
+
+		@Override
+		public E remove(Object key) {
+			return mutableEntries().remove(key);
+		}
+
+		@Override
+		public void clear() {
+			mutableEntries().clear();
 		}
 
 		public void forEachEntry(Consumer<E> action) {
 			values().forEach(action);
 		}
 
+		/**
+		 * Converts all the values and freezes the storage, so it may be shared with the returned entries. These entries
+		 * copy the storage before they are modified again.
+		 *
+		 * @return unmodifiable entries that share the storage with these entries (or these entries if they are
+		 *         already unmodifiable)
+		 */
+		@SuppressWarnings("unchecked")
+		Entries<E, I> snapshot() {
+			if (frozen) {
+				return this;
+			}
+
+			if (entries instanceof CompactEntriesMap) {
+				((CompactEntriesMap<E>) entries).freeze();
+			}
+
+			try {
+				Entries<E, I> snapshot = (Entries<E, I>) clone();
+				snapshot.frozen = true;
+				return snapshot;
+
+			} catch (CloneNotSupportedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * @return storage of the entries that may be modified
+		 */
+		private Map<KKey, E> mutableEntries() {
+			if (frozen) {
+				throw new UnsupportedOperationException("Entries are frozen");
+			}
+
+			if (entries instanceof CompactEntriesMap && ((CompactEntriesMap<E>) entries).isFrozen()) {
+				// storage is shared with a snapshot
+				entries = ((CompactEntriesMap<E>) entries).mutableCopy();
+			}
+
+			return entries;
+		}
+
+		private void writeObject(ObjectOutputStream output) throws IOException {
+			output.defaultWriteObject();
+			output.writeInt(size());
+
+			for (E entry : values()) {
+				output.writeObject(entry.getKey());
+				output.writeObject(entry.getValue());
+			}
+		}
+
+		private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+			input.defaultReadObject();
+			entries = new CompactEntriesMap<>((key, value) -> newEntry(key, this.index, value));
+
+			int size = input.readInt();
+			for (int i = 0; i < size; i++) {
+				put((KKey) input.readObject(), input.readObject());
+			}
+		}
+
 		protected abstract E newEntry(KKey key, I index, Object value);
 
 		/**
@@ -1548,7 +1944,36 @@ public class AqdefObjectModel {
 
 		private final KKey key;
 		private final I index;
-		private final Object value;
+
+		/**
+		 * Value or {@link UnconvertedValue} that is replaced by the converted value on the first read
+		 */
+		@Setter(AccessLevel.NONE)
+		private volatile Object value;
+
+		protected AbstractEntry(KKey key, I index, Object value) {
+			this.key = key;
+			this.index = index;
+			this.value = value;
+		}
+
+		/**
+		 * @return value without converting the {@link UnconvertedValue}
+		 */
+		Object getRawValue() {
+			return value;
+		}
+
+		public Object getValue() {
+			Object currentValue = value;
+
+			if (currentValue instanceof UnconvertedValue) {
+				currentValue = ((UnconvertedValue) currentValue).convert();
+				value = currentValue;
+			}
+
+			return currentValue;
+		}
 
 		/**
 		 * Whether this entry has given key.
@@ -1562,7 +1987,8 @@ public class AqdefObjectModel {
 
 		@Override
 		public String toString() {
-			return (value == null) ? "null" : value.toString();
+			Object currentValue = getValue();
+			return (currentValue == null) ? "null" : currentValue.toString();
 		}
 
 	}
@@ -1601,7 +2027,7 @@ public class AqdefObjectModel {
 			super(validateKey(key), index, value);
 		}
 
-		private static KKey validateKey(KKey key) {
+		static KKey validateKey(KKey key) {
 			if (!key.isValueLevel() && !key.isCustomValueLevel()) {
 				throw new IllegalArgumentException("K-Key of value type expected, but found: " + key);
 			}
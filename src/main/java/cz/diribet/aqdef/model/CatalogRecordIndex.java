@@ -1,5 +1,7 @@
 package cz.diribet.aqdef.model;
 
+import java.io.Serializable;
+
 import lombok.Data;
 
 /**
@@ -7,7 +9,9 @@ import lombok.Data;
  *
  */
 @Data
-public class CatalogRecordIndex implements Comparable<CatalogRecordIndex> {
+public class CatalogRecordIndex implements Serializable, Comparable<CatalogRecordIndex> {
+	private static final long serialVersionUID = 1L;
+
 	private final Integer index;
 
 	public static CatalogRecordIndex of(Integer index) {
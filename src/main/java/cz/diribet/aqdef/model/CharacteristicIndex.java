@@ -1,14 +1,28 @@
 package cz.diribet.aqdef.model;
 
+import java.io.Serializable;
+
 /**
+ * Index of a characteristic.
+ * <p>
+ * Instances for the usual indexes (characteristic 0 .. {@value #CACHE_SIZE} - 1 of a part with a canonical
+ * {@link PartIndex}) are canonical, so {@link #of(PartIndex, Integer)} does not create a new object.
+ * </p>
+ *
  * @author Vlastimil Dolejs
  *
  */
-public class CharacteristicIndex implements Comparable<CharacteristicIndex> {
+public class CharacteristicIndex implements Serializable, Comparable<CharacteristicIndex> {
+	private static final long serialVersionUID = 1L;
+
+	static final int CACHE_SIZE = 1024;
+
+	private static final int NO_INDEX = Integer.MIN_VALUE;
+
 	private final PartIndex partIndex;
-	private final Integer characteristicIndex;
+	private final int characteristicIndex;
 
-	private CharacteristicIndex(PartIndex partIndex, Integer characteristicIndex) {
+	private CharacteristicIndex(PartIndex partIndex, int characteristicIndex) {
 		this.partIndex = partIndex;
 		this.characteristicIndex = characteristicIndex;
 	}
@@ -18,15 +32,49 @@ public class CharacteristicIndex implements Comparable<CharacteristicIndex> {
 	}
 
 	public Integer getCharacteristicIndex() {
+		return characteristicIndex == NO_INDEX ? null : characteristicIndex;
+	}
+
+	/**
+	 * @return characteristic index number or {@link Integer#MIN_VALUE} if the index is missing (sorted before any
+	 *         other number)
+	 */
+	public int getCharacteristicIndexNumber() {
 		return characteristicIndex;
 	}
 
+	/**
+	 * Deserialized characteristic index is replaced by the canonical instance
+	 */
+	private Object readResolve() {
+		return of(partIndex, getCharacteristicIndex());
+	}
+
 	public boolean platiProVsechnyZnakyDilu() {
-		return Integer.valueOf(0).equals(characteristicIndex);
+		return characteristicIndex == 0;
 	}
 
 	public static CharacteristicIndex of(PartIndex partIndex, Integer characteristicIndex) {
-		return new CharacteristicIndex(partIndex, characteristicIndex);
+		int index = characteristicIndex == null ? NO_INDEX : characteristicIndex;
+
+		if (partIndex == null || !partIndex.isCanonical() || index < 0 || index >= CACHE_SIZE) {
+			return new CharacteristicIndex(partIndex, index);
+		}
+
+		// instances are immutable, so an instance created twice by concurrent threads is harmless
+		CharacteristicIndex[] cache = partIndex.characteristicIndexes;
+		if (cache == null) {
+			cache = new CharacteristicIndex[CACHE_SIZE];
+			partIndex.characteristicIndexes = cache;
+		}
+
+		CharacteristicIndex result = cache[index];
+		if (result == null) {
+			result = new CharacteristicIndex(partIndex, index);
+			cache[index] = result;
+		}
+
+		return result;
 	}
 
 	public static CharacteristicIndex of(Integer partIndex, Integer characteristicIndex) {
@@ -38,7 +86,7 @@ public class CharacteristicIndex implements Comparable<CharacteristicIndex> {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((partIndex == null) ? 0 : partIndex.hashCode());
-		result = prime * result + ((characteristicIndex == null) ? 0 : characteristicIndex.hashCode());
+		result = prime * result + ((characteristicIndex == NO_INDEX) ? 0 : characteristicIndex);
 		return result;
 	}
 
@@ -54,37 +102,28 @@ public class CharacteristicIndex implements Comparable<CharacteristicIndex> {
 			return false;
 		}
 		CharacteristicIndex other = (CharacteristicIndex) obj;
-		if (partIndex == null) {
-			if (other.partIndex != null) {
-				return false;
-			}
-		} else if (!partIndex.equals(other.partIndex)) {
+		if (characteristicIndex != other.characteristicIndex) {
 			return false;
 		}
-		if (characteristicIndex == null) {
-			if (other.characteristicIndex != null) {
-				return false;
-			}
-		} else if (!characteristicIndex.equals(other.characteristicIndex)) {
-			return false;
+		if (partIndex == null) {
+			return other.partIndex == null;
 		}
-		return true;
+		return partIndex.equals(other.partIndex);
 	}
 
 	@Override
 	public int compareTo(CharacteristicIndex o) {
-        if(this == o) { return 0; }
+		if (this == o) {
+			return 0;
+		}
 
 		int compareResultPart = this.partIndex.compareTo(o.partIndex);
 
 		if (compareResultPart != 0) {
 			return compareResultPart;
 		} else {
-	        if(this.characteristicIndex == o.characteristicIndex) { return 0; }
-	        if(this.characteristicIndex == null) { return -1; }
-	        if(o.characteristicIndex == null) { return 1; }
-
-	        return this.characteristicIndex.compareTo(o.characteristicIndex);
+			// missing index is lower than any other index, the same as Integer.MIN_VALUE
+			return Integer.compare(this.characteristicIndex, o.characteristicIndex);
 		}
 	}
 
@@ -97,11 +136,11 @@ public class CharacteristicIndex implements Comparable<CharacteristicIndex> {
 
 		result += "/";
 
-		if (characteristicIndex != null) {
+		if (characteristicIndex != NO_INDEX) {
 			result += characteristicIndex;
 		}
 
 		return result;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,426 @@
+package cz.diribet.aqdef.model;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import cz.diribet.aqdef.KKey;
+import cz.diribet.aqdef.model.AqdefObjectModel.AbstractEntry;
+import cz.diribet.aqdef.model.AqdefObjectModel.Entries;
+
+/**
+ * Compact storage of the entries of a single part / characteristic / group / catalog record.
+ * <p>
+ * Instead of a hash map node and an entry object for each K-key, only the K-keys and the values are stored in two
+ * parallel arrays (in the order in which they were put). When there are more than {@value #MAX_LINEAR_SEARCH}
+ * K-keys, positions of the K-keys are also stored in an open addressing hash table. Entry objects are created when
+ * they are requested (e.g. by {@link #get(Object)} or when iterating).
+ * </p>
+ * <p>
+ * {@link UnconvertedValue} is converted when it is read and the converted value is stored instead of it.
+ * </p>
+ * <p>
+ * This class is not thread safe. A {@link #freeze() frozen} map can not be modified and may be read by several threads
+ * at once. The frozen map is shared by the entries of the object model and of its
+ * {@link AqdefObjectModel#snapshot() snapshot}, the entries of the object model replace it with a
+ * {@link #mutableCopy() copy} when they are modified.
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ *
+ * @param <E>
+ *            type of the entries
+ *
+ * @see Entries
+ */
+final class CompactEntriesMap<E extends AbstractEntry<?>> extends AbstractMap<KKey, E> implements IHasKKeyValues {
+
+	/**
+	 * K-keys are searched sequentially up to this number of K-keys (which is faster than a hash table)
+	 */
+	static final int MAX_LINEAR_SEARCH = 8;
+
+	private static final int INITIAL_CAPACITY = 4;
+
+	private static final KKey[] EMPTY_KEYS = new KKey[0];
+	private static final Object[] EMPTY_VALUES = new Object[0];
+
+	private final BiFunction<KKey, Object, E> entryFactory;
+
+	private KKey[] keys = EMPTY_KEYS;
+	private Object[] values = EMPTY_VALUES;
+	private int size;
+
+	/**
+	 * Position + 1 of the K-keys by their hash code (linear probing, 0 is an empty slot). Created when there are more
+	 * than {@link #MAX_LINEAR_SEARCH} K-keys.
+	 */
+	private int[] table;
+
+	private boolean frozen;
+
+	/**
+	 * @param entryFactory
+	 *            creates an entry from the K-key and the value
+	 */
+	CompactEntriesMap(BiFunction<KKey, Object, E> entryFactory) {
+		this.entryFactory = entryFactory;
+	}
+
+	//*******************************************
+	// Map
+	//*******************************************
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return positionOf(key) >= 0;
+	}
+
+	@Override
+	public E get(Object key) {
+		int position = positionOf(key);
+		return position < 0 ? null : entry(position);
+	}
+
+	/**
+	 * @return value of the K-key (without creating the entry) or {@code null}
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T getValue(KKey key) {
+		int position = positionOf(key);
+		return position < 0 ? null : (T) value(position);
+	}
+
+	/**
+	 * Converts all the values, trims the arrays and makes this map unmodifiable. Reading of the frozen map has no side
+	 * effects.
+	 */
+	void freeze() {
+		if (frozen) {
+			return;
+		}
+
+		for (int i = 0; i < size; i++) {
+			value(i);
+		}
+
+		keys = Arrays.copyOf(keys, size);
+		values = Arrays.copyOf(values, size);
+		frozen = true;
+	}
+
+	boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * @return modifiable copy of this map
+	 */
+	CompactEntriesMap<E> mutableCopy() {
+		CompactEntriesMap<E> copy = new CompactEntriesMap<>(entryFactory);
+
+		copy.keys = keys.clone();
+		copy.values = values.clone();
+		copy.size = size;
+		copy.table = table == null ? null : table.clone();
+
+		return copy;
+	}
+
+	@Override
+	public E put(KKey key, E entry) {
+		checkNotFrozen();
+
+		int position = positionOf(key);
+		E previousEntry = position < 0 ? null : entry(position);
+
+		putValueAt(position, key, entry.getRawValue());
+
+		return previousEntry;
+	}
+
+	/**
+	 * Puts the value of the K-key without creating the entry
+	 */
+	void putValue(KKey key, Object value) {
+		checkNotFrozen();
+		putValueAt(positionOf(key), key, value);
+	}
+
+	/**
+	 * @param position
+	 *            position of the K-key or a negative number if the K-key is not present
+	 */
+	private void putValueAt(int position, KKey key, Object value) {
+		if (position >= 0) {
+			values[position] = value;
+			return;
+		}
+
+		if (size == keys.length) {
+			int capacity = Math.max(INITIAL_CAPACITY, size + (size >> 1));
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		keys[size] = key;
+		values[size] = value;
+		size++;
+
+		if (table != null && size * 2 <= table.length) {
+			addToTable(size - 1);
+		} else if (size > MAX_LINEAR_SEARCH) {
+			rebuildTable();
+		}
+	}
+
+	@Override
+	public E remove(Object key) {
+		checkNotFrozen();
+
+		int position = positionOf(key);
+
+		if (position < 0) {
+			return null;
+		}
+
+		E removedEntry = entry(position);
+		removeAt(position);
+
+		return removedEntry;
+	}
+
+	@Override
+	public void clear() {
+		checkNotFrozen();
+
+		keys = EMPTY_KEYS;
+		values = EMPTY_VALUES;
+		size = 0;
+		table = null;
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super KKey, ? super E> action) {
+		for (int i = 0; i < size; i++) {
+			action.accept(keys[i], entry(i));
+		}
+	}
+
+	@Override
+	public Set<Entry<KKey, E>> entrySet() {
+		return new AbstractSet<>() {
+
+			@Override
+			public Iterator<Entry<KKey, E>> iterator() {
+				return new PositionIterator<>() {
+
+					@Override
+					Entry<KKey, E> get(int position) {
+						return new SimpleImmutableEntry<>(keys[position], entry(position));
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public void clear() {
+				CompactEntriesMap.this.clear();
+			}
+		};
+	}
+
+	@Override
+	public Collection<E> values() {
+		return new AbstractCollection<>() {
+
+			@Override
+			public Iterator<E> iterator() {
+				return new PositionIterator<>() {
+
+					@Override
+					E get(int position) {
+						return entry(position);
+					}
+				};
+			}
+
+			@Override
+			public void forEach(Consumer<? super E> action) {
+				for (int i = 0; i < size; i++) {
+					action.accept(entry(i));
+				}
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public void clear() {
+				CompactEntriesMap.this.clear();
+			}
+		};
+	}
+
+	//*******************************************
+	// Private methods
+	//*******************************************
+
+	private int positionOf(Object key) {
+		if (!(key instanceof KKey)) {
+			return -1;
+		}
+
+		if (table == null) {
+			for (int i = 0; i < size; i++) {
+				KKey existingKey = keys[i];
+
+				// interned K-keys are compared by identity
+				if (existingKey == key || existingKey.equals(key)) {
+					return i;
+				}
+			}
+
+			return -1;
+		}
+
+		int mask = table.length - 1;
+
+		for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+			int position = table[slot] - 1;
+
+			if (position < 0) {
+				return -1;
+			}
+
+			KKey existingKey = keys[position];
+			if (existingKey == key || existingKey.equals(key)) {
+				return position;
+			}
+		}
+	}
+
+	private Object value(int position) {
+		Object value = values[position];
+
+		if (value instanceof UnconvertedValue) {
+			value = ((UnconvertedValue) value).convert();
+			values[position] = value;
+		}
+
+		return value;
+	}
+
+	private E entry(int position) {
+		return entryFactory.apply(keys[position], value(position));
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new UnsupportedOperationException("Entries are frozen");
+		}
+	}
+
+	private void removeAt(int position) {
+		checkNotFrozen();
+
+		int moved = size - position - 1;
+
+		System.arraycopy(keys, position + 1, keys, position, moved);
+		System.arraycopy(values, position + 1, values, position, moved);
+
+		size--;
+		keys[size] = null;
+		values[size] = null;
+
+		if (size > MAX_LINEAR_SEARCH) {
+			rebuildTable();
+		} else {
+			table = null;
+		}
+	}
+
+	private void rebuildTable() {
+		int tableSize = Integer.highestOneBit(Math.max(keys.length, size) * 2 - 1) << 1;
+
+		table = new int[tableSize];
+		for (int i = 0; i < size; i++) {
+			addToTable(i);
+		}
+	}
+
+	private void addToTable(int position) {
+		int mask = table.length - 1;
+
+		int slot = hash(keys[position]) & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+
+		table[slot] = position + 1;
+	}
+
+	private static int hash(Object key) {
+		// hash code of the interned K-keys is their ordinal
+		int hash = key.hashCode();
+		return hash ^ (hash >>> 16);
+	}
+
+	//*******************************************
+	// Inner classes
+	//*******************************************
+
+	private abstract class PositionIterator<T> implements Iterator<T> {
+
+		private int position;
+		private boolean removable;
+
+		@Override
+		public boolean hasNext() {
+			return position < size;
+		}
+
+		@Override
+		public T next() {
+			if (position >= size) {
+				throw new NoSuchElementException();
+			}
+
+			removable = true;
+			return get(position++);
+		}
+
+		@Override
+		public void remove() {
+			if (!removable) {
+				throw new IllegalStateException();
+			}
+
+			removeAt(--position);
+			removable = false;
+		}
+
+		abstract T get(int position);
+	}
+
+}
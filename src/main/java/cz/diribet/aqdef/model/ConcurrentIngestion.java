@@ -0,0 +1,155 @@
+package cz.diribet.aqdef.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import cz.diribet.aqdef.KKey;
+import cz.diribet.aqdef.model.AqdefObjectModel.CatalogRecordEntries;
+import cz.diribet.aqdef.model.AqdefObjectModel.CharacteristicEntries;
+import cz.diribet.aqdef.model.AqdefObjectModel.GroupEntries;
+import cz.diribet.aqdef.model.AqdefObjectModel.PartEntries;
+import cz.diribet.aqdef.model.AqdefObjectModel.ValueEntry;
+
+/**
+ * Puts entries to an {@link AqdefObjectModel} from several threads at once.
+ * <p>
+ * Entries of each part / characteristic / group / catalog record (and values of each characteristic) are guarded by
+ * their own lock, so producers that write to different characteristics (e.g. one gauge per characteristic) do not
+ * wait for each other. The structure of the object model is locked only when the first entry with a new index is put
+ * and the hierarchy is locked when a hierarchy entry is put. These locks belong to the object model, so several
+ * ingestions of the same object model may be used at once.
+ * </p>
+ * <p>
+ * The object model must not be read or modified in any other way until all the producers finished. The entries are
+ * visible to a thread that reads the object model after the producers finished (e.g. after {@link Thread#join()}
+ * or {@link java.util.concurrent.Future#get()}).
+ * </p>
+ * <p>
+ * Sample usage:
+ *
+ * <pre>
+ * ConcurrentIngestion ingestion = aqdefObjectModel.concurrentIngestion();
+ *
+ * // in the thread of each gauge
+ * ingestion.putValueEntry(KKey.of("K0001"), ValueIndex.of(1, gaugeCharacteristic, valueNumber), value);
+ * </pre>
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ *
+ * @see AqdefObjectModel#concurrentIngestion()
+ */
+public final class ConcurrentIngestion {
+
+	//*******************************************
+	// Attributes
+	//*******************************************
+
+	private final AqdefObjectModel aqdefObjectModel;
+
+	private final ConcurrentMap<PartIndex, PartEntries> partEntries = new ConcurrentHashMap<>();
+	private final ConcurrentMap<CharacteristicIndex, CharacteristicEntries> characteristicEntries = new ConcurrentHashMap<>();
+	private final ConcurrentMap<GroupIndex, GroupEntries> groupEntries = new ConcurrentHashMap<>();
+	private final ConcurrentMap<CharacteristicIndex, ValueColumns> valueEntries = new ConcurrentHashMap<>();
+	private final ConcurrentMap<CatalogRecordIndex, CatalogRecordEntries> catalogEntries = new ConcurrentHashMap<>();
+
+	//*******************************************
+	// Constructors
+	//*******************************************
+
+	ConcurrentIngestion(AqdefObjectModel aqdefObjectModel) {
+		this.aqdefObjectModel = aqdefObjectModel;
+	}
+
+	//*******************************************
+	// Methods
+	//*******************************************
+
+	public AqdefObjectModel getAqdefObjectModel() {
+		return aqdefObjectModel;
+	}
+
+	public void putPartEntry(KKey key, PartIndex index, Object value) {
+		if (value == null) {
+			return;
+		}
+
+		PartEntries entries = computeIfAbsent(partEntries, index, aqdefObjectModel::computePartEntriesIfAbsent);
+		synchronized (entries) {
+			entries.put(key, value);
+		}
+	}
+
+	public void putCharacteristicEntry(KKey key, CharacteristicIndex index, Object value) {
+		if (value == null) {
+			return;
+		}
+
+		CharacteristicEntries entries =
+				computeIfAbsent(characteristicEntries, index, aqdefObjectModel::computeCharacteristicEntriesIfAbsent);
+		synchronized (entries) {
+			entries.put(key, value);
+		}
+	}
+
+	public void putGroupEntry(KKey key, GroupIndex index, Object value) {
+		if (value == null) {
+			return;
+		}
+
+		GroupEntries entries = computeIfAbsent(groupEntries, index, aqdefObjectModel::computeGroupEntriesIfAbsent);
+		synchronized (entries) {
+			entries.put(key, value);
+		}
+	}
+
+	public void putValueEntry(KKey key, ValueIndex index, Object value) {
+		if (value == null) {
+			return;
+		}
+
+		ValueEntry.validateKey(key);
+
+		ValueColumns values =
+				computeIfAbsent(valueEntries, index.getCharacteristicIndex(), aqdefObjectModel::computeValueColumnsIfAbsent);
+		synchronized (values) {
+			values.put(index, key, value);
+		}
+	}
+
+	public void putCatalogRecordEntry(KKey key, CatalogRecordIndex index, Object value) {
+		if (value == null) {
+			return;
+		}
+
+		CatalogRecordEntries entries =
+				computeIfAbsent(catalogEntries, index, aqdefObjectModel::computeCatalogRecordEntriesIfAbsent);
+		synchronized (entries) {
+			entries.put(key, value);
+		}
+	}
+
+	public void putHierarchyEntry(KKey key, Integer nodeIndex, Object value) {
+		synchronized (aqdefObjectModel.getHierarchy()) {
+			aqdefObjectModel.putHierarchyEntry(key, nodeIndex, value);
+		}
+	}
+
+	/**
+	 * Returns the entries with the given index. The entries that were already used are found without locking, new
+	 * entries are created in the object model under its {@link AqdefObjectModel#ingestionLock ingestion lock}.
+	 */
+	private <I, E> E computeIfAbsent(ConcurrentMap<I, E> entriesByIndex, I index, Function<I, E> entriesFactory) {
+		E entries = entriesByIndex.get(index);
+
+		if (entries == null) {
+			synchronized (aqdefObjectModel.ingestionLock) {
+				entries = entriesByIndex.computeIfAbsent(index, entriesFactory);
+			}
+		}
+
+		return entries;
+	}
+
+}
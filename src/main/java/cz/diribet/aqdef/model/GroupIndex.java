@@ -1,10 +1,14 @@
 package cz.diribet.aqdef.model;
 
+import java.io.Serializable;
+
 /**
  * @author Vlastimil Dolejs
  *
  */
-public class GroupIndex implements Comparable<GroupIndex> {
+public class GroupIndex implements Serializable, Comparable<GroupIndex> {
+	private static final long serialVersionUID = 1L;
+
 	private final PartIndex partIndex;
 	private final Integer groupIndex;
 
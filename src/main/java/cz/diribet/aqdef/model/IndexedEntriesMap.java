@@ -0,0 +1,444 @@
+package cz.diribet.aqdef.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Map of the entries of parts / characteristics / groups / catalog records indexed by their index.
+ * <p>
+ * Indexes are small dense numbers, so the entries are stored in an array where the number of the index is the slot of
+ * the entry. Entries with index 0 (entries that apply to all parts / characteristics) are held separately from the
+ * array. Entries which index has no slot (missing or negative index, index of another part, very large index) are
+ * stored in a {@link ConcurrentSkipListMap}.
+ * </p>
+ * <p>
+ * The map is iterated in the natural order of the keys, the same as a sorted map. Iterators do not throw
+ * {@link java.util.ConcurrentModificationException}, entries put or removed during the iteration may or may not be
+ * visited. Null keys and values are not permitted.
+ * </p>
+ * <p>
+ * This class is not thread safe. A {@link #freeze() frozen} map can not be modified and may be read by several threads
+ * at once.
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ *
+ * @param <K>
+ *            type of the index
+ * @param <V>
+ *            type of the entries
+ */
+final class IndexedEntriesMap<K extends Comparable<? super K>, V> extends AbstractMap<K, V> {
+
+	/**
+	 * Indexes with higher numbers are stored in the sorted map, so a single odd index does not allocate a huge array
+	 */
+	static final int MAX_SLOTS = 1 << 16;
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private static final Object[] EMPTY = new Object[0];
+
+	private final Class<K> keyType;
+	private final ToIntFunction<? super K> slotFunction;
+
+	private K zeroKey;
+	private V zeroValue;
+
+	/**
+	 * Keys and entries by slot (slot 0 is not used, see {@link #zeroKey})
+	 */
+	private Object[] keys = EMPTY;
+	private Object[] values = EMPTY;
+
+	/**
+	 * Number of the entries in {@link #zeroValue} and {@link #values}
+	 */
+	private int slotCount;
+
+	/**
+	 * Entries without a slot (created when needed)
+	 */
+	private ConcurrentSkipListMap<K, V> others;
+
+	private Set<Entry<K, V>> entrySet;
+
+	private boolean frozen;
+
+	/**
+	 * @param keyType
+	 *            type of the keys
+	 * @param slotFunction
+	 *            slot of the key or a negative number if the key has no slot. Different keys have to have different
+	 *            slots and the order of the slots has to be the natural order of the keys.
+	 */
+	IndexedEntriesMap(Class<K> keyType, ToIntFunction<? super K> slotFunction) {
+		this.keyType = keyType;
+		this.slotFunction = slotFunction;
+	}
+
+	static <V> IndexedEntriesMap<PartIndex, V> byPartIndex() {
+		return new IndexedEntriesMap<>(PartIndex.class, PartIndex::getIndexNumber);
+	}
+
+	/**
+	 * @param partIndex
+	 *            index of the part to which the characteristics belong (characteristics of other parts have no slot)
+	 */
+	static <V> IndexedEntriesMap<CharacteristicIndex, V> byCharacteristicIndex(PartIndex partIndex) {
+		return new IndexedEntriesMap<>(CharacteristicIndex.class, index -> {
+			return partIndex.equals(index.getPartIndex()) ? index.getCharacteristicIndexNumber() : -1;
+		});
+	}
+
+	/**
+	 * @param partIndex
+	 *            index of the part to which the groups belong (groups of other parts have no slot)
+	 */
+	static <V> IndexedEntriesMap<GroupIndex, V> byGroupIndex(PartIndex partIndex) {
+		return new IndexedEntriesMap<>(GroupIndex.class, index -> {
+			Integer groupIndex = index.getGroupIndex();
+			return groupIndex != null && partIndex.equals(index.getPartIndex()) ? groupIndex : -1;
+		});
+	}
+
+	static <V> IndexedEntriesMap<CatalogRecordIndex, V> byCatalogRecordIndex() {
+		return new IndexedEntriesMap<>(CatalogRecordIndex.class, index -> {
+			Integer catalogRecordIndex = index.getIndex();
+			return catalogRecordIndex == null ? -1 : catalogRecordIndex;
+		});
+	}
+
+	/**
+	 * Makes this map unmodifiable. Reading of the frozen map has no side effects.
+	 */
+	void freeze() {
+		entrySet();
+		frozen = true;
+	}
+
+	//*******************************************
+	// Map
+	//*******************************************
+
+	@Override
+	public int size() {
+		return slotCount + (others == null ? 0 : others.size());
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		int slot = slotOf(key);
+
+		if (slot == 0) {
+			return zeroValue;
+		} else if (slot > 0) {
+			Object[] values = this.values;
+			return slot < values.length ? (V) values[slot] : null;
+		} else if (others == null || !isKey(key)) {
+			return null;
+		} else {
+			return others.get(key);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		checkNotFrozen();
+		Objects.requireNonNull(value);
+
+		int slot = slotOf(key);
+
+		if (slot < 0) {
+			if (others == null) {
+				others = new ConcurrentSkipListMap<>();
+			}
+			return others.put(key, value);
+		}
+
+		V oldValue;
+
+		if (slot == 0) {
+			oldValue = zeroValue;
+			zeroKey = key;
+			zeroValue = value;
+
+		} else {
+			ensureCapacity(slot + 1);
+
+			oldValue = (V) values[slot];
+			keys[slot] = key;
+			values[slot] = value;
+		}
+
+		if (oldValue == null) {
+			slotCount++;
+		}
+
+		return oldValue;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V remove(Object key) {
+		checkNotFrozen();
+
+		int slot = slotOf(key);
+
+		V oldValue;
+
+		if (slot == 0) {
+			oldValue = zeroValue;
+			zeroKey = null;
+			zeroValue = null;
+
+		} else if (slot > 0) {
+			if (slot >= values.length) {
+				return null;
+			}
+
+			oldValue = (V) values[slot];
+			keys[slot] = null;
+			values[slot] = null;
+
+		} else if (others == null || !isKey(key)) {
+			return null;
+
+		} else {
+			return others.remove(key);
+		}
+
+		if (oldValue != null) {
+			slotCount--;
+		}
+
+		return oldValue;
+	}
+
+	@Override
+	public void clear() {
+		checkNotFrozen();
+
+		zeroKey = null;
+		zeroValue = null;
+		keys = EMPTY;
+		values = EMPTY;
+		slotCount = 0;
+		others = null;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		if (others != null && !others.isEmpty()) {
+			// merge with the sorted entries
+			super.forEach(action);
+			return;
+		}
+
+		if (zeroValue != null) {
+			action.accept(zeroKey, zeroValue);
+		}
+
+		for (int slot = 1; slot < values.length; slot++) {
+			// arrays are read again in each step as they may be replaced by the action
+			Object value = values[slot];
+
+			if (value != null) {
+				action.accept((K) keys[slot], (V) value);
+			}
+		}
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new EntrySet();
+		}
+		return entrySet;
+	}
+
+	//*******************************************
+	// Private methods
+	//*******************************************
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new UnsupportedOperationException("Entries are frozen");
+		}
+	}
+
+	private boolean isKey(Object key) {
+		return keyType.isInstance(key);
+	}
+
+	/**
+	 * @return slot of the key or -1 if the key has no slot
+	 */
+	private int slotOf(Object key) {
+		if (!isKey(key)) {
+			return -1;
+		}
+
+		int slot = slotFunction.applyAsInt(keyType.cast(key));
+		return slot < MAX_SLOTS ? Math.max(slot, -1) : -1;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= values.length) {
+			return;
+		}
+
+		int newCapacity = Math.max(INITIAL_CAPACITY, values.length);
+		while (newCapacity < capacity) {
+			newCapacity *= 2;
+		}
+		newCapacity = Math.min(newCapacity, MAX_SLOTS);
+
+		keys = Arrays.copyOf(keys, newCapacity);
+		values = Arrays.copyOf(values, newCapacity);
+	}
+
+	//*******************************************
+	// Inner classes
+	//*******************************************
+
+	private final class EntrySet extends AbstractSet<Entry<K, V>> {
+
+		@Override
+		public Iterator<Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return IndexedEntriesMap.this.size();
+		}
+
+		@Override
+		public void clear() {
+			IndexedEntriesMap.this.clear();
+		}
+	}
+
+	/**
+	 * Merges the entries with a slot (which are sorted by the slot) with the sorted entries without a slot.
+	 */
+	private final class EntryIterator implements Iterator<Entry<K, V>> {
+
+		private final Iterator<Entry<K, V>> othersIterator =
+				others == null ? Collections.emptyIterator() : others.entrySet().iterator();
+
+		/**
+		 * Next slot to look at
+		 */
+		private int slot;
+
+		private Entry<K, V> nextSlotEntry;
+		private Entry<K, V> nextOtherEntry;
+
+		private K lastKey;
+
+		@Override
+		public boolean hasNext() {
+			if (nextSlotEntry == null) {
+				nextSlotEntry = findSlotEntry();
+			}
+
+			if (nextOtherEntry == null && othersIterator.hasNext()) {
+				nextOtherEntry = othersIterator.next();
+			}
+
+			return nextSlotEntry != null || nextOtherEntry != null;
+		}
+
+		@Override
+		public Entry<K, V> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			Entry<K, V> entry;
+
+			if (nextOtherEntry == null
+					|| (nextSlotEntry != null && nextSlotEntry.getKey().compareTo(nextOtherEntry.getKey()) < 0)) {
+				entry = nextSlotEntry;
+				nextSlotEntry = null;
+			} else {
+				entry = new MapEntry(nextOtherEntry.getKey(), nextOtherEntry.getValue());
+				nextOtherEntry = null;
+			}
+
+			lastKey = entry.getKey();
+			return entry;
+		}
+
+		@Override
+		public void remove() {
+			if (lastKey == null) {
+				throw new IllegalStateException();
+			}
+
+			IndexedEntriesMap.this.remove(lastKey);
+			lastKey = null;
+		}
+
+		@SuppressWarnings("unchecked")
+		private Entry<K, V> findSlotEntry() {
+			if (slot == 0) {
+				slot++;
+
+				if (zeroValue != null) {
+					return new MapEntry(zeroKey, zeroValue);
+				}
+			}
+
+			while (slot < values.length) {
+				int current = slot++;
+				Object value = values[current];
+
+				if (value != null) {
+					return new MapEntry((K) keys[current], (V) value);
+				}
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * Entry of the iterator, {@link #setValue(Object)} writes the value to the map.
+	 */
+	private final class MapEntry extends SimpleEntry<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		MapEntry(K key, V value) {
+			super(key, value);
+		}
+
+		@Override
+		public V setValue(V value) {
+			put(getKey(), value);
+			return super.setValue(value);
+		}
+	}
+
+}
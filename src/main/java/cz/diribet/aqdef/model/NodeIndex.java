@@ -1,10 +1,14 @@
 package cz.diribet.aqdef.model;
 
+import java.io.Serializable;
+
 /**
  * @author Vlastimil Dolejs
  *
  */
-public class NodeIndex implements Comparable<NodeIndex> {
+public class NodeIndex implements Serializable, Comparable<NodeIndex> {
+	private static final long serialVersionUID = 1L;
+
 	private final Integer index;
 
 	private NodeIndex(Integer index) {
@@ -1,29 +1,85 @@
 package cz.diribet.aqdef.model;
 
+import java.io.Serializable;
+
 /**
+ * Index of a part.
+ * <p>
+ * Instances for the usual indexes (0 .. {@value #CACHE_SIZE} - 1) are canonical, so {@link #of(Integer)} does not
+ * create a new object. The canonical part index also holds canonical {@link CharacteristicIndex characteristic
+ * indexes} of the part.
+ * </p>
+ *
  * @author Vlastimil Dolejs
  *
  */
-public class PartIndex implements Comparable<PartIndex> {
-	private final Integer index;
+public class PartIndex implements Serializable, Comparable<PartIndex> {
+	private static final long serialVersionUID = 1L;
+
+	static final int CACHE_SIZE = 256;
+
+	private static final int NO_INDEX = Integer.MIN_VALUE;
 
-	private PartIndex(Integer index) {
+	private static final PartIndex NULL_INDEX = new PartIndex(NO_INDEX);
+	private static final PartIndex[] CACHE = new PartIndex[CACHE_SIZE];
+
+	static {
+		for (int i = 0; i < CACHE_SIZE; i++) {
+			CACHE[i] = new PartIndex(i);
+		}
+	}
+
+	private final int index;
+
+	/**
+	 * Canonical characteristic indexes of this part (created when needed, only for canonical part indexes)
+	 */
+	transient CharacteristicIndex[] characteristicIndexes;
+
+	private PartIndex(int index) {
 		this.index = index;
 	}
 
 	public Integer getIndex() {
+		return index == NO_INDEX ? null : index;
+	}
+
+	/**
+	 * @return part index number or {@link Integer#MIN_VALUE} if the index is missing (sorted before any other number)
+	 */
+	public int getIndexNumber() {
 		return index;
 	}
 
 	public static PartIndex of(Integer index) {
-		return new PartIndex(index);
+		if (index == null) {
+			return NULL_INDEX;
+		}
+
+		int i = index;
+		if (i >= 0 && i < CACHE_SIZE) {
+			return CACHE[i];
+		}
+
+		return new PartIndex(i);
+	}
+
+	/**
+	 * Deserialized part index is replaced by the canonical instance
+	 */
+	private Object readResolve() {
+		return of(getIndex());
+	}
+
+	boolean isCanonical() {
+		return index >= 0 && index < CACHE_SIZE;
 	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((index == null) ? 0 : index.hashCode());
+		result = prime * result + ((index == NO_INDEX) ? 0 : index);
 		return result;
 	}
 
@@ -39,31 +95,21 @@ public class PartIndex implements Comparable<PartIndex> {
 			return false;
 		}
 		PartIndex other = (PartIndex) obj;
-		if (index == null) {
-			if (other.index != null) {
-				return false;
-			}
-		} else if (!index.equals(other.index)) {
-			return false;
-		}
-		return true;
+		return index == other.index;
 	}
 
 	@Override
 	public String toString() {
-		if (index == null) {
+		if (index == NO_INDEX) {
 			return "";
 		} else {
-			return index.toString();
+			return Integer.toString(index);
 		}
 	}
 
 	@Override
 	public int compareTo(PartIndex o) {
-        if(this == o || this.index == o.index) { return 0; }
-        if(this.index == null) { return -1; }
-        if(o.index == null) { return 1; }
-
-        return this.index.compareTo(o.index);
+		// missing index is lower than any other index, the same as Integer.MIN_VALUE
+		return Integer.compare(this.index, o.index);
 	}
-}
\ No newline at end of file
+}
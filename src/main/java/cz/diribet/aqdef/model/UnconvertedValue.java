@@ -0,0 +1,81 @@
+package cz.diribet.aqdef.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cz.diribet.aqdef.KKey;
+import cz.diribet.aqdef.convert.IKKeyValueConverter;
+import cz.diribet.aqdef.model.AqdefObjectModel.AbstractEntry;
+import cz.diribet.aqdef.parser.AqdefParser;
+
+/**
+ * Text of a K-key value that was not converted yet. Stored in the {@link AbstractEntry entries} parsed with
+ * {@link AqdefParser#setLazyValueConversion(boolean) lazy value conversion}. The value is converted by the converter
+ * of the K-key when it is read for the first time.
+ *
+ * @author Vlastimil Dolejs
+ */
+public final class UnconvertedValue {
+
+	private static final Logger LOG = LoggerFactory.getLogger(UnconvertedValue.class);
+
+	private final KKey key;
+	private final String text;
+
+	public UnconvertedValue(KKey key, String text) {
+		this.key = key;
+		this.text = text;
+	}
+
+	public KKey getKey() {
+		return key;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * Converts the text using the converter of the K-key.
+	 *
+	 * @return converted value or {@code null} if the conversion fails (the failure is logged)
+	 */
+	public Object convert() {
+		IKKeyValueConverter<?> converter = key.getConverter();
+
+		if (converter == null) {
+			return null;
+		}
+
+		try {
+			return converter.convert(text);
+
+		} catch (Throwable e) {
+			LOG.warn("Failed to convert value: " + text + " of K-key: " + key + " using converter: " + converter + ". The value will be discarded.", e);
+			return null;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * key.hashCode() + text.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof UnconvertedValue)) {
+			return false;
+		}
+		UnconvertedValue other = (UnconvertedValue) obj;
+		return key.equals(other.key) && text.equals(other.text);
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+
+}
@@ -0,0 +1,1335 @@
+package cz.diribet.aqdef.model;
+
+import java.math.BigDecimal;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import cz.diribet.aqdef.KKey;
+import cz.diribet.aqdef.model.AqdefObjectModel.ValueEntries;
+import cz.diribet.aqdef.model.AqdefObjectModel.ValueEntry;
+
+/**
+ * Columnar storage of the values of a single characteristic.
+ * <p>
+ * Values are not stored as maps of entries (with an entry object and a boxed value for each K-key), but in a column
+ * per K-key. Columns of the common value types are primitive:
+ * <ul>
+ * <li>{@link BigDecimal} (e.g. K0001) as an unscaled long and a scale</li>
+ * <li>{@link Date} (e.g. K0004) as epoch milliseconds</li>
+ * <li>{@link Integer} (e.g. K0002, K0008) as an int</li>
+ * </ul>
+ * Other values are kept in object columns. A column is changed to an object column when a value of another type is
+ * put to it. K-keys that have a value only in a few rows are kept in a sparse column (sorted value index numbers and
+ * values) instead of a column.
+ * </p>
+ * <p>
+ * {@link UnconvertedValue}s are kept in the column of the {@link KKey#getDataType() data type} of their K-key and
+ * replaced by the primitive value when they are read, so the columns are primitive also with the lazy value
+ * conversion.
+ * </p>
+ * <p>
+ * Rows are sorted by the value index. {@link ValueEntries} returned by this class are views of a single row, the
+ * entries of the view are created when they are requested.
+ * </p>
+ * <p>
+ * This class is not thread safe. A {@link #snapshot() frozen} storage can not be modified and may be read by several
+ * threads at once. It shares the arrays and the columns with the storage it was created from, the original storage
+ * copies them before it is modified again. Views and lists of the values of the frozen storage are created once and
+ * then returned without copying.
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ */
+final class ValueColumns {
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	/**
+	 * K-key that has no value in the first rows is considered rare and its values are kept in a sparse map
+	 */
+	private static final int SPARSE_MIN_ROWS = 16;
+
+	/**
+	 * Values of a rare K-key are moved to a column when it has a value in more than 1 / SPARSE_RATIO of the rows
+	 */
+	private static final int SPARSE_RATIO = 8;
+
+	/**
+	 * Marks a K-key without a value in the row (null is a valid value)
+	 */
+	private static final Object ABSENT = new Object();
+
+	private final CharacteristicIndex characteristicIndex;
+
+	private int size;
+	private int capacity;
+
+	/**
+	 * Sorted value index numbers of the rows (see {@link ValueIndex#getValueIndexNumber()})
+	 */
+	private int[] valueIndexNumbers = new int[0];
+
+	private KKey[] keys = new KKey[0];
+	private Column[] columns = new Column[0];
+
+	/**
+	 * Values of the rare K-keys (created when needed)
+	 */
+	private Map<KKey, SparseColumn> sparseColumns;
+
+	private boolean frozen;
+
+	/**
+	 * Whether the arrays and the columns are shared with a {@link #snapshot() frozen} storage (they are copied before
+	 * they are modified)
+	 */
+	private boolean shared;
+
+	/**
+	 * Views of the rows and lists of the values of a frozen storage (created when requested)
+	 */
+	private volatile AtomicReferenceArray<ValueEntries> views;
+	private volatile List<ValueEntries> values;
+	private volatile List<ValueIndex> valueIndexes;
+
+	ValueColumns(CharacteristicIndex characteristicIndex) {
+		this.characteristicIndex = characteristicIndex;
+	}
+
+	/**
+	 * Converts all the values of this storage and trims the columns to the number of the values. The returned
+	 * unmodifiable storage shares the arrays and the columns with this storage, so it is created without copying of
+	 * the values. Reading of the returned storage has no side effects.
+	 *
+	 * @return frozen storage with the same values as this storage (or this storage if it is already frozen)
+	 */
+	ValueColumns snapshot() {
+		if (frozen) {
+			return this;
+		}
+
+		if (!shared) {
+			convertValues();
+
+			if (capacity != size) {
+				capacity = size;
+				valueIndexNumbers = Arrays.copyOf(valueIndexNumbers, size);
+				for (Column column : columns) {
+					column.grow(size);
+				}
+			}
+
+			shared = true;
+		}
+
+		ValueColumns snapshot = new ValueColumns(characteristicIndex);
+
+		snapshot.size = size;
+		snapshot.capacity = capacity;
+		snapshot.valueIndexNumbers = valueIndexNumbers;
+		snapshot.keys = keys;
+		snapshot.columns = columns;
+		snapshot.sparseColumns = sparseColumns;
+		snapshot.frozen = true;
+
+		return snapshot;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	boolean contains(ValueIndex valueIndex) {
+		return findRow(valueIndex.getValueIndexNumber()) >= 0;
+	}
+
+	/**
+	 * @return view of the value with the given index or {@code null} if there is no such value
+	 */
+	ValueEntries get(ValueIndex valueIndex) {
+		int row = findRow(valueIndex.getValueIndexNumber());
+
+		if (row < 0) {
+			return null;
+		}
+
+		return frozen ? frozenView(row) : view(valueIndex);
+	}
+
+	/**
+	 * @return view of the value with the given index, an empty value is added if there is no such value
+	 */
+	ValueEntries computeIfAbsent(ValueIndex valueIndex) {
+		prepareWrite();
+		addRow(valueIndex.getValueIndexNumber());
+		return view(valueIndex);
+	}
+
+	/**
+	 * Puts the value of the K-key to the value with the given index (the value is added if there is no such value).
+	 */
+	void put(ValueIndex valueIndex, KKey key, Object value) {
+		prepareWrite();
+
+		int number = valueIndex.getValueIndexNumber();
+		int row = addRow(number);
+
+		putValue(row, number, key, value);
+	}
+
+	boolean remove(ValueIndex valueIndex) {
+		prepareWrite();
+
+		int row = findRow(valueIndex.getValueIndexNumber());
+
+		if (row < 0) {
+			return false;
+		}
+
+		removeRow(row);
+		return true;
+	}
+
+	/**
+	 * Removes all the values that match the given predicate. The predicate must not modify this storage.
+	 */
+	void removeIf(Predicate<ValueEntries> predicate) {
+		prepareWrite();
+
+		boolean[] removed = new boolean[size];
+		boolean anyRemoved = false;
+
+		for (int row = 0; row < size; row++) {
+			removed[row] = predicate.test(view(valueIndexNumbers[row]));
+			anyRemoved |= removed[row];
+		}
+
+		if (!anyRemoved) {
+			return;
+		}
+
+		int newSize = 0;
+
+		for (int row = 0; row < size; row++) {
+			if (removed[row]) {
+				removeSparseValues(valueIndexNumbers[row]);
+				continue;
+			}
+
+			if (newSize != row) {
+				valueIndexNumbers[newSize] = valueIndexNumbers[row];
+				for (Column column : columns) {
+					column.move(row, newSize);
+				}
+			}
+
+			newSize++;
+		}
+
+		for (int row = newSize; row < size; row++) {
+			for (Column column : columns) {
+				column.clear(row);
+			}
+		}
+
+		size = newSize;
+	}
+
+	/**
+	 * Iterates through the values in the order of the value index. The action may add or remove the values.
+	 */
+	void forEach(Consumer<ValueEntries> action) {
+		int row = 0;
+
+		while (row < size) {
+			int number = valueIndexNumbers[row];
+			action.accept(view(number));
+
+			row = (row < size && valueIndexNumbers[row] == number) ? row + 1 : higherRow(number);
+		}
+	}
+
+	/**
+	 * @return indexes of the values (unmodifiable list that is not copied if this storage is frozen)
+	 */
+	List<ValueIndex> getValueIndexes() {
+		List<ValueIndex> valueIndexes = this.valueIndexes;
+
+		if (valueIndexes != null) {
+			return valueIndexes;
+		}
+
+		valueIndexes = new ArrayList<>(size);
+
+		for (int row = 0; row < size; row++) {
+			valueIndexes.add(frozen ? frozenView(row).getIndex() : ValueIndex.ofNumber(characteristicIndex, valueIndexNumbers[row]));
+		}
+
+		if (frozen) {
+			valueIndexes = List.copyOf(valueIndexes);
+			this.valueIndexes = valueIndexes;
+		}
+
+		return valueIndexes;
+	}
+
+	/**
+	 * @return views of the values (unmodifiable list that is not copied if this storage is frozen)
+	 */
+	List<ValueEntries> getValues() {
+		List<ValueEntries> values = this.values;
+
+		if (values != null) {
+			return values;
+		}
+
+		values = new ArrayList<>(size);
+
+		for (int row = 0; row < size; row++) {
+			values.add(frozen ? frozenView(row) : view(valueIndexNumbers[row]));
+		}
+
+		if (frozen) {
+			values = List.copyOf(values);
+			this.values = values;
+		}
+
+		return values;
+	}
+
+	//*******************************************
+	// Rows
+	//*******************************************
+
+	private ValueEntries view(int valueIndexNumber) {
+		return view(ValueIndex.ofNumber(characteristicIndex, valueIndexNumber));
+	}
+
+	private ValueEntries view(ValueIndex valueIndex) {
+		return new ValueEntries(valueIndex, new RowEntries(valueIndex));
+	}
+
+	/**
+	 * @return view of the row of a frozen storage, the view is created only once
+	 */
+	private ValueEntries frozenView(int row) {
+		AtomicReferenceArray<ValueEntries> views = this.views;
+
+		if (views == null) {
+			synchronized (this) {
+				views = this.views;
+
+				if (views == null) {
+					views = new AtomicReferenceArray<>(size);
+					this.views = views;
+				}
+			}
+		}
+
+		ValueEntries view = views.get(row);
+
+		if (view == null) {
+			view = view(valueIndexNumbers[row]);
+
+			if (!views.compareAndSet(row, null, view)) {
+				view = views.get(row);
+			}
+		}
+
+		return view;
+	}
+
+	/**
+	 * @return row of the value index number or {@code -(insertion point) - 1} if there is no such row
+	 */
+	private int findRow(int number) {
+		if (size > 0) {
+			int last = valueIndexNumbers[size - 1];
+
+			if (last == number) {
+				return size - 1;
+			} else if (last < number) {
+				return -size - 1;
+			}
+		}
+
+		// value indexes usually start at 1 and have no gaps
+		if (number >= 1 && number <= size && valueIndexNumbers[number - 1] == number) {
+			return number - 1;
+		}
+
+		return Arrays.binarySearch(valueIndexNumbers, 0, size, number);
+	}
+
+	/**
+	 * @return first row with higher value index number
+	 */
+	private int higherRow(int number) {
+		int row = findRow(number);
+		return row >= 0 ? row + 1 : -row - 1;
+	}
+
+	private int addRow(int number) {
+		int row = findRow(number);
+
+		if (row >= 0) {
+			return row;
+		}
+
+		row = -row - 1;
+
+		ensureCapacity(size + 1);
+
+		for (int i = size; i > row; i--) {
+			valueIndexNumbers[i] = valueIndexNumbers[i - 1];
+			for (Column column : columns) {
+				column.move(i - 1, i);
+			}
+		}
+
+		valueIndexNumbers[row] = number;
+		for (Column column : columns) {
+			column.clear(row);
+		}
+
+		size++;
+		return row;
+	}
+
+	private void removeRow(int row) {
+		removeSparseValues(valueIndexNumbers[row]);
+
+		for (int i = row; i < size - 1; i++) {
+			valueIndexNumbers[i] = valueIndexNumbers[i + 1];
+			for (Column column : columns) {
+				column.move(i + 1, i);
+			}
+		}
+
+		size--;
+		for (Column column : columns) {
+			column.clear(size);
+		}
+	}
+
+	private void ensureCapacity(int minCapacity) {
+		if (minCapacity <= capacity) {
+			return;
+		}
+
+		capacity = Math.max(INITIAL_CAPACITY, Math.max(minCapacity, capacity + (capacity >> 1)));
+
+		valueIndexNumbers = Arrays.copyOf(valueIndexNumbers, capacity);
+		for (Column column : columns) {
+			column.grow(capacity);
+		}
+	}
+
+	//*******************************************
+	// Values
+	//*******************************************
+
+	/**
+	 * Checks that this storage is not frozen and copies the arrays and the columns shared with a frozen storage
+	 */
+	private void prepareWrite() {
+		if (frozen) {
+			throw new UnsupportedOperationException("Values are frozen");
+		}
+
+		if (!shared) {
+			return;
+		}
+
+		valueIndexNumbers = valueIndexNumbers.clone();
+		keys = keys.clone();
+		columns = columns.clone();
+
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = columns[i].copy(capacity);
+		}
+
+		if (sparseColumns != null) {
+			Map<KKey, SparseColumn> sharedSparseColumns = sparseColumns;
+
+			sparseColumns = new HashMap<>();
+			sharedSparseColumns.forEach((key, sparseColumn) -> sparseColumns.put(key, sparseColumn.copy()));
+		}
+
+		shared = false;
+	}
+
+	/**
+	 * Replaces all the {@link UnconvertedValue}s with the converted values
+	 */
+	private void convertValues() {
+		for (int i = 0; i < keys.length; i++) {
+			for (int row = 0; row < size; row++) {
+				if (columns[i].isPresent(row) && columns[i].get(row) instanceof UnconvertedValue) {
+					getValue(row, valueIndexNumbers[row], keys[i]);
+				}
+			}
+		}
+
+		if (sparseColumns != null) {
+			sparseColumns.values().forEach(SparseColumn::convertValues);
+		}
+	}
+
+	private int columnOf(KKey key) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i].equals(key)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return value (with {@link UnconvertedValue} converted) or {@link #ABSENT}
+	 */
+	private Object getValue(int row, int number, KKey key) {
+		int columnIndex = columnOf(key);
+
+		if (columnIndex >= 0) {
+			Column column = columns[columnIndex];
+
+			if (!column.isPresent(row)) {
+				return ABSENT;
+			}
+
+			Object value = column.get(row);
+
+			if (value instanceof UnconvertedValue) {
+				value = ((UnconvertedValue) value).convert();
+
+				if (!column.supports(value)) {
+					column = column.toObjectColumn(size, capacity);
+					columns[columnIndex] = column;
+				}
+
+				column.set(row, value);
+			}
+
+			return value;
+		}
+
+		SparseColumn sparseColumn = sparseColumns == null ? null : sparseColumns.get(key);
+
+		if (sparseColumn == null) {
+			return ABSENT;
+		}
+
+		return sparseColumn.getValue(number);
+	}
+
+	/**
+	 * @return value (without conversion) or {@link #ABSENT}
+	 */
+	private Object getRawValue(int row, int number, KKey key) {
+		int columnIndex = columnOf(key);
+
+		if (columnIndex >= 0) {
+			Column column = columns[columnIndex];
+			return column.isPresent(row) ? column.get(row) : ABSENT;
+		}
+
+		SparseColumn sparseColumn = sparseColumns == null ? null : sparseColumns.get(key);
+
+		return sparseColumn == null ? ABSENT : sparseColumn.getRawValue(number);
+	}
+
+	private void putValue(int row, int number, KKey key, Object value) {
+		int columnIndex = columnOf(key);
+
+		if (columnIndex < 0) {
+			SparseColumn sparseColumn = sparseColumns == null ? null : sparseColumns.get(key);
+
+			if (sparseColumn == null && size < SPARSE_MIN_ROWS) {
+				columnIndex = addColumn(key, value);
+
+			} else {
+				if (sparseColumn == null) {
+					if (sparseColumns == null) {
+						sparseColumns = new HashMap<>();
+					}
+
+					sparseColumn = new SparseColumn();
+					sparseColumns.put(key, sparseColumn);
+				}
+
+				sparseColumn.put(number, value);
+
+				if (sparseColumn.size() * SPARSE_RATIO > size) {
+					moveToColumn(key, sparseColumn, value);
+				}
+
+				return;
+			}
+		}
+
+		Column column = columns[columnIndex];
+
+		if (!column.supports(value)) {
+			column = column.toObjectColumn(size, capacity);
+			columns[columnIndex] = column;
+		}
+
+		column.set(row, value);
+	}
+
+	private int addColumn(KKey key, Object value) {
+		int columnIndex = keys.length;
+
+		keys = Arrays.copyOf(keys, columnIndex + 1);
+		columns = Arrays.copyOf(columns, columnIndex + 1);
+
+		keys[columnIndex] = key;
+		columns[columnIndex] = Column.forValue(value, capacity);
+
+		return columnIndex;
+	}
+
+	private void moveToColumn(KKey key, SparseColumn sparseColumn, Object value) {
+		sparseColumns.remove(key);
+
+		addColumn(key, value);
+
+		for (int i = 0; i < sparseColumn.size(); i++) {
+			int number = sparseColumn.numberAt(i);
+			putValue(findRow(number), number, key, sparseColumn.valueAt(i));
+		}
+	}
+
+	private Object removeValue(int row, int number, KKey key) {
+		Object previousValue = getRawValue(row, number, key);
+
+		if (previousValue == ABSENT) {
+			return ABSENT;
+		}
+
+		int columnIndex = columnOf(key);
+
+		if (columnIndex >= 0) {
+			columns[columnIndex].clear(row);
+		} else {
+			SparseColumn sparseColumn = sparseColumns.get(key);
+			sparseColumn.remove(number);
+
+			if (sparseColumn.isEmpty()) {
+				sparseColumns.remove(key);
+			}
+		}
+
+		return previousValue;
+	}
+
+	private void removeSparseValues(int number) {
+		if (sparseColumns == null) {
+			return;
+		}
+
+		Iterator<SparseColumn> iterator = sparseColumns.values().iterator();
+		while (iterator.hasNext()) {
+			SparseColumn sparseColumn = iterator.next();
+			sparseColumn.remove(number);
+
+			if (sparseColumn.isEmpty()) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return K-keys with a value in the given row
+	 */
+	private List<KKey> getKeys(int row, int number) {
+		List<KKey> rowKeys = new ArrayList<>(keys.length);
+
+		for (int i = 0; i < keys.length; i++) {
+			if (columns[i].isPresent(row)) {
+				rowKeys.add(keys[i]);
+			}
+		}
+
+		if (sparseColumns != null) {
+			sparseColumns.forEach((key, sparseColumn) -> {
+				if (sparseColumn.contains(number)) {
+					rowKeys.add(key);
+				}
+			});
+		}
+
+		return rowKeys;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ValueColumns)) {
+			return false;
+		}
+		return getValues().equals(((ValueColumns) obj).getValues());
+	}
+
+	@Override
+	public int hashCode() {
+		return getValues().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return getValues().toString();
+	}
+
+	//*******************************************
+	// Inner classes
+	//*******************************************
+
+	/**
+	 * Entries of a single row. Entries are created when requested and hold the current value of the K-key.
+	 */
+	private final class RowEntries extends AbstractMap<KKey, ValueEntry> implements IHasKKeyValues {
+
+		private final ValueIndex valueIndex;
+		private final int number;
+
+		RowEntries(ValueIndex valueIndex) {
+			this.valueIndex = valueIndex;
+			this.number = valueIndex.getValueIndexNumber();
+		}
+
+		@Override
+		public int size() {
+			int row = findRow(number);
+			return row < 0 ? 0 : getKeys(row, number).size();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			int row = findRow(number);
+			return row >= 0 && key instanceof KKey && getRawValue(row, number, (KKey) key) != ABSENT;
+		}
+
+		@Override
+		public ValueEntry get(Object key) {
+			int row = findRow(number);
+
+			if (row < 0 || !(key instanceof KKey)) {
+				return null;
+			}
+
+			return entry((KKey) key, ValueColumns.this.getValue(row, number, (KKey) key));
+		}
+
+		/**
+		 * @return value of the K-key (without creating the entry) or {@code null}
+		 */
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> T getValue(KKey key) {
+			int row = findRow(number);
+
+			if (row < 0) {
+				return null;
+			}
+
+			Object value = ValueColumns.this.getValue(row, number, key);
+			return value == ABSENT ? null : (T) value;
+		}
+
+		@Override
+		public ValueEntry put(KKey key, ValueEntry entry) {
+			prepareWrite();
+
+			int row = findRow(number);
+
+			if (row < 0) {
+				throw new IllegalStateException("Value " + valueIndex + " was removed from the object model.");
+			}
+
+			ValueEntry previousEntry = entry(key, getRawValue(row, number, key));
+			putValue(row, number, key, entry.getRawValue());
+
+			return previousEntry;
+		}
+
+		@Override
+		public ValueEntry remove(Object key) {
+			prepareWrite();
+
+			int row = findRow(number);
+
+			if (row < 0 || !(key instanceof KKey)) {
+				return null;
+			}
+
+			return entry((KKey) key, removeValue(row, number, (KKey) key));
+		}
+
+		@Override
+		public Set<Entry<KKey, ValueEntry>> entrySet() {
+			return new AbstractSet<>() {
+
+				@Override
+				public Iterator<Entry<KKey, ValueEntry>> iterator() {
+					int row = findRow(number);
+					Iterator<KKey> keyIterator = row < 0 ? new ArrayList<KKey>().iterator() : getKeys(row, number).iterator();
+
+					return new Iterator<>() {
+
+						private KKey lastKey;
+
+						@Override
+						public boolean hasNext() {
+							return keyIterator.hasNext();
+						}
+
+						@Override
+						public Entry<KKey, ValueEntry> next() {
+							KKey key = keyIterator.next();
+							ValueEntry entry = get(key);
+
+							if (entry == null) {
+								throw new NoSuchElementException("Value of K-key " + key + " was removed.");
+							}
+
+							lastKey = key;
+							return new SimpleImmutableEntry<>(key, entry);
+						}
+
+						@Override
+						public void remove() {
+							if (lastKey == null) {
+								throw new IllegalStateException();
+							}
+
+							RowEntries.this.remove(lastKey);
+							lastKey = null;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return RowEntries.this.size();
+				}
+			};
+		}
+
+		private ValueEntry entry(KKey key, Object value) {
+			return value == ABSENT ? null : new ValueEntry(key, valueIndex, value);
+		}
+	}
+
+	/**
+	 * Values of a single K-key
+	 */
+	private abstract static class Column implements Cloneable {
+
+		static Column forValue(Object value, int capacity) {
+			if (value instanceof UnconvertedValue) {
+				return forType(((UnconvertedValue) value).getKey().getDataType(), capacity);
+			} else if (DecimalColumn.isSupported(value)) {
+				return new DecimalColumn(capacity);
+			} else {
+				return forType(value == null ? null : value.getClass(), capacity);
+			}
+		}
+
+		private static Column forType(Class<?> type, int capacity) {
+			if (type == BigDecimal.class) {
+				return new DecimalColumn(capacity);
+			} else if (type == Date.class) {
+				return new DateColumn(capacity);
+			} else if (type == Integer.class) {
+				return new IntColumn(capacity);
+			} else {
+				return new ObjectColumn(capacity);
+			}
+		}
+
+		abstract boolean supports(Object value);
+
+		abstract boolean isPresent(int row);
+
+		abstract Object get(int row);
+
+		abstract void set(int row, Object value);
+
+		abstract void clear(int row);
+
+		/**
+		 * Copies the value of the row {@code from} to the row {@code to}
+		 */
+		abstract void move(int from, int to);
+
+		abstract void grow(int capacity);
+
+		/**
+		 * @return copy of this column with the given capacity
+		 */
+		Column copy(int capacity) {
+			try {
+				Column copy = (Column) clone();
+				// grow replaces all the arrays with their copies
+				copy.grow(capacity);
+				return copy;
+
+			} catch (CloneNotSupportedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		ObjectColumn toObjectColumn(int size, int capacity) {
+			ObjectColumn objectColumn = new ObjectColumn(capacity);
+
+			for (int row = 0; row < size; row++) {
+				if (isPresent(row)) {
+					objectColumn.set(row, get(row));
+				}
+			}
+
+			return objectColumn;
+		}
+	}
+
+	/**
+	 * Values of any type. {@code null} marks a row without a value.
+	 */
+	private static final class ObjectColumn extends Column {
+
+		private static final Object NULL_VALUE = new Object();
+
+		private Object[] values;
+
+		ObjectColumn(int capacity) {
+			values = new Object[capacity];
+		}
+
+		@Override
+		boolean supports(Object value) {
+			return true;
+		}
+
+		@Override
+		boolean isPresent(int row) {
+			return values[row] != null;
+		}
+
+		@Override
+		Object get(int row) {
+			Object value = values[row];
+			return value == NULL_VALUE ? null : value;
+		}
+
+		@Override
+		void set(int row, Object value) {
+			values[row] = value == null ? NULL_VALUE : value;
+		}
+
+		@Override
+		void clear(int row) {
+			values[row] = null;
+		}
+
+		@Override
+		void move(int from, int to) {
+			values[to] = values[from];
+		}
+
+		@Override
+		void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+
+	/**
+	 * Base of the columns of primitive values. {@link UnconvertedValue}s of the K-key with the data type of the column
+	 * are kept aside until they are replaced by the converted values.
+	 */
+	private abstract static class PrimitiveColumn extends Column {
+
+		private final Class<?> type;
+
+		private boolean[] present;
+
+		/**
+		 * Unconverted values by row (created when needed and released when all the values are converted)
+		 */
+		private Object[] unconvertedValues;
+		private int unconvertedCount;
+
+		PrimitiveColumn(Class<?> type, int capacity) {
+			this.type = type;
+			present = new boolean[capacity];
+		}
+
+		abstract boolean supportsConverted(Object value);
+
+		abstract Object getConverted(int row);
+
+		abstract void setConverted(int row, Object value);
+
+		abstract void moveConverted(int from, int to);
+
+		abstract void growConverted(int capacity);
+
+		@Override
+		final boolean supports(Object value) {
+			if (value instanceof UnconvertedValue) {
+				return ((UnconvertedValue) value).getKey().getDataType() == type;
+			}
+
+			return supportsConverted(value);
+		}
+
+		@Override
+		final boolean isPresent(int row) {
+			return present[row];
+		}
+
+		@Override
+		final Object get(int row) {
+			if (unconvertedValues != null && unconvertedValues[row] != null) {
+				return unconvertedValues[row];
+			}
+
+			return getConverted(row);
+		}
+
+		@Override
+		final void set(int row, Object value) {
+			present[row] = true;
+
+			if (value instanceof UnconvertedValue) {
+				setUnconverted(row, value);
+			} else {
+				setUnconverted(row, null);
+				setConverted(row, value);
+			}
+		}
+
+		@Override
+		final void clear(int row) {
+			present[row] = false;
+			setUnconverted(row, null);
+		}
+
+		@Override
+		final void move(int from, int to) {
+			present[to] = present[from];
+			setUnconverted(to, unconvertedValues == null ? null : unconvertedValues[from]);
+			moveConverted(from, to);
+		}
+
+		@Override
+		final void grow(int capacity) {
+			present = Arrays.copyOf(present, capacity);
+
+			if (unconvertedValues != null) {
+				unconvertedValues = Arrays.copyOf(unconvertedValues, capacity);
+			}
+
+			growConverted(capacity);
+		}
+
+		private void setUnconverted(int row, Object value) {
+			if (unconvertedValues == null) {
+				if (value == null) {
+					return;
+				}
+				unconvertedValues = new Object[present.length];
+			}
+
+			if (unconvertedValues[row] != null) {
+				unconvertedCount--;
+			}
+
+			unconvertedValues[row] = value;
+
+			if (value != null) {
+				unconvertedCount++;
+			} else if (unconvertedCount == 0) {
+				unconvertedValues = null;
+			}
+		}
+	}
+
+	/**
+	 * {@link BigDecimal} values which unscaled value fits into long
+	 */
+	private static final class DecimalColumn extends PrimitiveColumn {
+
+		private static final int MAX_LONG_PRECISION = 18;
+
+		private long[] unscaledValues;
+		private byte[] scales;
+
+		DecimalColumn(int capacity) {
+			super(BigDecimal.class, capacity);
+			unscaledValues = new long[capacity];
+			scales = new byte[capacity];
+		}
+
+		static boolean isSupported(Object value) {
+			if (value == null || value.getClass() != BigDecimal.class) {
+				return false;
+			}
+
+			BigDecimal decimal = (BigDecimal) value;
+			return decimal.precision() <= MAX_LONG_PRECISION
+					&& decimal.scale() >= Byte.MIN_VALUE && decimal.scale() <= Byte.MAX_VALUE;
+		}
+
+		@Override
+		boolean supportsConverted(Object value) {
+			return isSupported(value);
+		}
+
+		@Override
+		Object getConverted(int row) {
+			return BigDecimal.valueOf(unscaledValues[row], scales[row]);
+		}
+
+		@Override
+		void setConverted(int row, Object value) {
+			BigDecimal decimal = (BigDecimal) value;
+			unscaledValues[row] = decimal.unscaledValue().longValue();
+			scales[row] = (byte) decimal.scale();
+		}
+
+		@Override
+		void moveConverted(int from, int to) {
+			unscaledValues[to] = unscaledValues[from];
+			scales[to] = scales[from];
+		}
+
+		@Override
+		void growConverted(int capacity) {
+			unscaledValues = Arrays.copyOf(unscaledValues, capacity);
+			scales = Arrays.copyOf(scales, capacity);
+		}
+	}
+
+	/**
+	 * {@link Date} values as epoch milliseconds
+	 */
+	private static final class DateColumn extends PrimitiveColumn {
+
+		private long[] times;
+
+		DateColumn(int capacity) {
+			super(Date.class, capacity);
+			times = new long[capacity];
+		}
+
+		@Override
+		boolean supportsConverted(Object value) {
+			return value != null && value.getClass() == Date.class;
+		}
+
+		@Override
+		Object getConverted(int row) {
+			return new Date(times[row]);
+		}
+
+		@Override
+		void setConverted(int row, Object value) {
+			times[row] = ((Date) value).getTime();
+		}
+
+		@Override
+		void moveConverted(int from, int to) {
+			times[to] = times[from];
+		}
+
+		@Override
+		void growConverted(int capacity) {
+			times = Arrays.copyOf(times, capacity);
+		}
+	}
+
+	/**
+	 * {@link Integer} values
+	 */
+	private static final class IntColumn extends PrimitiveColumn {
+
+		private int[] values;
+
+		IntColumn(int capacity) {
+			super(Integer.class, capacity);
+			values = new int[capacity];
+		}
+
+		@Override
+		boolean supportsConverted(Object value) {
+			return value != null && value.getClass() == Integer.class;
+		}
+
+		@Override
+		Object getConverted(int row) {
+			return values[row];
+		}
+
+		@Override
+		void setConverted(int row, Object value) {
+			values[row] = (Integer) value;
+		}
+
+		@Override
+		void moveConverted(int from, int to) {
+			values[to] = values[from];
+		}
+
+		@Override
+		void growConverted(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+
+	/**
+	 * Values of a rare K-key kept by the sorted value index numbers of their rows
+	 */
+	private static final class SparseColumn {
+
+		private int[] numbers = new int[4];
+		private Object[] values = new Object[4];
+		private int size;
+
+		SparseColumn copy() {
+			SparseColumn copy = new SparseColumn();
+			copy.numbers = Arrays.copyOf(numbers, size);
+			copy.values = Arrays.copyOf(values, size);
+			copy.size = size;
+
+			return copy;
+		}
+
+		int size() {
+			return size;
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		boolean contains(int number) {
+			return indexOf(number) >= 0;
+		}
+
+		/**
+		 * @return value (without conversion) or {@link ValueColumns#ABSENT}
+		 */
+		Object getRawValue(int number) {
+			int index = indexOf(number);
+			return index < 0 ? ABSENT : values[index];
+		}
+
+		/**
+		 * @return value (with {@link UnconvertedValue} converted) or {@link ValueColumns#ABSENT}
+		 */
+		Object getValue(int number) {
+			int index = indexOf(number);
+
+			if (index < 0) {
+				return ABSENT;
+			}
+
+			Object value = values[index];
+
+			if (value instanceof UnconvertedValue) {
+				value = ((UnconvertedValue) value).convert();
+				values[index] = value;
+			}
+
+			return value;
+		}
+
+		void put(int number, Object value) {
+			int index = indexOf(number);
+
+			if (index >= 0) {
+				values[index] = value;
+				return;
+			}
+
+			index = -index - 1;
+
+			if (size == numbers.length) {
+				int newLength = Math.max(4, size * 2);
+				numbers = Arrays.copyOf(numbers, newLength);
+				values = Arrays.copyOf(values, newLength);
+			}
+
+			System.arraycopy(numbers, index, numbers, index + 1, size - index);
+			System.arraycopy(values, index, values, index + 1, size - index);
+
+			numbers[index] = number;
+			values[index] = value;
+			size++;
+		}
+
+		void remove(int number) {
+			int index = indexOf(number);
+
+			if (index < 0) {
+				return;
+			}
+
+			System.arraycopy(numbers, index + 1, numbers, index, size - index - 1);
+			System.arraycopy(values, index + 1, values, index, size - index - 1);
+
+			size--;
+			values[size] = null;
+		}
+
+		int numberAt(int index) {
+			return numbers[index];
+		}
+
+		Object valueAt(int index) {
+			return values[index];
+		}
+
+		void convertValues() {
+			for (int i = 0; i < size; i++) {
+				if (values[i] instanceof UnconvertedValue) {
+					values[i] = ((UnconvertedValue) values[i]).convert();
+				}
+			}
+		}
+
+		/**
+		 * @return index of the number or {@code -(insertion point) - 1}
+		 */
+		private int indexOf(int number) {
+			// values are usually added in the order of the value index
+			if (size > 0 && numbers[size - 1] < number) {
+				return -size - 1;
+			}
+
+			return Arrays.binarySearch(numbers, 0, size, number);
+		}
+	}
+
+}
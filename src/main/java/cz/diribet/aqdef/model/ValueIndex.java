@@ -1,22 +1,28 @@
 package cz.diribet.aqdef.model;
 
+import java.io.Serializable;
+
 /**
+ * Index of a value. The index of the part is the part of the {@link #getCharacteristicIndex() characteristic index}.
+ *
  * @author Vlastimil Dolejs
  *
  */
-public class ValueIndex implements Comparable<ValueIndex> {
-	private final PartIndex partIndex;
+public class ValueIndex implements Serializable, Comparable<ValueIndex> {
+	private static final long serialVersionUID = 1L;
+
+	private static final int NO_INDEX = Integer.MIN_VALUE;
+
 	private final CharacteristicIndex characteristicIndex;
-	private final Integer valueIndex;
+	private final int valueIndex;
 
-	private ValueIndex(PartIndex partIndex, CharacteristicIndex characteristicIndex, Integer valueIndex) {
-		this.partIndex = partIndex;
+	private ValueIndex(CharacteristicIndex characteristicIndex, int valueIndex) {
 		this.characteristicIndex = characteristicIndex;
 		this.valueIndex = valueIndex;
 	}
 
 	public PartIndex getPartIndex() {
-		return partIndex;
+		return characteristicIndex == null ? null : characteristicIndex.getPartIndex();
 	}
 
 	public CharacteristicIndex getCharacteristicIndex() {
@@ -24,32 +30,54 @@ public class ValueIndex implements Comparable<ValueIndex> {
 	}
 
 	public Integer getValueIndex() {
+		return valueIndex == NO_INDEX ? null : valueIndex;
+	}
+
+	/**
+	 * @return value index number or {@link Integer#MIN_VALUE} if the index is missing (sorted before any other number)
+	 */
+	int getValueIndexNumber() {
 		return valueIndex;
 	}
 
 	public boolean platiProVsechnyHodnotyDilu() {
-		return Integer.valueOf(0).equals(characteristicIndex.getCharacteristicIndex());
+		return characteristicIndex.platiProVsechnyZnakyDilu();
 	}
 
 	public static ValueIndex of(CharacteristicIndex characteristicIndex, Integer valueIndex) {
-		return new ValueIndex(characteristicIndex.getPartIndex(), characteristicIndex, valueIndex);
+		return new ValueIndex(characteristicIndex, valueIndex == null ? NO_INDEX : valueIndex);
+	}
+
+	/**
+	 * @param valueIndexNumber
+	 *            value index number as returned by {@link #getValueIndexNumber()}
+	 */
+	public static ValueIndex ofNumber(CharacteristicIndex characteristicIndex, int valueIndexNumber) {
+		return new ValueIndex(characteristicIndex, valueIndexNumber);
 	}
 
+	/**
+	 * @deprecated the part index is taken from the characteristic index, use
+	 *             {@link #of(CharacteristicIndex, Integer)}
+	 */
+	@Deprecated
 	public static ValueIndex of(PartIndex partIndex, CharacteristicIndex characteristicIndex, Integer valueIndex) {
-		return new ValueIndex(partIndex, characteristicIndex, valueIndex);
+		return of(characteristicIndex, valueIndex);
 	}
 
 	public static ValueIndex of(Integer partIndex, Integer characteristicIndex, Integer valueIndex) {
-		return new ValueIndex(PartIndex.of(partIndex), CharacteristicIndex.of(partIndex, characteristicIndex) , valueIndex);
+		return of(CharacteristicIndex.of(partIndex, characteristicIndex), valueIndex);
 	}
 
 	@Override
 	public int hashCode() {
+		PartIndex partIndex = getPartIndex();
+
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((characteristicIndex == null) ? 0 : characteristicIndex.hashCode());
 		result = prime * result + ((partIndex == null) ? 0 : partIndex.hashCode());
-		result = prime * result + ((valueIndex == null) ? 0 : valueIndex.hashCode());
+		result = prime * result + ((valueIndex == NO_INDEX) ? 0 : valueIndex);
 		return result;
 	}
 
@@ -65,50 +93,28 @@ public class ValueIndex implements Comparable<ValueIndex> {
 			return false;
 		}
 		ValueIndex other = (ValueIndex) obj;
-		if (characteristicIndex == null) {
-			if (other.characteristicIndex != null) {
-				return false;
-			}
-		} else if (!characteristicIndex.equals(other.characteristicIndex)) {
-			return false;
-		}
-		if (partIndex == null) {
-			if (other.partIndex != null) {
-				return false;
-			}
-		} else if (!partIndex.equals(other.partIndex)) {
+		if (valueIndex != other.valueIndex) {
 			return false;
 		}
-		if (valueIndex == null) {
-			if (other.valueIndex != null) {
-				return false;
-			}
-		} else if (!valueIndex.equals(other.valueIndex)) {
-			return false;
+		if (characteristicIndex == null) {
+			return other.characteristicIndex == null;
 		}
-		return true;
+		return characteristicIndex.equals(other.characteristicIndex);
 	}
 
 	@Override
 	public int compareTo(ValueIndex o) {
-        if(this == o) { return 0; }
+		if (this == o) {
+			return 0;
+		}
 
-		int compareResultPart = this.partIndex.compareTo(o.partIndex);
+		int compareResultCharacteristic = this.characteristicIndex.compareTo(o.characteristicIndex);
 
-		if (compareResultPart != 0) {
-			return compareResultPart;
+		if (compareResultCharacteristic != 0) {
+			return compareResultCharacteristic;
 		} else {
-			int compareResultCharacteristic = this.characteristicIndex.compareTo(o.characteristicIndex);
-
-			if (compareResultCharacteristic != 0) {
-				return compareResultCharacteristic;
-			} else {
-		        if(this.valueIndex == o.valueIndex) { return 0; }
-		        if(this.valueIndex == null) { return -1; }
-		        if(o.valueIndex == null) { return 1; }
-
-		        return this.valueIndex.compareTo(o.valueIndex);
-			}
+			// missing index is lower than any other index, the same as Integer.MIN_VALUE
+			return Integer.compare(this.valueIndex, o.valueIndex);
 		}
 	}
 
@@ -121,11 +127,11 @@ public class ValueIndex implements Comparable<ValueIndex> {
 
 		result += "/";
 
-		if (valueIndex != null) {
+		if (valueIndex != NO_INDEX) {
 			result += valueIndex;
 		}
 
 		return result;
 	}
 
-}
\ No newline at end of file
+}
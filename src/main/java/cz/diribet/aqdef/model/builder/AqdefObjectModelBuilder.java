@@ -40,6 +40,9 @@ import cz.diribet.aqdef.model.ValueIndex;
  * Don't forget to call {@link #nextPart()}, {@link #nextCharacteristic()}, {@link #nextValue()} before you start writing new
  * record.
  * </p>
+ * <p>
+ * This class is not thread safe. Use {@link AqdefObjectModel#concurrentIngestion()} to put entries from several threads.
+ * </p>
  *
  * @author Vlastimil Dolejs
  *
@@ -0,0 +1,224 @@
+package cz.diribet.aqdef.parser;
+
+import cz.diribet.aqdef.AqdefConstants;
+import cz.diribet.aqdef.model.AqdefObjectModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Parses many AQDEF files in parallel and passes the object model of each file to {@link IAqdefBatchHandler}.
+ * <pre>
+ * AqdefBatchParser batchParser = new AqdefBatchParser();
+ * batchParser.setMemoryBudget(512 * 1024 * 1024);
+ * batchParser.parseDirectory(Paths.get("path_to_directory"), "*.dfq", "utf-8", (file, objectModel) -&gt; {
+ *     // do some stuff
+ * });
+ * </pre>
+ * <p>
+ * Number of files that are parsed at once is limited by {@link #setMaxParallelFiles(int) the number of files} and by
+ * {@link #setMemoryBudget(long) the total size of the files}. A file is not started until the files being parsed
+ * are small enough, so several large files are not parsed at once. A file larger than the budget is parsed when no
+ * other file is being parsed. The limits are shared by all the batches parsed by this parser at once.
+ * </p>
+ * <p>
+ * Files are parsed using {@link AqdefParser#parseMapped(Path, String)} with the settings of the given
+ * {@link AqdefParser} on the {@link #setExecutor(Executor) executor}. If no executor is set, a new virtual thread is
+ * used for each file (on Java 21 and newer) or a pool with a thread per processor.
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ *
+ * @see AqdefParser
+ */
+public class AqdefBatchParser implements AqdefConstants {
+
+	static final Logger LOG = LoggerFactory.getLogger(AqdefBatchParser.class);
+
+	private final AqdefParser parser;
+
+	private Executor executor;
+	private int maxParallelFiles = Runtime.getRuntime().availableProcessors();
+	private long memoryBudget = Runtime.getRuntime().maxMemory() / 8;
+
+	private final Object lock = new Object();
+	private int filesInProgress;
+	private long bytesInProgress;
+
+	public AqdefBatchParser() {
+		this(new AqdefParser());
+	}
+
+	/**
+	 * @param parser
+	 *            parser used to parse the files (e.g. with {@link AqdefParser#setProjection(KKeyProjection) projection})
+	 */
+	public AqdefBatchParser(AqdefParser parser) {
+		this.parser = parser;
+	}
+
+	/**
+	 * Parses the files of the directory (not its subdirectories) which names match the given glob pattern.
+	 *
+	 * @param glob
+	 *            glob pattern, e.g. {@code *.dfq} (see {@link java.nio.file.FileSystem#getPathMatcher(String)})
+	 * @see #parse(Stream, String, IAqdefBatchHandler)
+	 */
+	public void parseDirectory(Path directory, String glob, String encoding, IAqdefBatchHandler handler) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, glob)) {
+			parse(files.iterator(), encoding, handler);
+		}
+	}
+
+	/**
+	 * Parses the given files. Returns when all the files were parsed and passed to the handler.
+	 *
+	 * @throws InterruptedIOException
+	 *             if the thread was interrupted while waiting for the files to be parsed (files that were already
+	 *             started are parsed anyway)
+	 */
+	public void parse(Stream<Path> files, String encoding, IAqdefBatchHandler handler) throws IOException {
+		parse(files.iterator(), encoding, handler);
+	}
+
+	private void parse(Iterator<Path> files, String encoding, IAqdefBatchHandler handler) throws IOException {
+		ExecutorService ownExecutor = executor == null ? createDefaultExecutor() : null;
+		Executor fileExecutor = executor == null ? ownExecutor : executor;
+
+		Phaser phaser = new Phaser(1);
+
+		try {
+			while (files.hasNext()) {
+				Path file = files.next();
+
+				if (!Files.isRegularFile(file)) {
+					continue;
+				}
+
+				long size;
+				try {
+					size = Files.size(file);
+				} catch (IOException e) {
+					handler.onError(file, e);
+					continue;
+				}
+
+				long reservedBytes = Math.min(size, memoryBudget);
+				reserve(reservedBytes);
+
+				phaser.register();
+				try {
+					fileExecutor.execute(() -> parseFile(file, encoding, handler, reservedBytes, phaser));
+				} catch (RejectedExecutionException e) {
+					phaser.arriveAndDeregister();
+					release(reservedBytes);
+					throw e;
+				}
+			}
+
+			phaser.awaitAdvanceInterruptibly(phaser.arrive());
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while parsing the batch of files.");
+
+		} finally {
+			if (ownExecutor != null) {
+				ownExecutor.shutdown();
+			}
+		}
+	}
+
+	private void parseFile(Path file, String encoding, IAqdefBatchHandler handler, long reservedBytes, Phaser phaser) {
+		try {
+			AqdefObjectModel aqdefObjectModel = parser.parseMapped(file, encoding);
+			handler.onObjectModel(file, aqdefObjectModel);
+
+		} catch (Exception e) {
+			handler.onError(file, e);
+
+		} finally {
+			release(reservedBytes);
+			phaser.arriveAndDeregister();
+		}
+	}
+
+	/**
+	 * Waits until a file of the given size may be parsed.
+	 */
+	private void reserve(long bytes) throws InterruptedException {
+		synchronized (lock) {
+			while (filesInProgress > 0 && (filesInProgress >= maxParallelFiles || bytesInProgress + bytes > memoryBudget)) {
+				lock.wait();
+			}
+
+			filesInProgress++;
+			bytesInProgress += bytes;
+		}
+	}
+
+	private void release(long bytes) {
+		synchronized (lock) {
+			filesInProgress--;
+			bytesInProgress -= bytes;
+
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * @return executor that starts a virtual thread for each task if the runtime supports it or a pool of
+	 *         {@link #maxParallelFiles} threads
+	 */
+	private ExecutorService createDefaultExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(maxParallelFiles);
+		}
+	}
+
+	/**
+	 * Sets the executor on which the files are parsed. The executor is not shut down by this parser.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the maximal number of files that are parsed at once. Default is the number of processors.
+	 */
+	public void setMaxParallelFiles(int maxParallelFiles) {
+		if (maxParallelFiles < 1) {
+			throw new IllegalArgumentException("At least one file has to be parsed at once. Max parallel files: " + maxParallelFiles);
+		}
+
+		this.maxParallelFiles = maxParallelFiles;
+	}
+
+	/**
+	 * Sets the maximal total size (in bytes) of the files that are parsed at once. The object model of a file takes
+	 * several times more memory than the file, so the budget should be a fraction of the available heap. Default is
+	 * 1/8 of the maximal heap size.
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		if (memoryBudget < 1) {
+			throw new IllegalArgumentException("Memory budget has to be positive. Memory budget: " + memoryBudget);
+		}
+
+		this.memoryBudget = memoryBudget;
+	}
+
+}
@@ -0,0 +1,40 @@
+package cz.diribet.aqdef.parser;
+
+import cz.diribet.aqdef.model.AqdefObjectModel;
+
+/**
+ * Result of {@link AqdefParser#parseHeader(java.nio.file.Path, String) header parsing}. Contains the object model with
+ * parts, characteristics, groups and hierarchy (without values) and the byte offset where the values start.
+ *
+ * @author Vlastimil Dolejs
+ */
+public final class AqdefHeader {
+
+	private final AqdefObjectModel objectModel;
+	private final long valuesOffset;
+
+	AqdefHeader(AqdefObjectModel objectModel, long valuesOffset) {
+		this.objectModel = objectModel;
+		this.valuesOffset = valuesOffset;
+	}
+
+	/**
+	 * @return object model with entries defined before the first value line
+	 */
+	public AqdefObjectModel getObjectModel() {
+		return objectModel;
+	}
+
+	/**
+	 * @return byte offset of the first value line or the size of the content if there are no values
+	 */
+	public long getValuesOffset() {
+		return valuesOffset;
+	}
+
+	@Override
+	public String toString() {
+		return "AqdefHeader [valuesOffset=" + valuesOffset + ", characteristicCount=" + objectModel.getCharacteristicCount() + "]";
+	}
+
+}
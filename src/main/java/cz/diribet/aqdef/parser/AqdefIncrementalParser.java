@@ -0,0 +1,216 @@
+package cz.diribet.aqdef.parser;
+
+import cz.diribet.aqdef.AqdefConstants;
+import cz.diribet.aqdef.KKey;
+import cz.diribet.aqdef.model.AqdefObjectModel;
+import cz.diribet.aqdef.parser.line.ByteLine;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parses AQDEF file that grows over time (e.g. a gauge appends the values during a shift). Each call of
+ * {@link #parseAppended()} parses only the content appended since the previous call and adds it to the same
+ * {@link AqdefObjectModel}, so the work per call is proportional to the appended content, not to the size of the file.
+ * <pre>
+ * AqdefIncrementalParser parser = new AqdefIncrementalParser(Paths.get("path_to_dfq"), "utf-8");
+ * AqdefObjectModel objectModel = parser.getAqdefObjectModel();
+ *
+ * // periodically
+ * if (parser.parseAppended()) {
+ *     // objectModel contains the appended values
+ * }
+ * </pre>
+ * <p>
+ * The parser keeps the state of the parsing between the calls - the current part, the characteristics of parts, the
+ * value index counters and the byte offset of the first unparsed line. Only complete lines (terminated by a line
+ * separator) are parsed, the last line is parsed once its line separator is written. The model is normalized after
+ * each call. When only values were appended, only the appended values are normalized.
+ * </p>
+ * <p>
+ * Only ASCII compatible encodings are supported. The model is modified by {@link #parseAppended()}, so it must not
+ * be read concurrently with it. If the parsing fails, the parser should not be used anymore.
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ *
+ * @see AqdefParser
+ */
+public class AqdefIncrementalParser implements AqdefConstants {
+
+	private final AqdefStreamingParser streamingParser = new AqdefStreamingParser();
+
+	private final Path file;
+	private final String encoding;
+	private final Charset charset;
+
+	private final ParserContext context = new ParserContext();
+	private final IncrementalObjectModelParserHandler handler;
+
+	/**
+	 * Byte offset of the first line that was not parsed yet
+	 */
+	private long offset;
+
+	/**
+	 * Number of the first line that was not parsed yet
+	 */
+	private int nextLine = 1;
+
+	/**
+	 * The last parsed line was terminated by \r - if the next content starts with \n, it belongs to that line
+	 */
+	private boolean pendingLineFeed;
+
+	public AqdefIncrementalParser(Path file, String encoding) {
+		this(file, encoding, new AqdefObjectModel());
+	}
+
+	/**
+	 * @param aqdefObjectModel
+	 *            model to which the parsed entries are added
+	 */
+	public AqdefIncrementalParser(Path file, String encoding, AqdefObjectModel aqdefObjectModel) {
+		this.file = file;
+		this.encoding = encoding;
+		this.charset = Charset.forName(encoding);
+
+		if (!ByteLine.isAsciiCompatible(charset)) {
+			throw new IllegalArgumentException("Only ASCII compatible encodings are supported. Encoding: " + encoding);
+		}
+
+		this.handler = new IncrementalObjectModelParserHandler(aqdefObjectModel);
+	}
+
+	/**
+	 * Parses the lines appended to the file since the previous call (the whole file on the first call) and adds
+	 * their entries to the {@link #getAqdefObjectModel() object model}.
+	 *
+	 * @return true if there were any new lines
+	 * @throws IOException
+	 *             if the file can't be read or if it is shorter than the already parsed content
+	 */
+	public boolean parseAppended() throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+
+			if (size < offset) {
+				throw new IOException("File " + file + " was truncated. Size: " + size + ", parsed bytes: " + offset);
+			}
+
+			boolean parsed = false;
+
+			while (offset < size) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size - offset, Integer.MAX_VALUE));
+
+				int parsedBytes = parseCompleteLines(buffer);
+
+				if (parsedBytes == 0) {
+					break;
+				}
+
+				offset += parsedBytes;
+				parsed = true;
+			}
+
+			if (parsed) {
+				handler.onEnd();
+			}
+
+			return parsed;
+		}
+	}
+
+	/**
+	 * @return number of bytes parsed from the beginning of the buffer
+	 */
+	private int parseCompleteLines(MappedByteBuffer buffer) throws IOException {
+		if (offset == 0 && "utf-8".equalsIgnoreCase(encoding)) {
+			AqdefStreamingParser.skipUtf8Bom(buffer);
+		}
+
+		if (pendingLineFeed && buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+			buffer.position(buffer.position() + 1);
+		}
+
+		int end = buffer.limit();
+
+		while (end > buffer.position() && buffer.get(end - 1) != '\n' && buffer.get(end - 1) != '\r') {
+			end--;
+		}
+
+		if (end == buffer.position()) {
+			// no complete line yet (bytes skipped above are parsed again next time)
+			return 0;
+		}
+
+		pendingLineFeed = buffer.get(end - 1) == '\r';
+
+		buffer.limit(end);
+		nextLine = streamingParser.parseLines(buffer, charset, handler, context, nextLine, offset);
+
+		return end;
+	}
+
+	/**
+	 * @return model with all the entries parsed so far
+	 */
+	public AqdefObjectModel getAqdefObjectModel() {
+		return handler.getAqdefObjectModel();
+	}
+
+	/**
+	 * @return byte offset of the first line that was not parsed yet
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Sets the pool used to parse the values in parallel.
+	 *
+	 * @see AqdefStreamingParser#setForkJoinPool(ForkJoinPool)
+	 */
+	public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+		streamingParser.setForkJoinPool(forkJoinPool);
+	}
+
+	/**
+	 * Set to true to convert the values when they are read from the object model for the first time.
+	 *
+	 * @see AqdefStreamingParser#setLazyValueConversion(boolean)
+	 */
+	public void setLazyValueConversion(boolean lazyValueConversion) {
+		streamingParser.setLazyValueConversion(lazyValueConversion);
+	}
+
+	/**
+	 * Sets the K-keys that should be parsed. The parsed object model contains only entries of these K-keys.
+	 *
+	 * @see AqdefStreamingParser#setProjection(KKeyProjection)
+	 */
+	public void setProjection(KKeyProjection projection) {
+		streamingParser.setProjection(projection);
+	}
+
+	/**
+	 * Set to true if the invalid K-key logging should be suppressed for all K-keys.
+	 */
+	public void setSuppressInvalidKKeyLogging(boolean suppressInvalidKKeyLogging) {
+		streamingParser.setSuppressInvalidKKeyLogging(suppressInvalidKKeyLogging);
+	}
+
+	/**
+	 * Set K-keys for which the invalid K-key logging should be suppressed.
+	 */
+	public void setSuppressInvalidKKeyLoggingFor(Set<KKey> suppressInvalidKKeyLoggingFor) {
+		streamingParser.setSuppressInvalidKKeyLoggingFor(suppressInvalidKKeyLoggingFor);
+	}
+
+}
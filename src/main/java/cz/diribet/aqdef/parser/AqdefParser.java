@@ -3,30 +3,32 @@ package cz.diribet.aqdef.parser;
 import cz.diribet.aqdef.AqdefConstants;
 import cz.diribet.aqdef.KKey;
 import cz.diribet.aqdef.model.AqdefObjectModel;
-import cz.diribet.aqdef.parser.line.AbstractLineParser;
-import cz.diribet.aqdef.parser.line.BinaryLineParser;
-import cz.diribet.aqdef.parser.line.KKeyLineParser;
-import org.apache.commons.io.input.BOMInputStream;
-import org.apache.commons.lang3.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  * Parses {@link AqdefObjectModel} from a AQDEF content (file or other data source)
+ * <p>
+ * If you don't need the whole object model in memory, use {@link AqdefStreamingParser} instead.
+ * </p>
  *
  * @author Vlastimil Dolejs
  *
  */
 public class AqdefParser implements AqdefConstants {
 
-	private static final Logger LOG = LoggerFactory.getLogger(AqdefParser.class);
-
-	private final AbstractLineParser kKeyLineParser = new KKeyLineParser();
-	private final AbstractLineParser binaryLineParser = new BinaryLineParser();
+	private final AqdefStreamingParser streamingParser = new AqdefStreamingParser();
+	private CheckpointListener checkpointListener;
 
 	public AqdefObjectModel parse(String content) throws IOException {
 		return parse(new StringReader(content));
@@ -37,103 +39,232 @@ public class AqdefParser implements AqdefConstants {
 	}
 
 	public AqdefObjectModel parse(File file, String encoding) throws IOException {
-		try (InputStream fileInputStream = createFileInputStream(file, encoding)) {
-			return parse(fileInputStream, encoding);
-		}
+		ObjectModelParserHandler handler = new ObjectModelParserHandler(checkpointListener);
+		streamingParser.parse(file, encoding, handler);
+		return handler.getAqdefObjectModel();
 	}
 
 	public AqdefObjectModel parse(InputStream inputStream, String encoding) throws IOException {
-		try (InputStreamReader inputStreamReader = new InputStreamReader(inputStream, encoding)) {
-			return parse(inputStreamReader);
-		}
+		ObjectModelParserHandler handler = new ObjectModelParserHandler(checkpointListener);
+		streamingParser.parse(inputStream, encoding, handler);
+		return handler.getAqdefObjectModel();
+	}
+
+	/**
+	 * Parses the file in the detected encoding.
+	 *
+	 * @see #setFallbackEncoding(String)
+	 */
+	public AqdefObjectModel parse(Path file) throws IOException {
+		ObjectModelParserHandler handler = new ObjectModelParserHandler(checkpointListener);
+		streamingParser.parse(file, handler);
+		return handler.getAqdefObjectModel();
+	}
+
+	/**
+	 * Parses the content of the stream in the detected encoding.
+	 *
+	 * @see #setFallbackEncoding(String)
+	 */
+	public AqdefObjectModel parse(InputStream inputStream) throws IOException {
+		ObjectModelParserHandler handler = new ObjectModelParserHandler(checkpointListener);
+		streamingParser.parse(inputStream, handler);
+		return handler.getAqdefObjectModel();
 	}
 
 	public AqdefObjectModel parse(Reader reader) throws IOException {
-		AqdefObjectModel aqdefObjectModel = new AqdefObjectModel();
-		ParserContext context = new ParserContext();
+		ObjectModelParserHandler handler = new ObjectModelParserHandler(checkpointListener);
+		streamingParser.parse(reader, handler);
+		return handler.getAqdefObjectModel();
+	}
 
-		int lineIndex = 1;
+	/**
+	 * Parses all the files of the ZIP archive and passes the object model of each file to the consumer. Files are
+	 * decompressed while they are parsed, nothing is extracted to disk.
+	 *
+	 * @param consumer
+	 *            consumer of the name of the file (path in the archive) and its object model
+	 * @see AqdefStreamingParser#parseZip(Path, String, Function)
+	 */
+	public void parseZip(Path file, String encoding, BiConsumer<String, AqdefObjectModel> consumer) throws IOException {
+		parseZip(Files.newInputStream(file), encoding, consumer);
+	}
 
-		try (BufferedReader bufferedReader = new BufferedReader(reader)) {
-			String line;
+	/**
+	 * Parses all the files of the ZIP archive in the stream and closes the stream.
+	 *
+	 * @see #parseZip(Path, String, BiConsumer)
+	 */
+	public void parseZip(InputStream inputStream, String encoding, BiConsumer<String, AqdefObjectModel> consumer) throws IOException {
+		streamingParser.parseZip(inputStream, encoding, fileName -> new ObjectModelParserHandler(checkpointListener) {
 
-			while ((line = bufferedReader.readLine()) != null) {
-				context.setCurrentLine(lineIndex);
+			@Override
+			public void onEnd() {
+				super.onEnd();
+				consumer.accept(fileName, getAqdefObjectModel());
+			}
+		});
+	}
 
-				try {
-					line = line.trim();
+	/**
+	 * Parses the file mapped to memory.
+	 *
+	 * @see AqdefStreamingParser#parseMapped(Path, String, IAqdefParserHandler)
+	 */
+	public AqdefObjectModel parseMapped(Path file, String encoding) throws IOException {
+		ObjectModelParserHandler handler = new ObjectModelParserHandler(checkpointListener);
+		streamingParser.parseMapped(file, encoding, handler);
+		return handler.getAqdefObjectModel();
+	}
 
-					if (StringUtils.isNotEmpty(line)) {
-						parseLine(line, aqdefObjectModel, context);
-					}
-				} catch (Throwable e) {
-					throw new DfqParserException(context, e);
-				}
+	/**
+	 * Parses the file in the detected encoding mapped to memory.
+	 *
+	 * @see #setFallbackEncoding(String)
+	 * @see AqdefStreamingParser#parseMapped(Path, IAqdefParserHandler)
+	 */
+	public AqdefObjectModel parseMapped(Path file) throws IOException {
+		ObjectModelParserHandler handler = new ObjectModelParserHandler(checkpointListener);
+		streamingParser.parseMapped(file, handler);
+		return handler.getAqdefObjectModel();
+	}
 
-				lineIndex++;
-			}
-		}
+	/**
+	 * Resumes parsing of the file from the given checkpoint. The entries after the checkpoint are added to the given
+	 * partial model, which is then normalized.
+	 *
+	 * @param partialModel
+	 *            model passed to the {@link CheckpointListener} together with the checkpoint (or its copy)
+	 * @see AqdefStreamingParser#parseMapped(Path, String, IAqdefParserHandler, ParserCheckpoint)
+	 */
+	public AqdefObjectModel parseMapped(Path file, String encoding, ParserCheckpoint checkpoint, AqdefObjectModel partialModel) throws IOException {
+		ObjectModelParserHandler handler = new ObjectModelParserHandler(partialModel, checkpointListener);
+		streamingParser.parseMapped(file, encoding, handler, checkpoint);
+		return handler.getAqdefObjectModel();
+	}
 
-		aqdefObjectModel.normalize();
+	/**
+	 * Parses the remaining bytes of the given buffer.
+	 *
+	 * @see AqdefStreamingParser#parse(ByteBuffer, Charset, IAqdefParserHandler)
+	 */
+	public AqdefObjectModel parse(ByteBuffer buffer, Charset charset) throws IOException {
+		ObjectModelParserHandler handler = new ObjectModelParserHandler(checkpointListener);
+		streamingParser.parse(buffer, charset, handler);
+		return handler.getAqdefObjectModel();
+	}
 
-		return aqdefObjectModel;
+	/**
+	 * Parses the content published in chunks of bytes as they arrive. No thread is blocked while waiting for the
+	 * content.
+	 *
+	 * @return future that is completed with the object model when all the published content was parsed
+	 * @see AqdefStreamingParser#parse(Flow.Publisher, String, IAqdefParserHandler)
+	 */
+	public CompletableFuture<AqdefObjectModel> parse(Flow.Publisher<ByteBuffer> publisher, String encoding) {
+		ObjectModelParserHandler handler = new ObjectModelParserHandler(checkpointListener);
+		return streamingParser.parse(publisher, encoding, handler).thenApply(v -> handler.getAqdefObjectModel());
+	}
+
+	/**
+	 * Parses only the header of the file (everything before the first value line). The values are not read at all.
+	 *
+	 * @return object model without values and the byte offset where the values start
+	 * @see AqdefStreamingParser#parseHeader(Path, String, IAqdefParserHandler)
+	 */
+	public AqdefHeader parseHeader(Path file, String encoding) throws IOException {
+		ObjectModelParserHandler handler = new ObjectModelParserHandler(checkpointListener);
+		long valuesOffset = streamingParser.parseHeader(file, encoding, handler);
+		return new AqdefHeader(handler.getAqdefObjectModel(), valuesOffset);
 	}
 
-	private void parseLine(String line, AqdefObjectModel aqdefObjectModel, ParserContext context) {
-		if (kKeyLineParser.isLineSupported(line)) {
-			kKeyLineParser.parseLine(line, aqdefObjectModel, context);
+	/**
+	 * Parses only the header (everything before the first value line) from the remaining bytes of the given buffer.
+	 *
+	 * @return object model without values and the position of the first value line in the buffer
+	 * @see AqdefStreamingParser#parseHeader(ByteBuffer, Charset, IAqdefParserHandler)
+	 */
+	public AqdefHeader parseHeader(ByteBuffer buffer, Charset charset) {
+		ObjectModelParserHandler handler = new ObjectModelParserHandler(checkpointListener);
+		int valuesOffset = streamingParser.parseHeader(buffer, charset, handler);
+		return new AqdefHeader(handler.getAqdefObjectModel(), valuesOffset);
+	}
 
-		} else if (binaryLineParser.isLineSupported(line)) {
-			binaryLineParser.parseLine(line, aqdefObjectModel, context);
+	/**
+	 * Sets the listener which is notified every {@code checkpointInterval} lines with the checkpoint and the model
+	 * parsed so far. The model is not normalized yet and it is modified after the listener returns, so it has to be
+	 * stored (or copied) by the listener.
+	 *
+	 * @see AqdefStreamingParser#setCheckpointInterval(int)
+	 */
+	public void setCheckpointListener(int checkpointInterval, CheckpointListener checkpointListener) {
+		this.checkpointListener = checkpointListener;
+		streamingParser.setCheckpointInterval(checkpointListener == null ? 0 : checkpointInterval);
+	}
 
-		} else {
-			LOG.warn("{} Invalid line format. This line will be discarded. Line content: {}",
-					 ParserContext.lineLogContext(context),
-					 line);
-		}
+	/**
+	 * Sets the encoding of the content which is not UTF-8 (and has no byte order mark) for the parse methods that
+	 * detect the encoding.
+	 *
+	 * @see AqdefStreamingParser#setFallbackEncoding(String)
+	 */
+	public void setFallbackEncoding(String fallbackEncoding) {
+		streamingParser.setFallbackEncoding(fallbackEncoding);
 	}
 
-	private InputStream createFileInputStream(File file, String encoding) throws FileNotFoundException {
-		InputStream inputStream = new FileInputStream(file);
+	/**
+	 * Sets the pool used to parse the values in parallel.
+	 *
+	 * @see AqdefStreamingParser#setForkJoinPool(ForkJoinPool)
+	 */
+	public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+		streamingParser.setForkJoinPool(forkJoinPool);
+	}
 
-		if ("utf-8".equalsIgnoreCase(encoding)) {
-			inputStream = new BOMInputStream(inputStream);
-		}
+	/**
+	 * Set to true to convert the values when they are read from the object model for the first time.
+	 *
+	 * @see AqdefStreamingParser#setLazyValueConversion(boolean)
+	 */
+	public void setLazyValueConversion(boolean lazyValueConversion) {
+		streamingParser.setLazyValueConversion(lazyValueConversion);
+	}
 
-		return inputStream;
+	/**
+	 * Sets the K-keys that should be parsed. The parsed object model contains only entries of these K-keys.
+	 *
+	 * @see AqdefStreamingParser#setProjection(KKeyProjection)
+	 */
+	public void setProjection(KKeyProjection projection) {
+		streamingParser.setProjection(projection);
 	}
 
 	/**
 	 * Set to true if the invalid K-key logging should be suppressed for all K-keys.
 	 */
 	public void setSuppressInvalidKKeyLogging(boolean suppressInvalidKKeyLogging) {
-		kKeyLineParser.setSuppressInvalidKKeyLogging(suppressInvalidKKeyLogging);
-		binaryLineParser.setSuppressInvalidKKeyLogging(suppressInvalidKKeyLogging);
+		streamingParser.setSuppressInvalidKKeyLogging(suppressInvalidKKeyLogging);
 	}
 
 	/**
 	 * Set K-keys for which the invalid K-key logging should be suppressed.
 	 */
 	public void setSuppressInvalidKKeyLoggingFor(Set<KKey> suppressInvalidKKeyLoggingFor) {
-		kKeyLineParser.setSuppressInvalidKKeyLoggingFor(suppressInvalidKKeyLoggingFor);
-		binaryLineParser.setSuppressInvalidKKeyLoggingFor(suppressInvalidKKeyLoggingFor);
+		streamingParser.setSuppressInvalidKKeyLoggingFor(suppressInvalidKKeyLoggingFor);
 	}
 
-	private static class DfqParserException extends RuntimeException {
-
-		DfqParserException(ParserContext context, Throwable cause) {
-			super(message(context, cause), cause);
-		}
-
-		private static String message(ParserContext context, Throwable cause) {
-			String message = "Failed to parse DFQ file. Error at line: " + context.getCurrentLine();
+	/**
+	 * Listener of the {@link ParserCheckpoint checkpoints} reported during parsing.
+	 */
+	@FunctionalInterface
+	public interface CheckpointListener {
 
-			if (cause != null && cause.getMessage() != null) {
-				message += " Cause: " + cause.getMessage();
-			}
+		/**
+		 * @param partialModel
+		 *            entries of all the lines before the checkpoint (not normalized)
+		 */
+		void onCheckpoint(ParserCheckpoint checkpoint, AqdefObjectModel partialModel);
 
-			return message;
-		}
 	}
 
 }
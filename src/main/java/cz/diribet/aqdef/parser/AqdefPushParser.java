@@ -0,0 +1,273 @@
+package cz.diribet.aqdef.parser;
+
+import cz.diribet.aqdef.AqdefConstants;
+import cz.diribet.aqdef.parser.line.ByteLine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Parses AQDEF content that is pushed to the parser in chunks of bytes as they arrive (e.g. from a non-blocking
+ * network connection), so no thread has to be blocked while waiting for the content.
+ * <pre>
+ * AqdefPushParser parser = new AqdefStreamingParser().createPushParser("utf-8", handler);
+ *
+ * // for each received chunk
+ * parser.feed(chunk);
+ *
+ * // when all the content was received
+ * parser.finish();
+ * </pre>
+ * <p>
+ * Complete lines of each chunk are parsed directly from the chunk. Only the last incomplete line of the chunk is
+ * copied and kept until the rest of the line arrives. Entries are reported to the handler on the thread that called
+ * {@link #feed(ByteBuffer)} or {@link #finish()}.
+ * </p>
+ * <p>
+ * The parser can also be subscribed to a {@link Flow.Publisher} of byte buffers. The next chunk is requested after the
+ * previous one was parsed. The result of parsing is available as {@link #getCompletion() completion}.
+ * </p>
+ * <p>
+ * Only ASCII compatible encodings are supported. The parser is not thread safe - the chunks must be fed one after
+ * another. The parser can't be used again after {@link #finish()} or after the parsing failed.
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ *
+ * @see AqdefStreamingParser#createPushParser(String, IAqdefParserHandler)
+ */
+public class AqdefPushParser implements Flow.Subscriber<ByteBuffer>, AqdefConstants {
+
+	private static final int INITIAL_PENDING_LINE_SIZE = 256;
+
+	private final AqdefStreamingParser streamingParser;
+	private final Charset charset;
+	private final IAqdefParserHandler handler;
+
+	private final ParserContext context = new ParserContext();
+	private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+	/**
+	 * Bytes of the incomplete line that were already fed
+	 */
+	private byte[] pendingLine = new byte[INITIAL_PENDING_LINE_SIZE];
+	private int pendingLineLength;
+
+	/**
+	 * Number of bytes that were fed before the pending line (or before the next chunk if there is no pending line)
+	 */
+	private long offset;
+
+	/**
+	 * Number of the next line
+	 */
+	private int nextLine = 1;
+
+	private boolean started;
+	private boolean finished;
+
+	private Flow.Subscription subscription;
+
+	AqdefPushParser(AqdefStreamingParser streamingParser, String encoding, IAqdefParserHandler handler) {
+		this.streamingParser = streamingParser;
+		this.charset = Charset.forName(encoding);
+		this.handler = handler;
+
+		if (!ByteLine.isAsciiCompatible(charset)) {
+			throw new IllegalArgumentException("Only ASCII compatible encodings are supported. Encoding: " + encoding);
+		}
+	}
+
+	/**
+	 * Parses all the complete lines of the remaining bytes of the given chunk. The incomplete line at the end of the
+	 * chunk is parsed when the rest of the line is fed (or when {@link #finish()} is called). All the remaining bytes
+	 * of the chunk are consumed.
+	 */
+	public void feed(ByteBuffer chunk) throws IOException {
+		if (finished) {
+			throw new IllegalStateException("Parsing was already finished.");
+		}
+
+		ByteBuffer buffer = chunk.duplicate();
+		chunk.position(chunk.limit());
+
+		if (!buffer.hasRemaining()) {
+			return;
+		}
+
+		if (pendingLineLength > 0 || !started) {
+			int lineEnd = findFirstLineEnd(buffer);
+
+			if (lineEnd == -1) {
+				appendToPendingLine(buffer, buffer.limit());
+				return;
+			}
+
+			appendToPendingLine(buffer, lineEnd);
+			parsePendingLine();
+		}
+
+		int end = findLastLineEnd(buffer);
+
+		if (end > buffer.position()) {
+			ByteBuffer lines = buffer.duplicate();
+			lines.limit(end);
+
+			nextLine = streamingParser.parseLines(lines, charset, handler, context, nextLine, offset - buffer.position());
+
+			offset += end - buffer.position();
+			buffer.position(end);
+		}
+
+		appendToPendingLine(buffer, buffer.limit());
+	}
+
+	/**
+	 * Parses the last line (if it is not terminated by a line separator) and calls
+	 * {@link IAqdefParserHandler#onEnd()}.
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			throw new IllegalStateException("Parsing was already finished.");
+		}
+
+		if (pendingLineLength > 0) {
+			parsePendingLine();
+		}
+
+		finished = true;
+		handler.onEnd();
+	}
+
+	/**
+	 * Parses the pending line and clears it. The first line may start with the UTF-8 byte order mark, so it is always
+	 * parsed as a pending line.
+	 */
+	private void parsePendingLine() throws IOException {
+		ByteBuffer line = ByteBuffer.wrap(pendingLine, 0, pendingLineLength);
+
+		if (!started && StandardCharsets.UTF_8.equals(charset)) {
+			AqdefStreamingParser.skipUtf8Bom(line);
+		}
+
+		nextLine = streamingParser.parseLines(line, charset, handler, context, nextLine, offset);
+
+		offset += pendingLineLength;
+		pendingLineLength = 0;
+		started = true;
+	}
+
+	/**
+	 * Appends the bytes from the position of the buffer to the given end to the pending line.
+	 */
+	private void appendToPendingLine(ByteBuffer buffer, int end) {
+		int length = end - buffer.position();
+
+		if (pendingLineLength + length > pendingLine.length) {
+			pendingLine = Arrays.copyOf(pendingLine, Math.max(pendingLine.length * 2, pendingLineLength + length));
+		}
+
+		buffer.get(pendingLine, pendingLineLength, length);
+		pendingLineLength += length;
+	}
+
+	/**
+	 * @return position after the first line separator in the buffer or -1 if there is no line separator (\r at the
+	 *         end of the buffer is not considered a line separator yet, because it may be followed by \n in the next
+	 *         chunk)
+	 */
+	private static int findFirstLineEnd(ByteBuffer buffer) {
+		for (int i = buffer.position(); i < buffer.limit(); i++) {
+			byte b = buffer.get(i);
+
+			if (b == '\n') {
+				return i + 1;
+			}
+
+			if (b == '\r' && i + 1 < buffer.limit()) {
+				return buffer.get(i + 1) == '\n' ? i + 2 : i + 1;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return position after the last line separator in the buffer or the buffer position if there is no line
+	 *         separator (\r at the end of the buffer is not considered a line separator yet)
+	 */
+	private static int findLastLineEnd(ByteBuffer buffer) {
+		int end = buffer.limit();
+
+		if (end > buffer.position() && buffer.get(end - 1) == '\r') {
+			end--;
+		}
+
+		while (end > buffer.position() && buffer.get(end - 1) != '\n' && buffer.get(end - 1) != '\r') {
+			end--;
+		}
+
+		return end;
+	}
+
+	/**
+	 * @return future that is completed when the parsing of the content from {@link Flow.Publisher} finished (or
+	 *         completed exceptionally if the parsing or the publisher failed)
+	 */
+	public CompletableFuture<Void> getCompletion() {
+		return completion;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		if (this.subscription != null) {
+			subscription.cancel();
+			return;
+		}
+
+		this.subscription = subscription;
+		subscription.request(1);
+	}
+
+	@Override
+	public void onNext(ByteBuffer chunk) {
+		if (completion.isDone()) {
+			return;
+		}
+
+		try {
+			feed(chunk);
+		} catch (Throwable e) {
+			subscription.cancel();
+			completion.completeExceptionally(e);
+			return;
+		}
+
+		subscription.request(1);
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		completion.completeExceptionally(throwable);
+	}
+
+	@Override
+	public void onComplete() {
+		if (completion.isDone()) {
+			return;
+		}
+
+		try {
+			finish();
+			completion.complete(null);
+		} catch (Throwable e) {
+			completion.completeExceptionally(e);
+		}
+	}
+
+}
@@ -0,0 +1,940 @@
+package cz.diribet.aqdef.parser;
+
+import cz.diribet.aqdef.AqdefConstants;
+import cz.diribet.aqdef.KKey;
+import cz.diribet.aqdef.model.AqdefObjectModel;
+import cz.diribet.aqdef.model.UnconvertedValue;
+import cz.diribet.aqdef.parser.line.AbstractLineParser;
+import cz.diribet.aqdef.parser.line.BinaryLineParser;
+import cz.diribet.aqdef.parser.line.ByteLine;
+import cz.diribet.aqdef.parser.line.KKeyLineParser;
+import cz.diribet.aqdef.parser.line.LineClassifier;
+import com.google.common.base.Throwables;
+import org.apache.commons.io.input.BOMInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Parses AQDEF content (file or other data source) and reports its entries to a {@link IAqdefParserHandler} as the
+ * lines are read.
+ * <p>
+ * Unlike {@link AqdefParser} it does not create {@link AqdefObjectModel}, so the memory consumption does not depend
+ * on the number of values in the AQDEF content. Only the information about parts and characteristics needed to
+ * assign the values is kept during parsing.
+ * </p>
+ * <pre>
+ * AqdefStreamingParser parser = new AqdefStreamingParser();
+ * parser.parse(Paths.get("path_to_dfq"), "utf-8", new IAqdefParserHandler() {
+ *
+ *     public void onValueEntry(KKey key, ValueIndex index, Object value) {
+ *         // do some stuff
+ *     }
+ * });
+ * </pre>
+ *
+ * @author Vlastimil Dolejs
+ *
+ * @see IAqdefParserHandler
+ */
+public class AqdefStreamingParser implements AqdefConstants {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AqdefStreamingParser.class);
+
+	/**
+	 * Maximal number of chunks (per thread) of the value section that are parsed in parallel at once. The first chunk
+	 * of a value section is parsed alone and the number of chunks parsed at once is doubled with each round, so the
+	 * short value sections (e.g. values of many small parts) do not start the parsing of chunks that are not used.
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+	private static final int MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final AbstractLineParser kKeyLineParser = new KKeyLineParser();
+	private final AbstractLineParser binaryLineParser = new BinaryLineParser();
+
+	private static final String DEFAULT_FALLBACK_ENCODING = "windows-1252";
+
+	private ForkJoinPool forkJoinPool;
+	private int checkpointInterval;
+	private String fallbackEncoding = DEFAULT_FALLBACK_ENCODING;
+
+	/**
+	 * Approximate size of the value section chunk (in bytes) that is parsed by a single task.
+	 */
+	int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	/**
+	 * Maximal size of the part of a file that is mapped to memory at once.
+	 */
+	int mappedSize = MAX_MAPPED_SIZE;
+
+	public void parse(String content, IAqdefParserHandler handler) throws IOException {
+		parse(new StringReader(content), handler);
+	}
+
+	public void parse(Path file, String encoding, IAqdefParserHandler handler) throws IOException {
+		parse(file.toFile(), encoding, handler);
+	}
+
+	/**
+	 * Parses the file in the detected encoding.
+	 *
+	 * @see #setFallbackEncoding(String)
+	 */
+	public void parse(Path file, IAqdefParserHandler handler) throws IOException {
+		parse(file.toFile(), handler);
+	}
+
+	/**
+	 * Parses the file. Gzip compressed file is decompressed while it is parsed.
+	 */
+	public void parse(File file, String encoding, IAqdefParserHandler handler) throws IOException {
+		parse(new FileInputStream(file), encoding, handler);
+	}
+
+	/**
+	 * Parses the file in the detected encoding.
+	 *
+	 * @see #setFallbackEncoding(String)
+	 */
+	public void parse(File file, IAqdefParserHandler handler) throws IOException {
+		parseStream(new FileInputStream(file), null, handler);
+	}
+
+	/**
+	 * Parses the content of the stream and closes it. Gzip compressed content is decompressed while it is parsed.
+	 * Use {@link #parseZip(InputStream, String, Function)} for ZIP archives.
+	 */
+	public void parse(InputStream inputStream, String encoding, IAqdefParserHandler handler) throws IOException {
+		parseStream(inputStream, encoding, handler);
+	}
+
+	/**
+	 * Parses the content of the stream in the detected encoding and closes the stream.
+	 *
+	 * @see #setFallbackEncoding(String)
+	 */
+	public void parse(InputStream inputStream, IAqdefParserHandler handler) throws IOException {
+		parseStream(inputStream, null, handler);
+	}
+
+	/**
+	 * @param encoding
+	 *            encoding of the content or {@code null} if it should be detected
+	 */
+	private void parseStream(InputStream inputStream, String encoding, IAqdefParserHandler handler) throws IOException {
+		try (InputStream bufferedInputStream = new BufferedInputStream(inputStream, BUFFER_SIZE)) {
+			parseDecompressed(bufferedInputStream, encoding, handler);
+		}
+	}
+
+	/**
+	 * Parses all the files of the ZIP archive. Files can be gzip compressed too. Files are decompressed while they
+	 * are parsed, nothing is extracted to disk.
+	 *
+	 * @param handlerForFile
+	 *            returns handler for the file with the given name (path in the archive) or {@code null} if the file
+	 *            should be skipped
+	 * @throws IOException
+	 *             if the archive can't be read or if any of the files can't be parsed (the name of the file is in the
+	 *             message)
+	 */
+	public void parseZip(Path file, String encoding, Function<String, IAqdefParserHandler> handlerForFile) throws IOException {
+		parseZip(Files.newInputStream(file), encoding, handlerForFile);
+	}
+
+	/**
+	 * Parses all the files of the ZIP archive in the stream and closes the stream.
+	 *
+	 * @see #parseZip(Path, String, Function)
+	 */
+	public void parseZip(InputStream inputStream, String encoding, Function<String, IAqdefParserHandler> handlerForFile) throws IOException {
+		try (ZipInputStream zipInputStream = new ZipInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE))) {
+			ZipEntry entry;
+
+			while ((entry = zipInputStream.getNextEntry()) != null) {
+				if (entry.isDirectory()) {
+					continue;
+				}
+
+				IAqdefParserHandler handler = handlerForFile.apply(entry.getName());
+				if (handler == null) {
+					continue;
+				}
+
+				try {
+					InputStream entryInputStream = new BufferedInputStream(CloseShieldInputStream.wrap(zipInputStream), BUFFER_SIZE);
+					parseDecompressed(entryInputStream, encoding, handler);
+				} catch (IOException | RuntimeException e) {
+					throw new IOException("Failed to parse file " + entry.getName() + " of ZIP archive.", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses the content of the stream which may be gzip compressed.
+	 *
+	 * @param inputStream
+	 *            stream that supports {@link InputStream#mark(int)}
+	 * @param encoding
+	 *            encoding of the content or {@code null} if it should be detected
+	 */
+	private void parseDecompressed(InputStream inputStream, String encoding, IAqdefParserHandler handler) throws IOException {
+		switch (Compression.of(inputStream)) {
+			case GZIP:
+				// closing releases the native inflater right away (the given stream is closed too, but the callers allow it)
+				try (InputStream decompressedInputStream = new BufferedInputStream(new GZIPInputStream(inputStream, BUFFER_SIZE), BUFFER_SIZE)) {
+					parseBytes(decompressedInputStream, detectEncodingIfNeeded(decompressedInputStream, encoding), handler);
+				}
+				break;
+
+			case ZIP:
+				throw new IOException("Content is a ZIP archive. Use parseZip to parse the files of the archive.");
+
+			default:
+				encoding = detectEncodingIfNeeded(inputStream, encoding);
+
+				if ("utf-8".equalsIgnoreCase(encoding)) {
+					inputStream = new BOMInputStream(inputStream);
+				}
+
+				parse(new InputStreamReader(inputStream, encoding), handler);
+		}
+	}
+
+	private String detectEncodingIfNeeded(InputStream inputStream, String encoding) throws IOException {
+		return encoding == null ? EncodingDetector.detect(inputStream, fallbackEncoding) : encoding;
+	}
+
+	/**
+	 * Parses the bytes of the stream (without closing it) chunk by chunk using {@link AqdefPushParser}, so the lines
+	 * are not decoded to Strings.
+	 */
+	private void parseBytes(InputStream inputStream, String encoding, IAqdefParserHandler handler) throws IOException {
+		if (!ByteLine.isAsciiCompatible(Charset.forName(encoding))) {
+			parse(new InputStreamReader(CloseShieldInputStream.wrap(inputStream), encoding), handler);
+			return;
+		}
+
+		AqdefPushParser pushParser = createPushParser(encoding, handler);
+
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int length;
+
+		while ((length = inputStream.read(buffer)) != -1) {
+			pushParser.feed(ByteBuffer.wrap(buffer, 0, length));
+		}
+
+		pushParser.finish();
+	}
+
+	public void parse(Reader reader, IAqdefParserHandler handler) throws IOException {
+		ParserContext context = new ParserContext();
+
+		int lineIndex = 1;
+
+		try (BufferedReader bufferedReader = new BufferedReader(reader)) {
+			String line;
+
+			while ((line = bufferedReader.readLine()) != null) {
+				context.setCurrentLine(lineIndex);
+
+				try {
+					line = line.trim();
+
+					if (StringUtils.isNotEmpty(line)) {
+						parseLine(line, handler, context);
+					}
+				} catch (Throwable e) {
+					throw new DfqParserException(context, e);
+				}
+
+				lineIndex++;
+			}
+		}
+
+		handler.onEnd();
+	}
+
+	/**
+	 * Parses the file mapped to memory. Lines are parsed directly from bytes and only the values of String K-keys are
+	 * decoded using the given encoding. This is considerably faster than reading the file through a {@link Reader},
+	 * especially when you parse many files. Files larger than 2 GB are mapped by parts.
+	 * <p>
+	 * Content in encodings which are not ASCII compatible (e.g. UTF-16) and compressed files are parsed using
+	 * {@link #parse(File, String, IAqdefParserHandler)}.
+	 * </p>
+	 */
+	public void parseMapped(Path file, String encoding, IAqdefParserHandler handler) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (Compression.of(channel) != Compression.NONE) {
+				parse(Channels.newInputStream(channel), encoding, handler);
+				return;
+			}
+
+			parseMapped(channel, encoding, handler);
+		}
+	}
+
+	/**
+	 * Parses the file in the detected encoding mapped to memory.
+	 *
+	 * @see #setFallbackEncoding(String)
+	 * @see #parseMapped(Path, String, IAqdefParserHandler)
+	 */
+	public void parseMapped(Path file, IAqdefParserHandler handler) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (Compression.of(channel) != Compression.NONE) {
+				parse(Channels.newInputStream(channel), handler);
+				return;
+			}
+
+			parseMapped(channel, EncodingDetector.detect(channel, fallbackEncoding), handler);
+		}
+	}
+
+	private void parseMapped(FileChannel channel, String encoding, IAqdefParserHandler handler) throws IOException {
+		Charset charset = Charset.forName(encoding);
+
+		if (!ByteLine.isAsciiCompatible(charset)) {
+			parse(Channels.newInputStream(channel), encoding, handler);
+			return;
+		}
+
+		boolean skipBom = "utf-8".equalsIgnoreCase(encoding);
+		parseMapped(channel, charset, skipBom, handler, new ParserContext(), 0, 1);
+
+		handler.onEnd();
+	}
+
+	/**
+	 * Resumes parsing of the file from the given checkpoint. Entries of the lines before the checkpoint are not
+	 * reported, the following entries are reported the same way (with the same indexes) as if the whole file was
+	 * parsed.
+	 *
+	 * @param checkpoint
+	 *            checkpoint reported to {@link IAqdefParserHandler#onCheckpoint(ParserCheckpoint)} during the previous
+	 *            parsing of the same file
+	 * @see #setCheckpointInterval(int)
+	 */
+	public void parseMapped(Path file, String encoding, IAqdefParserHandler handler, ParserCheckpoint checkpoint) throws IOException {
+		Charset charset = Charset.forName(encoding);
+
+		if (!ByteLine.isAsciiCompatible(charset)) {
+			throw new IllegalArgumentException("Parsing can be resumed only for ASCII compatible encodings. Encoding: " + encoding);
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (Compression.of(channel) != Compression.NONE) {
+				throw new IllegalArgumentException("Parsing of compressed file can't be resumed. File: " + file);
+			}
+
+			if (checkpoint.getOffset() > channel.size()) {
+				throw new IOException("Checkpoint " + checkpoint + " is beyond the end of file " + file);
+			}
+
+			parseMapped(channel, charset, false, handler, checkpoint.createContext(), checkpoint.getOffset(), checkpoint.getLine());
+		}
+
+		handler.onEnd();
+	}
+
+	/**
+	 * Maps the file from the given offset to memory (by parts of at most {@link #mappedSize} bytes ending with a
+	 * complete line) and parses it.
+	 */
+	private void parseMapped(FileChannel channel,
+							 Charset charset,
+							 boolean skipBom,
+							 IAqdefParserHandler handler,
+							 ParserContext context,
+							 long offset,
+							 int firstLine) throws IOException {
+
+		long size = channel.size();
+		int lineIndex = firstLine;
+
+		while (offset < size) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size - offset, mappedSize));
+
+			if (offset == 0 && skipBom) {
+				skipUtf8Bom(buffer);
+			}
+
+			if (offset + buffer.limit() < size) {
+				int end = findLastLineStart(buffer);
+
+				if (end <= buffer.position()) {
+					throw new IOException("Line at offset " + offset + " is longer than " + mappedSize + " bytes.");
+				}
+
+				buffer.limit(end);
+			}
+
+			lineIndex = parseLines(buffer, charset, handler, context, lineIndex, offset);
+			offset += buffer.limit();
+		}
+	}
+
+	/**
+	 * @return position after the last line feed in the buffer (or after the last carriage return if there is no line
+	 *         feed) or the buffer position if there is no line terminator
+	 */
+	private static int findLastLineStart(ByteBuffer buffer) {
+		int lastCarriageReturn = -1;
+
+		for (int i = buffer.limit() - 1; i >= buffer.position(); i--) {
+			byte b = buffer.get(i);
+
+			if (b == '\n') {
+				return i + 1;
+			}
+
+			if (b == '\r' && lastCarriageReturn == -1) {
+				lastCarriageReturn = i;
+			}
+		}
+
+		return lastCarriageReturn == -1 ? buffer.position() : lastCarriageReturn + 1;
+	}
+
+	/**
+	 * Parses the remaining bytes of the given buffer. Lines are parsed directly from bytes and only the values of
+	 * String K-keys are decoded using the given charset.
+	 */
+	public void parse(ByteBuffer buffer, Charset charset, IAqdefParserHandler handler) throws IOException {
+		if (!ByteLine.isAsciiCompatible(charset)) {
+			parse(new StringReader(charset.decode(buffer).toString()), handler);
+			return;
+		}
+
+		parseLines(buffer, charset, handler, new ParserContext(), 1, 0);
+
+		handler.onEnd();
+	}
+
+	/**
+	 * Creates a parser to which the content can be pushed in chunks of bytes as they arrive. The parser uses the
+	 * settings of this parser.
+	 *
+	 * @param encoding
+	 *            ASCII compatible encoding
+	 * @see AqdefPushParser
+	 */
+	public AqdefPushParser createPushParser(String encoding, IAqdefParserHandler handler) {
+		return new AqdefPushParser(this, encoding, handler);
+	}
+
+	/**
+	 * Subscribes a {@link #createPushParser(String, IAqdefParserHandler) push parser} to the given publisher. The
+	 * content is parsed on the threads that publish it.
+	 *
+	 * @param encoding
+	 *            ASCII compatible encoding
+	 * @return future that is completed when all the published content was parsed
+	 */
+	public CompletableFuture<Void> parse(Flow.Publisher<ByteBuffer> publisher, String encoding, IAqdefParserHandler handler) {
+		AqdefPushParser pushParser = createPushParser(encoding, handler);
+		publisher.subscribe(pushParser);
+
+		return pushParser.getCompletion();
+	}
+
+	/**
+	 * Parses the lines between the position and the limit of the given buffer using the given context, so the parsing
+	 * may continue where the previous parsing ended. {@link IAqdefParserHandler#onEnd()} is not called.
+	 *
+	 * @param charset
+	 *            ASCII compatible charset
+	 * @param firstLine
+	 *            number of the first line in the buffer
+	 * @param bufferOffset
+	 *            offset of the buffer in the parsed content (used for checkpoints)
+	 * @return number of the line following the last parsed line
+	 */
+	int parseLines(ByteBuffer buffer,
+				   Charset charset,
+				   IAqdefParserHandler handler,
+				   ParserContext context,
+				   int firstLine,
+				   long bufferOffset) throws IOException {
+
+		ByteLine line = new ByteLine(buffer, charset);
+
+		int lineIndex = firstLine;
+		int position = buffer.position();
+		int limit = buffer.limit();
+
+		boolean inValueSection = false;
+
+		while (position < limit) {
+			int lineEnd = findLineEnd(buffer, position, limit);
+			line.reset(position, lineEnd);
+
+			if (!line.isEmpty()) {
+				boolean valueLine = isValueLine(line);
+
+				if (valueLine && !inValueSection && isParallelParsingWorthIt(limit - position)) {
+					ValueChunk lastChunk = parseValueSection(buffer, charset, position, lineIndex, limit, handler, context, bufferOffset);
+
+					position = lastChunk.getResumePosition();
+					lineIndex = lastChunk.getResumeLine();
+					continue;
+				}
+
+				inValueSection = valueLine;
+			}
+
+			context.setCurrentLine(lineIndex);
+
+			try {
+				if (!line.isEmpty()) {
+					parseLine(line, handler, context);
+				}
+			} catch (Throwable e) {
+				throw new DfqParserException(context, e);
+			}
+
+			lineIndex++;
+			position = findNextLineStart(buffer, lineEnd, limit);
+
+			checkpointIfNeeded(handler, context, bufferOffset + position, lineIndex - 1, lineIndex);
+		}
+
+		return lineIndex;
+	}
+
+	/**
+	 * Reports a checkpoint to the handler if a multiple of {@link #checkpointInterval} lines was parsed.
+	 *
+	 * @param offset
+	 *            offset of the next line
+	 */
+	private void checkpointIfNeeded(IAqdefParserHandler handler, ParserContext context, long offset, int previousLine, int nextLine) {
+		if (checkpointInterval > 0 && (nextLine - 1) / checkpointInterval > (previousLine - 1) / checkpointInterval) {
+			handler.onCheckpoint(new ParserCheckpoint(offset, nextLine, context.copy()));
+		}
+	}
+
+	/**
+	 * Parses only the header of the file - all the lines before the first value line (K0xxx K-key or binary value
+	 * line). The file is mapped to memory and only the header pages are read, so the time does not depend on the
+	 * number of values.
+	 *
+	 * @return byte offset (from the start of the file) of the first value line or the size of the file if there are
+	 *         no values
+	 * @see #parseHeader(ByteBuffer, Charset, IAqdefParserHandler)
+	 */
+	public long parseHeader(Path file, String encoding, IAqdefParserHandler handler) throws IOException {
+		Charset charset = Charset.forName(encoding);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+
+			// header of larger files has to fit to the first 2 GB
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+
+			if ("utf-8".equalsIgnoreCase(encoding)) {
+				skipUtf8Bom(buffer);
+			}
+
+			int valuesOffset = parseHeader(buffer, charset, handler);
+
+			return valuesOffset == buffer.limit() ? size : valuesOffset;
+		}
+	}
+
+	/**
+	 * Parses the remaining bytes of the given buffer until the first value line (K0xxx K-key or binary value line) is
+	 * found. Parts, characteristics, groups and hierarchy defined before the first value line are reported to the
+	 * handler (and the {@link IAqdefParserHandler#onEnd()} is called). Value lines and everything after them (e.g.
+	 * parts that follow the values of the previous part) are not parsed.
+	 * <p>
+	 * Only ASCII compatible charsets are supported, so that the returned position is a byte offset in the content.
+	 * </p>
+	 *
+	 * @return position of the first value line in the buffer or the buffer limit if there are no values
+	 */
+	public int parseHeader(ByteBuffer buffer, Charset charset, IAqdefParserHandler handler) {
+		if (!ByteLine.isAsciiCompatible(charset)) {
+			throw new IllegalArgumentException("Header can be parsed only from content in ASCII compatible charset. Charset: " + charset);
+		}
+
+		ParserContext context = new ParserContext();
+		ByteLine line = new ByteLine(buffer, charset);
+
+		int lineIndex = 1;
+		int position = buffer.position();
+		int limit = buffer.limit();
+
+		while (position < limit) {
+			int lineEnd = findLineEnd(buffer, position, limit);
+			line.reset(position, lineEnd);
+
+			if (!line.isEmpty()) {
+				if (isHeaderEnd(line)) {
+					break;
+				}
+
+				context.setCurrentLine(lineIndex);
+
+				try {
+					parseLine(line, handler, context);
+				} catch (Throwable e) {
+					throw new DfqParserException(context, e);
+				}
+			}
+
+			lineIndex++;
+			position = findNextLineStart(buffer, lineEnd, limit);
+		}
+
+		handler.onEnd();
+
+		return position;
+	}
+
+	/**
+	 * Parses the value lines starting at the given position on the fork join pool. The value section is parsed in
+	 * rounds of chunks, at most {@link #CHUNKS_PER_THREAD} chunks per thread are parsed at once, so the memory needed
+	 * for recorded values is limited. Parsing ends with the chunk in which the value section ends.
+	 *
+	 * @return the last parsed chunk - parsing should continue at its resume position
+	 */
+	private ValueChunk parseValueSection(ByteBuffer buffer,
+										 Charset charset,
+										 int start,
+										 int firstLine,
+										 int limit,
+										 IAqdefParserHandler handler,
+										 ParserContext context,
+										 long bufferOffset) throws IOException {
+
+		int maxChunkCount = forkJoinPool.getParallelism() * CHUNKS_PER_THREAD;
+		int chunkCount = 1;
+
+		int position = start;
+		int lineIndex = firstLine;
+
+		while (true) {
+			List<ValueChunk> chunks = createChunks(buffer, position, limit, chunkCount);
+
+			// number of the first line of the other chunks is known after the previous chunks are parsed
+			chunks.get(0).setFirstLine(lineIndex);
+
+			AtomicInteger earliestStopPosition = new AtomicInteger(Integer.MAX_VALUE);
+			invokeAll(chunks, chunk -> chunk.parse(this, buffer, charset, context, earliestStopPosition));
+
+			for (ValueChunk chunk : chunks) {
+				chunk.setFirstLine(lineIndex);
+				chunk.replay(handler, context);
+
+				int previousLineIndex = lineIndex;
+				lineIndex = chunk.getResumeLine();
+
+				checkpointIfNeeded(handler, context, bufferOffset + chunk.getResumePosition(), previousLineIndex, lineIndex);
+
+				if (chunk.isStopped() || !isParallelParsingWorthIt(limit - chunk.getResumePosition())) {
+					// the following chunks were parsed with outdated context (or the rest is parsed sequentially)
+					return chunk;
+				}
+			}
+
+			position = chunks.get(chunks.size() - 1).getResumePosition();
+			chunkCount = Math.min(2 * chunkCount, maxChunkCount);
+		}
+	}
+
+	private List<ValueChunk> createChunks(ByteBuffer buffer, int start, int limit, int maxChunkCount) {
+		List<ValueChunk> chunks = new ArrayList<>();
+		int chunkStart = start;
+
+		while (chunkStart < limit && chunks.size() < maxChunkCount) {
+			int chunkEnd;
+
+			if (limit - chunkStart <= chunkSize) {
+				chunkEnd = limit;
+			} else {
+				chunkEnd = findNextLineStart(buffer, findLineEnd(buffer, chunkStart + chunkSize, limit), limit);
+			}
+
+			chunks.add(new ValueChunk(chunkStart, chunkEnd));
+			chunkStart = chunkEnd;
+		}
+
+		return chunks;
+	}
+
+	private void invokeAll(List<ValueChunk> chunks, Consumer<ValueChunk> action) throws IOException {
+		List<Callable<Void>> tasks = new ArrayList<>(chunks.size());
+
+		for (ValueChunk chunk : chunks) {
+			tasks.add(() -> {
+				action.accept(chunk);
+				return null;
+			});
+		}
+
+		try {
+			for (Future<Void> future : forkJoinPool.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Parsing of AQDEF content was interrupted.");
+
+		} catch (ExecutionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private boolean isParallelParsingWorthIt(int remainingBytes) {
+		return forkJoinPool != null && forkJoinPool.getParallelism() > 1 && remainingBytes > 2 * chunkSize;
+	}
+
+	/**
+	 * Lines with K-keys of value level (K0xxx except K0100 and K0101 which are part of the header) and binary value
+	 * lines. These lines do not change the parser context (except for value indexes).
+	 */
+	static boolean isValueLine(ByteLine line) {
+		if (line.byteAt(0) != 'K') {
+			return true;
+		}
+
+		return line.length() > 1 && line.byteAt(1) == '0' && !line.startsWith("K0100") && !line.startsWith("K0101");
+	}
+
+	/**
+	 * First line of the values - binary value line or line with value K-key (K0xxx). K0100 and K0101 are part of the
+	 * header even though they start with K0.
+	 */
+	static boolean isHeaderEnd(ByteLine line) {
+		switch (LineClassifier.classify(line)) {
+			case BINARY:
+			case SINGLE_VALUE:
+				return true;
+
+			case K_KEY:
+				return line.byteAt(1) == '0' && !line.startsWith("K0100") && !line.startsWith("K0101");
+
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * @return position of the line terminator (\n, \r or \r\n) of the line starting at the given position
+	 */
+	static int findLineEnd(ByteBuffer buffer, int position, int limit) {
+		while (position < limit) {
+			byte b = buffer.get(position);
+
+			if (b == '\n' || b == '\r') {
+				return position;
+			}
+
+			position++;
+		}
+
+		return limit;
+	}
+
+	/**
+	 * @return position after the line terminator (\n, \r or \r\n) at the given position
+	 */
+	static int findNextLineStart(ByteBuffer buffer, int lineEnd, int limit) {
+		if (lineEnd >= limit) {
+			return limit;
+		}
+
+		int position = lineEnd + 1;
+
+		if (buffer.get(lineEnd) == '\r' && position < limit && buffer.get(position) == '\n') {
+			position++;
+		}
+
+		return position;
+	}
+
+	void parseLine(ByteLine line, IAqdefParserHandler handler, ParserContext context) {
+		switch (LineClassifier.classify(line)) {
+			case K_KEY:
+				kKeyLineParser.parseLine(line, handler, context);
+				break;
+
+			case BINARY:
+			case SINGLE_VALUE:
+				binaryLineParser.parseLine(line, handler, context);
+				break;
+
+			default:
+				logInvalidLine(line, context);
+		}
+	}
+
+	static void skipUtf8Bom(ByteBuffer buffer) {
+		int position = buffer.position();
+
+		if (buffer.remaining() >= 3 &&
+			buffer.get(position) == (byte) 0xEF &&
+			buffer.get(position + 1) == (byte) 0xBB &&
+			buffer.get(position + 2) == (byte) 0xBF) {
+
+			buffer.position(position + 3);
+		}
+	}
+
+	private void parseLine(String line, IAqdefParserHandler handler, ParserContext context) {
+		switch (LineClassifier.classify(line)) {
+			case K_KEY:
+				kKeyLineParser.parseLine(line, handler, context);
+				break;
+
+			case BINARY:
+			case SINGLE_VALUE:
+				binaryLineParser.parseLine(line, handler, context);
+				break;
+
+			default:
+				logInvalidLine(line, context);
+		}
+	}
+
+	private void logInvalidLine(Object line, ParserContext context) {
+		LOG.warn("{} Invalid line format. This line will be discarded. Line content: {}",
+				 ParserContext.lineLogContext(context),
+				 line);
+	}
+
+	/**
+	 * Sets the pool used to parse the values in parallel. If set, the value lines of byte content
+	 * ({@link #parse(ByteBuffer, Charset, IAqdefParserHandler)}, {@link #parseMapped(Path, String, IAqdefParserHandler)})
+	 * are split to chunks which are parsed on this pool. The handler is always called from the thread that called
+	 * the parse method and receives the values in the same order (and with the same indexes) as if they were
+	 * parsed sequentially.
+	 * <p>
+	 * Set to {@code null} (default) to parse everything sequentially. Small content is always parsed sequentially.
+	 * </p>
+	 */
+	public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+		this.forkJoinPool = forkJoinPool;
+	}
+
+	/**
+	 * Sets the encoding of the content which is not UTF-8 (and has no byte order mark) for the parse methods that
+	 * detect the encoding. Default is windows-1252.
+	 */
+	public void setFallbackEncoding(String fallbackEncoding) {
+		this.fallbackEncoding = Charset.forName(fallbackEncoding).name();
+	}
+
+	/**
+	 * Sets the number of lines after which the {@link ParserCheckpoint checkpoint} is reported to
+	 * {@link IAqdefParserHandler#onCheckpoint(ParserCheckpoint)}. Checkpoints are reported only when the content is
+	 * parsed from bytes ({@link #parseMapped(Path, String, IAqdefParserHandler)},
+	 * {@link #parse(ByteBuffer, Charset, IAqdefParserHandler)}). When the values are parsed in parallel, the checkpoint
+	 * may be reported a few lines later (at the end of a chunk of values).
+	 * <p>
+	 * Set to 0 (default) to disable the checkpoints.
+	 * </p>
+	 */
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * Set to true to convert the values lazily. Values of part, characteristic and value K-keys that are not Strings
+	 * are then reported to the handler as {@link UnconvertedValue} and converted when they are read from the
+	 * entries of the object model for the first time. This speeds up parsing when only some of the K-keys are read.
+	 * <p>
+	 * Invalid values are not discarded during parsing. They are converted to {@code null} when read (and the
+	 * failure is logged at that time), and binary values with an invalid value still get a value index.
+	 * </p>
+	 */
+	public void setLazyValueConversion(boolean lazyValueConversion) {
+		kKeyLineParser.setLazyValueConversion(lazyValueConversion);
+		binaryLineParser.setLazyValueConversion(lazyValueConversion);
+	}
+
+	/**
+	 * Sets the K-keys that should be parsed. All the other K-keys are skipped - they are not converted and not
+	 * reported to the handler. Group, hierarchy and catalog K-keys out of the projection are skipped right after the
+	 * K-key is recognized. Part, characteristic and value K-keys out of the projection still update the indexes
+	 * (current part, characteristics of parts, value indexes), so the projected entries get the same indexes as
+	 * without the projection.
+	 * <p>
+	 * Set to {@code null} (default) to parse all K-keys.
+	 * </p>
+	 */
+	public void setProjection(KKeyProjection projection) {
+		kKeyLineParser.setProjection(projection);
+		binaryLineParser.setProjection(projection);
+	}
+
+	/**
+	 * Set to true if the invalid K-key logging should be suppressed for all K-keys.
+	 */
+	public void setSuppressInvalidKKeyLogging(boolean suppressInvalidKKeyLogging) {
+		kKeyLineParser.setSuppressInvalidKKeyLogging(suppressInvalidKKeyLogging);
+		binaryLineParser.setSuppressInvalidKKeyLogging(suppressInvalidKKeyLogging);
+	}
+
+	/**
+	 * Set K-keys for which the invalid K-key logging should be suppressed.
+	 */
+	public void setSuppressInvalidKKeyLoggingFor(Set<KKey> suppressInvalidKKeyLoggingFor) {
+		kKeyLineParser.setSuppressInvalidKKeyLoggingFor(suppressInvalidKKeyLoggingFor);
+		binaryLineParser.setSuppressInvalidKKeyLoggingFor(suppressInvalidKKeyLoggingFor);
+	}
+
+	static class DfqParserException extends RuntimeException {
+
+		DfqParserException(ParserContext context, Throwable cause) {
+			super(message(context, cause), cause);
+		}
+
+		private static String message(ParserContext context, Throwable cause) {
+			String message = "Failed to parse DFQ file. Error at line: " + context.getCurrentLine();
+
+			if (cause != null && cause.getMessage() != null) {
+				message += " Cause: " + cause.getMessage();
+			}
+
+			return message;
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package cz.diribet.aqdef.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Compression of AQDEF content detected from its first bytes (magic number).
+ *
+ * @author Vlastimil Dolejs
+ */
+enum Compression {
+
+	NONE,
+
+	/**
+	 * Single gzip compressed file
+	 */
+	GZIP,
+
+	/**
+	 * ZIP archive (of one or more files)
+	 */
+	ZIP;
+
+	private static final int MAGIC_LENGTH = 4;
+
+	/**
+	 * Detects the compression of the stream. The stream has to support {@link InputStream#mark(int)}, the read bytes
+	 * are {@link InputStream#reset()} back to the stream.
+	 */
+	static Compression of(InputStream inputStream) throws IOException {
+		byte[] magic = new byte[MAGIC_LENGTH];
+
+		inputStream.mark(MAGIC_LENGTH);
+
+		int length = 0;
+		int read;
+		while (length < MAGIC_LENGTH && (read = inputStream.read(magic, length, MAGIC_LENGTH - length)) != -1) {
+			length += read;
+		}
+
+		inputStream.reset();
+
+		return of(magic, length);
+	}
+
+	/**
+	 * Detects the compression of the file. The position of the channel is not changed.
+	 */
+	static Compression of(FileChannel channel) throws IOException {
+		ByteBuffer magic = ByteBuffer.allocate(MAGIC_LENGTH);
+
+		while (magic.hasRemaining() && channel.read(magic, magic.position()) > 0) {
+			// read until the buffer is full or the end of the file is reached
+		}
+
+		return of(magic.array(), magic.position());
+	}
+
+	private static Compression of(byte[] magic, int length) {
+		if (length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+			return GZIP;
+		}
+
+		if (length == MAGIC_LENGTH && magic[0] == 'P' && magic[1] == 'K'
+				&& ((magic[2] == 3 && magic[3] == 4) || (magic[2] == 5 && magic[3] == 6))) {
+			return ZIP;
+		}
+
+		return NONE;
+	}
+
+}
@@ -0,0 +1,164 @@
+package cz.diribet.aqdef.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Detects the encoding of AQDEF content from its first bytes.
+ * <ol>
+ * <li>Byte order mark of UTF-8 or UTF-16 is used if present.</li>
+ * <li>UTF-8 is used if the first {@link #BLOCK_SIZE} bytes are valid UTF-8 (including plain ASCII).</li>
+ * <li>The fallback encoding (typically a single byte encoding like windows-1252) is used otherwise.</li>
+ * </ol>
+ * AQDEF files contain non-ASCII characters mostly in the header (part and characteristic descriptions), so checking
+ * the first block is enough to distinguish UTF-8 from the single byte encodings.
+ *
+ * @author Vlastimil Dolejs
+ */
+final class EncodingDetector {
+
+	static final int BLOCK_SIZE = 64 * 1024;
+
+	private static final String UTF_8 = "utf-8";
+	private static final String UTF_16 = "UTF-16";
+
+	private static final long NON_ASCII_MASK = 0x8080808080808080L;
+
+	private EncodingDetector() {}
+
+	/**
+	 * Detects the encoding of the stream. The stream has to support {@link InputStream#mark(int)}, the read bytes
+	 * are {@link InputStream#reset()} back to the stream.
+	 */
+	static String detect(InputStream inputStream, String fallbackEncoding) throws IOException {
+		byte[] block = new byte[BLOCK_SIZE];
+
+		inputStream.mark(BLOCK_SIZE);
+
+		int length = 0;
+		int read;
+		while (length < BLOCK_SIZE && (read = inputStream.read(block, length, BLOCK_SIZE - length)) != -1) {
+			length += read;
+		}
+
+		inputStream.reset();
+
+		return detect(ByteBuffer.wrap(block, 0, length), fallbackEncoding);
+	}
+
+	/**
+	 * Detects the encoding of the file. The position of the channel is not changed.
+	 */
+	static String detect(FileChannel channel, String fallbackEncoding) throws IOException {
+		ByteBuffer block = ByteBuffer.allocate((int) Math.min(BLOCK_SIZE, channel.size()));
+
+		while (block.hasRemaining() && channel.read(block, block.position()) > 0) {
+			// read until the block is full or the end of the file is reached
+		}
+
+		block.flip();
+
+		return detect(block, fallbackEncoding);
+	}
+
+	/**
+	 * Detects the encoding of the remaining bytes of the buffer. The position of the buffer is not changed.
+	 */
+	static String detect(ByteBuffer block, String fallbackEncoding) {
+		int position = block.position();
+		int limit = block.limit();
+
+		if (startsWith(block, 0xEF, 0xBB, 0xBF)) {
+			return UTF_8;
+		}
+
+		if (startsWith(block, 0xFE, 0xFF) || startsWith(block, 0xFF, 0xFE)) {
+			return UTF_16;
+		}
+
+		return isUtf8(block, position, limit) ? UTF_8 : fallbackEncoding;
+	}
+
+	private static boolean startsWith(ByteBuffer block, int... bytes) {
+		if (block.remaining() < bytes.length) {
+			return false;
+		}
+
+		for (int i = 0; i < bytes.length; i++) {
+			if ((block.get(block.position() + i) & 0xFF) != bytes[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks whether the bytes are valid UTF-8. Sequence of bytes that is cut by the end of the block is considered
+	 * valid.
+	 */
+	static boolean isUtf8(ByteBuffer block, int start, int end) {
+		ByteBuffer words = block.duplicate().order(ByteOrder.nativeOrder());
+
+		int i = start;
+
+		while (i < end) {
+			// skip ASCII 8 bytes at once
+			if (i + Long.BYTES <= end && (words.getLong(i) & NON_ASCII_MASK) == 0) {
+				i += Long.BYTES;
+				continue;
+			}
+
+			int b = block.get(i) & 0xFF;
+
+			if (b < 0x80) {
+				i++;
+				continue;
+			}
+
+			int length;
+			int min = 0x80;
+			int max = 0xBF;
+
+			if (b >= 0xC2 && b <= 0xDF) {
+				length = 2;
+			} else if (b >= 0xE0 && b <= 0xEF) {
+				length = 3;
+				if (b == 0xE0) {
+					min = 0xA0; // overlong encoding
+				} else if (b == 0xED) {
+					max = 0x9F; // surrogates
+				}
+			} else if (b >= 0xF0 && b <= 0xF4) {
+				length = 4;
+				if (b == 0xF0) {
+					min = 0x90; // overlong encoding
+				} else if (b == 0xF4) {
+					max = 0x8F; // above U+10FFFF
+				}
+			} else {
+				return false;
+			}
+
+			for (int j = 1; j < length; j++) {
+				if (i + j >= end) {
+					return true;
+				}
+
+				int continuation = block.get(i + j) & 0xFF;
+
+				if (continuation < (j == 1 ? min : 0x80) || continuation > (j == 1 ? max : 0xBF)) {
+					return false;
+				}
+			}
+
+			i += length;
+		}
+
+		return true;
+	}
+
+}
@@ -0,0 +1,35 @@
+package cz.diribet.aqdef.parser;
+
+import cz.diribet.aqdef.model.AqdefObjectModel;
+
+import java.nio.file.Path;
+
+/**
+ * Receives the object models of the files parsed by {@link AqdefBatchParser}.
+ * <p>
+ * Methods are called from the threads that parse the files, so the handler has to be thread safe. The memory of the
+ * object model is released (and another file may start to be parsed) after {@link #onObjectModel(Path, AqdefObjectModel)}
+ * returns.
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ *
+ * @see AqdefBatchParser
+ */
+@FunctionalInterface
+public interface IAqdefBatchHandler {
+
+	void onObjectModel(Path file, AqdefObjectModel aqdefObjectModel) throws Exception;
+
+	/**
+	 * Called when the file can't be parsed or when {@link #onObjectModel(Path, AqdefObjectModel)} failed. The other
+	 * files are parsed anyway.
+	 * <p>
+	 * The default implementation logs the error.
+	 * </p>
+	 */
+	default void onError(Path file, Exception e) {
+		AqdefBatchParser.LOG.error("Failed to parse file: {}", file, e);
+	}
+
+}
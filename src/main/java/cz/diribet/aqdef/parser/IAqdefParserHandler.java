@@ -0,0 +1,53 @@
+package cz.diribet.aqdef.parser;
+
+import cz.diribet.aqdef.KKey;
+import cz.diribet.aqdef.model.CharacteristicIndex;
+import cz.diribet.aqdef.model.GroupIndex;
+import cz.diribet.aqdef.model.PartIndex;
+import cz.diribet.aqdef.model.ValueIndex;
+
+/**
+ * Receives the content of AQDEF file from {@link AqdefStreamingParser} while the lines are being parsed.
+ * <p>
+ * Entries are reported in the same order as they appear in the AQDEF content. Entries with {@code /0} index (entries
+ * that apply to all parts / characteristics / values) are reported as they are. It is up to the handler to apply
+ * them to other entries if needed.
+ * </p>
+ * <p>
+ * Values passed to the handler are already converted to the data type of the K-key (unless the
+ * {@link AqdefStreamingParser#setLazyValueConversion(boolean) lazy value conversion} is enabled) and are never
+ * {@code null}. Entries of K-keys out of the {@link AqdefStreamingParser#setProjection(KKeyProjection) projection}
+ * are not reported.
+ * All the methods have an empty default implementation, so you can implement only those you are interested in.
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ *
+ * @see AqdefStreamingParser
+ */
+public interface IAqdefParserHandler {
+
+	default void onPartEntry(KKey key, PartIndex index, Object value) {}
+
+	default void onCharacteristicEntry(KKey key, CharacteristicIndex index, Object value) {}
+
+	default void onGroupEntry(KKey key, GroupIndex index, Object value) {}
+
+	default void onValueEntry(KKey key, ValueIndex index, Object value) {}
+
+	default void onHierarchyEntry(KKey key, Integer nodeIndex, Object value) {}
+
+	/**
+	 * Called every {@link AqdefStreamingParser#setCheckpointInterval(int) N lines} (if enabled) after all the entries
+	 * of the preceding lines were reported. Parsing can be resumed from the checkpoint later.
+	 *
+	 * @see AqdefStreamingParser#parseMapped(java.nio.file.Path, String, IAqdefParserHandler, ParserCheckpoint)
+	 */
+	default void onCheckpoint(ParserCheckpoint checkpoint) {}
+
+	/**
+	 * Called once after the whole AQDEF content was parsed.
+	 */
+	default void onEnd() {}
+
+}
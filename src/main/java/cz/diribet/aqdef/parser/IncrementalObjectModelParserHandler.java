@@ -0,0 +1,314 @@
+package cz.diribet.aqdef.parser;
+
+import cz.diribet.aqdef.KKey;
+import cz.diribet.aqdef.model.AqdefObjectModel;
+import cz.diribet.aqdef.model.AqdefObjectModel.CharacteristicEntries;
+import cz.diribet.aqdef.model.AqdefObjectModel.PartEntries;
+import cz.diribet.aqdef.model.AqdefObjectModel.ValueEntries;
+import cz.diribet.aqdef.model.CharacteristicIndex;
+import cz.diribet.aqdef.model.GroupIndex;
+import cz.diribet.aqdef.model.PartIndex;
+import cz.diribet.aqdef.model.ValueIndex;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Handler that puts the parsed entries to {@link AqdefObjectModel} that grows as more content is parsed by
+ * {@link AqdefIncrementalParser}. The model is normalized at the end of each increment.
+ * <p>
+ * Entries with {@code /0} index are not put to the model directly, but kept aside, so they can be applied to the
+ * entries parsed in the following increments too. If the increment contains only values (the usual case when
+ * values are appended to a file), only the values of the increment and the values with the same value index as the
+ * {@code /0} value entries of the increment are normalized. Otherwise the whole model is normalized.
+ * </p>
+ * <p>
+ * Entries defined explicitly (with their own index) take precedence over the {@code /0} entries. The explicit entries
+ * with the K-key of a {@code /0} entry are remembered, all the other entries with such K-key were put by the
+ * normalization and they are overwritten when the {@code /0} entry is changed by a later increment. So the model is
+ * the same as if the whole content was parsed at once.
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ */
+class IncrementalObjectModelParserHandler implements IAqdefParserHandler {
+
+	private static final PartIndex ALL_PARTS = PartIndex.of(0);
+	private static final CharacteristicIndex ALL_CHARACTERISTICS = CharacteristicIndex.of(ALL_PARTS, 0);
+
+	private final AqdefObjectModel aqdefObjectModel;
+
+	/*
+	 * All the /0 entries parsed so far
+	 */
+	private final PartEntries entriesForAllParts = new PartEntries(ALL_PARTS);
+	private final Map<CharacteristicIndex, CharacteristicEntries> entriesForAllCharacteristics = new LinkedHashMap<>();
+	private final Map<Integer, ValueEntries> entriesForAllValues = new HashMap<>();
+
+	/*
+	 * Indexes of the entries with explicit value of a K-key for which there is a /0 entry
+	 */
+	private final Map<KKey, Set<PartIndex>> explicitPartKeys = new HashMap<>();
+	private final Map<KKey, Set<CharacteristicIndex>> explicitCharacteristicKeys = new HashMap<>();
+	private final Map<KKey, Set<ValueIndex>> explicitValueKeys = new HashMap<>();
+
+	private boolean structureChanged;
+	private final Set<ValueIndex> newValueIndexes = new LinkedHashSet<>();
+	private final Set<Integer> newValueIndexesForAll = new LinkedHashSet<>();
+
+	IncrementalObjectModelParserHandler(AqdefObjectModel aqdefObjectModel) {
+		this.aqdefObjectModel = aqdefObjectModel;
+	}
+
+	@Override
+	public void onPartEntry(KKey key, PartIndex index, Object value) {
+		structureChanged = true;
+
+		if (ALL_PARTS.equals(index)) {
+			if (!entriesForAllParts.containsKey(key)) {
+				// existing entries with this K-key could not be put by the normalization
+				aqdefObjectModel.forEachPart(part -> {
+					if (part.containsKey(key)) {
+						addExplicitKey(explicitPartKeys, key, part.getIndex());
+					}
+				});
+			}
+
+			entriesForAllParts.put(key, value);
+
+		} else {
+			if (entriesForAllParts.containsKey(key)) {
+				addExplicitKey(explicitPartKeys, key, index);
+			}
+
+			aqdefObjectModel.putPartEntry(key, index, value);
+		}
+	}
+
+	@Override
+	public void onCharacteristicEntry(KKey key, CharacteristicIndex index, Object value) {
+		structureChanged = true;
+
+		if (Integer.valueOf(0).equals(index.getCharacteristicIndex())) {
+			if (!isKeyForAllCharacteristics(key)) {
+				// existing entries with this K-key could not be put by the normalization
+				aqdefObjectModel.forEachCharacteristic((part, characteristic) -> {
+					if (characteristic.containsKey(key)) {
+						addExplicitKey(explicitCharacteristicKeys, key, characteristic.getIndex());
+					}
+				});
+			}
+
+			entriesForAllCharacteristics.computeIfAbsent(index, CharacteristicEntries::new).put(key, value);
+
+		} else {
+			if (isKeyForAllCharacteristics(key)) {
+				addExplicitKey(explicitCharacteristicKeys, key, index);
+			}
+
+			aqdefObjectModel.putCharacteristicEntry(key, index, value);
+		}
+	}
+
+	@Override
+	public void onGroupEntry(KKey key, GroupIndex index, Object value) {
+		structureChanged = true;
+		aqdefObjectModel.putGroupEntry(key, index, value);
+	}
+
+	@Override
+	public void onValueEntry(KKey key, ValueIndex index, Object value) {
+		Integer valueIndexNumber = index.getValueIndex();
+		ValueEntries entries = entriesForAllValues.get(valueIndexNumber);
+
+		if (ALL_CHARACTERISTICS.equals(index.getCharacteristicIndex())) {
+			if (entries == null || !entries.containsKey(key)) {
+				// existing entries with this K-key could not be put by the normalization
+				aqdefObjectModel.forEachCharacteristic((part, characteristic) -> {
+					ValueIndex valueIndex = ValueIndex.of(characteristic.getIndex(), valueIndexNumber);
+					ValueEntries existingValue = aqdefObjectModel.getValueEntries(valueIndex);
+
+					if (existingValue != null && existingValue.containsKey(key)) {
+						addExplicitKey(explicitValueKeys, key, valueIndex);
+					}
+				});
+			}
+
+			entriesForAllValues.computeIfAbsent(valueIndexNumber, i -> new ValueEntries(index)).put(key, value);
+			newValueIndexesForAll.add(valueIndexNumber);
+
+		} else {
+			if (entries != null && entries.containsKey(key)) {
+				addExplicitKey(explicitValueKeys, key, index);
+			}
+
+			aqdefObjectModel.putValueEntry(key, index, value);
+			newValueIndexes.add(index);
+		}
+	}
+
+	@Override
+	public void onHierarchyEntry(KKey key, Integer nodeIndex, Object value) {
+		structureChanged = true;
+		aqdefObjectModel.putHierarchyEntry(key, nodeIndex, value);
+	}
+
+	/**
+	 * Normalizes the entries of the parsed increment.
+	 */
+	@Override
+	public void onEnd() {
+		if (structureChanged) {
+			normalizeAll();
+		} else {
+			normalizeNewValues();
+		}
+
+		structureChanged = false;
+		newValueIndexes.clear();
+		newValueIndexesForAll.clear();
+	}
+
+	/**
+	 * Puts all the {@code /0} entries to the model and normalizes it. The normalization does not overwrite existing
+	 * entries, so the entries put by the previous normalization are then overwritten by the current {@code /0}
+	 * entries (they may have changed since).
+	 */
+	private void normalizeAll() {
+		if (!entriesForAllParts.isEmpty()) {
+			aqdefObjectModel.putPartEntries(entriesForAllParts);
+		}
+
+		entriesForAllCharacteristics.values().forEach(aqdefObjectModel::putCharacteristicEntries);
+		entriesForAllValues.values().forEach(aqdefObjectModel::putValueEntries);
+
+		aqdefObjectModel.normalize();
+
+		aqdefObjectModel.forEachPart(part -> {
+			entriesForAllParts.forEach((key, entry) -> {
+				if (!isExplicitKey(explicitPartKeys, key, part.getIndex())) {
+					part.put(key, entry.getValue());
+				}
+			});
+		});
+
+		Map<KKey, Object> valuesForAllCharacteristics = getValuesForAllCharacteristics();
+
+		aqdefObjectModel.forEachCharacteristic((part, characteristic) -> {
+			valuesForAllCharacteristics.forEach((key, value) -> {
+				if (!isExplicitKey(explicitCharacteristicKeys, key, characteristic.getIndex())) {
+					characteristic.put(key, value);
+				}
+			});
+
+			entriesForAllValues.forEach((valueIndexNumber, entries) -> {
+				applyEntriesForAllValues(ValueIndex.of(characteristic.getIndex(), valueIndexNumber), entries);
+			});
+		});
+	}
+
+	/**
+	 * Values of the {@code /0} characteristic entries merged in the same order as by
+	 * {@link AqdefObjectModel#normalize()} - entries for all the parts first, then the entries of the parts in the
+	 * order of the parts (the first value of the K-key wins).
+	 */
+	private Map<KKey, Object> getValuesForAllCharacteristics() {
+		Map<KKey, Object> values = new LinkedHashMap<>();
+
+		CharacteristicEntries entriesOfAllParts = entriesForAllCharacteristics.get(ALL_CHARACTERISTICS);
+		if (entriesOfAllParts != null) {
+			entriesOfAllParts.forEach((key, entry) -> values.putIfAbsent(key, entry.getValue()));
+		}
+
+		aqdefObjectModel.forEachPart(part -> {
+			CharacteristicEntries entriesOfPart = entriesForAllCharacteristics.get(CharacteristicIndex.of(part.getIndex(), 0));
+
+			if (entriesOfPart != null) {
+				entriesOfPart.forEach((key, entry) -> values.putIfAbsent(key, entry.getValue()));
+			}
+		});
+
+		return values;
+	}
+
+	private boolean isKeyForAllCharacteristics(KKey key) {
+		for (CharacteristicEntries entries : entriesForAllCharacteristics.values()) {
+			if (entries.containsKey(key)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Applies {@code /0} value entries to the new values and the new {@code /0} value entries to the already parsed
+	 * values with the same value index.
+	 */
+	private void normalizeNewValues() {
+		for (ValueIndex valueIndex : newValueIndexes) {
+			if (!isNormalized(valueIndex.getCharacteristicIndex())) {
+				continue;
+			}
+
+			ValueEntries entries = entriesForAllValues.get(valueIndex.getValueIndex());
+
+			if (entries != null) {
+				applyEntriesForAllValues(valueIndex, entries);
+			}
+		}
+
+		for (Integer valueIndexNumber : newValueIndexesForAll) {
+			ValueEntries entries = entriesForAllValues.get(valueIndexNumber);
+
+			aqdefObjectModel.forEachCharacteristic((part, characteristic) -> {
+				applyEntriesForAllValues(ValueIndex.of(characteristic.getIndex(), valueIndexNumber), entries);
+			});
+		}
+	}
+
+	/**
+	 * Puts the {@code /0} value entries to the value with the given index (if it exists). Only the explicit entries of
+	 * the value are not overwritten.
+	 */
+	private void applyEntriesForAllValues(ValueIndex valueIndex, ValueEntries entries) {
+		ValueEntries value = aqdefObjectModel.getValueEntries(valueIndex);
+
+		if (value == null) {
+			return;
+		}
+
+		entries.forEach((key, entry) -> {
+			if (!isExplicitKey(explicitValueKeys, key, valueIndex)) {
+				value.put(key, entry.getValue());
+			}
+		});
+	}
+
+	private static <I> void addExplicitKey(Map<KKey, Set<I>> explicitKeys, KKey key, I index) {
+		explicitKeys.computeIfAbsent(key, k -> new HashSet<>()).add(index);
+	}
+
+	private static <I> boolean isExplicitKey(Map<KKey, Set<I>> explicitKeys, KKey key, I index) {
+		Set<I> indexes = explicitKeys.get(key);
+		return indexes != null && indexes.contains(index);
+	}
+
+	/**
+	 * {@link AqdefObjectModel#normalize()} applies the {@code /0} value entries only to the values of existing
+	 * characteristics of existing parts.
+	 */
+	private boolean isNormalized(CharacteristicIndex characteristicIndex) {
+		return aqdefObjectModel.getPartEntries(characteristicIndex.getPartIndex()) != null
+				&& aqdefObjectModel.getCharacteristicEntries(characteristicIndex) != null;
+	}
+
+	AqdefObjectModel getAqdefObjectModel() {
+		return aqdefObjectModel;
+	}
+
+}
@@ -0,0 +1,106 @@
+package cz.diribet.aqdef.parser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import cz.diribet.aqdef.KKey;
+import cz.diribet.aqdef.KKey.Level;
+
+/**
+ * K-keys that should be parsed. Set it to the parser to skip all the other K-keys. Entries of the skipped K-keys are
+ * not converted and not reported to the handler (and so they are not in the parsed object model).
+ * <p>
+ * The projection is immutable. It contains the K-keys given by
+ * {@link #of(String...)} / {@link #withKeys(String...)} and all the K-keys of the levels given by
+ * {@link #ofLevels(Level...)} / {@link #withLevels(Level...)}:
+ *
+ * <pre>
+ *  KKeyProjection projection = KKeyProjection.of("K1001", "K1002", "K2001", "K2002", "K0001", "K0004")
+ *                                            .withLevels(Level.GROUP);
+ * </pre>
+ * </p>
+ * <p>
+ * Note that the object model contains only parts / characteristics that have some entries in the projection.
+ * Entries with {@code /0} index are applied only to these parts / characteristics during the normalization, so keep
+ * at least one identifying K-key (e.g. {@code K1001}, {@code K2001}) in the projection if you need them.
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ *
+ * @see AqdefStreamingParser#setProjection(KKeyProjection)
+ */
+public final class KKeyProjection {
+
+	private static final KKeyProjection EMPTY = new KKeyProjection(new HashSet<>(), EnumSet.noneOf(Level.class));
+
+	private final Set<KKey> keys;
+	private final EnumSet<Level> levels;
+
+	private KKeyProjection(Set<KKey> keys, EnumSet<Level> levels) {
+		this.keys = keys;
+		this.levels = levels;
+	}
+
+	public static KKeyProjection of(String... keys) {
+		return EMPTY.withKeys(keys);
+	}
+
+	public static KKeyProjection of(KKey... keys) {
+		return EMPTY.withKeys(keys);
+	}
+
+	public static KKeyProjection ofLevels(Level... levels) {
+		return EMPTY.withLevels(levels);
+	}
+
+	/**
+	 * @param keys
+	 * @return new projection that contains also the given K-keys
+	 */
+	public KKeyProjection withKeys(String... keys) {
+		return withKeys(Arrays.stream(keys).map(KKey::of).toArray(KKey[]::new));
+	}
+
+	/**
+	 * @param keys
+	 * @return new projection that contains also the given K-keys
+	 */
+	public KKeyProjection withKeys(KKey... keys) {
+		Set<KKey> newKeys = new HashSet<>(this.keys);
+		newKeys.addAll(Arrays.asList(keys));
+
+		return new KKeyProjection(newKeys, levels);
+	}
+
+	/**
+	 * @param levels
+	 * @return new projection that contains also all the K-keys of the given levels
+	 */
+	public KKeyProjection withLevels(Level... levels) {
+		EnumSet<Level> newLevels = EnumSet.copyOf(this.levels);
+		newLevels.addAll(Arrays.asList(levels));
+
+		return new KKeyProjection(keys, newLevels);
+	}
+
+	public boolean contains(KKey key) {
+		return keys.contains(key) || levels.contains(key.getLevel());
+	}
+
+	public Set<KKey> getKeys() {
+		return Collections.unmodifiableSet(keys);
+	}
+
+	public Set<Level> getLevels() {
+		return Collections.unmodifiableSet(levels);
+	}
+
+	@Override
+	public String toString() {
+		return "KKeyProjection [keys=" + keys + ", levels=" + levels + "]";
+	}
+
+}
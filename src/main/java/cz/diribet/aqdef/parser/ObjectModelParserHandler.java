@@ -0,0 +1,75 @@
+package cz.diribet.aqdef.parser;
+
+import cz.diribet.aqdef.KKey;
+import cz.diribet.aqdef.model.AqdefObjectModel;
+import cz.diribet.aqdef.model.CharacteristicIndex;
+import cz.diribet.aqdef.model.GroupIndex;
+import cz.diribet.aqdef.model.PartIndex;
+import cz.diribet.aqdef.model.ValueIndex;
+import cz.diribet.aqdef.parser.AqdefParser.CheckpointListener;
+
+/**
+ * Handler that puts all the parsed entries to {@link AqdefObjectModel}. The model is normalized at the end of parsing.
+ *
+ * @author Vlastimil Dolejs
+ */
+class ObjectModelParserHandler implements IAqdefParserHandler {
+
+	private final AqdefObjectModel aqdefObjectModel;
+	private final CheckpointListener checkpointListener;
+
+	ObjectModelParserHandler(CheckpointListener checkpointListener) {
+		this(new AqdefObjectModel(), checkpointListener);
+	}
+
+	ObjectModelParserHandler(AqdefObjectModel aqdefObjectModel) {
+		this(aqdefObjectModel, null);
+	}
+
+	ObjectModelParserHandler(AqdefObjectModel aqdefObjectModel, CheckpointListener checkpointListener) {
+		this.aqdefObjectModel = aqdefObjectModel;
+		this.checkpointListener = checkpointListener;
+	}
+
+	@Override
+	public void onPartEntry(KKey key, PartIndex index, Object value) {
+		aqdefObjectModel.putPartEntry(key, index, value);
+	}
+
+	@Override
+	public void onCharacteristicEntry(KKey key, CharacteristicIndex index, Object value) {
+		aqdefObjectModel.putCharacteristicEntry(key, index, value);
+	}
+
+	@Override
+	public void onGroupEntry(KKey key, GroupIndex index, Object value) {
+		aqdefObjectModel.putGroupEntry(key, index, value);
+	}
+
+	@Override
+	public void onValueEntry(KKey key, ValueIndex index, Object value) {
+		aqdefObjectModel.putValueEntry(key, index, value);
+	}
+
+	@Override
+	public void onHierarchyEntry(KKey key, Integer nodeIndex, Object value) {
+		aqdefObjectModel.putHierarchyEntry(key, nodeIndex, value);
+	}
+
+	@Override
+	public void onCheckpoint(ParserCheckpoint checkpoint) {
+		if (checkpointListener != null) {
+			checkpointListener.onCheckpoint(checkpoint, aqdefObjectModel);
+		}
+	}
+
+	@Override
+	public void onEnd() {
+		aqdefObjectModel.normalize();
+	}
+
+	AqdefObjectModel getAqdefObjectModel() {
+		return aqdefObjectModel;
+	}
+
+}
@@ -0,0 +1,134 @@
+package cz.diribet.aqdef.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * State of the parser at the beginning of a line, which allows to resume the parsing from that line (e.g. after the
+ * import of a large file failed). Contains the byte offset and the number of the line and the state of the
+ * {@link ParserContext} (current part, characteristics of parts, characteristic types and value index counters).
+ * <p>
+ * Checkpoints are reported to {@link IAqdefParserHandler#onCheckpoint(ParserCheckpoint)} every
+ * {@link AqdefStreamingParser#setCheckpointInterval(int) N lines}, after all the entries of the preceding lines were
+ * reported. Store the checkpoint together with the data that were processed by the handler so far and resume the
+ * parsing using {@link AqdefStreamingParser#parseMapped(Path, String, IAqdefParserHandler, ParserCheckpoint)}.
+ * </p>
+ * <p>
+ * Checkpoint is immutable. It can be written to a compact binary form using {@link #writeTo(OutputStream)}.
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ */
+public final class ParserCheckpoint {
+
+	private static final int MAGIC = 0x41514350; // AQCP
+	private static final int VERSION = 2;
+
+	private final long offset;
+	private final int line;
+	private final ParserContext context;
+
+	/**
+	 * @param context
+	 *            context that is not used for parsing anymore (use a {@link ParserContext#copy() copy})
+	 */
+	ParserCheckpoint(long offset, int line, ParserContext context) {
+		this.offset = offset;
+		this.line = line;
+		this.context = context;
+	}
+
+	/**
+	 * @return byte offset of the line where the parsing should continue
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return number of the line where the parsing should continue
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * @return new context for parsing that continues from this checkpoint
+	 */
+	ParserContext createContext() {
+		ParserContext parserContext = context.copy();
+		parserContext.setCurrentLine(line);
+
+		return parserContext;
+	}
+
+	/**
+	 * Writes this checkpoint to the given stream. The stream is not closed.
+	 *
+	 * @see #readFrom(InputStream)
+	 */
+	public void writeTo(OutputStream outputStream) throws IOException {
+		DataOutputStream output = new DataOutputStream(outputStream);
+
+		output.writeInt(MAGIC);
+		output.writeByte(VERSION);
+		output.writeLong(offset);
+		output.writeInt(line);
+		context.writeTo(output);
+
+		output.flush();
+	}
+
+	public byte[] toByteArray() {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		try {
+			writeTo(outputStream);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to write checkpoint to byte array", e);
+		}
+
+		return outputStream.toByteArray();
+	}
+
+	/**
+	 * Reads the checkpoint written by {@link #writeTo(OutputStream)}. The stream is not closed.
+	 *
+	 * @throws IOException
+	 *             if the stream does not contain a checkpoint
+	 */
+	public static ParserCheckpoint readFrom(InputStream inputStream) throws IOException {
+		DataInputStream input = new DataInputStream(inputStream);
+
+		if (input.readInt() != MAGIC) {
+			throw new IOException("Invalid parser checkpoint.");
+		}
+
+		int version = input.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported version of parser checkpoint: " + version);
+		}
+
+		long offset = input.readLong();
+		int line = input.readInt();
+		ParserContext context = ParserContext.readFrom(input);
+
+		return new ParserCheckpoint(offset, line, context);
+	}
+
+	public static ParserCheckpoint fromByteArray(byte[] bytes) throws IOException {
+		return readFrom(new ByteArrayInputStream(bytes));
+	}
+
+	@Override
+	public String toString() {
+		return "ParserCheckpoint [line=" + line + ", offset=" + offset + "]";
+	}
+
+}
@@ -7,10 +7,12 @@ import cz.diribet.aqdef.model.ValueIndex;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * @author Vlastimil Dolejs
@@ -20,36 +22,451 @@ import java.util.Set;
 public class ParserContext {
 
     private int currentLine;
+
+    /**
+     * Position of the chunk of values if the current line is counted from the start of the chunk (the number of the
+     * first line of the chunk is not known while it is parsed in parallel), otherwise {@code -1}
+     */
+    private int chunkPosition = -1;
+
     private PartIndex currentPartIndex;
-    private final ValueIndexCounter valueIndexCounter = new ValueIndexCounter();
+    private final ValueIndexCounter valueIndexCounter;
+
+    /**
+     * Part to which the characteristic (identified by its number) belongs. Values refer to characteristics
+     * only by the number, so we have to remember this for all the characteristics already parsed.
+     */
+    private final Map<Integer, PartIndex> characteristicPartIndexes;
+
+    /**
+     * Types (K2004) of the already parsed characteristics. Used to recognize the format of binary values.
+     */
+    private final Map<CharacteristicIndex, Integer> characteristicTypes;
+
+    public ParserContext() {
+        this(new ValueIndexCounter(), new HashMap<>(), new HashMap<>());
+    }
+
+    private ParserContext(ValueIndexCounter valueIndexCounter,
+                          Map<Integer, PartIndex> characteristicPartIndexes,
+                          Map<CharacteristicIndex, Integer> characteristicTypes) {
+
+        this.valueIndexCounter = valueIndexCounter;
+        this.characteristicPartIndexes = characteristicPartIndexes;
+        this.characteristicTypes = characteristicTypes;
+    }
+
+    /**
+     * Creates a context that shares the already parsed characteristics with this context, but counts value indexes
+     * using the given counter. This is used to parse values on multiple threads - the returned context must not be
+     * used to parse anything else than values and this context must not be modified while it is in use.
+     *
+     * @param valueIndexCounter
+     * @return new context
+     */
+    public ParserContext withValueIndexCounter(ValueIndexCounter valueIndexCounter) {
+        ParserContext context = new ParserContext(valueIndexCounter, characteristicPartIndexes, characteristicTypes);
+        context.setCurrentLine(currentLine);
+        context.setCurrentPartIndex(currentPartIndex);
+
+        return context;
+    }
+
+    /**
+     * Creates a deep copy of this context. The copy is not affected by the further parsing with this context.
+     *
+     * @return new context
+     */
+    ParserContext copy() {
+        ParserContext context = new ParserContext(valueIndexCounter.copy(),
+                                                  new HashMap<>(characteristicPartIndexes),
+                                                  new HashMap<>(characteristicTypes));
+        context.setCurrentLine(currentLine);
+        context.setCurrentPartIndex(currentPartIndex);
+
+        return context;
+    }
+
+    /**
+     * Writes the state needed to continue parsing with this context (everything except the current line).
+     *
+     * @see #readFrom(DataInput)
+     */
+    void writeTo(DataOutput output) throws IOException {
+        output.writeBoolean(currentPartIndex != null);
+        if (currentPartIndex != null) {
+            writeIndex(output, currentPartIndex.getIndex());
+        }
+
+        output.writeInt(characteristicPartIndexes.size());
+        for (Map.Entry<Integer, PartIndex> entry : characteristicPartIndexes.entrySet()) {
+            writeIndex(output, entry.getKey());
+            writeIndex(output, entry.getValue().getIndex());
+        }
+
+        output.writeInt(characteristicTypes.size());
+        for (Map.Entry<CharacteristicIndex, Integer> entry : characteristicTypes.entrySet()) {
+            writeCharacteristicIndex(output, entry.getKey());
+            writeIndex(output, entry.getValue());
+        }
+
+        valueIndexCounter.writeTo(output);
+    }
+
+    /**
+     * Reads the context written by {@link #writeTo(DataOutput)}.
+     */
+    static ParserContext readFrom(DataInput input) throws IOException {
+        PartIndex currentPartIndex = input.readBoolean() ? PartIndex.of(readIndex(input)) : null;
+
+        int characteristicCount = input.readInt();
+        Map<Integer, PartIndex> characteristicPartIndexes = new HashMap<>();
+        for (int i = 0; i < characteristicCount; i++) {
+            characteristicPartIndexes.put(readIndex(input), PartIndex.of(readIndex(input)));
+        }
+
+        int typeCount = input.readInt();
+        Map<CharacteristicIndex, Integer> characteristicTypes = new HashMap<>();
+        for (int i = 0; i < typeCount; i++) {
+            characteristicTypes.put(readCharacteristicIndex(input), readIndex(input));
+        }
+
+        ParserContext context = new ParserContext(ValueIndexCounter.readFrom(input), characteristicPartIndexes, characteristicTypes);
+        context.setCurrentPartIndex(currentPartIndex);
+
+        return context;
+    }
+
+    private static void writeIndex(DataOutput output, Integer index) throws IOException {
+        output.writeInt(index == null ? Integer.MIN_VALUE : index);
+    }
+
+    private static Integer readIndex(DataInput input) throws IOException {
+        int index = input.readInt();
+        return index == Integer.MIN_VALUE ? null : index;
+    }
+
+    private static void writeCharacteristicIndex(DataOutput output, CharacteristicIndex characteristicIndex) throws IOException {
+        writeIndex(output, characteristicIndex.getPartIndex().getIndex());
+        writeIndex(output, characteristicIndex.getCharacteristicIndex());
+    }
+
+    private static CharacteristicIndex readCharacteristicIndex(DataInput input) throws IOException {
+        Integer partIndex = readIndex(input);
+        return CharacteristicIndex.of(PartIndex.of(partIndex), readIndex(input));
+    }
 
     public static String lineLogContext(ParserContext context) {
+        if (context.getChunkPosition() >= 0) {
+            return "Line " + context.getCurrentLine() + " of the values at position " + context.getChunkPosition() + ":";
+        }
+
         return "Line " + context.getCurrentLine() + ":";
     }
 
     /**
+     * Remembers that the characteristic with the given index was parsed.
+     * If there are more characteristics with the same number, the one from the part with lowest index wins.
+     *
+     * @param characteristicIndex
+     */
+    public void registerCharacteristic(CharacteristicIndex characteristicIndex) {
+        Integer characteristicNumber = characteristicIndex.getCharacteristicIndex();
+
+        if (characteristicNumber == null || characteristicNumber == 0) {
+            return;
+        }
+
+        PartIndex partIndex = characteristicIndex.getPartIndex();
+        PartIndex registeredPartIndex = characteristicPartIndexes.get(characteristicNumber);
+
+        if (registeredPartIndex == null || partIndex.compareTo(registeredPartIndex) < 0) {
+            characteristicPartIndexes.put(characteristicNumber, partIndex);
+        }
+    }
+
+    /**
+     * Finds part index to which the already parsed characteristic with the given index belongs.
+     *
+     * @param characteristicIndex
+     * @return part index or {@code null} if there is no such characteristic
+     */
+    public PartIndex findPartIndexForCharacteristic(int characteristicIndex) {
+        return characteristicPartIndexes.get(characteristicIndex);
+    }
+
+    public void putCharacteristicType(CharacteristicIndex characteristicIndex, Integer characteristicType) {
+        characteristicTypes.put(characteristicIndex, characteristicType);
+    }
+
+    /**
+     * @param characteristicIndex
+     * @return type (K2004) of the characteristic or {@code null} if it is not known
+     */
+    public Integer getCharacteristicType(CharacteristicIndex characteristicIndex) {
+        return characteristicTypes.get(characteristicIndex);
+    }
+
+    /**
+     * Assigns value indexes to values without an explicit index. A new value (with the next index) starts when a
+     * K-key that was already parsed for the current value of the characteristic appears again.
+     * <p>
+     * State of each characteristic is kept in a {@link ValueKeys} found by the part and characteristic number in
+     * arrays, and the K-keys of the current value are kept as bits indexed by the {@link KKey#getOrdinal() ordinal}.
+     * Only characteristics with unusually high (or missing) numbers are kept in a map.
+     * </p>
+     *
      * @author Vlastimil Dolejs
      */
     public static class ValueIndexCounter {
 
-        private final Map<CharacteristicIndex, Set<KKey>> keys = new HashMap<>();
-        private final Map<CharacteristicIndex, Integer> indexes = new HashMap<>();
+        /**
+         * Parts and characteristics with higher numbers are kept in a map
+         */
+        private static final int MAX_ARRAY_PART_NUMBER = 1 << 12;
+        private static final int MAX_ARRAY_CHARACTERISTIC_NUMBER = 1 << 16;
 
-        public ValueIndex getIndex(CharacteristicIndex characteristicIndex, KKey key) {
-            Set<KKey> keysOfCurrentValue = keys.computeIfAbsent(characteristicIndex, k -> new HashSet<>());
+        private static final int INITIAL_CHARACTERISTIC_COUNT = 64;
+
+        /**
+         * Value keys of characteristics indexed by the part number and the characteristic number
+         */
+        private ValueKeys[][] partValueKeys = new ValueKeys[4][];
+        private final Map<CharacteristicIndex, ValueKeys> otherCharacteristicValueKeys = new HashMap<>();
 
-            Integer currentIndex = indexes.get(characteristicIndex);
-            currentIndex = currentIndex == null ? 1 : currentIndex;
+        public ValueIndex getIndex(CharacteristicIndex characteristicIndex, KKey key) {
+            ValueKeys valueKeys = getValueKeys(characteristicIndex);
 
-            if (keysOfCurrentValue.contains(key)) {
+            if (!valueKeys.add(key)) {
                 // this key was already parsed, so it is new value
-                keysOfCurrentValue.clear();
-                currentIndex++;
-                indexes.put(characteristicIndex, currentIndex);
+                valueKeys.clear();
+                valueKeys.valueIndex++;
+                valueKeys.add(key);
             }
-            keysOfCurrentValue.add(key);
 
-            return ValueIndex.of(characteristicIndex, currentIndex);
+            return ValueIndex.ofNumber(characteristicIndex, valueKeys.valueIndex);
+        }
+
+        private ValueKeys getValueKeys(CharacteristicIndex characteristicIndex) {
+            PartIndex partIndex = characteristicIndex.getPartIndex();
+            int partNumber = partIndex == null ? -1 : partIndex.getIndexNumber();
+            int characteristicNumber = characteristicIndex.getCharacteristicIndexNumber();
+
+            if (partNumber < 0 || partNumber >= MAX_ARRAY_PART_NUMBER
+                    || characteristicNumber < 0 || characteristicNumber >= MAX_ARRAY_CHARACTERISTIC_NUMBER) {
+
+                return otherCharacteristicValueKeys.computeIfAbsent(characteristicIndex, i -> new ValueKeys());
+            }
+
+            if (partNumber >= partValueKeys.length) {
+                partValueKeys = Arrays.copyOf(partValueKeys, grownLength(partValueKeys.length, partNumber, MAX_ARRAY_PART_NUMBER));
+            }
+
+            ValueKeys[] characteristicValueKeys = partValueKeys[partNumber];
+
+            if (characteristicValueKeys == null) {
+                characteristicValueKeys = new ValueKeys[Math.max(INITIAL_CHARACTERISTIC_COUNT, characteristicNumber + 1)];
+                partValueKeys[partNumber] = characteristicValueKeys;
+
+            } else if (characteristicNumber >= characteristicValueKeys.length) {
+                characteristicValueKeys = Arrays.copyOf(characteristicValueKeys, grownLength(characteristicValueKeys.length, characteristicNumber, MAX_ARRAY_CHARACTERISTIC_NUMBER));
+                partValueKeys[partNumber] = characteristicValueKeys;
+            }
+
+            ValueKeys valueKeys = characteristicValueKeys[characteristicNumber];
+
+            if (valueKeys == null) {
+                valueKeys = new ValueKeys();
+                characteristicValueKeys[characteristicNumber] = valueKeys;
+            }
+
+            return valueKeys;
+        }
+
+        private static int grownLength(int length, int index, int maxLength) {
+            return Math.min(Math.max(length * 2, index + 1), maxLength);
+        }
+
+        ValueIndexCounter copy() {
+            ValueIndexCounter copy = new ValueIndexCounter();
+            copy.partValueKeys = new ValueKeys[partValueKeys.length][];
+
+            for (int part = 0; part < partValueKeys.length; part++) {
+                ValueKeys[] characteristicValueKeys = partValueKeys[part];
+
+                if (characteristicValueKeys != null) {
+                    ValueKeys[] characteristicValueKeysCopy = new ValueKeys[characteristicValueKeys.length];
+
+                    for (int i = 0; i < characteristicValueKeys.length; i++) {
+                        if (characteristicValueKeys[i] != null) {
+                            characteristicValueKeysCopy[i] = characteristicValueKeys[i].copy();
+                        }
+                    }
+
+                    copy.partValueKeys[part] = characteristicValueKeysCopy;
+                }
+            }
+
+            otherCharacteristicValueKeys.forEach((characteristicIndex, valueKeys) -> {
+                copy.otherCharacteristicValueKeys.put(characteristicIndex, valueKeys.copy());
+            });
+
+            return copy;
+        }
+
+        void writeTo(DataOutput output) throws IOException {
+            int count = 0;
+            for (ValueKeys[] characteristicValueKeys : partValueKeys) {
+                if (characteristicValueKeys != null) {
+                    for (ValueKeys valueKeys : characteristicValueKeys) {
+                        if (valueKeys != null) {
+                            count++;
+                        }
+                    }
+                }
+            }
+
+            output.writeInt(count);
+
+            for (int part = 0; part < partValueKeys.length; part++) {
+                ValueKeys[] characteristicValueKeys = partValueKeys[part];
+
+                if (characteristicValueKeys != null) {
+                    for (int i = 0; i < characteristicValueKeys.length; i++) {
+                        if (characteristicValueKeys[i] != null) {
+                            output.writeInt(part);
+                            output.writeInt(i);
+                            characteristicValueKeys[i].writeTo(output);
+                        }
+                    }
+                }
+            }
+
+            output.writeInt(otherCharacteristicValueKeys.size());
+
+            for (Map.Entry<CharacteristicIndex, ValueKeys> entry : otherCharacteristicValueKeys.entrySet()) {
+                writeCharacteristicIndex(output, entry.getKey());
+                entry.getValue().writeTo(output);
+            }
+        }
+
+        static ValueIndexCounter readFrom(DataInput input) throws IOException {
+            ValueIndexCounter counter = new ValueIndexCounter();
+
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                int partNumber = input.readInt();
+                int characteristicNumber = input.readInt();
+
+                CharacteristicIndex characteristicIndex = CharacteristicIndex.of(PartIndex.of(partNumber), characteristicNumber);
+                ValueKeys valueKeys = counter.getValueKeys(characteristicIndex);
+                valueKeys.readFrom(input);
+            }
+
+            int otherCount = input.readInt();
+            for (int i = 0; i < otherCount; i++) {
+                CharacteristicIndex characteristicIndex = readCharacteristicIndex(input);
+                counter.getValueKeys(characteristicIndex).readFrom(input);
+            }
+
+            return counter;
+        }
+    }
+
+    /**
+     * Value index and K-keys of the current value of single characteristic. Interned K-keys are kept as bits indexed
+     * by their {@link KKey#getOrdinal() ordinal}. All the K-keys of the current value are also listed, so only their
+     * bits have to be cleared when the next value starts.
+     */
+    private static class ValueKeys {
+
+        private int valueIndex = 1;
+
+        private long[] keyBits = new long[(KKey.getOrdinalCount() + 63) >>> 6];
+
+        private KKey[] keys = new KKey[8];
+        private int keyCount;
+
+        /**
+         * @param key
+         * @return false if the key is already present
+         */
+        boolean add(KKey key) {
+            int ordinal = key.getOrdinal();
+
+            if (ordinal < 0) {
+                // K-key without an ordinal is rare, it is simply searched in the keys of the current value
+                for (int i = 0; i < keyCount; i++) {
+                    if (keys[i].equals(key)) {
+                        return false;
+                    }
+                }
+
+            } else {
+                int word = ordinal >>> 6;
+                long bit = 1L << ordinal;
+
+                if (word >= keyBits.length) {
+                    keyBits = Arrays.copyOf(keyBits, Math.max(keyBits.length * 2, word + 1));
+                }
+
+                if ((keyBits[word] & bit) != 0) {
+                    return false;
+                }
+                keyBits[word] |= bit;
+            }
+
+            if (keyCount == keys.length) {
+                keys = Arrays.copyOf(keys, keyCount * 2);
+            }
+            keys[keyCount++] = key;
+
+            return true;
+        }
+
+        void clear() {
+            for (int i = 0; i < keyCount; i++) {
+                int ordinal = keys[i].getOrdinal();
+
+                if (ordinal >= 0) {
+                    keyBits[ordinal >>> 6] = 0;
+                }
+
+                keys[i] = null;
+            }
+
+            keyCount = 0;
+        }
+
+        ValueKeys copy() {
+            ValueKeys copy = new ValueKeys();
+            copy.valueIndex = valueIndex;
+            copy.keyBits = keyBits.clone();
+            copy.keys = keys.clone();
+            copy.keyCount = keyCount;
+
+            return copy;
+        }
+
+        /**
+         * K-keys are written by their names, ordinals are not the same in another JVM
+         */
+        void writeTo(DataOutput output) throws IOException {
+            output.writeInt(valueIndex);
+            output.writeInt(keyCount);
+
+            for (int i = 0; i < keyCount; i++) {
+                output.writeUTF(keys[i].getKey());
+            }
+        }
+
+        void readFrom(DataInput input) throws IOException {
+            valueIndex = input.readInt();
+
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                add(KKey.of(input.readUTF()));
+            }
         }
     }
 
@@ -0,0 +1,252 @@
+package cz.diribet.aqdef.parser;
+
+import cz.diribet.aqdef.KKey;
+import cz.diribet.aqdef.model.CharacteristicIndex;
+import cz.diribet.aqdef.model.GroupIndex;
+import cz.diribet.aqdef.model.PartIndex;
+import cz.diribet.aqdef.model.ValueIndex;
+import cz.diribet.aqdef.parser.ParserContext.ValueIndexCounter;
+import cz.diribet.aqdef.parser.line.ByteLine;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Range of lines in the value section of AQDEF content that is parsed on its own thread.
+ * <p>
+ * Parsed values are not reported to the handler immediately. They are recorded and {@link #replay replayed} later
+ * in the order of the chunks. Values without an explicit value index are recorded without the index, which is
+ * assigned by the {@link ValueIndexCounter} of the whole content during the replay. This way the values get the
+ * same indexes as if the content was parsed sequentially.
+ * </p>
+ * <p>
+ * Parsing of the chunk stops at the first line that is not a value line (part, characteristic, ... K-key), because
+ * such a line changes the parser context. The content is parsed sequentially from that line.
+ * </p>
+ * <p>
+ * Lines are counted while the chunk is parsed. Number of the first line of the chunk is known only after the
+ * previous chunks are parsed, so it is {@link #setFirstLine(int) set} before the replay (line numbers logged while
+ * parsing a chunk that is not the first one are counted from the start of the chunk).
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ */
+class ValueChunk implements IAqdefParserHandler {
+
+	private final int start;
+	private final int end;
+
+	private int firstLine;
+
+	/**
+	 * Number of the parsed lines (before the line where the parsing stopped)
+	 */
+	private int lineCount;
+
+	private final List<DeferredValue> values = new ArrayList<>();
+	private DeferredValue pendingCountedValue;
+
+	/**
+	 * Position of the line where the parsing of this chunk stopped (or {@code -1} if the whole chunk was parsed).
+	 */
+	private int stopPosition = -1;
+	private Throwable failure;
+
+	ValueChunk(int start, int end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	void setFirstLine(int firstLine) {
+		this.firstLine = firstLine;
+	}
+
+	boolean isStopped() {
+		return stopPosition != -1;
+	}
+
+	/**
+	 * @return position of the line where the parsing should continue after this chunk
+	 */
+	int getResumePosition() {
+		return isStopped() ? stopPosition : end;
+	}
+
+	/**
+	 * @return number of the line where the parsing should continue after this chunk
+	 */
+	int getResumeLine() {
+		return firstLine + lineCount;
+	}
+
+	/**
+	 * Parses the lines of this chunk.
+	 *
+	 * @param earliestStopPosition
+	 *            position of the earliest line where some chunk stopped. Chunks after this position will be parsed
+	 *            again sequentially, so it is pointless to continue parsing them.
+	 */
+	void parse(AqdefStreamingParser parser,
+			   ByteBuffer buffer,
+			   Charset charset,
+			   ParserContext sharedContext,
+			   AtomicInteger earliestStopPosition) {
+
+		ParserContext context = sharedContext.withValueIndexCounter(new RecordingValueIndexCounter());
+		ByteLine line = new ByteLine(buffer, charset);
+
+		int lineBase = firstLine;
+
+		if (firstLine <= 0) {
+			// number of the first line is not known yet, lines are counted from the start of the chunk
+			context.setChunkPosition(start);
+			lineBase = 1;
+		}
+		int position = start;
+
+		while (position < end) {
+			if (earliestStopPosition.get() < start) {
+				stop(position, earliestStopPosition);
+				return;
+			}
+
+			int lineEnd = AqdefStreamingParser.findLineEnd(buffer, position, end);
+
+			context.setCurrentLine(lineBase + lineCount);
+			pendingCountedValue = null;
+
+			try {
+				line.reset(position, lineEnd);
+
+				if (!line.isEmpty()) {
+					if (!AqdefStreamingParser.isValueLine(line)) {
+						stop(position, earliestStopPosition);
+						return;
+					}
+
+					parser.parseLine(line, this, context);
+				}
+			} catch (Throwable e) {
+				failure = e;
+				stop(position, earliestStopPosition);
+				return;
+			}
+
+			lineCount++;
+			position = AqdefStreamingParser.findNextLineStart(buffer, lineEnd, end);
+		}
+	}
+
+	private void stop(int position, AtomicInteger earliestStopPosition) {
+		stopPosition = position;
+		earliestStopPosition.accumulateAndGet(position, Math::min);
+	}
+
+	/**
+	 * Reports the recorded values to the handler.
+	 *
+	 * @throws RuntimeException
+	 *             if the parsing of this chunk failed (after all the values before the failure are reported)
+	 */
+	void replay(IAqdefParserHandler handler, ParserContext context) {
+		ValueIndexCounter valueIndexCounter = context.getValueIndexCounter();
+
+		for (DeferredValue value : values) {
+			ValueIndex valueIndex = value.index;
+
+			if (value.countedCharacteristic != null) {
+				valueIndex = valueIndexCounter.getIndex(value.countedCharacteristic, value.key);
+			}
+
+			if (value.value != null) {
+				handler.onValueEntry(value.key, valueIndex, value.value);
+			}
+		}
+
+		if (failure != null) {
+			// parsing failed at the line following the parsed lines
+			context.setCurrentLine(getResumeLine());
+			throw new AqdefStreamingParser.DfqParserException(context, failure);
+		}
+	}
+
+	@Override
+	public void onValueEntry(KKey key, ValueIndex index, Object value) {
+		if (pendingCountedValue != null) {
+			// value index was requested from the counter for this value
+			pendingCountedValue.value = value;
+			pendingCountedValue = null;
+
+		} else {
+			DeferredValue deferredValue = new DeferredValue(key, index, null);
+			deferredValue.value = value;
+
+			values.add(deferredValue);
+		}
+	}
+
+	@Override
+	public void onPartEntry(KKey key, PartIndex index, Object value) {
+		throw unexpectedEntry(key);
+	}
+
+	@Override
+	public void onCharacteristicEntry(KKey key, CharacteristicIndex index, Object value) {
+		throw unexpectedEntry(key);
+	}
+
+	@Override
+	public void onGroupEntry(KKey key, GroupIndex index, Object value) {
+		throw unexpectedEntry(key);
+	}
+
+	@Override
+	public void onHierarchyEntry(KKey key, Integer nodeIndex, Object value) {
+		throw unexpectedEntry(key);
+	}
+
+	private IllegalStateException unexpectedEntry(KKey key) {
+		return new IllegalStateException("Only value entries are expected in the value section. K-key: " + key);
+	}
+
+	/**
+	 * Records the requests for value index. The index is assigned later during the {@link ValueChunk#replay}.
+	 */
+	private class RecordingValueIndexCounter extends ValueIndexCounter {
+
+		@Override
+		public ValueIndex getIndex(CharacteristicIndex characteristicIndex, KKey key) {
+			pendingCountedValue = new DeferredValue(key, null, characteristicIndex);
+			values.add(pendingCountedValue);
+
+			return ValueIndex.of(characteristicIndex, 0);
+		}
+	}
+
+	private static class DeferredValue {
+
+		private final KKey key;
+		private final ValueIndex index;
+
+		/**
+		 * Characteristic for which the value index should be obtained from the counter
+		 * ({@code null} if the value has an explicit index)
+		 */
+		private final CharacteristicIndex countedCharacteristic;
+
+		/**
+		 * Value or {@code null} if the value was empty (but it still affects the value index of following values)
+		 */
+		private Object value;
+
+		DeferredValue(KKey key, ValueIndex index, CharacteristicIndex countedCharacteristic) {
+			this.key = key;
+			this.index = index;
+			this.countedCharacteristic = countedCharacteristic;
+		}
+	}
+
+}
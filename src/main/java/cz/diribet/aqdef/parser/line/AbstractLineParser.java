@@ -7,7 +7,9 @@ import cz.diribet.aqdef.KKey;
 import cz.diribet.aqdef.KKeyMetadata;
 import cz.diribet.aqdef.KKeyRepository;
 import cz.diribet.aqdef.convert.IKKeyValueConverter;
-import cz.diribet.aqdef.model.AqdefObjectModel;
+import cz.diribet.aqdef.model.UnconvertedValue;
+import cz.diribet.aqdef.parser.IAqdefParserHandler;
+import cz.diribet.aqdef.parser.KKeyProjection;
 import cz.diribet.aqdef.parser.ParserContext;
 import lombok.Data;
 import lombok.Getter;
@@ -21,6 +23,8 @@ public abstract class AbstractLineParser implements AqdefConstants {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractLineParser.class);
 
+    protected static final KKey CHARACTERISTIC_TYPE_KEY = KKey.of("K2004");
+
     private final KKeyRepository kKeyRepository = KKeyRepository.getInstance();
 
     /**
@@ -33,8 +37,33 @@ public abstract class AbstractLineParser implements AqdefConstants {
      */
     private Set<KKey> suppressInvalidKKeyLoggingFor;
 
+    /**
+     * Set to true if the values should be converted when they are read from the entries for the first time.
+     * See {@link #isLazyValueConversionSupported(KKey, KKeyMetadata)}.
+     */
+    private boolean lazyValueConversion = false;
+
+    /**
+     * K-keys that should be parsed or {@code null} to parse all K-keys.
+     */
+    private KKeyProjection projection;
+
     public abstract boolean isLineSupported(String line);
-    public abstract void parseLine(String line, AqdefObjectModel aqdefObjectModel, ParserContext parserContext);
+    public abstract void parseLine(String line, IAqdefParserHandler handler, ParserContext parserContext);
+
+    public abstract boolean isLineSupported(ByteLine line);
+    public abstract void parseLine(ByteLine line, IAqdefParserHandler handler, ParserContext parserContext);
+
+    /**
+     * Decodes the portion of the line that contains a value of the given K-key. The charset decoder is used only for
+     * K-keys of type String (or unknown K-keys). Other values are plain ASCII, so the bytes are just copied.
+     */
+    protected String decodeValue(KKey key, ByteLine line, int from, int to) {
+        KKeyMetadata kKeyMetadata = kKeyRepository.getMetadataFor(key);
+        boolean stringValue = kKeyMetadata == null || kKeyMetadata.getDataType() == String.class;
+
+        return line.decode(from, to, !stringValue);
+    }
 
     protected Object convertValue(KKey key,
                                   String valueString,
@@ -56,6 +85,10 @@ public abstract class AbstractLineParser implements AqdefConstants {
             throw new UnknownKKeyException(key);
         }
 
+        if (lazyValueConversion && isLazyValueConversionSupported(key, kKeyMetadata)) {
+            return new UnconvertedValue(key, valueString);
+        }
+
         IKKeyValueConverter<?> converter = kKeyMetadata.getConverter();
 
         try {
@@ -75,6 +108,23 @@ public abstract class AbstractLineParser implements AqdefConstants {
         }
     }
 
+    protected boolean isInProjection(KKey key) {
+        return projection == null || projection.contains(key);
+    }
+
+    /**
+     * Only part, characteristic and value K-keys are converted lazily, because only these are stored in the entries
+     * of the object model. String values and characteristic type (K2004, needed to parse binary values) are always
+     * converted immediately.
+     */
+    private boolean isLazyValueConversionSupported(KKey key, KKeyMetadata kKeyMetadata) {
+        if (kKeyMetadata.getDataType() == String.class || CHARACTERISTIC_TYPE_KEY.equals(key)) {
+            return false;
+        }
+
+        return key.isPartLevel() || key.isCharacteristicLevel() || key.isValueLevel();
+    }
+
     protected boolean isInvalidKKeyLoggingEnabled(KKey kKey) {
         if (suppressInvalidKKeyLogging) {
             return false;
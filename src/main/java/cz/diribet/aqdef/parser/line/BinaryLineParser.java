@@ -2,15 +2,13 @@ package cz.diribet.aqdef.parser.line;
 
 import cz.diribet.aqdef.AqdefValidityException;
 import cz.diribet.aqdef.KKey;
-import cz.diribet.aqdef.convert.BigDecimalKKeyValueConverter;
-import cz.diribet.aqdef.convert.KKeyValueConversionException;
-import cz.diribet.aqdef.model.AqdefObjectModel;
-import cz.diribet.aqdef.model.AqdefObjectModel.CharacteristicEntries;
 import cz.diribet.aqdef.model.CharacteristicIndex;
 import cz.diribet.aqdef.model.PartIndex;
 import cz.diribet.aqdef.model.ValueIndex;
+import cz.diribet.aqdef.parser.IAqdefParserHandler;
 import cz.diribet.aqdef.parser.ParserContext;
 import lombok.NonNull;
+import org.apache.commons.lang3.StringUtils;
 
 public class BinaryLineParser extends AbstractLineParser {
 
@@ -22,27 +20,17 @@ public class BinaryLineParser extends AbstractLineParser {
     private static final String[] BINARY_ATTRIBUTE_VALUE_PORTIONS = new String[] {
             "K0020", "K0021", IGNORED_BINARY_KEY, "K0002", "K0004", "K0005", "K0006", "K0007", "K0008", "K0010", "K0011", "K0012"};
 
+    private static final byte CHARACTERISTIC_SEPARATOR = (byte) MEASURED_VALUES_CHARACTERISTIC_SEPARATOR.charAt(0);
+    private static final byte DATA_SEPARATOR = (byte) MEASURED_VALUES_DATA_SEPARATOR.charAt(0);
+
     @Override
     public boolean isLineSupported(@NonNull String line) {
-        if (line.contains(MEASURED_VALUES_CHARACTERISTIC_SEPARATOR) ||
-            line.contains(MEASURED_VALUES_DATA_SEPARATOR)) {
-
-            return true;
-        }
-
-        try {
-            // line with a single measured value
-            new BigDecimalKKeyValueConverter().convert(line);
-            return true;
-
-        } catch (KKeyValueConversionException ignore) {}
-
-        return false;
+        return isValueLineType(LineClassifier.classify(line));
     }
 
     @Override
     public void parseLine(@NonNull String line,
-                          @NonNull AqdefObjectModel aqdefObjectModel,
+                          @NonNull IAqdefParserHandler handler,
                           @NonNull ParserContext parserContext) {
 
         String[] characteristicPortions = line.split(MEASURED_VALUES_CHARACTERISTIC_SEPARATOR);
@@ -52,75 +40,209 @@ public class BinaryLineParser extends AbstractLineParser {
         for (String characteristicPortion : characteristicPortions) {
             String[] dataPortions = characteristicPortion.split(MEASURED_VALUES_DATA_SEPARATOR);
 
-            PartIndex partIndex = aqdefObjectModel.findPartIndexForCharacteristic(characteristicIntIndex);
+            CharacteristicIndex characteristicIndex = findCharacteristicIndex(characteristicIntIndex, parserContext);
+            String[] dataPortionKeys = getDataPortionKeys(characteristicIndex, dataPortions.length, parserContext);
 
-            if (partIndex == null) {
-                throw new AqdefValidityException("Characteristic with index " + characteristicIntIndex + " was not found. Can't parse value.");
-            }
-
-            CharacteristicIndex characteristicIndex = CharacteristicIndex.of(partIndex, characteristicIntIndex);
+            for (int i = 0; i < dataPortions.length; i++) {
+                String dataPortion = dataPortions[i];
+                String key = dataPortionKeys[i];
 
-            // recognize binary value format for characterstic type
-            Boolean isAttributeCharacteristic = null;
-            CharacteristicEntries characteristicEntries = aqdefObjectModel.getCharacteristicEntries(characteristicIndex);
+                if (IGNORED_BINARY_KEY.equals(key)) {
+                    continue;
+                }
 
-            if (characteristicEntries != null) {
-                Integer characteristicType = characteristicEntries.getValue("K2004");
+                KKey kKey = KKey.of(key);
 
-                if (characteristicType != null) {
-                    switch (characteristicType) {
-                        case 1:
-                        case 5:
-                        case 6:
-                            // 1 - attribute / 5, 6 - error log sheet
-                            isAttributeCharacteristic = true;
-                            break;
+                if (isInProjection(kKey)) {
+                    handleValue(kKey, dataPortion, characteristicIndex, handler, parserContext);
 
-                        default:
-                            isAttributeCharacteristic = false;
-                    }
+                } else if (StringUtils.isNotBlank(dataPortion)) {
+                    countValueOutOfProjection(kKey, characteristicIndex, parserContext);
                 }
             }
 
-            // if the information about characteristic type is not available,
-            // then try to guess it from binary portion count
-            if (isAttributeCharacteristic == null) {
+            characteristicIntIndex++;
+        }
+    }
+
+    @Override
+    public boolean isLineSupported(@NonNull ByteLine line) {
+        return isValueLineType(LineClassifier.classify(line));
+    }
+
+    /**
+     * @param lineType
+     * @return true if lines of the given type are parsed by this parser
+     */
+    private static boolean isValueLineType(LineType lineType) {
+        return lineType == LineType.BINARY || lineType == LineType.SINGLE_VALUE;
+    }
+
+    /**
+     * Parses the binary line directly from bytes. The portions are split the same way as
+     * {@link String#split(String)} does it (trailing empty portions are removed), but without creating the
+     * intermediate Strings.
+     */
+    @Override
+    public void parseLine(@NonNull ByteLine line,
+                          @NonNull IAqdefParserHandler handler,
+                          @NonNull ParserContext parserContext) {
+
+        int length = line.length();
+        int characteristicIntIndex = 1;
+        int characteristicPortionStart = 0;
+
+        while (characteristicPortionStart <= length) {
+            int characteristicPortionEnd = line.indexOf(CHARACTERISTIC_SEPARATOR, characteristicPortionStart);
 
-                // attribute values has more than 10 portions
-                isAttributeCharacteristic = dataPortions.length > 10;
+            if (characteristicPortionEnd == -1) {
+                characteristicPortionEnd = length;
             }
 
-            String[] dataPortionKeys =
-                    isAttributeCharacteristic
-                            ? BINARY_ATTRIBUTE_VALUE_PORTIONS
-                            : BINARY_VALUE_PORTIONS;
+            int dataPortionCount = countDataPortions(line, characteristicPortionStart, characteristicPortionEnd);
 
-            for (int i = 0; i < dataPortions.length; i++) {
-                String dataPortion = dataPortions[i];
-                String key = dataPortionKeys[i];
+            CharacteristicIndex characteristicIndex = findCharacteristicIndex(characteristicIntIndex, parserContext);
+            String[] dataPortionKeys = getDataPortionKeys(characteristicIndex, dataPortionCount, parserContext);
 
-                if (IGNORED_BINARY_KEY.equals(key)) {
-                    continue;
+            int dataPortionStart = characteristicPortionStart;
+
+            for (int i = 0; i < dataPortionCount; i++) {
+                int dataPortionEnd = line.indexOf(DATA_SEPARATOR, dataPortionStart, characteristicPortionEnd);
+
+                if (dataPortionEnd == -1) {
+                    dataPortionEnd = characteristicPortionEnd;
                 }
 
-                KKey kKey = KKey.of(key);
-                Object value;
+                String key = dataPortionKeys[i];
 
-                try {
-                    value = convertValue(kKey, dataPortion, parserContext);
+                if (!IGNORED_BINARY_KEY.equals(key)) {
+                    KKey kKey = KKey.of(key);
 
-                } catch (UnknownKKeyException | ValueConversionException e) {
-                    //TODO: 2016/04/11 - vlasta: we should provide information that parsed AqdefObjectModel doesn't contain all data?
-                    value = null;
-                }
+                    if (isInProjection(kKey)) {
+                        String dataPortion = decodeValue(kKey, line, dataPortionStart, dataPortionEnd);
+                        handleValue(kKey, dataPortion, characteristicIndex, handler, parserContext);
 
-                if (value != null) {
-                    ValueIndex valueIndex = parserContext.getValueIndexCounter().getIndex(characteristicIndex, kKey);
-                    aqdefObjectModel.putValueEntry(kKey, valueIndex, value);
+                    } else if (line.skipWhitespace(dataPortionStart, dataPortionEnd) < dataPortionEnd) {
+                        countValueOutOfProjection(kKey, characteristicIndex, parserContext);
+                    }
                 }
+
+                dataPortionStart = dataPortionEnd + 1;
             }
 
             characteristicIntIndex++;
+            characteristicPortionStart = characteristicPortionEnd + 1;
+        }
+    }
+
+    /**
+     * Counts data portions of single characteristic the same way as {@link String#split(String)} would do it.
+     */
+    private int countDataPortions(ByteLine line, int from, int to) {
+        int dataPortionCount = 0;
+        int dataPortionIndex = 0;
+        int dataPortionStart = from;
+
+        while (true) {
+            int dataPortionEnd = line.indexOf(DATA_SEPARATOR, dataPortionStart, to);
+
+            if (dataPortionEnd == -1) {
+                if (dataPortionIndex == 0) {
+                    // no separator - the whole portion is the only data portion (even if it is empty)
+                    return 1;
+                }
+
+                dataPortionEnd = to;
+            }
+
+            dataPortionIndex++;
+
+            if (dataPortionEnd > dataPortionStart) {
+                dataPortionCount = dataPortionIndex;
+            }
+
+            if (dataPortionEnd == to) {
+                return dataPortionCount;
+            }
+
+            dataPortionStart = dataPortionEnd + 1;
+        }
+    }
+
+    private CharacteristicIndex findCharacteristicIndex(int characteristicIntIndex, ParserContext parserContext) {
+        PartIndex partIndex = parserContext.findPartIndexForCharacteristic(characteristicIntIndex);
+
+        if (partIndex == null) {
+            throw new AqdefValidityException("Characteristic with index " + characteristicIntIndex + " was not found. Can't parse value.");
+        }
+
+        return CharacteristicIndex.of(partIndex, characteristicIntIndex);
+    }
+
+    private String[] getDataPortionKeys(CharacteristicIndex characteristicIndex,
+                                        int dataPortionCount,
+                                        ParserContext parserContext) {
+
+        // recognize binary value format for characterstic type
+        Boolean isAttributeCharacteristic = null;
+        Integer characteristicType = parserContext.getCharacteristicType(characteristicIndex);
+
+        if (characteristicType != null) {
+            switch (characteristicType) {
+                case 1:
+                case 5:
+                case 6:
+                    // 1 - attribute / 5, 6 - error log sheet
+                    isAttributeCharacteristic = true;
+                    break;
+
+                default:
+                    isAttributeCharacteristic = false;
+            }
+        }
+
+        // if the information about characteristic type is not available,
+        // then try to guess it from binary portion count
+        if (isAttributeCharacteristic == null) {
+
+            // attribute values has more than 10 portions
+            isAttributeCharacteristic = dataPortionCount > 10;
+        }
+
+        return isAttributeCharacteristic
+                    ? BINARY_ATTRIBUTE_VALUE_PORTIONS
+                    : BINARY_VALUE_PORTIONS;
+    }
+
+    /**
+     * Value that is not in the projection is not converted, but it still gets a value index (if it is not blank),
+     * so the following values get the same indexes as without the projection.
+     */
+    private void countValueOutOfProjection(KKey kKey,
+                                           CharacteristicIndex characteristicIndex,
+                                           ParserContext parserContext) {
+
+        parserContext.getValueIndexCounter().getIndex(characteristicIndex, kKey);
+    }
+
+    private void handleValue(KKey kKey,
+                             String dataPortion,
+                             CharacteristicIndex characteristicIndex,
+                             IAqdefParserHandler handler,
+                             ParserContext parserContext) {
+        Object value;
+
+        try {
+            value = convertValue(kKey, dataPortion, parserContext);
+
+        } catch (UnknownKKeyException | ValueConversionException e) {
+            //TODO: 2016/04/11 - vlasta: we should provide information that parsed AqdefObjectModel doesn't contain all data?
+            value = null;
+        }
+
+        if (value != null) {
+            ValueIndex valueIndex = parserContext.getValueIndexCounter().getIndex(characteristicIndex, kKey);
+            handler.onValueEntry(kKey, valueIndex, value);
         }
     }
 }
@@ -0,0 +1,207 @@
+package cz.diribet.aqdef.parser.line;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Single line of AQDEF content that is kept as bytes of the underlying {@link ByteBuffer}.
+ * <p>
+ * Line parsers can find the K-key, index and separators directly in bytes, and decode only the portions they need.
+ * This works only for charsets where the ASCII characters are encoded as single bytes with the same value
+ * (see {@link #isAsciiCompatible(Charset)}).
+ * </p>
+ * <p>
+ * Instances are mutable and meant to be reused for all the lines of a single content. All the positions used by the
+ * methods of this class are relative to the start of the line.
+ * </p>
+ * <p>
+ * As a {@link CharSequence}, the line is a view of its bytes as ISO-8859-1 characters. This is exact for the ASCII
+ * portions of the line (K-key, index) which can be passed e.g. to {@link cz.diribet.aqdef.KKey#of(CharSequence, int)}
+ * without decoding.
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ */
+public final class ByteLine implements CharSequence {
+
+    private static final int ASCII_RANGE = 0x80;
+
+    private final ByteBuffer buffer;
+    private final Charset charset;
+
+    private byte[] decodeBuffer = new byte[256];
+
+    private int start;
+    private int end;
+
+    public ByteLine(ByteBuffer buffer, Charset charset) {
+        this.buffer = buffer;
+        this.charset = charset;
+    }
+
+    /**
+     * Checks whether the given charset encodes all the ASCII characters as single bytes with the same value.
+     * This is true for UTF-8, ISO-8859-x, windows-125x and most of the other charsets used for AQDEF files.
+     *
+     * @param charset
+     * @return true if content in this charset can be parsed by lines of bytes
+     */
+    public static boolean isAsciiCompatible(Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+
+        byte[] ascii = new byte[ASCII_RANGE];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+
+        String asciiString = new String(ascii, StandardCharsets.US_ASCII);
+
+        return Arrays.equals(ascii, asciiString.getBytes(charset));
+    }
+
+    /**
+     * Sets the line to the given bytes of the buffer. Leading and trailing whitespace / control characters are
+     * skipped the same way as {@link String#trim()} does it.
+     *
+     * @param lineStart
+     *            absolute position of the first byte of the line
+     * @param lineEnd
+     *            absolute position after the last byte of the line (line terminator is not included)
+     */
+    public void reset(int lineStart, int lineEnd) {
+        while (lineStart < lineEnd && isWhitespace(buffer.get(lineStart))) {
+            lineStart++;
+        }
+
+        while (lineEnd > lineStart && isWhitespace(buffer.get(lineEnd - 1))) {
+            lineEnd--;
+        }
+
+        this.start = lineStart;
+        this.end = lineEnd;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    public boolean isEmpty() {
+        return start == end;
+    }
+
+    public byte byteAt(int index) {
+        return buffer.get(start + index);
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (byteAt(index) & 0xFF);
+    }
+
+    /**
+     * @return the portion of the line decoded using the charset of the content
+     */
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return decode(from, to, true);
+    }
+
+    public int indexOf(int b, int fromIndex) {
+        return indexOf(b, fromIndex, length());
+    }
+
+    public int indexOf(int b, int fromIndex, int toIndex) {
+        for (int i = start + fromIndex; i < start + toIndex; i++) {
+            if (buffer.get(i) == b) {
+                return i - start;
+            }
+        }
+
+        return -1;
+    }
+
+    public boolean startsWith(String prefix) {
+        int prefixLength = prefix.length();
+
+        if (prefixLength > length()) {
+            return false;
+        }
+
+        for (int i = 0; i < prefixLength; i++) {
+            if (byteAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean isAscii(int from, int to) {
+        for (int i = start + from; i < start + to; i++) {
+            if ((buffer.get(i) & 0xFF) >= ASCII_RANGE) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param from
+     * @param to
+     * @return position of the first byte in the given range that is not a whitespace / control character
+     */
+    public int skipWhitespace(int from, int to) {
+        while (from < to && isWhitespace(byteAt(from))) {
+            from++;
+        }
+
+        return from;
+    }
+
+    /**
+     * Decodes the given portion of the line to a String.
+     *
+     * @param from
+     * @param to
+     * @param asciiShortcut
+     *            if true, portions that contain only ASCII characters are copied to the String without using the
+     *            charset decoder
+     * @return decoded portion
+     */
+    public String decode(int from, int to, boolean asciiShortcut) {
+        int length = to - from;
+
+        if (decodeBuffer.length < length) {
+            decodeBuffer = new byte[Math.max(length, decodeBuffer.length * 2)];
+        }
+
+        for (int i = 0; i < length; i++) {
+            decodeBuffer[i] = buffer.get(start + from + i);
+        }
+
+        if (asciiShortcut && isAscii(from, to)) {
+            return new String(decodeBuffer, 0, length, StandardCharsets.ISO_8859_1);
+        } else {
+            return new String(decodeBuffer, 0, length, charset);
+        }
+    }
+
+    /**
+     * @return the whole line decoded using the charset of the content
+     */
+    @Override
+    public String toString() {
+        return decode(0, length(), false);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return (b & 0xFF) <= ' ';
+    }
+
+}
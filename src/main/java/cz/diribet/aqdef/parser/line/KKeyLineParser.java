@@ -3,6 +3,7 @@ package cz.diribet.aqdef.parser.line;
 import cz.diribet.aqdef.AqdefValidityException;
 import cz.diribet.aqdef.KKey;
 import cz.diribet.aqdef.model.*;
+import cz.diribet.aqdef.parser.IAqdefParserHandler;
 import cz.diribet.aqdef.parser.ParserContext;
 import lombok.Data;
 import lombok.NonNull;
@@ -26,20 +27,23 @@ public class KKeyLineParser extends AbstractLineParser {
 
     @Override
     public boolean isLineSupported(@NonNull String line) {
-        return line.startsWith("K");
+        return LineClassifier.classify(line) == LineType.K_KEY;
     }
 
     @Override
     public void parseLine(@NonNull String line,
-                          @NonNull AqdefObjectModel aqdefObjectModel,
+                          @NonNull IAqdefParserHandler handler,
                           @NonNull ParserContext parserContext) {
 
         if (shouldIgnoreKKeyLine(line)) {
             return;
         }
 
-        String key = line.substring(0, 5);
-        KKey kKey = KKey.of(key);
+        KKey kKey = KKey.of(line, 0);
+
+        if (isSkippedByProjection(kKey)) {
+            return;
+        }
 
         boolean hasIndex = false;
 
@@ -86,6 +90,125 @@ public class KKeyLineParser extends AbstractLineParser {
         }
 
         String valueString = line.substring(firstSpaceIndex).trim();
+
+        handleEntry(kKey, index, valueIndexNumber, valueString, handler, parserContext);
+    }
+
+    @Override
+    public boolean isLineSupported(@NonNull ByteLine line) {
+        return LineClassifier.classify(line) == LineType.K_KEY;
+    }
+
+    /**
+     * Parses the K-key line directly from bytes. Only the value is decoded to a String.
+     * Lines with unusual K-key or index (non-ASCII characters, signs, too long numbers, invalid index etc.)
+     * are decoded and parsed by {@link #parseLine(String, IAqdefParserHandler, ParserContext)}.
+     */
+    @Override
+    public void parseLine(@NonNull ByteLine line,
+                          @NonNull IAqdefParserHandler handler,
+                          @NonNull ParserContext parserContext) {
+
+        int length = line.length();
+        int firstSpaceIndex = line.indexOf(' ', 5);
+
+        if (firstSpaceIndex == -1) {
+            firstSpaceIndex = length;
+        }
+
+        if (!line.isAscii(0, firstSpaceIndex)) {
+            parseLine(line.toString(), handler, parserContext);
+            return;
+        }
+
+        if (shouldIgnoreKKeyLine(line)) {
+            return;
+        }
+
+        KKey kKey = KKey.of(line, 0);
+
+        if (isSkippedByProjection(kKey)) {
+            return;
+        }
+
+        int index = 1;
+        Integer valueIndexNumber = null;
+
+        boolean hasIndex = length > 5 && line.byteAt(5) == '/';
+
+        if (hasIndex && firstSpaceIndex > 6) {
+            int valueIndexSeparatorPosition = line.indexOf('/', 6);
+
+            if (valueIndexSeparatorPosition > firstSpaceIndex) {
+                valueIndexSeparatorPosition = -1;
+            }
+
+            if (valueIndexSeparatorPosition == -1) {
+                index = parseIndexNumber(line, 6, firstSpaceIndex);
+
+            } else if (kKey.isValueLevel()) {
+                index = parseIndexNumber(line, 6, valueIndexSeparatorPosition);
+
+                int valueIndex = parseIndexNumber(line, valueIndexSeparatorPosition + 1, firstSpaceIndex);
+
+                if (valueIndex == -1) {
+                    index = -1;
+                } else {
+                    valueIndexNumber = valueIndex;
+                }
+
+            } else {
+                index = -1;
+            }
+
+            if (index == -1) {
+                // let the String parser handle (or report) the unusual index
+                parseLine(line.toString(), handler, parserContext);
+                return;
+            }
+        }
+
+        int valueStart = line.skipWhitespace(firstSpaceIndex, length);
+        String valueString = decodeValue(kKey, line, valueStart, length);
+
+        handleEntry(kKey, index, valueIndexNumber, valueString, handler, parserContext);
+    }
+
+    /**
+     * @return the number or -1 if the given portion is not a plain (and reasonably short) number
+     */
+    private int parseIndexNumber(ByteLine line, int from, int to) {
+        if (from >= to || to - from > 9) {
+            return -1;
+        }
+
+        int number = 0;
+
+        for (int i = from; i < to; i++) {
+            int digit = line.byteAt(i) - '0';
+
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+
+            number = number * 10 + digit;
+        }
+
+        return number;
+    }
+
+    private void handleEntry(KKey kKey,
+                             int index,
+                             Integer valueIndexNumber,
+                             String valueString,
+                             IAqdefParserHandler handler,
+                             ParserContext parserContext) {
+
+        if (!isInProjection(kKey)) {
+            handleEntryOutOfProjection(kKey, index, valueIndexNumber, valueString, parserContext);
+            return;
+        }
+
         Object value;
 
         try {
@@ -103,19 +226,19 @@ public class KKeyLineParser extends AbstractLineParser {
         KKeyContext kKeyContext = KKeyContext.of(kKey, value, index, valueIndexNumber);
 
         if (kKey.isPartLevel()) {
-            handlePartLevel(aqdefObjectModel, kKeyContext, parserContext);
+            handlePartLevel(handler, kKeyContext, parserContext);
 
         } else if (kKey.isCharacteristicLevel()) {
-            handleCharacteristicLevel(aqdefObjectModel, kKeyContext, parserContext);
+            handleCharacteristicLevel(handler, kKeyContext, parserContext);
 
         } else if (kKey.isGroupLevel()) {
-            handleGroupLevel(aqdefObjectModel, kKeyContext, parserContext);
+            handleGroupLevel(handler, kKeyContext, parserContext);
 
         } else if (kKey.isValueLevel()) {
-            handleValueLevel(aqdefObjectModel, kKeyContext, parserContext);
+            handleValueLevel(handler, kKeyContext, parserContext);
 
         } else if (kKey.isHierarchyLevel() || kKey.isSimpleHierarchyLevel()) {
-            aqdefObjectModel.putHierarchyEntry(kKey, index, value);
+            handler.onHierarchyEntry(kKey, index, value);
 
         } else {
             if (isInvalidKKeyLoggingEnabled(kKey)) {
@@ -126,19 +249,72 @@ public class KKeyLineParser extends AbstractLineParser {
         }
     }
 
-    private boolean shouldIgnoreKKeyLine(String line) {
+    /**
+     * K-keys that are not in the projection are skipped right after the K-key is recognized, unless they affect the
+     * indexes of the following entries (part, characteristic and value K-keys).
+     */
+    private boolean isSkippedByProjection(KKey kKey) {
+        return !isInProjection(kKey) && !kKey.isPartLevel() && !kKey.isCharacteristicLevel() && !kKey.isValueLevel();
+    }
+
+    /**
+     * Updates the parser context for the entry that is not in the projection the same way as if it was parsed, so
+     * the following entries get the same indexes as without the projection. The value is not converted (except the
+     * characteristic type) and the entry is not reported to the handler.
+     */
+    private void handleEntryOutOfProjection(KKey kKey,
+                                            int index,
+                                            Integer valueIndexNumber,
+                                            String valueString,
+                                            ParserContext parserContext) {
+
+        if (StringUtils.isBlank(valueString) && !kKey.isValueLevel()) {
+            return;
+        }
+
+        if (kKey.isPartLevel()) {
+            parserContext.setCurrentPartIndex(PartIndex.of(index));
+
+        } else if (kKey.isCharacteristicLevel()) {
+            PartIndex partIndex = getPartIndexForCharacteristicOrGroup(index, parserContext);
+            CharacteristicIndex characteristicIndex = CharacteristicIndex.of(partIndex, index);
+
+            parserContext.registerCharacteristic(characteristicIndex);
+
+            if (CHARACTERISTIC_TYPE_KEY.equals(kKey)) {
+                try {
+                    Object value = convertValue(kKey, valueString, parserContext);
+
+                    if (value instanceof Integer) {
+                        parserContext.putCharacteristicType(characteristicIndex, (Integer) value);
+                    }
+                } catch (UnknownKKeyException | ValueConversionException e) {
+                    // invalid characteristic type is ignored
+                }
+            }
+
+        } else if (kKey.isValueLevel() && valueIndexNumber == null) {
+            CharacteristicIndex characteristicIndex = getCharacteristicIndexForValue(index, parserContext);
+            parserContext.getValueIndexCounter().getIndex(characteristicIndex, kKey);
+        }
+    }
+
+    private boolean shouldIgnoreKKeyLine(CharSequence line) {
         if (line.length() < 5) {
             return true;
         }
 
         for (String ignoredKey : IGNORED_KEYS) {
-            if (line.startsWith(ignoredKey + " ") || line.startsWith(ignoredKey + "/")) {
-                return true;
+            if (startsWith(line, ignoredKey) && line.length() > ignoredKey.length()) {
+                char separator = line.charAt(ignoredKey.length());
+                if (separator == ' ' || separator == '/') {
+                    return true;
+                }
             }
         }
 
         for (String proprietaryKey : PROPRIETARY_QDAS_KEYS) {
-            if (line.startsWith(proprietaryKey)) {
+            if (startsWith(line, proprietaryKey)) {
                 return true;
             }
         }
@@ -146,38 +322,60 @@ public class KKeyLineParser extends AbstractLineParser {
         return false;
     }
 
-    private void handlePartLevel(AqdefObjectModel aqdefObjectModel,
+    private static boolean startsWith(CharSequence line, String prefix) {
+        if (line.length() < prefix.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void handlePartLevel(IAqdefParserHandler handler,
                                  KKeyContext kKeyContext,
                                  ParserContext parserContext) {
 
         PartIndex partIndex = PartIndex.of(kKeyContext.getIndex());
-        aqdefObjectModel.putPartEntry(kKeyContext.getKKey(), partIndex, kKeyContext.getValue());
+        handler.onPartEntry(kKeyContext.getKKey(), partIndex, kKeyContext.getValue());
 
         parserContext.setCurrentPartIndex(partIndex);
     }
 
-    private void handleCharacteristicLevel(AqdefObjectModel aqdefObjectModel,
+    private void handleCharacteristicLevel(IAqdefParserHandler handler,
                                            KKeyContext kKeyContext,
                                            ParserContext parserContext) {
 
-        PartIndex partIndex = getPartIndexForCharacteristicOrGroup(kKeyContext, parserContext);
+        KKey kKey = kKeyContext.getKKey();
+        Object value = kKeyContext.getValue();
+
+        PartIndex partIndex = getPartIndexForCharacteristicOrGroup(kKeyContext.getIndex(), parserContext);
         CharacteristicIndex characteristicIndex = CharacteristicIndex.of(partIndex, kKeyContext.getIndex());
-        aqdefObjectModel.putCharacteristicEntry(kKeyContext.getKKey(), characteristicIndex, kKeyContext.getValue());
+
+        parserContext.registerCharacteristic(characteristicIndex);
+
+        if (CHARACTERISTIC_TYPE_KEY.equals(kKey) && value instanceof Integer) {
+            parserContext.putCharacteristicType(characteristicIndex, (Integer) value);
+        }
+
+        handler.onCharacteristicEntry(kKey, characteristicIndex, value);
     }
 
-    private void handleGroupLevel(AqdefObjectModel aqdefObjectModel,
+    private void handleGroupLevel(IAqdefParserHandler handler,
                                   KKeyContext kKeyContext,
                                   ParserContext parserContext) {
 
-        PartIndex partIndex = getPartIndexForCharacteristicOrGroup(kKeyContext, parserContext);
+        PartIndex partIndex = getPartIndexForCharacteristicOrGroup(kKeyContext.getIndex(), parserContext);
         GroupIndex groupIndex = GroupIndex.of(partIndex, kKeyContext.getIndex());
-        aqdefObjectModel.putGroupEntry(kKeyContext.getKKey(), groupIndex, kKeyContext.getValue());
+        handler.onGroupEntry(kKeyContext.getKKey(), groupIndex, kKeyContext.getValue());
     }
 
-    private PartIndex getPartIndexForCharacteristicOrGroup(KKeyContext kKeyContext,
-                                                           ParserContext parserContext) {
-
-        if (kKeyContext.getIndex() == 0) {
+    private PartIndex getPartIndexForCharacteristicOrGroup(int index, ParserContext parserContext) {
+        if (index == 0) {
             return PartIndex.of(0);
 
         } else {
@@ -192,37 +390,45 @@ public class KKeyLineParser extends AbstractLineParser {
         }
     }
 
-    private void handleValueLevel(AqdefObjectModel aqdefObjectModel,
+    private void handleValueLevel(IAqdefParserHandler handler,
                                   KKeyContext kKeyContext,
                                   ParserContext parserContext) {
 
         KKey kKey = kKeyContext.getKKey();
-        int index = kKeyContext.getIndex();
         Integer valueIndexNumber = kKeyContext.getValueIndexNumber();
 
+        CharacteristicIndex characteristicIndex = getCharacteristicIndexForValue(kKeyContext.getIndex(), parserContext);
+        ValueIndex valueIndex;
+
+        if (valueIndexNumber == null) {
+            valueIndex = parserContext.getValueIndexCounter().getIndex(characteristicIndex, kKey);
+
+        } else {
+            valueIndex = ValueIndex.of(characteristicIndex, valueIndexNumber);
+        }
+
+        Object value = kKeyContext.getValue();
+
+        if (value != null) {
+            handler.onValueEntry(kKey, valueIndex, value);
+        }
+    }
+
+    private CharacteristicIndex getCharacteristicIndexForValue(int index, ParserContext parserContext) {
         PartIndex partIndex;
 
         if (index == 0) {
             partIndex = PartIndex.of(0);
 
         } else {
-            partIndex = aqdefObjectModel.findPartIndexForCharacteristic(index);
+            partIndex = parserContext.findPartIndexForCharacteristic(index);
 
             if (partIndex == null) {
                 throw new AqdefValidityException("Characteristic with index " + index + " was not found. Can't parse value.");
             }
         }
-        CharacteristicIndex characteristicIndex = CharacteristicIndex.of(partIndex, index);
-        ValueIndex valueIndex;
-
-        if (valueIndexNumber == null) {
-            valueIndex = parserContext.getValueIndexCounter().getIndex(characteristicIndex, kKey);
-
-        } else {
-            valueIndex = ValueIndex.of(characteristicIndex, valueIndexNumber);
-        }
 
-        aqdefObjectModel.putValueEntry(kKey, valueIndex, kKeyContext.getValue());
+        return CharacteristicIndex.of(partIndex, index);
     }
 
     @Data(staticConstructor = "of")
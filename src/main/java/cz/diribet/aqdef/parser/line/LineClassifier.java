@@ -0,0 +1,176 @@
+package cz.diribet.aqdef.parser.line;
+
+import cz.diribet.aqdef.AqdefConstants;
+import cz.diribet.aqdef.convert.BigDecimalKKeyValueConverter;
+
+/**
+ * Recognizes the {@link LineType} of a line in a single pass, without exceptions and without allocation.
+ * <p>
+ * A line with a single value is recognized using the grammar of the decimal numbers accepted by
+ * {@link BigDecimalKKeyValueConverter} ({@code ,} or {@code .} as a decimal separator, optional exponent).
+ * Only the format of the number is checked, so values with an exponent out of range are still classified as
+ * {@link LineType#SINGLE_VALUE} and their conversion fails later.
+ * </p>
+ *
+ * @author Vlastimil Dolejs
+ */
+public final class LineClassifier {
+
+    private static final char CHARACTERISTIC_SEPARATOR = AqdefConstants.MEASURED_VALUES_CHARACTERISTIC_SEPARATOR.charAt(0);
+    private static final char DATA_SEPARATOR = AqdefConstants.MEASURED_VALUES_DATA_SEPARATOR.charAt(0);
+
+    private static final int ASCII_RANGE = 0x80;
+
+    // states of the decimal number recognition
+    private static final int START = 0;
+    private static final int SIGN = 1;
+    private static final int INTEGER_DIGITS = 2;
+    private static final int LEADING_DECIMAL_SEPARATOR = 3;
+    private static final int FRACTION_DIGITS = 4;
+    private static final int EXPONENT = 5;
+    private static final int EXPONENT_SIGN = 6;
+    private static final int EXPONENT_DIGITS = 7;
+    private static final int NOT_A_NUMBER = 8;
+
+    private LineClassifier() {}
+
+    /**
+     * @param line
+     *            trimmed line
+     * @return type of the line
+     */
+    public static LineType classify(String line) {
+        int length = line.length();
+
+        if (length == 0) {
+            return LineType.INVALID;
+        }
+
+        if (line.charAt(0) == 'K') {
+            return LineType.K_KEY;
+        }
+
+        int numberState = START;
+
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+
+            if (c == CHARACTERISTIC_SEPARATOR || c == DATA_SEPARATOR) {
+                return LineType.BINARY;
+            }
+
+            numberState = nextNumberState(numberState, c, Character.isDigit(c));
+        }
+
+        return classifyNumber(numberState);
+    }
+
+    /**
+     * @param line
+     *            trimmed line
+     * @return type of the line
+     */
+    public static LineType classify(ByteLine line) {
+        int length = line.length();
+
+        if (length == 0) {
+            return LineType.INVALID;
+        }
+
+        if (line.byteAt(0) == 'K') {
+            return LineType.K_KEY;
+        }
+
+        int numberState = START;
+
+        for (int i = 0; i < length; i++) {
+            int b = line.byteAt(i) & 0xFF;
+
+            if (b == CHARACTERISTIC_SEPARATOR || b == DATA_SEPARATOR) {
+                return LineType.BINARY;
+            }
+
+            if (b >= ASCII_RANGE) {
+                // non-ASCII digits are accepted by BigDecimal as well, they have to be decoded
+                return classify(line.toString());
+            }
+
+            numberState = nextNumberState(numberState, (char) b, b >= '0' && b <= '9');
+        }
+
+        return classifyNumber(numberState);
+    }
+
+    private static int nextNumberState(int state, char c, boolean digit) {
+        if (c == '+' || c == '-') {
+            // sign is allowed only at the start of the number and of the exponent
+            if (state == START) {
+                return SIGN;
+            } else if (state == EXPONENT) {
+                return EXPONENT_SIGN;
+            }
+            return NOT_A_NUMBER;
+        }
+
+        switch (state) {
+            case START:
+            case SIGN:
+                if (digit) {
+                    return INTEGER_DIGITS;
+                } else if (isDecimalSeparator(c)) {
+                    return LEADING_DECIMAL_SEPARATOR;
+                }
+                return NOT_A_NUMBER;
+
+            case INTEGER_DIGITS:
+                if (digit) {
+                    return INTEGER_DIGITS;
+                } else if (isDecimalSeparator(c)) {
+                    return FRACTION_DIGITS;
+                } else if (isExponent(c)) {
+                    return EXPONENT;
+                }
+                return NOT_A_NUMBER;
+
+            case LEADING_DECIMAL_SEPARATOR:
+                return digit ? FRACTION_DIGITS : NOT_A_NUMBER;
+
+            case FRACTION_DIGITS:
+                if (digit) {
+                    return FRACTION_DIGITS;
+                } else if (isExponent(c)) {
+                    return EXPONENT;
+                }
+                return NOT_A_NUMBER;
+
+            case EXPONENT:
+            case EXPONENT_SIGN:
+            case EXPONENT_DIGITS:
+                return digit ? EXPONENT_DIGITS : NOT_A_NUMBER;
+
+            default:
+                return NOT_A_NUMBER;
+        }
+    }
+
+    private static LineType classifyNumber(int numberState) {
+        switch (numberState) {
+            case INTEGER_DIGITS:
+            case FRACTION_DIGITS:
+            case EXPONENT_DIGITS:
+                return LineType.SINGLE_VALUE;
+
+            default:
+                return LineType.INVALID;
+        }
+    }
+
+    private static boolean isDecimalSeparator(char c) {
+        return c == '.' || c == ',';
+    }
+
+    private static boolean isExponent(char c) {
+        return c == 'e' || c == 'E';
+    }
+
+}
@@ -0,0 +1,32 @@
+package cz.diribet.aqdef.parser.line;
+
+/**
+ * Type of a single (trimmed, non-empty) line of AQDEF content.
+ *
+ * @author Vlastimil Dolejs
+ * @see LineClassifier
+ */
+public enum LineType {
+
+    /**
+     * Line starting with a K-key (e.g. {@code K1001 part number})
+     */
+    K_KEY,
+
+    /**
+     * Line with measured values of one or more characteristics in binary format (values separated by
+     * {@code 0x0F} and {@code 0x14})
+     */
+    BINARY,
+
+    /**
+     * Line with a single measured value (e.g. {@code 10,25})
+     */
+    SINGLE_VALUE,
+
+    /**
+     * Line in an unsupported format
+     */
+    INVALID
+
+}
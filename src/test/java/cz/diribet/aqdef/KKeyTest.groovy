@@ -19,6 +19,49 @@ class KKeyTest extends Specification {
 			KKey.of("K1001") is KKey.of("K1001")
 	}
 
+	def "K-key is found in the characters at the given offset" () {
+		expect:
+			KKey.of(chars, offset) is KKey.of(key)
+
+		where:
+			chars          | offset || key
+			"K1001 part"   | 0      || "K1001"
+			"xK0001/2 10"  | 1      || "K0001"
+			"KX101/1 abc"  | 0      || "KX101"
+			"K4020_ID 1"   | 0      || "K4020"
+			"k1001 part"   | 0      || "k1001"
+	}
+
+	def "K-keys with numeric part are the same instances after deserialization" () {
+		given:
+			def bytes = new ByteArrayOutputStream()
+			new ObjectOutputStream(bytes).writeObject(KKey.of("K2001"))
+
+		when:
+			def kKey = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject()
+
+		then:
+			kKey.is(KKey.of("K2001"))
+	}
+
+	def "interned K-keys have distinct ordinals lower than the ordinal count" () {
+		given:
+			def kKeys = ["K1001", "K2001", "KX101", "K0001"].collect { KKey.of(it) }
+
+		expect:
+			kKeys*.ordinal.unique().size() == 4
+			kKeys.every { it.ordinal >= 0 && it.ordinal < KKey.getOrdinalCount() }
+			KKey.of("K4020_ID").ordinal == -1
+	}
+
+	def "K-keys are sorted by number with K0020 and K0021 right after K0001" () {
+		given:
+			def kKeys = ["K2001", "KX001", "K0002", "K4020_ID", "K0021", "K0001", "K4020", "K0020"].collect { KKey.of(it) }
+
+		expect:
+			kKeys.sort()*.key == ["K0001", "K0020", "K0021", "K0002", "K2001", "K4020", "K4020_ID", "KX001"]
+	}
+
 	def "100 000 instances of K-keys can be created without exception" () {
 		when:
 			def klice = []
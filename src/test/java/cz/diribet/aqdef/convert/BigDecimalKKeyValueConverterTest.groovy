@@ -0,0 +1,59 @@
+package cz.diribet.aqdef.convert
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class BigDecimalKKeyValueConverterTest extends Specification {
+
+	@Unroll
+	def "Decimal text '#inputValue' is parsed correctly"() {
+		given:
+			def converter = new BigDecimalKKeyValueConverter()
+
+		when:
+			def value = converter.convert(inputValue)
+
+		then:
+			value == result
+			value.scale() == result.scale()
+
+		where:
+			inputValue						|| result
+			"10"							|| new BigDecimal("10")
+			"10.250"						|| new BigDecimal("10.250")
+			"10,250"						|| new BigDecimal("10.250")
+			"-0,5"							|| new BigDecimal("-0.5")
+			"+.5"							|| new BigDecimal("0.5")
+			"5."							|| new BigDecimal("5")
+			"1,5E-3"						|| new BigDecimal("1.5E-3")
+			"123456789012345678901234,5"	|| new BigDecimal("123456789012345678901234.5")
+			"0000000000000000000000001.5"	|| new BigDecimal("1.5")
+	}
+
+	@Unroll
+	def "Decimal text '#inputValue' is not supported"() {
+		given:
+			def converter = new BigDecimalKKeyValueConverter()
+
+		when:
+			converter.convert(inputValue)
+
+		then:
+			thrown(KKeyValueConversionException)
+
+		where:
+			inputValue	| _
+			"abc"		| _
+			"-"			| _
+			","			| _
+			"1,2,3"		| _
+			"1.2,3"		| _
+			" 1.5"		| _
+	}
+
+	def "Empty text is converted to null"() {
+		expect:
+			new BigDecimalKKeyValueConverter().convert("") == null
+	}
+
+}
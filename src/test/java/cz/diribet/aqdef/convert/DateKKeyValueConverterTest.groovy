@@ -132,6 +132,74 @@ class DateKKeyValueConverterTest extends Specification {
 			/* yyyy/d/M/H:m:s */ "2018.03.20/18:13:10"	| _
 	}
 
+	@Unroll
+	def "Date text '#inputDate' is resolved to #day.#month.#year #hour:#minute"() {
+		given:
+			def dateKKeyValueConverter = new DateKKeyValueConverter()
+
+		when:
+			def date = dateKKeyValueConverter.convert(inputDate)
+
+		then:
+			date == createDate(day, month, year, hour, minute, 0)
+
+		where:
+			inputDate				|| day	| month	| year	| hour	| minute
+			"31.4.2018/10:05"		|| 30	| 4		| 2018	| 10	| 5
+			"2/30/16 10:05"			|| 29	| 2		| 2016	| 10	| 5
+			"31.12.18/24:00"		|| 1	| 1		| 2019	| 0		| 0
+			"18-5-9.24:00:00"		|| 10	| 5		| 2018	| 0		| 0
+	}
+
+	def "ISO date with fraction of seconds and zone offset is parsed"() {
+		given:
+			def dateKKeyValueConverter = new DateKKeyValueConverter()
+
+		when:
+			def date = dateKKeyValueConverter.convert("2018-05-09T10:05:59.125Z")
+
+		then:
+			date == Date.from(OffsetDateTime.of(2018, 5, 9, 10, 5, 59, 125_000_000, ZoneOffset.UTC).toInstant())
+	}
+
+	@Unroll
+	def "Invalid date '#inputDate' is not supported"() {
+		given:
+			def dateKKeyValueConverter = new DateKKeyValueConverter()
+
+		when:
+			dateKKeyValueConverter.convert(inputDate)
+
+		then:
+			thrown(KKeyValueConversionException)
+
+		where:
+			inputDate						| _
+			"9.5.18/24:01"					| _
+			"9.13.18/10:05"					| _
+			"9.5.18/10:60"					| _
+			"9.5.018/10:05"					| _
+			" 9.5.18/10:05"					| _
+			"9.5.18/10:05:59.1"				| _
+			"2018-02-30T10:05:59"			| _
+			"2018-05-09T10:05:59+0200"		| _
+			"2018-05-09T10:05:59+19:00"		| _
+	}
+
+	def "Repeated conversion of the same value returns a new date instance"() {
+		given:
+			def dateKKeyValueConverter = new DateKKeyValueConverter()
+
+		when:
+			def first = dateKKeyValueConverter.convert("9.5.2018/10:05:59")
+			first.setTime(0)
+			def second = dateKKeyValueConverter.convert("9.5.2018/10:05:59")
+
+		then:
+			!first.is(second)
+			second == expectedDateWithSeconds
+	}
+
 	def "Date is formatted correctly"() {
 		given:
 			def dateKKeyValueConverter = new DateKKeyValueConverter()
@@ -0,0 +1,68 @@
+package cz.diribet.aqdef.model;
+
+import cz.diribet.aqdef.KKey
+import spock.lang.Specification
+
+class AqdefObjectModelCharacteristicIndexTest extends Specification {
+
+	def "part index of characteristic is found" () {
+		given:
+			AqdefObjectModel model = new AqdefObjectModel()
+			model.putCharacteristicEntry(KKey.of("K2001"), CharacteristicIndex.of(PartIndex.of(1), 1), "1")
+			model.putCharacteristicEntry(KKey.of("K2001"), CharacteristicIndex.of(PartIndex.of(2), 2), "2")
+
+		expect:
+			model.findPartIndexForCharacteristic(1) == PartIndex.of(1)
+			model.findPartIndexForCharacteristic(2) == PartIndex.of(2)
+			model.findPartIndexForCharacteristic(3) == null
+	}
+
+	def "lowest part index is found if the characteristic index is used in more parts" () {
+		given:
+			AqdefObjectModel model = new AqdefObjectModel()
+			model.putCharacteristicEntry(KKey.of("K2001"), CharacteristicIndex.of(PartIndex.of(3), 1), "1")
+			model.putCharacteristicEntry(KKey.of("K2001"), CharacteristicIndex.of(PartIndex.of(2), 1), "1")
+
+		expect:
+			model.findPartIndexForCharacteristic(1) == PartIndex.of(2)
+	}
+
+	def "part index of characteristic is updated when the characteristic is removed" () {
+		given:
+			AqdefObjectModel model = new AqdefObjectModel()
+			model.putPartEntry(KKey.of("K1001"), PartIndex.of(1), "part 1")
+			model.putPartEntry(KKey.of("K1001"), PartIndex.of(2), "part 2")
+			model.putCharacteristicEntry(KKey.of("K2001"), CharacteristicIndex.of(PartIndex.of(1), 1), "1")
+			model.putCharacteristicEntry(KKey.of("K2001"), CharacteristicIndex.of(PartIndex.of(1), 2), "2")
+			model.putCharacteristicEntry(KKey.of("K2001"), CharacteristicIndex.of(PartIndex.of(2), 1), "1")
+
+		when:
+			model.filterParts({ part -> part.getIndex() != PartIndex.of(1) } as AqdefObjectModel.PartPredicate)
+
+		then:
+			model.findPartIndexForCharacteristic(1) == PartIndex.of(2)
+			model.findPartIndexForCharacteristic(2) == null
+
+		when:
+			model.filterCharacteristics({ part, characteristic -> false } as AqdefObjectModel.CharacteristicPredicate)
+
+		then:
+			model.findPartIndexForCharacteristic(1) == null
+	}
+
+	def "characteristic without a number is not indexed and can be removed" () {
+		given:
+			AqdefObjectModel model = new AqdefObjectModel()
+			model.putPartEntry(KKey.of("K1001"), PartIndex.of(1), "part 1")
+			model.putCharacteristicEntry(KKey.of("K2001"), CharacteristicIndex.of(1, null), "without number")
+			model.putCharacteristicEntry(KKey.of("K2001"), CharacteristicIndex.of(1, 1), "1")
+
+		when:
+			model.filterCharacteristics({ part, characteristic -> false } as AqdefObjectModel.CharacteristicPredicate)
+
+		then:
+			model.getCharacteristicIndexes(PartIndex.of(1)).isEmpty()
+			model.findPartIndexForCharacteristic(1) == null
+	}
+
+}
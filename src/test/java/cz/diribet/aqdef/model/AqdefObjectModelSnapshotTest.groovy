@@ -0,0 +1,215 @@
+package cz.diribet.aqdef.model
+
+import cz.diribet.aqdef.KKey
+import cz.diribet.aqdef.model.builder.AqdefObjectModelBuilder
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class AqdefObjectModelSnapshotTest extends Specification {
+
+	def "snapshot has the same content as the object model"() {
+		given:
+			def objectModel = createObjectModel()
+
+		when:
+			def snapshot = objectModel.snapshot()
+
+		then:
+			snapshot.isFrozen()
+			!objectModel.isFrozen()
+			snapshot == objectModel
+			snapshot.getPartIndexes() == objectModel.getPartIndexes()
+			snapshot.getCharacteristicIndexes(PartIndex.of(1)) == objectModel.getCharacteristicIndexes(PartIndex.of(1))
+			snapshot.getValueEntries(1, 2, 3).getValue("K0001") == 2.3
+			snapshot.getGroups(PartIndex.of(1))*.getValue("K5001") == ["group"]
+			snapshot.getCharacteristics(PartIndex.of(2)).isEmpty()
+			snapshot.getValueCount() == 9
+	}
+
+	def "snapshot is not changed when the object model is changed"() {
+		given:
+			def objectModel = createObjectModel()
+			def snapshot = objectModel.snapshot()
+
+		when:
+			objectModel.putPartEntry(KKey.of("K1001"), PartIndex.of(1), "changed")
+			objectModel.putValueEntry(KKey.of("K0001"), ValueIndex.of(1, 1, 4), 1.4)
+			objectModel.filterCharacteristics({ part, characteristic -> characteristic.getIndex().getCharacteristicIndex() == 1 })
+
+		then:
+			snapshot.getPartEntries(1).getValue("K1001") == "part"
+			snapshot.getValueEntries(1, 1, 4) == null
+			snapshot.getCharacteristicCount() == 3
+	}
+
+	def "snapshot can not be modified"() {
+		given:
+			def snapshot = createObjectModel().snapshot()
+
+		when:
+			modification(snapshot)
+
+		then:
+			thrown(UnsupportedOperationException)
+
+		where:
+			modification << [
+				{ it.putPartEntry(KKey.of("K1002"), PartIndex.of(1), "title") },
+				{ it.getPartEntries(1).put("K1002", "title") },
+				{ it.putCharacteristicEntry(KKey.of("K2002"), CharacteristicIndex.of(1, 1), "title") },
+				{ it.getCharacteristicEntries(1, 1).remove("K2001") },
+				{ it.putValueEntry(KKey.of("K0001"), ValueIndex.of(1, 1, 1), 1) },
+				{ it.getValueEntries(1, 1, 1).remove("K0001") },
+				{ it.filterParts({ false }) },
+				{ it.getParts().clear() },
+				{ it.getHierarchy().removeHierarchyForPart(PartIndex.of(1)) },
+				{ it.normalize() },
+				{ it.concurrentIngestion() }
+			]
+	}
+
+	def "lists of the snapshot are not copied"() {
+		given:
+			def snapshot = createObjectModel().snapshot()
+
+		expect:
+			snapshot.getParts().is(snapshot.getParts())
+			snapshot.getCharacteristics(PartIndex.of(1)).is(snapshot.getCharacteristics(PartIndex.of(1)))
+			snapshot.snapshot().is(snapshot)
+	}
+
+	def "object model is modified after the snapshot also through the entries obtained before"() {
+		given:
+			def objectModel = createObjectModel()
+			def part = objectModel.getPartEntries(1)
+			def characteristic = objectModel.getCharacteristicEntries(1, 1)
+			def value = objectModel.getValueEntries(1, 1, 1)
+			def snapshot = objectModel.snapshot()
+
+		when:
+			part.put("K1002", "title")
+
+			def iterator = characteristic.entrySet().iterator()
+			iterator.next()
+			iterator.remove()
+
+			value.put("K0001", 5.5)
+			objectModel.filterValues({ p, c, v -> v.getIndex() != ValueIndex.of(1, 2, 1) })
+
+		then:
+			objectModel.getPartEntries(1).getValue("K1002") == "title"
+			objectModel.getCharacteristicEntries(1, 1).isEmpty()
+			objectModel.getValueEntries(1, 1, 1).getValue("K0001") == 5.5
+			objectModel.getValueEntries(1, 2, 1) == null
+
+			snapshot.getPartEntries(1).getValue("K1002") == null
+			snapshot.getCharacteristicEntries(1, 1).getValue("K2001") == "characteristic 1"
+			snapshot.getValueEntries(1, 1, 1).getValue("K0001") == 1.1
+			snapshot.getValueEntries(1, 2, 1).getValue("K0001") == 2.1
+	}
+
+	def "snapshot shares the storage with the object model"() {
+		given:
+			def objectModel = createObjectModel()
+
+		when:
+			def snapshot = objectModel.snapshot()
+			objectModel.putPartEntry(KKey.of("K1002"), PartIndex.of(1), "title")
+			objectModel.putValueEntry(KKey.of("K0001"), ValueIndex.of(1, 1, 4), 1.4)
+
+			def nextSnapshot = objectModel.snapshot()
+
+		then: "storage that was not modified is shared"
+			storage(snapshot.getCharacteristicEntries(1, 1)).is(storage(objectModel.getCharacteristicEntries(1, 1)))
+			storage(nextSnapshot.getCharacteristicEntries(1, 1)).is(storage(snapshot.getCharacteristicEntries(1, 1)))
+			valueColumns(snapshot, 1, 2).columns.is(valueColumns(objectModel, 1, 2).columns)
+			valueColumns(nextSnapshot, 1, 2).columns.is(valueColumns(snapshot, 1, 2).columns)
+
+		and: "modified storage is copied"
+			!storage(nextSnapshot.getPartEntries(1)).is(storage(snapshot.getPartEntries(1)))
+			!valueColumns(nextSnapshot, 1, 1).columns.is(valueColumns(snapshot, 1, 1).columns)
+			nextSnapshot.getPartEntries(1).getValue("K1002") == "title"
+			nextSnapshot.getValueEntries(1, 1, 4).getValue("K0001") == 1.4
+			snapshot.getValueEntries(1, 1, 4) == null
+	}
+
+	def "values of the snapshot are not copied"() {
+		given:
+			def snapshot = createObjectModel().snapshot()
+			def characteristicIndex = CharacteristicIndex.of(1, 2)
+
+		expect:
+			snapshot.getValueEntries(1, 2, 3).is(snapshot.getValueEntries(1, 2, 3))
+			snapshot.getValues(characteristicIndex).is(snapshot.getValues(characteristicIndex))
+			snapshot.getValues(characteristicIndex)[2].is(snapshot.getValueEntries(1, 2, 3))
+			snapshot.getValueIndexes(characteristicIndex).is(snapshot.getValueIndexes(characteristicIndex))
+	}
+
+	def "values of the snapshot are converted"() {
+		given:
+			def objectModel = new AqdefObjectModel()
+			objectModel.putCharacteristicEntry(KKey.of("K2101"), CharacteristicIndex.of(1, 1), new UnconvertedValue(KKey.of("K2101"), "1.5"))
+			objectModel.putValueEntry(KKey.of("K0001"), ValueIndex.of(1, 1, 1), new UnconvertedValue(KKey.of("K0001"), "10.5"))
+
+		when:
+			def snapshot = objectModel.snapshot()
+
+		then:
+			snapshot.getCharacteristicEntries(1, 1).getValue("K2101") == 1.5
+			snapshot.getValueEntries(1, 1, 1).getValue("K0001") == 10.5
+	}
+
+	def "snapshot is read by several threads"() {
+		given:
+			def snapshot = createObjectModel().snapshot()
+			def executor = Executors.newFixedThreadPool(8)
+
+		when:
+			def results = (1..32).collect {
+				executor.submit({
+					def values = []
+					snapshot.forEachValue({ part, characteristic, value -> values << value.getValue("K0001") })
+					return values
+				} as Callable)
+			}*.get()
+
+			executor.shutdown()
+
+		then:
+			results.every { it == [1.1, 1.2, 1.3, 2.1, 2.2, 2.3, 3.1, 3.2, 3.3] }
+	}
+
+	private static Object storage(AqdefObjectModel.Entries entries) {
+		def field = AqdefObjectModel.Entries.getDeclaredField("entries")
+		field.setAccessible(true)
+		return field.get(entries)
+	}
+
+	private static ValueColumns valueColumns(AqdefObjectModel objectModel, int part, int characteristic) {
+		return objectModel.getValueColumns(CharacteristicIndex.of(part, characteristic))
+	}
+
+	private AqdefObjectModel createObjectModel() {
+		def builder = new AqdefObjectModelBuilder()
+		builder.createPartEntry("K1001", "part")
+		builder.createGroupEntry("K5001", "group")
+
+		for (characteristic in 1..3) {
+			builder.createCharacteristicEntry("K2001", "characteristic $characteristic".toString())
+
+			for (value in 1..3) {
+				builder.createValueEntry("K0001", new BigDecimal("$characteristic.$value"))
+				builder.nextValue()
+			}
+
+			builder.nextCharacteristic()
+		}
+
+		builder.createHierarchyNodeOfPart()
+
+		return builder.build()
+	}
+
+}
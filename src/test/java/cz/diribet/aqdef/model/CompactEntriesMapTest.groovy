@@ -0,0 +1,137 @@
+package cz.diribet.aqdef.model
+
+import cz.diribet.aqdef.KKey
+import cz.diribet.aqdef.KKeyRepository
+import cz.diribet.aqdef.model.AqdefObjectModel.CharacteristicEntries
+import cz.diribet.aqdef.model.AqdefObjectModel.CharacteristicEntry
+import spock.lang.Specification
+
+import java.util.function.BiFunction
+
+class CompactEntriesMapTest extends Specification {
+
+	def characteristicIndex = CharacteristicIndex.of(1, 1)
+	def kKeys = KKeyRepository.getInstance().getCharacteristicKKeys().subList(0, 40)
+
+	def "entries are put, read and removed by K-key"() {
+		given:
+			def entries = new CharacteristicEntries(characteristicIndex)
+
+		when:
+			kKeys.each { entries.put(it, "value of $it".toString()) }
+
+		then:
+			entries.size() == 40
+			kKeys.every { entries.getValue(it) == "value of $it".toString() }
+			entries.get(kKeys[15]) == new CharacteristicEntry(kKeys[15], characteristicIndex, "value of ${kKeys[15]}".toString())
+			entries.get(KKey.of("K1001")) == null
+
+		when:
+			def removed = entries.remove(kKeys[15])
+			entries.put(kKeys[20], "changed")
+
+		then:
+			removed.getValue() == "value of ${kKeys[15]}".toString()
+			entries.size() == 39
+			!entries.containsKey(kKeys[15])
+			entries.getValue(kKeys[16]) == "value of ${kKeys[16]}".toString()
+			entries.getValue(kKeys[20]) == "changed"
+	}
+
+	def "entries are iterated in the order in which they were put"() {
+		given:
+			def entries = new CharacteristicEntries(characteristicIndex)
+			["K2002", "K2001", "K2900", "K2101"].each { entries.put(it, it) }
+
+		expect:
+			entries.values()*.getKey()*.getKey() == ["K2002", "K2001", "K2900", "K2101"]
+			entries.values()*.getIndex().every { it == characteristicIndex }
+	}
+
+	def "entries may be removed during iteration"() {
+		given:
+			def entries = new CharacteristicEntries(characteristicIndex)
+			kKeys.eachWithIndex { kKey, i -> entries.put(kKey, i) }
+
+		when:
+			def iterator = entries.entrySet().iterator()
+			while (iterator.hasNext()) {
+				if (iterator.next().getValue().getValue() % 2 == 0) {
+					iterator.remove()
+				}
+			}
+
+		then:
+			entries.values()*.getValue() == (1..39).step(2)
+			entries.getValue(kKeys[39]) == 39
+			entries.getValue(kKeys[38]) == null
+	}
+
+	def "unconverted value is converted when it is read"() {
+		given:
+			def entries = new CharacteristicEntries(characteristicIndex)
+			entries.put(KKey.of("K2101"), new UnconvertedValue(KKey.of("K2101"), "1.5"))
+
+		expect:
+			entries.getValue(KKey.of("K2101")) == 1.5
+			entries.get(KKey.of("K2101")).getValue() == 1.5
+	}
+
+	def "values are put and read without creating the entries"() {
+		given:
+			int createdEntries = 0
+			def entries = new CompactEntriesMap<CharacteristicEntry>({ KKey key, Object value ->
+				createdEntries++
+				new CharacteristicEntry(key, characteristicIndex, value)
+			} as BiFunction)
+
+		when:
+			kKeys.each { entries.putValue(it, it.getKey()) }
+			entries.putValue(kKeys[3], "changed")
+
+		then:
+			kKeys.every { entries.getValue(it) == (it == kKeys[3] ? "changed" : it.getKey()) }
+			entries.size() == 40
+			createdEntries == 0
+
+		when:
+			def entry = entries.get(kKeys[3])
+
+		then:
+			entry.getValue() == "changed"
+			createdEntries == 1
+	}
+
+	def "entries are serialized with their index and values"() {
+		given:
+			def objectModel = new AqdefObjectModel()
+			objectModel.putCharacteristicEntry(KKey.of("K2001"), characteristicIndex, "diameter")
+			objectModel.putCharacteristicEntry(KKey.of("K2101"), characteristicIndex, new UnconvertedValue(KKey.of("K2101"), "1.5"))
+			objectModel.putValueEntry(KKey.of("K0001"), ValueIndex.of(characteristicIndex, 3), 1.25G)
+
+		when:
+			def characteristic = serializeAndRead(objectModel.getCharacteristicEntries(characteristicIndex))
+			def value = serializeAndRead(objectModel.getValueEntries(ValueIndex.of(characteristicIndex, 3)))
+
+		then:
+			characteristic == objectModel.getCharacteristicEntries(characteristicIndex)
+			characteristic.getIndex().is(characteristicIndex)
+			characteristic.getValue("K2101") == 1.5
+
+			value == objectModel.getValueEntries(ValueIndex.of(characteristicIndex, 3))
+
+		when:
+			characteristic.put(KKey.of("K2002"), "changed")
+
+		then:
+			objectModel.getCharacteristicEntries(characteristicIndex).getValue("K2002") == null
+	}
+
+	private static <T> T serializeAndRead(T object) {
+		def bytes = new ByteArrayOutputStream()
+		new ObjectOutputStream(bytes).withStream { it.writeObject(object) }
+
+		return new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).withStream { it.readObject() } as T
+	}
+
+}
@@ -0,0 +1,136 @@
+package cz.diribet.aqdef.model
+
+import cz.diribet.aqdef.KKey
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class ConcurrentIngestionTest extends Specification {
+
+	def "entries put by several threads are all stored in the object model"() {
+		given:
+			def producers = 24
+			def valuesPerProducer = 500
+			def objectModel = new AqdefObjectModel()
+			def ingestion = objectModel.concurrentIngestion()
+
+			def executor = Executors.newFixedThreadPool(8)
+			def start = new CountDownLatch(1)
+
+		when:
+			def futures = (1..producers).collect { producer ->
+				executor.submit({
+					start.await()
+
+					// all the producers write to the same part, some of them to the same characteristic
+					int characteristic = (producer % 12) + 1
+					ingestion.putPartEntry(KKey.of("K1001"), PartIndex.of(1), "part")
+					ingestion.putCharacteristicEntry(KKey.of("K2001"), CharacteristicIndex.of(1, characteristic), "characteristic $characteristic".toString())
+					ingestion.putGroupEntry(KKey.of("K5001"), GroupIndex.of(1, characteristic), "group $characteristic".toString())
+
+					for (int i = 0; i < valuesPerProducer; i++) {
+						def valueIndex = ValueIndex.of(1, characteristic, producer * valuesPerProducer + i)
+						ingestion.putValueEntry(KKey.of("K0001"), valueIndex, i as BigDecimal)
+						ingestion.putValueEntry(KKey.of("K0004"), valueIndex, new Date(i))
+					}
+					return null
+				} as Callable)
+			}
+
+			start.countDown()
+			futures*.get()
+			executor.shutdown()
+
+		then:
+			objectModel.getPartIndexes() == [PartIndex.of(1)]
+			objectModel.getPartEntries(1).getValue("K1001") == "part"
+			objectModel.getCharacteristicIndexes(PartIndex.of(1)).size() == 12
+			objectModel.getCharacteristicEntries(1, 5).getValue("K2001") == "characteristic 5"
+			objectModel.getGroupEntries(GroupIndex.of(1, 5)).getValue("K5001") == "group 5"
+			objectModel.getValueCount() == producers * valuesPerProducer
+
+			with(objectModel.getValueEntries(ValueIndex.of(1, 4, 3 * valuesPerProducer + 7))) {
+				getValue("K0001") == 7
+				getValue("K0004") == new Date(7)
+			}
+	}
+
+	def "value of non value K-key is rejected"() {
+		given:
+			def ingestion = new AqdefObjectModel().concurrentIngestion()
+
+		when:
+			ingestion.putValueEntry(KKey.of("K2001"), ValueIndex.of(1, 1, 1), "value")
+
+		then:
+			thrown(IllegalArgumentException)
+	}
+
+	def "several ingestions of the same object model may be used at once"() {
+		given:
+			def objectModel = new AqdefObjectModel()
+			def executor = Executors.newFixedThreadPool(8)
+			def start = new CountDownLatch(1)
+
+		when:
+			def futures = (1..16).collect { producer ->
+				executor.submit({
+					def ingestion = objectModel.concurrentIngestion()
+					start.await()
+
+					// every producer creates new parts and characteristics
+					for (int part = 1; part <= 50; part++) {
+						ingestion.putPartEntry(KKey.of("K1001"), PartIndex.of(part), "part $part".toString())
+						ingestion.putCharacteristicEntry(KKey.of("K2001"), CharacteristicIndex.of(part, producer), "characteristic".toString())
+						ingestion.putValueEntry(KKey.of("K0001"), ValueIndex.of(part, producer, 1), producer as BigDecimal)
+						ingestion.putHierarchyEntry(KKey.of("K5111"), part * 100 + producer, part)
+					}
+					return null
+				} as Callable)
+			}
+
+			start.countDown()
+			futures*.get()
+			executor.shutdown()
+
+		then:
+			objectModel.getPartIndexes().size() == 50
+			objectModel.getCharacteristicCount() == 50 * 16
+			objectModel.getValueCount() == 50 * 16
+			objectModel.getHierarchy().getNodeDefinitionEntries().size() == 50 * 16
+	}
+
+	def "producer is not blocked by a producer of another characteristic"() {
+		given:
+			def objectModel = new AqdefObjectModel()
+			def ingestion = objectModel.concurrentIngestion()
+			ingestion.putValueEntry(KKey.of("K0001"), ValueIndex.of(1, 1, 1), 1.0G)
+			ingestion.putValueEntry(KKey.of("K0001"), ValueIndex.of(1, 2, 1), 1.0G)
+
+			def executor = Executors.newSingleThreadExecutor()
+
+		when: "values of the first characteristic are locked by another producer"
+			def otherCharacteristic
+			def sameCharacteristic
+
+			synchronized (objectModel.computeValueColumnsIfAbsent(CharacteristicIndex.of(1, 1))) {
+				otherCharacteristic = executor.submit({ ingestion.putValueEntry(KKey.of("K0001"), ValueIndex.of(1, 2, 2), 2.0G) } as Runnable)
+				otherCharacteristic.get(10, TimeUnit.SECONDS)
+
+				sameCharacteristic = executor.submit({ ingestion.putValueEntry(KKey.of("K0001"), ValueIndex.of(1, 1, 2), 2.0G) } as Runnable)
+				Thread.sleep(100)
+			}
+
+			sameCharacteristic.get(10, TimeUnit.SECONDS)
+			executor.shutdown()
+
+		then:
+			otherCharacteristic.isDone()
+			objectModel.getValueEntries(ValueIndex.of(1, 2, 2)).getValue("K0001") == 2.0
+			objectModel.getValueEntries(ValueIndex.of(1, 1, 2)).getValue("K0001") == 2.0
+	}
+
+}
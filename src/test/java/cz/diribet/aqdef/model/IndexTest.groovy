@@ -0,0 +1,39 @@
+package cz.diribet.aqdef.model
+
+import spock.lang.Specification
+
+class IndexTest extends Specification {
+
+	def "usual part and characteristic indexes are canonical instances"() {
+		expect:
+			PartIndex.of(1) is PartIndex.of(1)
+			CharacteristicIndex.of(1, 2) is CharacteristicIndex.of(PartIndex.of(1), 2)
+			ValueIndex.of(1, 2, 3).getPartIndex() is PartIndex.of(1)
+	}
+
+	def "indexes out of the cached range are equal but not the same"() {
+		expect:
+			PartIndex.of(1000) == PartIndex.of(1000)
+			CharacteristicIndex.of(1, 5000) == CharacteristicIndex.of(1, 5000)
+			CharacteristicIndex.of(1000, 1) == CharacteristicIndex.of(1000, 1)
+			CharacteristicIndex.of(1000, 1).hashCode() == CharacteristicIndex.of(1000, 1).hashCode()
+	}
+
+	def "missing index is lower than any other index"() {
+		expect:
+			PartIndex.of(null) < PartIndex.of(0)
+			CharacteristicIndex.of(1, null) < CharacteristicIndex.of(1, 1)
+			ValueIndex.of(1, 1, null) < ValueIndex.of(1, 1, 1)
+			PartIndex.of(null).getIndex() == null
+			ValueIndex.of(1, 1, null).toString() == "1/1/"
+	}
+
+	def "value indexes are sorted by part, characteristic and value"() {
+		given:
+			def indexes = [ValueIndex.of(2, 1, 1), ValueIndex.of(1, 2, 1), ValueIndex.of(1, 1, 2), ValueIndex.of(1, 1, 1)]
+
+		expect:
+			indexes.sort()*.toString() == ["1/1/1", "1/1/2", "1/2/1", "2/1/1"]
+	}
+
+}
@@ -0,0 +1,65 @@
+package cz.diribet.aqdef.model
+
+import spock.lang.Specification
+
+class IndexedEntriesMapTest extends Specification {
+
+	def "entries are iterated in the order of the indexes"() {
+		given:
+			def map = IndexedEntriesMap.byCharacteristicIndex(PartIndex.of(1))
+
+			[CharacteristicIndex.of(1, 70000), CharacteristicIndex.of(1, 3), CharacteristicIndex.of(2, 1),
+			 CharacteristicIndex.of(1, 0), CharacteristicIndex.of(1, null), CharacteristicIndex.of(1, 1),
+			 CharacteristicIndex.of(0, 5)].each { map.put(it, it.toString()) }
+
+		expect:
+			map.keySet()*.toString() == ["0/5", "1/", "1/0", "1/1", "1/3", "1/70000", "2/1"]
+			map.size() == 7
+			map == new TreeMap(map)
+	}
+
+	def "entries are put, read and removed by index"() {
+		given:
+			def map = IndexedEntriesMap.byPartIndex()
+
+		when:
+			map.put(PartIndex.of(0), "all parts")
+			map.put(PartIndex.of(2), "part 2")
+			map.put(PartIndex.of(null), "no index")
+
+		then:
+			map.get(PartIndex.of(0)) == "all parts"
+			map.get(PartIndex.of(2)) == "part 2"
+			map.get(PartIndex.of(null)) == "no index"
+			map.get(PartIndex.of(1)) == null
+			map.get(PartIndex.of(100000)) == null
+
+		when:
+			def removed = map.remove(PartIndex.of(0))
+
+		then:
+			removed == "all parts"
+			map.keySet() as List == [PartIndex.of(null), PartIndex.of(2)]
+	}
+
+	def "entries may be removed and put during iteration"() {
+		given:
+			def map = IndexedEntriesMap.byPartIndex()
+			(1..5).each { map.put(PartIndex.of(it), it) }
+
+		when:
+			def iterator = map.entrySet().iterator()
+			while (iterator.hasNext()) {
+				def entry = iterator.next()
+				if (entry.value % 2 == 0) {
+					iterator.remove()
+				}
+			}
+
+			map.forEach { index, value -> map.put(PartIndex.of(value + 100), value) }
+
+		then:
+			map.values() as List == [1, 3, 5, 1, 3, 5]
+	}
+
+}
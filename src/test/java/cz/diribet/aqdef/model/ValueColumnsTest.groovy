@@ -0,0 +1,162 @@
+package cz.diribet.aqdef.model
+
+import cz.diribet.aqdef.KKey
+import spock.lang.Specification
+
+import java.sql.Timestamp
+
+class ValueColumnsTest extends Specification {
+
+	def characteristicIndex = CharacteristicIndex.of(1, 1)
+
+	def "values of all types are stored and sorted by value index"() {
+		given:
+			def values = new ValueColumns(characteristicIndex)
+
+		when:
+			values.put(valueIndex(2), KKey.of("K0001"), 2.5G)
+			values.put(valueIndex(1), KKey.of("K0001"), 1.25G)
+			values.put(valueIndex(1), KKey.of("K0004"), new Date(1000))
+			values.put(valueIndex(1), KKey.of("K0002"), 3)
+			values.put(valueIndex(1), KKey.of("K0006"), "charge")
+			values.put(valueIndex(2), KKey.of("K0004"), new Timestamp(2000))
+			values.put(valueIndex(3), KKey.of("K0001"), new BigDecimal("1E+300"))
+
+		then:
+			values.getValueIndexes()*.valueIndex == [1, 2, 3]
+
+			with(values.get(valueIndex(1))) {
+				getValue("K0001") == 1.25G
+				getValue("K0001").scale() == 2
+				getValue("K0004") == new Date(1000)
+				getValue("K0002") == 3
+				getValue("K0006") == "charge"
+				size() == 4
+			}
+
+			values.get(valueIndex(2)).getValue("K0004") == new Timestamp(2000)
+			values.get(valueIndex(3)).getValue("K0001") == new BigDecimal("1E+300")
+	}
+
+	def "changes made through the view are stored"() {
+		given:
+			def values = new ValueColumns(characteristicIndex)
+			values.put(valueIndex(1), KKey.of("K0001"), 1.0G)
+
+		when:
+			def view = values.get(valueIndex(1))
+			view.put("K0002", 1)
+			view.remove("K0001")
+
+		then:
+			values.get(valueIndex(1)).keySet() == [KKey.of("K0002")] as Set
+			values.get(valueIndex(1)) == view
+	}
+
+	def "values of rare K-keys are kept"() {
+		given:
+			def values = new ValueColumns(characteristicIndex)
+
+		when:
+			(1..100).each { values.put(valueIndex(it), KKey.of("K0001"), it as BigDecimal) }
+			values.put(valueIndex(50), KKey.of("K0010"), 7)
+			(1..10).each { values.put(valueIndex(it), KKey.of("K0012"), it) }
+
+		then:
+			values.get(valueIndex(50)).getValue("K0010") == 7
+			values.get(valueIndex(51)).getValue("K0010") == null
+			(1..10).every { values.get(valueIndex(it)).getValue("K0012") == it }
+	}
+
+	def "values that match the predicate are removed"() {
+		given:
+			def values = new ValueColumns(characteristicIndex)
+			(1..10).each { values.put(valueIndex(it), KKey.of("K0001"), it as BigDecimal) }
+
+		when:
+			values.removeIf({ it.getIndex().getValueIndex() % 2 == 0 })
+
+		then:
+			values.getValueIndexes()*.valueIndex == [1, 3, 5, 7, 9]
+			values.get(valueIndex(9)).getValue("K0001") == 9
+			values.get(valueIndex(2)) == null
+	}
+
+	def "unconverted values are kept in primitive columns and converted when they are read"() {
+		given:
+			def values = new ValueColumns(characteristicIndex)
+
+		when:
+			(1..20).each {
+				values.put(valueIndex(it), KKey.of("K0001"), new UnconvertedValue(KKey.of("K0001"), "${it}.5".toString()))
+				values.put(valueIndex(it), KKey.of("K0002"), new UnconvertedValue(KKey.of("K0002"), it.toString()))
+			}
+			values.put(valueIndex(21), KKey.of("K0001"), new UnconvertedValue(KKey.of("K0001"), "not a number"))
+			values.put(valueIndex(7), KKey.of("K0010"), new UnconvertedValue(KKey.of("K0010"), "3"))
+
+		then:
+			values.columns*.getClass()*.getSimpleName() == ["DecimalColumn", "IntColumn"]
+
+		when:
+			def readValues = (1..20).collect { values.get(valueIndex(it)).getValue("K0001") }
+
+		then:
+			readValues == (1..20).collect { new BigDecimal("${it}.5") }
+			values.get(valueIndex(5)).getValue("K0002") == 5
+			values.get(valueIndex(7)).getValue("K0010") == 3
+			values.get(valueIndex(8)).getValue("K0010") == null
+
+			values.columns[0].getClass().getSimpleName() == "DecimalColumn"
+			unconvertedValues(values.columns[0]) != null
+
+		when:
+			def invalidValue = values.get(valueIndex(21)).getValue("K0001")
+
+		then:
+			invalidValue == null
+			values.columns[0].getClass().getSimpleName() == "ObjectColumn"
+			values.get(valueIndex(3)).getValue("K0001") == 3.5
+	}
+
+	def "unconverted values are released when all of them are converted"() {
+		given:
+			def values = new ValueColumns(characteristicIndex)
+			(1..5).each { values.put(valueIndex(it), KKey.of("K0004"), new UnconvertedValue(KKey.of("K0004"), "01.02.2020/10:00:0$it")) }
+
+		when:
+			values.getValues()*.getValue("K0004")
+
+		then:
+			values.columns[0].getClass().getSimpleName() == "DateColumn"
+			unconvertedValues(values.columns[0]) == null
+			values.get(valueIndex(3)).getValue("K0004") instanceof Date
+	}
+
+	def "values of rare K-keys survive removal of rows"() {
+		given:
+			def values = new ValueColumns(characteristicIndex)
+			(1..100).each { values.put(valueIndex(it), KKey.of("K0001"), it as BigDecimal) }
+			[90, 10, 50].each { values.put(valueIndex(it), KKey.of("K0010"), it) }
+
+		when:
+			values.remove(valueIndex(50))
+			values.removeIf({ it.getIndex().getValueIndex() == 10 })
+
+		then:
+			values.get(valueIndex(90)).getValue("K0010") == 90
+			values.get(valueIndex(90)).keySet() == [KKey.of("K0001"), KKey.of("K0010")] as Set
+			(1..89).every { values.get(valueIndex(it))?.getValue("K0010") == null }
+			values.snapshot().get(valueIndex(90)).getValue("K0010") == 90
+	}
+
+	private static Object[] unconvertedValues(column) {
+		def field = column.getClass().getSuperclass().getDeclaredField("unconvertedValues")
+		field.setAccessible(true)
+		return field.get(column)
+	}
+
+	private ValueIndex valueIndex(int index) {
+		return ValueIndex.of(characteristicIndex, index)
+	}
+
+}
@@ -0,0 +1,111 @@
+package cz.diribet.aqdef.parser
+
+import cz.diribet.aqdef.model.AqdefObjectModel
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+class AqdefBatchParserTest extends Specification {
+
+	Path directory
+
+	def setup() {
+		directory = Files.createTempDirectory("aqdef")
+	}
+
+	def cleanup() {
+		directory.toFile().deleteDir()
+	}
+
+	def "all the files matching the pattern are parsed"() {
+		given:
+			(1..5).each { write("file${it}.dfq", dfq(it)) }
+			write("file.txt", dfq(6))
+
+			def handler = new RecordingHandler()
+
+		when:
+			new AqdefBatchParser().parseDirectory(directory, "*.dfq", "utf-8", handler)
+
+		then:
+			handler.models.size() == 5
+			handler.models[directory.resolve("file3.dfq")].getPartEntries(1).getValue("K1001") == "part3"
+			handler.errors.isEmpty()
+	}
+
+	def "files which can't be parsed are reported as errors"() {
+		given:
+			write("valid.dfq", dfq(1))
+			write("invalid.dfq", "K0100 1\nK1001/1 part\nK0001/2 10\n")
+
+			def handler = new RecordingHandler()
+
+		when:
+			new AqdefBatchParser().parse([directory.resolve("valid.dfq"), directory.resolve("invalid.dfq")].stream(), "utf-8", handler)
+
+		then:
+			handler.models.keySet() == [directory.resolve("valid.dfq")] as Set
+			handler.errors == [directory.resolve("invalid.dfq")]
+	}
+
+	def "files larger than the memory budget are parsed one by one"() {
+		given:
+			(1..4).each { write("file${it}.dfq", dfq(it)) }
+
+			def handler = new RecordingHandler()
+
+			def batchParser = new AqdefBatchParser()
+			batchParser.setMaxParallelFiles(4)
+			batchParser.setMemoryBudget(Files.size(directory.resolve("file1.dfq")))
+
+		when:
+			batchParser.parseDirectory(directory, "*.dfq", "utf-8", handler)
+
+		then:
+			handler.models.size() == 4
+			handler.maxParallelFiles.get() == 1
+	}
+
+	private void write(String fileName, String content) {
+		Files.write(directory.resolve(fileName), content.getBytes(StandardCharsets.UTF_8))
+	}
+
+	private static String dfq(int number) {
+		return """
+			K0100 1
+			K1001/1 part${number}
+			K2001/1 char
+			K0001/1 ${number}
+		"""
+	}
+
+	private static class RecordingHandler implements IAqdefBatchHandler {
+
+		def models = new ConcurrentHashMap<Path, AqdefObjectModel>()
+		def errors = [].asSynchronized()
+
+		def parallelFiles = new AtomicInteger()
+		def maxParallelFiles = new AtomicInteger()
+
+		@Override
+		void onObjectModel(Path file, AqdefObjectModel aqdefObjectModel) {
+			int files = parallelFiles.incrementAndGet()
+			maxParallelFiles.accumulateAndGet(files, { a, b -> Math.max(a, b) })
+
+			Thread.sleep(10)
+			models[file] = aqdefObjectModel
+
+			parallelFiles.decrementAndGet()
+		}
+
+		@Override
+		void onError(Path file, Exception e) {
+			errors << file
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package cz.diribet.aqdef.parser
+
+import cz.diribet.aqdef.model.AqdefObjectModel
+import cz.diribet.aqdef.model.CharacteristicIndex
+import cz.diribet.aqdef.model.PartIndex
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+class AqdefIncrementalParserTest extends Specification {
+
+	Path file
+
+	def setup() {
+		file = Files.createTempFile("aqdef", ".dfq")
+		file.toFile().deleteOnExit()
+	}
+
+	def "appended values are added to the object model"() {
+		given:
+			write(header + "K0001/1 10\nK0001/2 20\n")
+			def parser = new AqdefIncrementalParser(file, "utf-8")
+
+		when:
+			parser.parseAppended()
+			append("K0001/1 11\nK0001/2 21\n")
+			parser.parseAppended()
+
+			AqdefObjectModel model = parser.getAqdefObjectModel()
+
+		then:
+			model.getValues(CharacteristicIndex.of(1, 1)).size() == 2
+			model.getValueEntries(1, 1, 2).getValue("K0001") == 11
+			model.getValueEntries(1, 2, 2).getValue("K0001") == 21
+			parser.getOffset() == Files.size(file)
+	}
+
+	def "nothing is parsed when nothing was appended"() {
+		given:
+			write(header)
+			def parser = new AqdefIncrementalParser(file, "utf-8")
+
+		when:
+			def firstResult = parser.parseAppended()
+			def secondResult = parser.parseAppended()
+
+		then:
+			firstResult
+			!secondResult
+			parser.getAqdefObjectModel().getCharacteristicCount() == 2
+	}
+
+	def "incomplete line is parsed when it is completed"() {
+		given:
+			write(header + "K0001/1 10\nK0001/2 2")
+			def parser = new AqdefIncrementalParser(file, "utf-8")
+
+		when:
+			parser.parseAppended()
+			def valuesBeforeLineIsCompleted = parser.getAqdefObjectModel().getValueCount()
+
+			append("0\r")
+			parser.parseAppended()
+			append("\nK0001/1 11\r\n")
+			parser.parseAppended()
+
+			AqdefObjectModel model = parser.getAqdefObjectModel()
+
+		then:
+			valuesBeforeLineIsCompleted == 1
+			model.getValueEntries(1, 2, 1).getValue("K0001") == 20
+			model.getValueEntries(1, 1, 2).getValue("K0001") == 11
+	}
+
+	def "appended /0 value entries are applied to the values with the same index"() {
+		given:
+			write(header + "K0001/1 10\nK0001/2 20\nK0006/0 batch 1\n")
+			def parser = new AqdefIncrementalParser(file, "utf-8")
+
+		when:
+			parser.parseAppended()
+			append("K0001/1 11\nK0001/2 21\n")
+			parser.parseAppended()
+			append("K0006/0 batch 2\nK0001/1 12\n")
+			parser.parseAppended()
+
+			AqdefObjectModel model = parser.getAqdefObjectModel()
+
+		then:
+			model.getValueEntries(1, 1, 1).getValue("K0006") == "batch 1"
+			model.getValueEntries(1, 2, 1).getValue("K0006") == "batch 1"
+			model.getValueEntries(1, 1, 2).getValue("K0006") == "batch 2"
+			model.getValueEntries(1, 2, 2).getValue("K0006") == "batch 2"
+			model.getValueEntries(1, 1, 3).getValue("K0006") == null
+	}
+
+	def "model is the same as when the whole file is parsed at once"() {
+		given:
+			def parser = new AqdefIncrementalParser(file, "utf-8")
+			def content = header + "K1002/0 common\nK0001/1 10\nK0014/0 id\nK1001/2 part2\nK2001/3 char3\nK0001/3 30\nK0001/1 11\n"
+
+		when:
+			write("")
+			for (String line : content.split("(?<=\n)")) {
+				append(line)
+				parser.parseAppended()
+			}
+
+			def expectedModel = new AqdefParser().parse(content)
+
+		then:
+			parser.getAqdefObjectModel().getPartEntries(2).getValue("K1002") == "common"
+			parser.getAqdefObjectModel().getValueEntries(1, 1, 1).getValue("K0014") == "id"
+			parser.getAqdefObjectModel().getValues() == expectedModel.getValues()
+			parser.getAqdefObjectModel().getParts() == expectedModel.getParts()
+	}
+
+	def "changed /0 entries overwrite the entries applied in the previous increments"() {
+		given:
+			def parser = new AqdefIncrementalParser(file, "utf-8")
+			def content = "K0100 2\nK1001/1 p\nK1002/0 A\nK2001/1 c1\nK2001/2 c2\nK2002/0 X\nK2002/2 explicit\nK0001/1 1\n"
+			def appended = "K1002/0 B\nK2002/0 Y\nK0001/1 2\n"
+
+		when:
+			write(content)
+			parser.parseAppended()
+			append(appended)
+			parser.parseAppended()
+
+			AqdefObjectModel model = parser.getAqdefObjectModel()
+			def expectedModel = new AqdefParser().parse(content + appended)
+
+		then:
+			model.getPartEntries(1).getValue("K1002") == "B"
+			model.getCharacteristicEntries(1, 1).getValue("K2002") == "Y"
+			model.getCharacteristicEntries(1, 2).getValue("K2002") == "explicit"
+			model.getParts() == expectedModel.getParts()
+			model.getCharacteristics(PartIndex.of(1)) == expectedModel.getCharacteristics(PartIndex.of(1))
+	}
+
+	def "truncated file can't be parsed"() {
+		given:
+			write(header)
+			def parser = new AqdefIncrementalParser(file, "utf-8")
+			parser.parseAppended()
+
+		when:
+			write("K0100 1\n")
+			parser.parseAppended()
+
+		then:
+			thrown(IOException)
+	}
+
+	private void write(String content) {
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8))
+	}
+
+	private void append(String content) {
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND)
+	}
+
+	def header = "K0100 2\nK1001/1 part\nK2001/1 char1\nK2001/2 char2\n"
+
+}
@@ -1,5 +1,6 @@
 package cz.diribet.aqdef.parser
 
+import cz.diribet.aqdef.KKey
 import cz.diribet.aqdef.model.AqdefObjectModel
 import cz.diribet.aqdef.model.AqdefObjectModel.CharacteristicEntries
 import cz.diribet.aqdef.model.AqdefObjectModel.PartEntries
@@ -10,6 +11,13 @@ import cz.diribet.aqdef.model.PartIndex
 import spock.lang.Ignore
 import spock.lang.Specification
 
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.util.zip.GZIPOutputStream
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
 class AqdefParserTest extends Specification {
 
 	def "K-key entries of type String are parsed correctly" () {
@@ -496,11 +504,209 @@ class AqdefParserTest extends Specification {
 			value1ofCharacteristic1 == null
 	}
 
+	def "values are converted when they are read if lazy value conversion is enabled"() {
+		given:
+			def parser = new AqdefParser()
+			parser.setLazyValueConversion(true)
+
+		when:
+			AqdefObjectModel model = parser.parse(dfqWithDate)
+			ValueEntries entries = model.getValueEntries(1, 1, 1)
+
+		then:
+			entries.getValue("K0004") == Date.parse("dd.MM.yyyy HH:mm:ss", "1.1.2014 10:30:59")
+			entries.getValue("K0001") == 1
+			model.getCharacteristicEntries(1, 1).getValue("K2001") == "characteristic"
+	}
+
+	def "invalid value is read as null if lazy value conversion is enabled"() {
+		given:
+			def parser = new AqdefParser()
+			parser.setLazyValueConversion(true)
+
+		when:
+			AqdefObjectModel model = parser.parse(dfqWithInvalidDate)
+
+			ValueEntries entries = model.getValueEntries(1, 1, 1)
+
+		then:
+			entries.get(KKey.of("K0004")) != null
+			entries.getValue("K0004") == null
+	}
+
+	def "only header is parsed by parseHeader"() {
+		given:
+			def buffer = ByteBuffer.wrap(dfqWithTwoPartsWithBinaryValuesAtTheEnd.getBytes(StandardCharsets.UTF_8))
+
+		when:
+			AqdefHeader header = new AqdefParser().parseHeader(buffer, StandardCharsets.UTF_8)
+			AqdefObjectModel model = header.getObjectModel()
+
+		then:
+			model.getPartIndexes().size() == 2
+			model.getCharacteristicEntries(2, 2).getValue("K2001") == "characteristic2"
+			model.getCharacteristicEntries(2, 2).getValue("K2004") == 0
+			model.getValueCount() == 0
+
+		and:
+			dfqWithTwoPartsWithBinaryValuesAtTheEnd.substring((int) header.getValuesOffset()).trim().startsWith("1\u00140\u001401.01.2014")
+	}
+
+	def "parseHeader stops at the first value K-key and returns its offset in the file"() {
+		given:
+			def file = Files.createTempFile("aqdef", ".dfq")
+			file.toFile().deleteOnExit()
+			Files.write(file, ("\uFEFF" + dfqWithTwoPartsWithValuesAfterEachPart).getBytes(StandardCharsets.UTF_8))
+
+		when:
+			AqdefHeader header = new AqdefParser().parseHeader(file, "utf-8")
+
+		then:
+			header.getObjectModel().getPartIndexes() == [PartIndex.of(1)]
+			header.getObjectModel().getCharacteristicCount() == 1
+			header.getObjectModel().getValueCount() == 0
+
+		and:
+			def content = Files.readAllBytes(file)
+			int offset = header.getValuesOffset()
+			new String(content, offset, content.length - offset, StandardCharsets.UTF_8).trim().startsWith("K0001/1 1")
+	}
+
+	def "parseHeader returns size of the content when there are no values"() {
+		given:
+			def buffer = ByteBuffer.wrap(dfqWithString.getBytes(StandardCharsets.UTF_8))
+
+		when:
+			AqdefHeader header = new AqdefParser().parseHeader(buffer, StandardCharsets.UTF_8)
+
+		then:
+			header.getValuesOffset() == buffer.limit()
+			header.getObjectModel().getPartEntries(1).getValue("K1001") == "part"
+	}
+
+	def "parsing resumed from a checkpoint with the partial model results in the same model as the whole parsing"() {
+		given:
+			def file = Files.createTempFile("aqdef", ".dfq")
+			file.toFile().deleteOnExit()
+			Files.write(file, dfqWithTwoPartsWithValuesAfterEachPart.getBytes(StandardCharsets.UTF_8))
+
+			ParserCheckpoint checkpoint = null
+			AqdefObjectModel partialModel = null
+
+			def parser = new AqdefParser()
+			parser.setCheckpointListener(3, { ParserCheckpoint c, AqdefObjectModel model ->
+				if (c.line > 6) {
+					checkpoint = c
+					partialModel = model
+					throw new IllegalStateException("import failed")
+				}
+			} as AqdefParser.CheckpointListener)
+
+		when:
+			parser.parseMapped(file, "utf-8")
+
+		then:
+			thrown(IllegalStateException)
+
+		when:
+			AqdefObjectModel model = new AqdefParser().parseMapped(file, "utf-8", ParserCheckpoint.fromByteArray(checkpoint.toByteArray()), partialModel)
+			AqdefObjectModel expectedModel = new AqdefParser().parseMapped(file, "utf-8")
+
+		then:
+			model.getParts() == expectedModel.getParts()
+			model.getValues() == expectedModel.getValues()
+	}
+
+	def "gzip compressed file is parsed"() {
+		given:
+			def file = Files.createTempFile("aqdef", ".dfq.gz")
+			file.toFile().deleteOnExit()
+			file.withOutputStream { new GZIPOutputStream(it).withStream { it.write(dfqWithTwoPartsWithValuesAfterEachPart.getBytes(StandardCharsets.UTF_8)) } }
+
+			AqdefObjectModel expectedModel = parse(dfqWithTwoPartsWithValuesAfterEachPart)
+
+		expect:
+			new AqdefParser().parse(file, "utf-8").getValues() == expectedModel.getValues()
+			new AqdefParser().parseMapped(file, "utf-8").getValues() == expectedModel.getValues()
+			new AqdefParser().parse(Files.newInputStream(file), "utf-8").getValues() == expectedModel.getValues()
+	}
+
+	def "all the files of zip archive are parsed"() {
+		given:
+			def file = Files.createTempFile("aqdef", ".zip")
+			file.toFile().deleteOnExit()
+			file.withOutputStream {
+				new ZipOutputStream(it).withStream { zip ->
+					zip.putNextEntry(new ZipEntry("directory/"))
+					zip.putNextEntry(new ZipEntry("directory/first.dfq"))
+					zip.write(dfqWithString.getBytes(StandardCharsets.UTF_8))
+					zip.putNextEntry(new ZipEntry("second.dfq"))
+					zip.write(dfqWithTwoPartsWithValuesAfterEachPart.getBytes(StandardCharsets.UTF_8))
+				}
+			}
+
+			def models = [:]
+
+		when:
+			new AqdefParser().parseZip(file, "utf-8", { name, model -> models[name] = model })
+
+		then:
+			models.keySet() == ["directory/first.dfq", "second.dfq"] as Set
+			models["directory/first.dfq"].getPartEntries(1).getValue("K1001") == "part"
+			models["second.dfq"].getValues() == parse(dfqWithTwoPartsWithValuesAfterEachPart).getValues()
+	}
+
+	def "zip archive can't be parsed as a single file"() {
+		given:
+			def content = new ByteArrayOutputStream()
+			new ZipOutputStream(content).withStream { zip ->
+				zip.putNextEntry(new ZipEntry("first.dfq"))
+				zip.write(dfqWithString.getBytes(StandardCharsets.UTF_8))
+			}
+
+		when:
+			new AqdefParser().parse(new ByteArrayInputStream(content.toByteArray()), "utf-8")
+
+		then:
+			thrown(IOException)
+	}
+
+	def "encoding of the file is detected"() {
+		given:
+			def file = Files.createTempFile("aqdef", ".dfq")
+			file.toFile().deleteOnExit()
+			Files.write(file, dfqWithNonAsciiCharacters.getBytes(encoding))
+
+		expect:
+			new AqdefParser().parse(file).getPartEntries(1).getValue("K1001") == "díl č. 1"
+			new AqdefParser().parseMapped(file).getPartEntries(1).getValue("K1001") == "díl č. 1"
+
+		where:
+			encoding << ["utf-8", "UTF-16"]
+	}
+
+	def "fallback encoding is used for content which is not UTF-8"() {
+		given:
+			def parser = new AqdefParser()
+			parser.setFallbackEncoding("windows-1250")
+
+		when:
+			AqdefObjectModel model = parser.parse(new ByteArrayInputStream(dfqWithNonAsciiCharacters.getBytes("windows-1250")))
+
+		then:
+			model.getPartEntries(1).getValue("K1001") == "díl č. 1"
+	}
+
 	def parse(String dfq) {
 		def parser = new AqdefParser()
 		return parser.parse(dfq)
 	}
 
+	def dfqWithNonAsciiCharacters = """
+		K0100 1
+		K1001/1 díl č. 1
+	"""
+
 	def dfqWithString = """
 		K0100 1
 		K1001/1 part
@@ -519,6 +725,14 @@ class AqdefParserTest extends Specification {
 		K0004/1 1.1.2014/10:30:59
 	"""
 
+	def dfqWithInvalidDate = """
+		K0100 1
+		K1001/1 part
+		K2001/1 characteristic
+		K0001/1 1
+		K0004/1 invalid date
+	"""
+
 	def dfqWithEmptyKeys = """
 		K0100 1
 		K1001/1 part
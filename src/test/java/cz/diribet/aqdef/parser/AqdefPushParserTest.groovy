@@ -0,0 +1,101 @@
+package cz.diribet.aqdef.parser
+
+import cz.diribet.aqdef.model.AqdefObjectModel
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.SubmissionPublisher
+
+class AqdefPushParserTest extends Specification {
+
+	def "content fed in chunks is parsed the same way as the whole content" () {
+		given:
+			def bytes = ("\uFEFF" + dfq.replace("\n", "\r\n")).getBytes(StandardCharsets.UTF_8)
+
+			def handler = new ObjectModelParserHandler(new AqdefObjectModel())
+			def parser = new AqdefStreamingParser().createPushParser("utf-8", handler)
+
+		when:
+			for (int i = 0; i < bytes.length; i += chunkSize) {
+				parser.feed(ByteBuffer.wrap(bytes, i, Math.min(chunkSize, bytes.length - i)))
+			}
+			parser.finish()
+
+			AqdefObjectModel model = handler.getAqdefObjectModel()
+			AqdefObjectModel expectedModel = new AqdefParser().parse(dfq)
+
+		then:
+			model.getPartEntries(1).getValue("K1001") == "part"
+			model.getValues() == expectedModel.getValues()
+			model.getParts() == expectedModel.getParts()
+
+		where:
+			chunkSize << [1, 2, 3, 7, 1000]
+	}
+
+	def "last line without line separator is parsed when the parsing is finished" () {
+		given:
+			def handler = new ObjectModelParserHandler(new AqdefObjectModel())
+			def parser = new AqdefStreamingParser().createPushParser("utf-8", handler)
+
+		when:
+			parser.feed(ByteBuffer.wrap("K0100 1\nK1001/1 part\nK2001/1 char\nK0001/1 1".getBytes(StandardCharsets.UTF_8)))
+			def valueCountBeforeFinish = handler.getAqdefObjectModel().getValueCount()
+
+			parser.finish()
+
+		then:
+			valueCountBeforeFinish == 0
+			handler.getAqdefObjectModel().getValueEntries(1, 1, 1).getValue("K0001") == 1
+	}
+
+	def "content published in chunks is parsed to object model" () {
+		given:
+			def bytes = dfq.getBytes(StandardCharsets.UTF_8)
+			def publisher = new SubmissionPublisher<ByteBuffer>()
+
+		when:
+			def future = new AqdefParser().parse(publisher, "utf-8")
+
+			for (int i = 0; i < bytes.length; i += 10) {
+				publisher.submit(ByteBuffer.wrap(bytes, i, Math.min(10, bytes.length - i)))
+			}
+			publisher.close()
+
+			AqdefObjectModel model = future.get()
+
+		then:
+			model.getValues() == new AqdefParser().parse(dfq).getValues()
+	}
+
+	def "invalid published content completes the parsing exceptionally" () {
+		given:
+			def publisher = new SubmissionPublisher<ByteBuffer>()
+
+		when:
+			def future = new AqdefParser().parse(publisher, "utf-8")
+
+			publisher.submit(ByteBuffer.wrap("K0100 1\nK1001/1 part\nK2001/1 char\nK0001/2 1\n".getBytes(StandardCharsets.UTF_8)))
+			publisher.close()
+
+			future.get()
+
+		then:
+			thrown(ExecutionException)
+	}
+
+	def dfq = """
+		K0100 2
+		K1001/1 part
+		K2001/1 char1
+		K2001/2 char2
+		K0006/0 batch
+		K0001/1 10
+		K0001/2 20
+		K0001/1 11
+		K0004/1 1.1.2014/10:30:59
+	"""
+
+}
@@ -0,0 +1,474 @@
+package cz.diribet.aqdef.parser
+
+import cz.diribet.aqdef.KKey
+import cz.diribet.aqdef.model.CharacteristicIndex
+import cz.diribet.aqdef.model.GroupIndex
+import cz.diribet.aqdef.model.PartIndex
+import cz.diribet.aqdef.model.UnconvertedValue
+import cz.diribet.aqdef.model.ValueIndex
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.util.concurrent.ForkJoinPool
+
+class AqdefStreamingParserTest extends Specification {
+
+	def "entries are reported to the handler in the order of the AQDEF content" () {
+		given:
+			def handler = new RecordingHandler()
+
+		when:
+			new AqdefStreamingParser().parse(dfq, handler)
+
+		then:
+			handler.events == [
+				"part K1001 1 part",
+				"characteristic K2001 1/1 char1",
+				"characteristic K2001 1/2 char2",
+				"value K0001 1/1/1 10",
+				"value K0001 1/2/1 20",
+				"value K0001 1/1/2 11",
+				"end"
+			]
+	}
+
+	def "/0 entries are reported as they are" () {
+		given:
+			def handler = new RecordingHandler()
+
+		when:
+			new AqdefStreamingParser().parse(dfqWithKeyAppliedToAllParts, handler)
+
+		then:
+			handler.events == [
+				"part K1002 0 common title",
+				"part K1001 1 part1",
+				"part K1001 2 part2",
+				"end"
+			]
+	}
+
+	def "binary values are reported to the handler" () {
+		given:
+			def handler = new RecordingHandler()
+
+		when:
+			new AqdefStreamingParser().parse(dfqWithBinaryValues, handler)
+
+		then:
+			handler.events.findAll { it.startsWith("value K0001") } == [
+				"value K0001 1/1/1 10",
+				"value K0001 1/2/1 20"
+			]
+	}
+
+	def "only K-keys in the projection are reported" () {
+		given:
+			def handler = new RecordingHandler()
+			def parser = new AqdefStreamingParser()
+			parser.setProjection(KKeyProjection.of("K1001", "K0001"))
+
+		when:
+			parser.parse(dfqWithRepeatedDates, handler)
+
+		then:
+			handler.events == [
+				"part K1001 1 part",
+				"value K0001 1/1/1 10",
+				"value K0001 1/1/3 11",
+				"end"
+			]
+	}
+
+	def "only K-keys of the levels in the projection are reported" () {
+		given:
+			def handler = new RecordingHandler()
+			def parser = new AqdefStreamingParser()
+			parser.setProjection(KKeyProjection.ofLevels(KKey.Level.PART).withKeys("K0001"))
+
+		when:
+			parser.parse(dfqWithBinaryValues, handler)
+
+		then:
+			handler.events == [
+				"part K1001 1 part",
+				"value K0001 1/1/1 10",
+				"value K0001 1/2/1 20",
+				"end"
+			]
+	}
+
+	def "handler does not have to implement all the methods" () {
+		given:
+			def values = []
+			IAqdefParserHandler handler = new IAqdefParserHandler() {
+				@Override
+				void onValueEntry(KKey key, ValueIndex index, Object value) {
+					values << value
+				}
+			}
+
+		when:
+			new AqdefStreamingParser().parse(dfq, handler)
+
+		then:
+			values.size() == 3
+	}
+
+	def "error is thrown when there are values for non-existing characteristic" () {
+		when:
+			new AqdefStreamingParser().parse(dfqWithValueOfNonExistingCharacteristic, new RecordingHandler())
+
+		then:
+			thrown(RuntimeException)
+	}
+
+	def "byte buffer is parsed the same way as String content" () {
+		given:
+			def contents = [dfq, dfqWithKeyAppliedToAllParts, dfqWithBinaryValues, dfqWithNonAsciiCharacters, dfqWithUnusualIndexes]
+			def parser = new AqdefStreamingParser()
+
+		when:
+			def stringEvents = contents.collect { content ->
+				def handler = new RecordingHandler()
+				parser.parse(content, handler)
+				handler.events
+			}
+
+			def bytesEvents = contents.collect { content ->
+				def handler = new RecordingHandler()
+				parser.parse(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, handler)
+				handler.events
+			}
+
+		then:
+			bytesEvents == stringEvents
+	}
+
+	def "memory mapped file is parsed correctly" () {
+		given:
+			def file = Files.createTempFile("aqdef", ".dfq")
+			file.toFile().deleteOnExit()
+			Files.write(file, ("\uFEFF" + dfqWithNonAsciiCharacters.replace("\n", "\r\n")).getBytes(StandardCharsets.UTF_8))
+
+			def handler = new RecordingHandler()
+
+		when:
+			new AqdefStreamingParser().parseMapped(file, "utf-8", handler)
+
+		then:
+			handler.events == [
+				"part K1001 1 díl",
+				"characteristic K2001 1/1 znak č. 1",
+				"value K0001 1/1/1 10.5",
+				"value K0006 1/1/1 šarže",
+				"end"
+			]
+	}
+
+	def "values parsed in parallel are reported in the same order and with the same indexes as sequentially parsed values" () {
+		given:
+			def content = new StringBuilder("""
+				K0100 3
+				K1001/1 part1
+				K2001/1 char1
+				K2001/2 char2
+				K2004/2 1
+			""")
+			(1..50).each { content << "${it}.5\u0014\u00140\u000f${it % 3}\u0014${it}\u0014\n" }
+			(1..20).each { content << "K0001/1 ${it}\nK0002/1 ${it % 2}\nK0001/2/${it} ${it}\n" }
+			content << """
+				K1001/2 part2
+				K2001/3 char3
+			"""
+			(1..30).each { content << "K0001/3 ${it}\nK0001/1 ${it}\n" }
+
+			def bytes = content.toString().getBytes(StandardCharsets.UTF_8)
+
+			def sequentialHandler = new RecordingHandler()
+			def parallelHandler = new RecordingHandler()
+
+			def pool = new ForkJoinPool(4)
+
+			def parallelParser = new AqdefStreamingParser()
+			parallelParser.forkJoinPool = pool
+			parallelParser.chunkSize = 64
+
+		when:
+			new AqdefStreamingParser().parse(ByteBuffer.wrap(bytes), StandardCharsets.UTF_8, sequentialHandler)
+			parallelParser.parse(ByteBuffer.wrap(bytes), StandardCharsets.UTF_8, parallelHandler)
+
+		then:
+			parallelHandler.events == sequentialHandler.events
+
+		cleanup:
+			pool.shutdown()
+	}
+
+	def "error in parallel parsed values reports the correct line" () {
+		given:
+			def content = new StringBuilder("K0100 1\nK1001/1 part\nK2001/1 char\n")
+			(1..100).each { content << "K0001/1 ${it}\n" }
+			content << "K0001/2 1\n"
+			(1..100).each { content << "K0001/1 ${it}\n" }
+
+			def pool = new ForkJoinPool(4)
+
+			def parser = new AqdefStreamingParser()
+			parser.forkJoinPool = pool
+			parser.chunkSize = 64
+
+		when:
+			parser.parse(ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, new RecordingHandler())
+
+		then:
+			RuntimeException e = thrown()
+			e.message.contains("Error at line: 104")
+
+		cleanup:
+			pool.shutdown()
+	}
+
+	def "parallel parsing of many small parts is not much slower than sequential parsing" () {
+		given:
+			def content = new StringBuilder("K0100 1\n")
+			(1..2000).each { part ->
+				content << "K1001/1 part${part}\nK2001/1 char\n"
+				(1..40).each { content << "K0001/1 ${it}.5\n" }
+			}
+			def bytes = content.toString().getBytes(StandardCharsets.UTF_8)
+
+			def pool = new ForkJoinPool(4)
+
+			def parallelParser = new AqdefStreamingParser()
+			parallelParser.forkJoinPool = pool
+			parallelParser.chunkSize = 16 * 1024
+
+			def sequentialHandler = new RecordingHandler()
+			def parallelHandler = new RecordingHandler()
+
+			def noopHandler = new IAqdefParserHandler() {}
+			def bestTime = { Closure parse ->
+				(1..5).collect {
+					long start = System.nanoTime()
+					parse()
+					System.nanoTime() - start
+				}.min()
+			}
+
+		when:
+			def sequentialTime = bestTime { new AqdefStreamingParser().parse(ByteBuffer.wrap(bytes), StandardCharsets.UTF_8, noopHandler) }
+			def parallelTime = bestTime { parallelParser.parse(ByteBuffer.wrap(bytes), StandardCharsets.UTF_8, noopHandler) }
+
+			new AqdefStreamingParser().parse(ByteBuffer.wrap(bytes), StandardCharsets.UTF_8, sequentialHandler)
+			parallelParser.parse(ByteBuffer.wrap(bytes), StandardCharsets.UTF_8, parallelHandler)
+
+		then:
+			parallelHandler.events == sequentialHandler.events
+			// each small part used to start parsing (and counting lines) of several chunks that were thrown away
+			parallelTime < 3 * sequentialTime + 100_000_000
+
+		cleanup:
+			pool.shutdown()
+	}
+
+	def "values are reported unconverted if lazy value conversion is enabled" () {
+		given:
+			def values = [:]
+			def handler = new IAqdefParserHandler() {
+				@Override
+				void onValueEntry(KKey key, ValueIndex index, Object value) {
+					values[key.key] = value
+				}
+			}
+
+			def parser = new AqdefStreamingParser()
+			parser.setLazyValueConversion(true)
+
+		when:
+			parser.parse(dfqWithDate, handler)
+
+		then:
+			values["K0001"] == new UnconvertedValue(KKey.of("K0001"), "10")
+			values["K0004"] == new UnconvertedValue(KKey.of("K0004"), "1.1.2014/10:30:59")
+			values["K0006"] == "batch"
+	}
+
+	def "file larger than the mapped size is mapped by parts" () {
+		given:
+			def file = Files.createTempFile("aqdef", ".dfq")
+			file.toFile().deleteOnExit()
+			Files.write(file, dfq.replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8))
+
+			def parser = new AqdefStreamingParser()
+			parser.mappedSize = 20
+
+			def mappedHandler = new RecordingHandler()
+			def stringHandler = new RecordingHandler()
+
+		when:
+			parser.parseMapped(file, "utf-8", mappedHandler)
+			new AqdefStreamingParser().parse(dfq, stringHandler)
+
+		then:
+			mappedHandler.events == stringHandler.events
+	}
+
+	def "checkpoints are reported every N lines" () {
+		given:
+			def handler = new RecordingHandler()
+
+			def parser = new AqdefStreamingParser()
+			parser.setCheckpointInterval(3)
+
+		when:
+			parser.parse(ByteBuffer.wrap(dfq.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, handler)
+
+		then:
+			handler.checkpoints*.line == [4, 7, 10]
+			handler.events.indexOf("checkpoint 4") == 1
+			handler.events.indexOf("checkpoint 7") == 5
+	}
+
+	def "parsing resumed from a checkpoint reports the same entries as the rest of the file" () {
+		given:
+			def file = Files.createTempFile("aqdef", ".dfq")
+			file.toFile().deleteOnExit()
+			Files.write(file, dfq.getBytes(StandardCharsets.UTF_8))
+
+			def handler = new RecordingHandler()
+			def resumedHandler = new RecordingHandler()
+
+			def parser = new AqdefStreamingParser()
+			parser.setCheckpointInterval(2)
+
+		when:
+			parser.parseMapped(file, "utf-8", handler)
+
+			def checkpoint = ParserCheckpoint.fromByteArray(handler.checkpoints[2].toByteArray())
+			parser.parseMapped(file, "utf-8", resumedHandler, checkpoint)
+
+		then:
+			checkpoint.line == 7
+			resumedHandler.events == handler.events.subList(handler.events.indexOf("checkpoint 7") + 1, handler.events.size())
+			resumedHandler.events.contains("value K0001 1/2/1 20")
+	}
+
+	def "invalid checkpoint can't be read" () {
+		when:
+			ParserCheckpoint.fromByteArray([1, 2, 3, 4, 5] as byte[])
+
+		then:
+			thrown(IOException)
+	}
+
+	private static class RecordingHandler implements IAqdefParserHandler {
+
+		def events = []
+		def checkpoints = []
+
+		@Override
+		void onPartEntry(KKey key, PartIndex index, Object value) {
+			events << "part $key ${index.index} $value".toString()
+		}
+
+		@Override
+		void onCharacteristicEntry(KKey key, CharacteristicIndex index, Object value) {
+			events << "characteristic $key ${index.partIndex.index}/${index.characteristicIndex} $value".toString()
+		}
+
+		@Override
+		void onGroupEntry(KKey key, GroupIndex index, Object value) {
+			events << "group $key $value".toString()
+		}
+
+		@Override
+		void onValueEntry(KKey key, ValueIndex index, Object value) {
+			events << "value $key ${index.partIndex.index}/${index.characteristicIndex.characteristicIndex}/${index.valueIndex} $value".toString()
+		}
+
+		@Override
+		void onCheckpoint(ParserCheckpoint checkpoint) {
+			checkpoints << checkpoint
+			events << "checkpoint ${checkpoint.line}".toString()
+		}
+
+		@Override
+		void onEnd() {
+			events << "end"
+		}
+	}
+
+	def dfqWithDate = """
+		K0100 1
+		K1001/1 part
+		K2001/1 char1
+		K0001/1 10
+		K0004/1 1.1.2014/10:30:59
+		K0006/1 batch
+	"""
+
+	def dfq = """
+		K0100 2
+		K1001/1 part
+		K2001/1 char1
+		K2001/2 char2
+		K0001/1 10
+		K0001/2 20
+		K0001/1 11
+	"""
+
+	def dfqWithKeyAppliedToAllParts = """
+		K0100 2
+		K1002/0 common title
+		K1001/1 part1
+		K1001/2 part2
+	"""
+
+	def dfqWithRepeatedDates = """
+		K0100 1
+		K1001/1 part
+		K1002/1 title
+		K2001/1 char1
+		K0001/1 10
+		K0004/1 1.1.2014/10:30:59
+		K0004/1 2.1.2014/10:30:59
+		K0004/1 3.1.2014/10:30:59
+		K0001/1 11
+	"""
+
+	def dfqWithBinaryValues = """
+		K0100 2
+		K1001/1 part
+		K2001/1 char1
+		K2001/2 char2
+		10\u0014\u0014\u0014\u0014\u000f20\u0014\u0014\u0014\u0014
+	"""
+
+	def dfqWithValueOfNonExistingCharacteristic = """
+		K0100 1
+		K1001/1 part
+		K2001/1 char1
+		K0001/2 20
+	"""
+
+	def dfqWithNonAsciiCharacters = """
+		K0100 1
+		K1001/1 díl
+		K2001/1 znak č. 1
+		K0001/1 10.5
+		K0006/1 šarže
+	"""
+
+	def dfqWithUnusualIndexes = """
+		K0100 1
+		K1001/01 part
+		K2001 char
+		K0001/1/1 10
+		K0001/1/2 20
+		K0002/1 \t 1
+	"""
+
+}
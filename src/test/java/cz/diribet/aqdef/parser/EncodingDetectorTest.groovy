@@ -0,0 +1,28 @@
+package cz.diribet.aqdef.parser
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+
+class EncodingDetectorTest extends Specification {
+
+	@Unroll
+	def "encoding of #description is detected as #expectedEncoding"() {
+		expect:
+			EncodingDetector.detect(ByteBuffer.wrap(bytes as byte[]), "windows-1252") == expectedEncoding
+
+		where:
+			description                        | bytes                                                  || expectedEncoding
+			"empty content"                    | []                                                     || "utf-8"
+			"ASCII content"                    | "K1001/1 part\r\n".bytes.toList()                      || "utf-8"
+			"UTF-8 with BOM"                   | [0xEF, 0xBB, 0xBF, 0x4B]                               || "utf-8"
+			"UTF-16 with BOM"                  | [0xFF, 0xFE, 0x4B, 0x00]                               || "UTF-16"
+			"UTF-8 without BOM"                | "K1001/1 díl č. 1\r\n".getBytes("utf-8").toList()     || "utf-8"
+			"windows-1252"                     | "K1001/1 díl 1\r\n".getBytes("windows-1252").toList() || "windows-1252"
+			"UTF-8 cut by the end of block"    | [0x4B, 0xC4]                                           || "utf-8"
+			"overlong UTF-8 encoding"          | [0xC0, 0xAF]                                           || "windows-1252"
+			"UTF-8 encoded surrogate"          | [0xED, 0xA0, 0x80]                                     || "windows-1252"
+	}
+
+}
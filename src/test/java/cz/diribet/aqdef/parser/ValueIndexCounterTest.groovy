@@ -0,0 +1,88 @@
+package cz.diribet.aqdef.parser
+
+import cz.diribet.aqdef.KKey
+import cz.diribet.aqdef.model.CharacteristicIndex
+import cz.diribet.aqdef.model.PartIndex
+import spock.lang.Specification
+
+class ValueIndexCounterTest extends Specification {
+
+	def "new value starts when a K-key of the characteristic repeats"() {
+		given:
+			def counter = new ParserContext.ValueIndexCounter()
+			def characteristic1 = CharacteristicIndex.of(PartIndex.of(1), 1)
+			def characteristic2 = CharacteristicIndex.of(PartIndex.of(1), 2)
+
+		when:
+			def indexes = [
+				counter.getIndex(characteristic1, KKey.of("K0001")),
+				counter.getIndex(characteristic1, KKey.of("K0004")),
+				counter.getIndex(characteristic2, KKey.of("K0001")),
+				counter.getIndex(characteristic1, KKey.of("K0001")),
+				counter.getIndex(characteristic1, KKey.of("K0004")),
+				counter.getIndex(characteristic2, KKey.of("K0001"))
+			]
+
+		then:
+			indexes*.valueIndex == [1, 1, 1, 2, 2, 2]
+	}
+
+	def "characteristics with the same number in different parts and unusual K-keys are counted separately"() {
+		given:
+			def counter = new ParserContext.ValueIndexCounter()
+			def characteristic1 = CharacteristicIndex.of(PartIndex.of(1), 100000)
+			def characteristic2 = CharacteristicIndex.of(PartIndex.of(2), 100000)
+
+		when:
+			def indexes = [
+				counter.getIndex(characteristic1, KKey.of("K0999")),
+				counter.getIndex(characteristic2, KKey.of("K0999")),
+				counter.getIndex(characteristic1, KKey.of("K0999")),
+				counter.getIndex(characteristic1, KKey.of("K0001")),
+				counter.getIndex(characteristic2, KKey.of("K0001"))
+			]
+
+		then:
+			indexes*.valueIndex == [1, 1, 2, 2, 1]
+	}
+
+	def "characteristics with the same number in several parts are counted separately"() {
+		given:
+			def counter = new ParserContext.ValueIndexCounter()
+			def characteristics = (1..3).collect { part -> CharacteristicIndex.of(PartIndex.of(part), 1) }
+
+		when:
+			def indexes = (1..2).collectMany { value ->
+				characteristics.collectMany { characteristic ->
+					[counter.getIndex(characteristic, KKey.of("K0001")), counter.getIndex(characteristic, KKey.of("K0004"))]
+				}
+			}
+
+		then:
+			indexes*.valueIndex == [1, 1, 1, 1, 1, 1, 2, 2, 2, 2, 2, 2]
+			indexes*.characteristicIndex == characteristics.collectMany { [it, it] } * 2
+	}
+
+	def "counter continues the same way after it is written and read"() {
+		given:
+			def counter = new ParserContext.ValueIndexCounter()
+			def characteristic1 = CharacteristicIndex.of(PartIndex.of(2), 1)
+			def characteristic2 = CharacteristicIndex.of(PartIndex.of(1), 100000)
+
+			counter.getIndex(characteristic1, KKey.of("K0001"))
+			counter.getIndex(characteristic1, KKey.of("K0001"))
+			counter.getIndex(characteristic1, KKey.of("K0004"))
+			counter.getIndex(characteristic2, KKey.of("K0001"))
+
+		when:
+			def bytes = new ByteArrayOutputStream()
+			counter.writeTo(new DataOutputStream(bytes))
+			def readCounter = ParserContext.ValueIndexCounter.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+
+		then:
+			readCounter.getIndex(characteristic1, KKey.of("K0004")).valueIndex == 3
+			readCounter.getIndex(characteristic2, KKey.of("K0004")).valueIndex == 1
+			readCounter.getIndex(characteristic2, KKey.of("K0001")).valueIndex == 2
+	}
+
+}
@@ -0,0 +1,44 @@
+package cz.diribet.aqdef.parser.line
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+class LineClassifierTest extends Specification {
+
+	@Unroll
+	def "Line '#line' is classified as #lineType"() {
+		given:
+			def bytes = line.getBytes(StandardCharsets.UTF_8)
+			def byteLine = new ByteLine(ByteBuffer.wrap(bytes), StandardCharsets.UTF_8)
+			byteLine.reset(0, bytes.length)
+
+		expect:
+			LineClassifier.classify(line) == lineType
+			LineClassifier.classify(byteLine) == lineType
+
+		where:
+			line								|| lineType
+			"K1001 part"						|| LineType.K_KEY
+			"K0001/1 10"						|| LineType.K_KEY
+			"10\u00140\u000f11\u00140"			|| LineType.BINARY
+			"abc\u0014d"						|| LineType.BINARY
+			"10"								|| LineType.SINGLE_VALUE
+			"-10,5"								|| LineType.SINGLE_VALUE
+			"+.5"								|| LineType.SINGLE_VALUE
+			"5."								|| LineType.SINGLE_VALUE
+			"1.5E-3"							|| LineType.SINGLE_VALUE
+			"١٢"						|| LineType.SINGLE_VALUE
+			""									|| LineType.INVALID
+			"-"									|| LineType.INVALID
+			"."									|| LineType.INVALID
+			"1,2,3"								|| LineType.INVALID
+			"1e"								|| LineType.INVALID
+			"10 mm"								|| LineType.INVALID
+			"k1001 part"						|| LineType.INVALID
+			"příliš"							|| LineType.INVALID
+	}
+
+}